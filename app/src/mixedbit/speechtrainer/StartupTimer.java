@@ -0,0 +1,69 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Measures the time from the creation of the application to the first recorded
+ * audio buffer. Logs the time at which each startup milestone was reached. Once
+ * the first audio buffer is recorded, the startup is finished and further
+ * milestones are ignored (these are reached again when the TrainingActivity is
+ * recreated, but the application is not). The class is thread safe.
+ */
+public class StartupTimer {
+    private static final String LOG_TAG = "SpeechTrainer";
+    private final long startTimeMs;
+    private boolean startupFinished = false;
+
+    /**
+     * Startup time is measured from the creation of the timer.
+     */
+    public StartupTimer() {
+        startTimeMs = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Logs time elapsed since the startup began, unless the startup is
+     * already finished.
+     * 
+     * @param milestone
+     *            Description of the reached milestone.
+     */
+    public synchronized void milestoneReached(String milestone) {
+        if (startupFinished) {
+            return;
+        }
+        Log.i(LOG_TAG, "Startup: " + milestone + " after "
+                + (SystemClock.elapsedRealtime() - startTimeMs) + " ms.");
+    }
+
+    /**
+     * Logs time elapsed since the startup began and finishes the startup.
+     * Cheap to call for each recorded buffer.
+     */
+    public synchronized void audioBufferRecorded() {
+        if (startupFinished) {
+            return;
+        }
+        milestoneReached("first audio buffer recorded");
+        startupFinished = true;
+    }
+}
@@ -18,24 +18,57 @@
 
 package mixedbit.speechtrainer;
 
+import java.io.IOException;
+
+import mixedbit.speechtrainer.controller.AudioRouteNoiseFloorStore;
 import mixedbit.speechtrainer.controller.ControllerFactory;
+import mixedbit.speechtrainer.library.SessionLibrary;
 import android.app.Application;
 
 /**
  * Keeps ControllerFactory that should be reused between successive
  * TrainingActivities (to avoid large reallocations of memory for audio
- * buffers).
+ * buffers). Starts initialization of audio devices, so these are likely ready
+ * when the first TrainingActivity requests a controller. Also keeps the
+ * SessionLibrary shared by the TrainingActivity and the history screen.
  */
 public class TrainingApplication extends Application {
+    // Directory in the application storage with saved training sessions.
+    private static final String SESSIONS_DIRECTORY = "recordings";
     private ControllerFactory controllerFactory;
+    private StartupTimer startupTimer;
+    // Opened by the UI thread when first needed. Sessions are added to it in
+    // the background by the ControllerFactory executor.
+    private SessionLibrary sessionLibrary;
 
     @Override
     public void onCreate() {
         super.onCreate();
-        this.controllerFactory = new ControllerFactory();
+        this.startupTimer = new StartupTimer();
+        this.controllerFactory = new ControllerFactory(new AudioRouteNoiseFloorStore(this));
+        this.controllerFactory.prewarmAudioDevices();
+        startupTimer.milestoneReached("application created");
     }
 
     public ControllerFactory getControllerFactory() {
         return controllerFactory;
     }
+
+    public StartupTimer getStartupTimer() {
+        return startupTimer;
+    }
+
+    /**
+     * Must be called by the UI thread.
+     * 
+     * @return Library of saved training sessions.
+     * @throws IOException
+     *             if the library can not be opened.
+     */
+    public SessionLibrary getSessionLibrary() throws IOException {
+        if (sessionLibrary == null) {
+            sessionLibrary = new SessionLibrary(getDir(SESSIONS_DIRECTORY, MODE_PRIVATE));
+        }
+        return sessionLibrary;
+    }
 }
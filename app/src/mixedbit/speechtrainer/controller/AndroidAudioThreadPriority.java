@@ -0,0 +1,31 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import android.os.Process;
+
+/**
+ * Raises priority of the audio thread to THREAD_PRIORITY_URGENT_AUDIO.
+ */
+class AndroidAudioThreadPriority implements AudioThreadPriority {
+    @Override
+    public void raiseCurrentThreadPriority() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+    }
+}
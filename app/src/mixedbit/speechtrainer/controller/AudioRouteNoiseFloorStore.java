@@ -0,0 +1,100 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.media.AudioManager;
+import android.os.Build;
+
+/**
+ * Keeps noise floor snapshots in private shared preferences, separately for
+ * each audio route. Background noise recorded with a headset microphone has a
+ * different level than noise recorded with the built-in microphone, a snapshot
+ * of one route is never restored for another.
+ *
+ * Must be used by the UI thread.
+ */
+public class AudioRouteNoiseFloorStore implements NoiseFloorStore {
+    private static final String PREFERENCES_NAME = "noiseFloor";
+    private static final String BUILT_IN_MIC_ROUTE = "builtInMic";
+    private static final String WIRED_HEADSET_ROUTE = "wiredHeadset";
+    private static final String BLUETOOTH_HEADSET_ROUTE = "bluetoothHeadset";
+    private static final String NOISE_FLOOR_SUFFIX = ".noiseFloor";
+    private static final String MEASUREMENTS_COUNT_SUFFIX = ".measurementsCount";
+    private static final String TAKEN_AT_SUFFIX = ".takenAtMs";
+    private final Context context;
+    private final SharedPreferences preferences;
+    // Route that was current when load was last called.
+    private String loadedRoute = BUILT_IN_MIC_ROUTE;
+
+    public AudioRouteNoiseFloorStore(Context context) {
+        this.context = context;
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public NoiseFloorSnapshot load() {
+        loadedRoute = currentRoute();
+        if (!preferences.contains(loadedRoute + TAKEN_AT_SUFFIX)) {
+            return null;
+        }
+        return new NoiseFloorSnapshot(
+                preferences.getFloat(loadedRoute + NOISE_FLOOR_SUFFIX, Float.NaN),
+                preferences.getInt(loadedRoute + MEASUREMENTS_COUNT_SUFFIX, 0),
+                preferences.getLong(loadedRoute + TAKEN_AT_SUFFIX, 0));
+    }
+
+    /**
+     * Called on the UI thread when the training stops. The snapshot is
+     * written to the disk asynchronously where the platform supports it.
+     */
+    @Override
+    public void save(NoiseFloorSnapshot snapshot) {
+        final SharedPreferences.Editor editor = preferences.edit()
+        .putFloat(loadedRoute + NOISE_FLOOR_SUFFIX, (float) snapshot.getNoiseFloor())
+        .putInt(loadedRoute + MEASUREMENTS_COUNT_SUFFIX, snapshot.getMeasurementsCount())
+        .putLong(loadedRoute + TAKEN_AT_SUFFIX, snapshot.getTakenAtMs());
+        // apply is available since Android 2.3 (API level 9).
+        if (Build.VERSION.SDK_INT >= 9) {
+            editor.apply();
+        } else {
+            editor.commit();
+        }
+    }
+
+    private String currentRoute() {
+        final AudioManager audioManager = (AudioManager) context
+        .getSystemService(Context.AUDIO_SERVICE);
+        if (audioManager.isBluetoothScoOn()) {
+            return BLUETOOTH_HEADSET_ROUTE;
+        }
+        // AudioManager.isWiredHeadsetOn is not available in all supported
+        // versions, the last headset plug broadcast is sticky and tells the
+        // same.
+        final Intent headsetPlug = context.registerReceiver(null, new IntentFilter(
+                Intent.ACTION_HEADSET_PLUG));
+        if (headsetPlug != null && headsetPlug.getIntExtra("state", 0) == 1) {
+            return WIRED_HEADSET_ROUTE;
+        }
+        return BUILT_IN_MIC_ROUTE;
+    }
+}
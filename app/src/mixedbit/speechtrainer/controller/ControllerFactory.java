@@ -18,11 +18,16 @@
 
 package mixedbit.speechtrainer.controller;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import mixedbit.speechtrainer.SpeechTrainerConfig;
-import mixedbit.speechtrainer.controller.RecordPlayTaskManager.RecordPlayTaskPriority;
+import mixedbit.speechtrainer.metrics.BufferTrace;
+import mixedbit.speechtrainer.metrics.LatencyRecorder;
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
 import android.media.AudioFormat;
 import android.media.AudioManager;
 import android.media.AudioRecord;
@@ -33,6 +38,12 @@ import android.media.MediaRecorder.AudioSource;
  * Creates training controllers. It is OK to create multiple controllers with
  * this class, but the user must ensure that multiple controllers are never
  * started simultaneously.
+ *
+ * Controllers are created in the background, on the thread that later executes
+ * recording and playing tasks. Initialization of AudioRecord and AudioTrack is
+ * slow, doing it in the background keeps the UI thread responsive. The
+ * initialization can be started before any controller is requested with
+ * prewarmAudioDevices.
  */
 public class ControllerFactory {
     public class InitializationException extends Exception {
@@ -43,62 +54,294 @@ public class ControllerFactory {
         }
     }
 
+    /**
+     * Receives a controller created in the background.
+     */
+    public interface ControllerCreatedCallback<T extends TrainingController> {
+        /**
+         * Called when the controller was successfully created.
+         */
+        public void controllerCreated(T controller);
+
+        /**
+         * Called when the controller could not be created, because audio
+         * devices failed to initialize.
+         */
+        public void controllerCreationFailed(String errorMessage);
+    }
+
+    // Metrics of all controllers.
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
     // Objects that are reused between successive controllers to avoid
     // reallocations of large buffers and recreation of an executor thread.
     private final AudioBufferAllocator audioBufferAllocator;
+    // Runs only record and play tasks. The task raises the thread to the
+    // audio priority, so nothing that waits for the disk should run here.
+    private final ExecutorService audioExecutor;
+    // Creates controllers and runs file operations passed to
+    // executeInBackground.
     private final ExecutorService executor;
+    // Shared by all automatic training controllers, disabled unless latency
+    // measurement is requested.
+    private final LatencyRecorder latencyRecorder = new LatencyRecorder();
+    // Checks recorders and players of all controllers for overruns and
+    // underruns.
+    private final AudioDeadlineWatchdog audioDeadlineWatchdog = new AudioDeadlineWatchdog(
+            SpeechTrainerConfig.SAMPLE_RATE_HZ,
+            SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS, metricsRegistry);
+    // Exports audio data recorded by all controllers when started. Started and
+    // stopped only by tasks passed to executeInBackground.
+    private final WavSessionExporter wavSessionExporter = new WavSessionExporter(
+            SpeechTrainerConfig.SAMPLE_RATE_HZ,
+            SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS,
+            SpeechTrainerConfig.WAV_EXPORT_QUEUE_CAPACITY_IN_BUFFERS, metricsRegistry);
+    // Accessed only by the executor thread.
     private AudioRecord audioRecord;
     private AudioTrack audioTrack;
+    private int audioRecordBufferSizeInBytes;
     private int audioTrackBufferSizeInBytes;
+    // Keeps noise floors of automatic training controllers between sessions.
+    private final NoiseFloorStore noiseFloorStore;
 
-    public ControllerFactory() {
+    /**
+     * @param noiseFloorStore
+     *            Store from which automatic training controllers restore the
+     *            noise floor when started and to which they save it when
+     *            stopped.
+     */
+    public ControllerFactory(NoiseFloorStore noiseFloorStore) {
+        this.noiseFloorStore = noiseFloorStore;
         audioBufferAllocator = new AudioBufferAllocator(
                 SpeechTrainerConfig.NUMBER_OF_AUDIO_BUFFERS,
-                SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS);
+                SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS, metricsRegistry);
+        audioExecutor = Executors.newSingleThreadExecutor();
         executor = Executors.newSingleThreadExecutor();
     }
 
     /**
+     * @return Registry with metrics of the audio buffer allocator, silence
+     *         filters, record play tasks and deadline misses.
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * @return Latency recorder that measures mic to speaker latency of
+     *         automatic training controllers (disabled by default).
+     */
+    public LatencyRecorder getLatencyRecorder() {
+        return latencyRecorder;
+    }
+
+    /**
+     * @return Trace of lifecycle events of audio buffers used by all
+     *         controllers (disabled by default).
+     */
+    public BufferTrace getBufferTrace() {
+        return audioBufferAllocator.getBufferTrace();
+    }
+
+    /**
+     * @return Watchdog that detects when recording or playing does not keep up
+     *         with real time.
+     */
+    public AudioDeadlineWatchdog getAudioDeadlineWatchdog() {
+        return audioDeadlineWatchdog;
+    }
+
+    /**
+     * @return Exporter of audio data recorded by all controllers to WAV files
+     *         (not exporting until started).
+     */
+    public WavSessionExporter getWavSessionExporter() {
+        return wavSessionExporter;
+    }
+
+    /**
+     * Executes a task on the thread that creates controllers. Returns
+     * immediately. Tasks are executed in the order in which they are passed,
+     * so file operations of successive sessions never overlap. Record and play
+     * tasks run on a separate thread, so they never wait for these tasks.
+     */
+    public void executeInBackground(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Starts initialization of audio devices in the background. Returns
+     * immediately. Initialization errors are ignored, these are reported when
+     * a controller is requested.
+     */
+    public void prewarmAudioDevices() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    initializeAudioDevices();
+                } catch (final InitializationException e) {
+                    // Reported when a controller is requested.
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates InteractiveTrainingController in the background. Returns
+     * immediately.
+     * 
      * @param audioEventListener
      *            Listener that will be informed about events handled by the
      *            created controller.
+     * @param callback
+     *            Receives the created controller.
+     * @param callbackExecutor
+     *            Executor that executes the callback.
      */
-    public InteractiveTrainingController createInteractiveTrainingController(
-            AudioEventListener audioEventListener) throws InitializationException {
-        if (audioRecord == null) {
-            createAudioRecord();
-        }
-        if (audioTrack == null) {
-            createAudioTrack();
-        }
-        final Recorder recorder = new RecorderImpl(audioRecord, audioEventListener);
-        final Player player = new PlayerImpl(audioTrack, audioTrackBufferSizeInBytes,
-                audioEventListener);
-        final RecordPlayTaskManager recordPlayTaskManager = new RecordPlayTaskManager(recorder,
-                player, executor, RecordPlayTaskPriority.HIGH);
-        return new InteractiveTrainingController(recordPlayTaskManager, audioBufferAllocator);
+    public void createInteractiveTrainingController(
+            final AudioEventListener audioEventListener,
+            final ControllerCreatedCallback<InteractiveTrainingController> callback,
+            final Executor callbackExecutor) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    initializeAudioDevices();
+                    final InteractiveTrainingController controller =
+                        new InteractiveTrainingController(
+                                createRecordPlayTaskManager(audioEventListener),
+                                audioBufferAllocator);
+                    deliverControllerCreated(callback, controller, callbackExecutor);
+                } catch (final InitializationException e) {
+                    deliverControllerCreationFailed(callback, e.getMessage(), callbackExecutor);
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates AutomaticTrainingController in the background. Returns
+     * immediately.
+     * 
+     * @param audioEventListener
+     *            Listener that will be informed about events handled by the
+     *            created controller.
+     * @param callback
+     *            Receives the created controller.
+     * @param callbackExecutor
+     *            Executor that executes the callback.
+     */
+    public void createAutomaticTrainingController(
+            final AudioEventListener audioEventListener,
+            final ControllerCreatedCallback<AutomaticTrainingController> callback,
+            final Executor callbackExecutor) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    initializeAudioDevices();
+                    final AutomaticTrainingController controller =
+                        new AutomaticTrainingController(
+                                createRecordPlayTaskManager(audioEventListener),
+                                new SilenceFilter(new SilenceLevelDetector(), metricsRegistry),
+                                audioBufferAllocator, latencyRecorder, noiseFloorStore);
+                    deliverControllerCreated(callback, controller, callbackExecutor);
+                } catch (final InitializationException e) {
+                    deliverControllerCreationFailed(callback, e.getMessage(), callbackExecutor);
+                }
+            }
+        });
     }
 
     /**
+     * Creates ArchivedSessionController in the background. Returns
+     * immediately.
+     * 
+     * @param wavFile
+     *            Audio data of a session saved in the session library.
      * @param audioEventListener
      *            Listener that will be informed about events handled by the
      *            created controller.
+     * @param callback
+     *            Receives the created controller.
+     * @param callbackExecutor
+     *            Executor that executes the callback.
+     */
+    public void createArchivedSessionController(final File wavFile,
+            final AudioEventListener audioEventListener,
+            final ControllerCreatedCallback<ArchivedSessionController> callback,
+            final Executor callbackExecutor) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    initializeAudioDevices();
+                    final ArchivedSessionController controller =
+                        new ArchivedSessionController(
+                                createRecordPlayTaskManager(audioEventListener),
+                                audioBufferAllocator, new ArchivedSessionSource(wavFile,
+                                        SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS));
+                    deliverControllerCreated(callback, controller, callbackExecutor);
+                } catch (final InitializationException e) {
+                    deliverControllerCreationFailed(callback, e.getMessage(), callbackExecutor);
+                } catch (final IOException e) {
+                    deliverControllerCreationFailed(callback, "Failed to open the session.",
+                            callbackExecutor);
+                }
+            }
+        });
+    }
+
+    private <T extends TrainingController> void deliverControllerCreated(
+            final ControllerCreatedCallback<T> callback, final T controller,
+            Executor callbackExecutor) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.controllerCreated(controller);
+            }
+        });
+    }
+
+    private <T extends TrainingController> void deliverControllerCreationFailed(
+            final ControllerCreatedCallback<T> callback, final String errorMessage,
+            Executor callbackExecutor) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.controllerCreationFailed(errorMessage);
+            }
+        });
+    }
+
+    /**
+     * Must be called by the executor thread after audio devices are
+     * initialized.
+     */
+    private RecordPlayTaskManager createRecordPlayTaskManager(
+            AudioEventListener audioEventListener) {
+        final Recorder recorder = wavSessionExporter.exportRecorder(
+                audioDeadlineWatchdog.watchRecorder(
+                        new RecorderImpl(audioRecord, audioEventListener),
+                        audioRecordBufferSizeInBytes / 2));
+        final Player player = audioDeadlineWatchdog.watchPlayer(
+                new PlayerImpl(audioTrack, audioTrackBufferSizeInBytes, audioEventListener),
+                audioTrackBufferSizeInBytes / 2);
+        return new RecordPlayTaskManager(recorder, player, audioExecutor,
+                new AndroidAudioThreadPriority(), metricsRegistry);
+    }
+
+    /**
+     * Creates AudioRecord and AudioTrack if these were not created yet. Must
+     * be called by the executor thread.
      */
-    public AutomaticTrainingController createAutomaticTrainingController(
-            AudioEventListener audioEventListener) throws InitializationException {
+    private void initializeAudioDevices() throws InitializationException {
         if (audioRecord == null) {
             createAudioRecord();
         }
         if (audioTrack == null) {
             createAudioTrack();
         }
-        final Player player = new PlayerImpl(audioTrack, audioTrackBufferSizeInBytes,
-                audioEventListener);
-        final Recorder recorder = new RecorderImpl(audioRecord, audioEventListener);
-        final RecordPlayTaskManager recordPlayTaskManager = new RecordPlayTaskManager(recorder,
-                player, executor, RecordPlayTaskPriority.HIGH);
-        return new AutomaticTrainingController(recordPlayTaskManager, new SilenceFilter(
-                new SilenceLevelDetector()), audioBufferAllocator);
     }
 
     private void createAudioRecord() throws InitializationException {
@@ -111,7 +354,7 @@ public class ControllerFactory {
 
         // Unlike AudioTrack buffer, AudioRecord buffer could be larger than
         // minimum without causing any problems. But minimum works well.
-        final int audioRecordBufferSizeInBytes = AudioRecord.getMinBufferSize(
+        audioRecordBufferSizeInBytes = AudioRecord.getMinBufferSize(
                 SpeechTrainerConfig.SAMPLE_RATE_HZ, AudioFormat.CHANNEL_CONFIGURATION_MONO,
                 AudioFormat.ENCODING_PCM_16BIT);
         if (audioRecordBufferSizeInBytes <= 0) {
@@ -159,6 +402,10 @@ public class ControllerFactory {
             audioTrack = null;
             throw new InitializationException("Failed to initialize playback.");
         }
+        // Data written to the player is audible at the latest when the whole
+        // output buffer is played.
+        latencyRecorder.setOutputLatencyNanos(1000000000L * (audioTrackBufferSizeInBytes / 2)
+                / SpeechTrainerConfig.SAMPLE_RATE_HZ);
     }
 
 
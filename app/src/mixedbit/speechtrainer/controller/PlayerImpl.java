@@ -22,35 +22,9 @@ import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
 import android.media.AudioTrack;
 
 /**
- * Wrapper over AudioTrack that exposes minimal interface for playing
- * AudioBuffers. Informs AudioEventListener about each executed action (playing
- * started, audio buffer played, playing stopped). The interface is extracted
- * from the PlayerImpl class to allow mocking with the standard EasyMock.
- * EasyMock fails to mock classes that depend on Android classes (AudioTrack in
- * this case).
+ * Implementation of the Player interface that uses Android AudioTrack. Kept in the
+ * app module, so the core module does not depend on Android.
  */
-interface Player {
-
-    /**
-     * Starts playing. Calls to writeAudioBuffer are allowed only after playing
-     * was started.
-     */
-    public abstract void startPlaying();
-
-    /**
-     * Writes an audio buffer to be played. Requires playing to be started
-     * (startPlaying called). Audio data is copied to an output buffer and
-     * played asynchronously. Can block if an output buffer is full.
-     */
-    public abstract void writeAudioBuffer(AudioBuffer audioBuffer);
-
-    /**
-     * Stops playing. Playing can be started again with the startPlaying method.
-     */
-    public abstract void stopPlaying();
-
-}
-
 class PlayerImpl implements Player {
     private final AudioTrack audioTrack;
     private final AudioEventListener audioEventListener;
@@ -82,7 +56,8 @@ class PlayerImpl implements Player {
 
     @Override
     public void writeAudioBuffer(AudioBuffer audioBuffer) {
-        if (writeRawBuffer(audioBuffer.getAudioData(), audioBuffer.getAudioDataLengthInShorts())) {
+        if (writeRawBuffer(audioBuffer.getAudioData(), audioBuffer.getPlayedAudioDataStart(),
+                audioBuffer.getPlayedAudioDataEnd())) {
             audioEventListener.audioBufferPlayed(
                     audioBuffer.getAudioBufferId(), audioBuffer.getSoundLevel());
         }
@@ -100,27 +75,29 @@ class PlayerImpl implements Player {
         // stopped, the whole output buffer is filled with silence. If there
         // is any audio data left in the buffer, filling with silence
         // will blocks, until the data is played.
-        writeRawBuffer(silenceBuffer, silenceBuffer.length);
+        writeRawBuffer(silenceBuffer, 0, silenceBuffer.length);
         audioTrack.flush();
         audioTrack.stop();
         this.audioEventListener.playingStopped();
     }
 
-    private boolean writeRawBuffer(short[] buffer, int bufferLength) {
-        int totalWrittenAudioDataLength = 0;
+    /**
+     * Writes samples from the [start, end) range of a buffer.
+     */
+    private boolean writeRawBuffer(short[] buffer, int start, int end) {
+        int position = start;
         // On all tested devices, write() outputs the whole buffer in a single
         // call. But since the API documentation is not clear about this, the
         // loop handles the case of write() outputting only part of
         // the buffer.
-        while (totalWrittenAudioDataLength < bufferLength) {
-            final int writtenAudioDataLength = audioTrack.write(buffer,
-                    totalWrittenAudioDataLength, bufferLength - totalWrittenAudioDataLength);
+        while (position < end) {
+            final int writtenAudioDataLength = audioTrack.write(buffer, position, end - position);
             if (writtenAudioDataLength < 0) {
                 // Such error should not happen since audioTrack is guaranteed
                 // to be properly initialized.
                 return false;
             }
-            totalWrittenAudioDataLength += writtenAudioDataLength;
+            position += writtenAudioDataLength;
         }
         return true;
     }
@@ -22,36 +22,9 @@ import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
 import android.media.AudioRecord;
 
 /**
- * Wrapper over AudioRecord that exposes minimal interface for recording
- * AudioBuffers. Informs AudioEventListener about each executed action
- * (recording started, audio buffer recorded, recording of audio buffer failed,
- * recording stopped). As in case of the Player interface, this interface is
- * extracted from the RecorderImpl to allow mocking with the EasyMock.
+ * Implementation of the Recorder interface that uses Android AudioRecord. Kept in the
+ * app module, so the core module does not depend on Android.
  */
-interface Recorder {
-
-    /**
-     * Starts recording. Calls to readAudioBuffer are allowed only after
-     * recording was started.
-     */
-    public abstract void startRecording();
-
-    /**
-     * Reads recorded audio buffer. Requires recording to be started
-     * (startRecording called). Can block until there is enough audio data
-     * recorded. Returns false if recording failed (this happens for instance
-     * when microphone is used by some other application).
-     */
-    public abstract boolean readAudioBuffer(AudioBuffer audioBuffer);
-
-    /**
-     * Stops recording. Recording can be started again with the startRecording
-     * method.
-     */
-    public abstract void stopRecording();
-
-}
-
 class RecorderImpl implements Recorder {
     private final AudioRecord audioRecord;
     private final AudioEventListener audioEventListener;
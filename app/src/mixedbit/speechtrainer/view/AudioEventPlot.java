@@ -0,0 +1,66 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.view;
+
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
+import mixedbit.speechtrainer.model.AudioEventHistory;
+
+/**
+ * A view that plots sound levels of recently recorded or played buffers. Allows
+ * the TrainingActivity to use either AudioEventView that draws on the UI
+ * thread, or AudioEventSurfaceView that draws on a separate thread.
+ */
+interface AudioEventPlot {
+    /**
+     * Must be called before recording or playing is started for the first time.
+     * 
+     * @param audioEventHistory
+     *            Provides a data to be plotted. Not null.
+     */
+    public void setAudioEventHistory(AudioEventHistory audioEventHistory);
+
+    /**
+     * Requests the plot to be redrawn. Can be called from any thread. Multiple
+     * requests are coalesced into a single redraw.
+     */
+    public void requestRedraw();
+
+    /**
+     * Limits how often the plot is redrawn.
+     */
+    public void setMaxRedrawsPerSecond(int maxRedrawsPerSecond);
+
+    /**
+     * @param metricsRegistry
+     *            Registry in which the time to draw each frame is recorded.
+     */
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry);
+
+    /**
+     * Maps a position on the plot to a plotted buffer. Must be called on the
+     * UI thread.
+     * 
+     * @param x
+     *            Horizontal position relative to the left edge of the plot.
+     * @return Id of a buffer plotted at a given position or
+     *         AudioEventHistory.NO_AUDIO_BUFFER_ID if no buffer is plotted
+     *         there.
+     */
+    public int getAudioBufferIdAt(int x);
+}
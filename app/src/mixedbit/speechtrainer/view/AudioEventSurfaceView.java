@@ -0,0 +1,212 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.view;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
+import mixedbit.speechtrainer.model.AudioEventHistory;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.AttributeSet;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+/**
+ * Alternative to the AudioEventView that draws the plot on a separate render
+ * thread. The UI thread, which handles touch events that start recording and
+ * playing, never waits for the plot to be drawn.
+ *
+ * The render thread reads the data to be plotted from the AudioEventHistory
+ * (holding the lock of the history while it walks the plotted buffers, see
+ * AudioEventHistory) and draws with the ScrollingPlotRenderer while holding
+ * the surface lock. After each frame the render thread publishes ids of the
+ * plotted buffers under a separate, briefly held lock, which the UI thread
+ * takes to map a touched position to a plotted buffer, so a touch never waits
+ * for a frame to be drawn. The thread is started when the view is attached to
+ * a window and quit when the view is detached, and draws only when the surface
+ * exists. Redraws requested while the view is detached are ignored.
+ *
+ * The creator of the AudioEventSurfaceView must set AudioEventHistory.
+ */
+public class AudioEventSurfaceView extends SurfaceView implements AudioEventPlot,
+SurfaceHolder.Callback {
+    private static final int BACKGROUND_COLOR = Color.BLACK;
+    private static final double NANOS_IN_MILLI = 1000000.0;
+    private final ScrollingPlotRenderer plotRenderer = new ScrollingPlotRenderer();
+    // Created when the view is attached to a window, null while it is
+    // detached.
+    private HandlerThread renderThread;
+    private volatile RedrawScheduler redrawScheduler;
+    private volatile int maxRedrawsPerSecond = SpeechTrainerConfig.MAX_REDRAWS_PER_SECOND;
+    private volatile AudioEventHistory audioEventHistory;
+    private volatile MetricsRegistry.HistogramMetric frameTimeNanos;
+
+    // Guards the surface. The render thread holds the lock while drawing, the
+    // UI thread takes it to mark the surface as destroyed, so no drawing is
+    // done after surfaceDestroyed returns.
+    private final Object surfaceLock = new Object();
+    private boolean surfaceAvailable = false;
+    private int surfaceWidth;
+    private int surfaceHeight;
+
+    // Guards ids of buffers plotted in the last drawn frame, the leftmost
+    // column first. Held only to copy or to read the ids.
+    private final Object plottedBuffersLock = new Object();
+    private int[] plottedAudioBufferIds = new int[0];
+    private int plottedAudioBufferIdsCount = 0;
+
+    public AudioEventSurfaceView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        getHolder().addCallback(this);
+    }
+
+    @Override
+    public void setAudioEventHistory(AudioEventHistory audioEventHistory) {
+        this.audioEventHistory = audioEventHistory;
+    }
+
+    @Override
+    public void requestRedraw() {
+        final RedrawScheduler scheduler = redrawScheduler;
+        if (scheduler != null) {
+            scheduler.requestRedraw();
+        }
+    }
+
+    @Override
+    public void setMaxRedrawsPerSecond(int maxRedrawsPerSecond) {
+        this.maxRedrawsPerSecond = maxRedrawsPerSecond;
+        final RedrawScheduler scheduler = redrawScheduler;
+        if (scheduler != null) {
+            scheduler.setMaxRedrawsPerSecond(maxRedrawsPerSecond);
+        }
+    }
+
+    @Override
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        frameTimeNanos = metricsRegistry.histogram(AudioEventView.FRAME_TIME_METRIC,
+                NANOS_IN_MILLI);
+    }
+
+    @Override
+    public int getAudioBufferIdAt(int x) {
+        synchronized (plottedBuffersLock) {
+            if (x < 0 || x >= plottedAudioBufferIdsCount) {
+                return AudioEventHistory.NO_AUDIO_BUFFER_ID;
+            }
+            return plottedAudioBufferIds[x];
+        }
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        synchronized (surfaceLock) {
+            surfaceAvailable = true;
+            surfaceWidth = width;
+            surfaceHeight = height;
+        }
+        // New surface is empty, the plot needs to be drawn.
+        requestRedraw();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        synchronized (surfaceLock) {
+            surfaceAvailable = false;
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        renderThread = new HandlerThread("PlotRenderThread");
+        renderThread.start();
+        redrawScheduler = new RedrawScheduler(new Handler(renderThread.getLooper()),
+                new Runnable() {
+            @Override
+            public void run() {
+                drawOnSurface();
+            }
+        }, maxRedrawsPerSecond);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        final RedrawScheduler scheduler = redrawScheduler;
+        redrawScheduler = null;
+        scheduler.cancelRedraw();
+        renderThread.getLooper().quit();
+        renderThread = null;
+    }
+
+    /**
+     * Executed by the render thread.
+     */
+    private void drawOnSurface() {
+        final AudioEventHistory history = audioEventHistory;
+        if (history == null) {
+            return;
+        }
+        synchronized (surfaceLock) {
+            if (!surfaceAvailable) {
+                return;
+            }
+            final SurfaceHolder holder = getHolder();
+            final Canvas canvas = holder.lockCanvas();
+            if (canvas == null) {
+                return;
+            }
+            final long drawStartNanos = System.nanoTime();
+            try {
+                // The ring of the renderer has transparent columns for which
+                // there are no buffers to plot.
+                canvas.drawColor(BACKGROUND_COLOR);
+                plotRenderer.draw(canvas, history, surfaceWidth, surfaceHeight);
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
+            }
+            publishPlottedAudioBufferIds();
+            final MetricsRegistry.HistogramMetric histogram = frameTimeNanos;
+            if (histogram != null) {
+                histogram.record(System.nanoTime() - drawStartNanos);
+            }
+        }
+    }
+
+    /**
+     * Executed by the render thread, while holding the surface lock.
+     */
+    private void publishPlottedAudioBufferIds() {
+        synchronized (plottedBuffersLock) {
+            if (plottedAudioBufferIds.length < surfaceWidth) {
+                plottedAudioBufferIds = new int[surfaceWidth];
+            }
+            plottedAudioBufferIdsCount = plotRenderer
+            .copyPlottedAudioBufferIds(plottedAudioBufferIds);
+        }
+    }
+}
@@ -18,75 +18,74 @@
 
 package mixedbit.speechtrainer.view;
 
-import java.util.Iterator;
-
-import mixedbit.speechtrainer.model.AudioBufferInfo;
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
 import mixedbit.speechtrainer.model.AudioEventHistory;
 import android.content.Context;
 import android.graphics.Canvas;
-import android.graphics.Paint;
+import android.os.Handler;
 import android.util.AttributeSet;
 import android.widget.ImageButton;
 
 /**
  * Draws a plot with sound levels of recently recorded or played buffers. The
- * data to be plotted is obtained from the AudioEventHistory.
+ * data to be plotted is obtained from the AudioEventHistory. Drawing is
+ * delegated to the ScrollingPlotRenderer that redraws only columns of newly
+ * recorded buffers. Drawing is done on the UI thread.
  * 
  * The creator of the AudioEventView must set AudioEventHistory.
  */
-public class AudioEventView extends ImageButton {
-    private static final int RECORDED_BUFFER_COLOR = 0xffd00000;
-    private static final int PLAYED_BUFFER_COLOR = 0xff990000;
-    private final Paint recordedBufferPaint;
-    private final Paint playedBufferPaint;
+public class AudioEventView extends ImageButton implements AudioEventPlot {
+    static final String FRAME_TIME_METRIC = "plot.frame_time_ms";
+    private static final double NANOS_IN_MILLI = 1000000.0;
+    private final ScrollingPlotRenderer plotRenderer = new ScrollingPlotRenderer();
+    private final RedrawScheduler redrawScheduler;
     private AudioEventHistory audioEventHistory;
+    private MetricsRegistry.HistogramMetric frameTimeNanos;
 
     public AudioEventView(Context context, AttributeSet attrs) {
         super(context, attrs);
-        recordedBufferPaint = new Paint();
-        recordedBufferPaint.setColor(RECORDED_BUFFER_COLOR);
-        playedBufferPaint = new Paint();
-        playedBufferPaint.setColor(PLAYED_BUFFER_COLOR);
+        // The view is created on the UI thread, the handler executes redraws
+        // on this thread.
+        redrawScheduler = new RedrawScheduler(new Handler(), new Runnable() {
+            @Override
+            public void run() {
+                invalidate();
+            }
+        }, SpeechTrainerConfig.MAX_REDRAWS_PER_SECOND);
     }
 
-    /**
-     * Must be called before recording or playing is started for the first time.
-     * 
-     * @param audioEventHistory
-     *            Provides a data to be plotted. Not null.
-     */
+    @Override
     public void setAudioEventHistory(AudioEventHistory audioEventHistory) {
         this.audioEventHistory = audioEventHistory;
     }
 
     @Override
-    protected void onDraw(Canvas canvas) {
-        final int viewWidth = getWidth();
-        final int viewHeight = getHeight();
+    public void requestRedraw() {
+        redrawScheduler.requestRedraw();
+    }
 
-        final Iterator<AudioBufferInfo> buffersIterator =
-            audioEventHistory.getIteratorOverAudioEventsToPlot(viewWidth);
+    @Override
+    public void setMaxRedrawsPerSecond(int maxRedrawsPerSecond) {
+        redrawScheduler.setMaxRedrawsPerSecond(maxRedrawsPerSecond);
+    }
 
-        for (int i = 0; i < viewWidth && buffersIterator.hasNext(); ++i) {
-            final AudioBufferInfo audioBufferInfo = buffersIterator.next();
-            final int height = getHeightForSoundLevel(audioBufferInfo.getSoundLevel(), viewHeight);
-            final int lineStart = (viewHeight - height) / 2;
-            if (audioBufferInfo.isPlayed()) {
-                canvas.drawRect(i, lineStart, i + 1, lineStart + height, playedBufferPaint);
-            } else {
-                canvas.drawRect(i, lineStart, i + 1, lineStart + height, recordedBufferPaint);
-            }
-        }
+    @Override
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        frameTimeNanos = metricsRegistry.histogram(FRAME_TIME_METRIC, NANOS_IN_MILLI);
+    }
+
+    @Override
+    public int getAudioBufferIdAt(int x) {
+        return plotRenderer.getAudioBufferIdAtColumn(x);
     }
 
-    /**
-     * Calculates height of a line to represent a given soundLevel. Makes sure
-     * the lowest and the smallest recorded sound levels fit in the plot.
-     */
-    private int getHeightForSoundLevel(double soundLevel, int canvasHeight) {
-        final double minSoundLevel = audioEventHistory.getMinSoundLevel();
-        final double maxSoundLevel = audioEventHistory.getMaxSoundLevel();
-        return (int) ((soundLevel - minSoundLevel) * (canvasHeight - 1)
-                / (maxSoundLevel - minSoundLevel));
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final long drawStartNanos = System.nanoTime();
+        plotRenderer.draw(canvas, audioEventHistory, getWidth(), getHeight());
+        if (frameTimeNanos != null) {
+            frameTimeNanos.record(System.nanoTime() - drawStartNanos);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,188 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.view;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import mixedbit.speechtrainer.R;
+import mixedbit.speechtrainer.TrainingApplication;
+import mixedbit.speechtrainer.controller.AudioDeadlineWatchdog;
+import mixedbit.speechtrainer.metrics.BufferTrace;
+import mixedbit.speechtrainer.metrics.Histogram;
+import mixedbit.speechtrainer.metrics.LatencyRecorder;
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
+import mixedbit.speechtrainer.metrics.LatencyRecorder.Stage;
+import android.app.Activity;
+import android.content.Context;
+import android.os.Bundle;
+import android.view.View;
+import android.view.View.OnClickListener;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+/**
+ * Debug screen that displays measurements collected during the training
+ * session (mic to speaker latency) and allows to export them to a CSV file in
+ * the private storage of the application. Also allows to save metrics of the
+ * audio pipeline and the trace of audio buffer lifecycle events in a text and
+ * a binary format.
+ */
+public class DiagnosticsActivity extends Activity {
+    private static final String LATENCY_CSV_FILE = "latency.csv";
+    private static final String METRICS_FILE = "metrics.txt";
+    private static final String BUFFER_TRACE_TEXT_FILE = "buffer_trace.txt";
+    private static final String BUFFER_TRACE_BINARY_FILE = "buffer_trace.bin";
+    private static final double NANOS_IN_MILLI = 1000000.0;
+    private LatencyRecorder latencyRecorder;
+    private BufferTrace bufferTrace;
+    private AudioDeadlineWatchdog audioDeadlineWatchdog;
+    private MetricsRegistry metricsRegistry;
+    private TextView diagnosticsTextView;
+    private final Histogram histogram = new Histogram();
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.diagnostics);
+        final TrainingApplication application = (TrainingApplication) getApplication();
+        latencyRecorder = application.getControllerFactory().getLatencyRecorder();
+        bufferTrace = application.getControllerFactory().getBufferTrace();
+        audioDeadlineWatchdog = application.getControllerFactory().getAudioDeadlineWatchdog();
+        metricsRegistry = application.getControllerFactory().getMetricsRegistry();
+        diagnosticsTextView = (TextView) findViewById(R.id.diagnosticsTextView);
+
+        final Button exportCsvButton = (Button) findViewById(R.id.exportCsvButton);
+        exportCsvButton.setOnClickListener(new OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                exportCsv();
+            }
+        });
+        final Button dumpMetricsButton = (Button) findViewById(R.id.dumpMetricsButton);
+        dumpMetricsButton.setOnClickListener(new OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                dumpMetrics();
+            }
+        });
+        final Button dumpTraceButton = (Button) findViewById(R.id.dumpTraceButton);
+        dumpTraceButton.setOnClickListener(new OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                dumpBufferTrace();
+            }
+        });
+        final Button resetButton = (Button) findViewById(R.id.resetButton);
+        resetButton.setOnClickListener(new OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                latencyRecorder.reset();
+                metricsRegistry.reset();
+                displayMeasurements();
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        displayMeasurements();
+    }
+
+    private void displayMeasurements() {
+        final StringBuilder text = new StringBuilder();
+        text.append(String.format("Mic to speaker latency [ms]%noutput latency estimate: %.1f%n%n",
+                latencyRecorder.getOutputLatencyNanos() / NANOS_IN_MILLI));
+        for (final Stage stage : Stage.values()) {
+            latencyRecorder.copyHistogram(stage, histogram);
+            text.append(stage.name().toLowerCase()).append('\n');
+            text.append(histogram.toString(NANOS_IN_MILLI)).append("\n\n");
+        }
+        text.append(String.format("Audio deadline misses%noverruns: %d, underruns: %d%n%n",
+                audioDeadlineWatchdog.getOverrunsCount(),
+                audioDeadlineWatchdog.getUnderrunsCount()));
+        text.append("Metrics\n").append(metricsRegistry.toString()).append('\n');
+        text.append(String.format("Buffer trace%nenabled: %b, events recorded: %d, kept: %d%n",
+                bufferTrace.isEnabled(), bufferTrace.getRecordedEventsCount(),
+                Math.min(bufferTrace.getRecordedEventsCount(), bufferTrace.getCapacity())));
+        diagnosticsTextView.setText(text.toString());
+    }
+
+    private void exportCsv() {
+        try {
+            final FileOutputStream output = openFileOutput(LATENCY_CSV_FILE,
+                    Context.MODE_PRIVATE);
+            try {
+                output.write(latencyRecorder.toCsv().getBytes("UTF-8"));
+            } finally {
+                output.close();
+            }
+            Toast.makeText(this, getString(R.string.csvExported,
+                    getFileStreamPath(LATENCY_CSV_FILE).getAbsolutePath()), Toast.LENGTH_LONG)
+                    .show();
+        } catch (final IOException e) {
+            Toast.makeText(this, R.string.csvExportFailed, Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private void dumpMetrics() {
+        try {
+            final Writer output = new OutputStreamWriter(openFileOutput(METRICS_FILE,
+                    Context.MODE_PRIVATE), "UTF-8");
+            try {
+                metricsRegistry.dumpText(output);
+            } finally {
+                output.close();
+            }
+            Toast.makeText(this, getString(R.string.metricsDumped,
+                    getFileStreamPath(METRICS_FILE).getAbsolutePath()), Toast.LENGTH_LONG)
+                    .show();
+        } catch (final IOException e) {
+            Toast.makeText(this, R.string.metricsDumpFailed, Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private void dumpBufferTrace() {
+        try {
+            final Writer textOutput = new OutputStreamWriter(openFileOutput(
+                    BUFFER_TRACE_TEXT_FILE, Context.MODE_PRIVATE), "UTF-8");
+            try {
+                bufferTrace.dumpText(textOutput);
+            } finally {
+                textOutput.close();
+            }
+            final FileOutputStream binaryOutput = openFileOutput(BUFFER_TRACE_BINARY_FILE,
+                    Context.MODE_PRIVATE);
+            try {
+                bufferTrace.dumpBinary(binaryOutput);
+            } finally {
+                binaryOutput.close();
+            }
+            Toast.makeText(this, getString(R.string.traceDumped,
+                    getFileStreamPath(BUFFER_TRACE_TEXT_FILE).getParent()), Toast.LENGTH_LONG)
+                    .show();
+        } catch (final IOException e) {
+            Toast.makeText(this, R.string.traceDumpFailed, Toast.LENGTH_LONG).show();
+        }
+    }
+}
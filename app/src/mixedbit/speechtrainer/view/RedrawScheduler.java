@@ -0,0 +1,137 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.view;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Coalesces redraw requests, so a redraw action is executed at most once per
+ * display frame, regardless of how many audio events requested it. Redraw
+ * requests can come from any thread, the redraw action is executed by a thread
+ * of a given Handler.
+ *
+ * Choreographer that would allow to synchronize redraws with vsync is not
+ * available on API levels supported by Speech Trainer, so redraws are spaced
+ * by at least a frame interval instead. The interval can be increased to save
+ * battery.
+ *
+ * The scheduler counts redraw requests that were coalesced with an already
+ * scheduled redraw and frames that were dropped because the redraw action was
+ * executed later than scheduled (the Handler thread was busy).
+ */
+class RedrawScheduler {
+    private final Handler handler;
+    private final Runnable redrawAction;
+    // Posted to the handler, preallocated so requesting a redraw does not
+    // allocate.
+    private final Runnable scheduledRedraw = new Runnable() {
+        @Override
+        public void run() {
+            executeScheduledRedraw();
+        }
+    };
+    private final AtomicBoolean redrawScheduled = new AtomicBoolean(false);
+    private final AtomicLong coalescedRedrawRequestsCount = new AtomicLong();
+    private final AtomicLong droppedFramesCount = new AtomicLong();
+    private volatile long minRedrawIntervalMs;
+    private volatile long lastRedrawTimeMs = 0;
+    private volatile long scheduledRedrawTimeMs;
+
+    /**
+     * @param handler
+     *            Handler of a thread that should execute the redraw action.
+     * @param redrawAction
+     *            Action that redraws the view.
+     * @param maxRedrawsPerSecond
+     *            Redraws are never executed more often than this.
+     */
+    public RedrawScheduler(Handler handler, Runnable redrawAction, int maxRedrawsPerSecond) {
+        this.handler = handler;
+        this.redrawAction = redrawAction;
+        setMaxRedrawsPerSecond(maxRedrawsPerSecond);
+    }
+
+    /**
+     * Changes the limit of redraws per second. The limit can not be larger
+     * than the display frame rate, larger values are ignored.
+     */
+    public void setMaxRedrawsPerSecond(int maxRedrawsPerSecond) {
+        minRedrawIntervalMs = Math.max(SpeechTrainerConfig.DISPLAY_FRAME_INTERVAL_MS,
+                1000 / maxRedrawsPerSecond);
+    }
+
+    /**
+     * Requests the redraw action to be executed. Can be called from any
+     * thread. If a redraw is already scheduled, the request is coalesced with
+     * it, otherwise the redraw is scheduled to be executed not earlier than the
+     * minimum redraw interval after the previous redraw.
+     */
+    public void requestRedraw() {
+        if (!redrawScheduled.compareAndSet(false, true)) {
+            coalescedRedrawRequestsCount.incrementAndGet();
+            return;
+        }
+        final long redrawTimeMs = Math.max(SystemClock.uptimeMillis(),
+                lastRedrawTimeMs + minRedrawIntervalMs);
+        scheduledRedrawTimeMs = redrawTimeMs;
+        handler.postAtTime(scheduledRedraw, redrawTimeMs);
+    }
+
+    /**
+     * Cancels a scheduled redraw (if any).
+     */
+    public void cancelRedraw() {
+        handler.removeCallbacks(scheduledRedraw);
+        redrawScheduled.set(false);
+    }
+
+    /**
+     * @return Number of redraw requests that did not cause a separate redraw,
+     *         because a redraw was already scheduled.
+     */
+    public long getCoalescedRedrawRequestsCount() {
+        return coalescedRedrawRequestsCount.get();
+    }
+
+    /**
+     * @return Number of display frames that passed between the time a redraw
+     *         was scheduled and the time it was executed.
+     */
+    public long getDroppedFramesCount() {
+        return droppedFramesCount.get();
+    }
+
+    private void executeScheduledRedraw() {
+        final long nowMs = SystemClock.uptimeMillis();
+        final long delayMs = nowMs - scheduledRedrawTimeMs;
+        if (delayMs >= SpeechTrainerConfig.DISPLAY_FRAME_INTERVAL_MS) {
+            droppedFramesCount.addAndGet(delayMs / SpeechTrainerConfig.DISPLAY_FRAME_INTERVAL_MS);
+        }
+        lastRedrawTimeMs = nowMs;
+        // Cleared before the redraw, so events that arrive during the redraw
+        // schedule the next one.
+        redrawScheduled.set(false);
+        redrawAction.run();
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.view;
+
+import java.util.Iterator;
+
+import mixedbit.speechtrainer.model.AudioBufferInfo;
+import mixedbit.speechtrainer.model.AudioEventHistory;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+
+/**
+ * Renders the plot of sound levels using an off-screen bitmap that is treated
+ * as a ring of columns. When recording progresses, the plot shifts by one
+ * column for each new buffer. Instead of redrawing all columns, only columns of
+ * newly recorded buffers are drawn into the ring and the ring is copied to the
+ * screen in two parts with a wrap-around offset. This makes the cost of a frame
+ * independent of the view width.
+ *
+ * All columns are redrawn only when the already drawn columns become invalid:
+ * the view was resized, the min or max sound level that scale the plot
+ * changed, the range of played buffers changed or the first plotted buffer is
+ * not newer than the previously plotted one (history was reset or the plot is
+ * centered on a played buffer).
+ *
+ * Ids of buffers drawn in the ring are kept in a parallel ring, which allows to
+ * map a column of the plot to a plotted buffer.
+ *
+ * The class is not thread safe.
+ */
+class ScrollingPlotRenderer {
+    private static final int RECORDED_BUFFER_COLOR = 0xffd00000;
+    private static final int PLAYED_BUFFER_COLOR = 0xff990000;
+    private final Paint recordedBufferPaint;
+    private final Paint playedBufferPaint;
+    private final Paint clearPaint;
+    // Preallocated to avoid allocations when the ring is copied to the screen.
+    private final Rect sourceRect = new Rect();
+    private final Rect destinationRect = new Rect();
+
+    private Bitmap ringBitmap;
+    private Canvas ringCanvas;
+    // Sound levels and played marks of buffers that are to be drawn in the
+    // current frame, in the plot order. Allocated together with the ring.
+    private double[] pendingSoundLevels;
+    private boolean[] pendingPlayed;
+    private int[] pendingAudioBufferIds;
+    // Id of a buffer drawn in each column of the ring.
+    private int[] columnAudioBufferIds;
+    // Number of columns, starting from the first plotted column, in which
+    // buffers are drawn.
+    private int plottedColumnsCount = 0;
+    // Is content of the ring valid for the state remembered below? The state
+    // is used to decide if new columns can be added to the ring or if the whole
+    // ring needs to be redrawn.
+    private boolean ringValid = false;
+    // Column of the ring in which the first plotted buffer is drawn. The first
+    // plotted buffer is displayed in the leftmost column of the view.
+    private int firstPlottedColumn;
+    private int firstPlottedAudioBufferId;
+    private double minSoundLevel;
+    private double maxSoundLevel;
+    private int firstPlayedAudioBufferId;
+    private int lastPlayedAudioBufferId;
+
+    public ScrollingPlotRenderer() {
+        recordedBufferPaint = new Paint();
+        recordedBufferPaint.setColor(RECORDED_BUFFER_COLOR);
+        playedBufferPaint = new Paint();
+        playedBufferPaint.setColor(PLAYED_BUFFER_COLOR);
+        clearPaint = new Paint();
+        clearPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+    }
+
+    /**
+     * Draws the plot of audio events from a given history on a canvas.
+     *
+     * @param plotWidth
+     *            Width of the plot, each plotted buffer takes one column.
+     * @param plotHeight
+     *            Height of the plot.
+     */
+    public void draw(Canvas canvas, AudioEventHistory audioEventHistory, int plotWidth,
+            int plotHeight) {
+        if (plotWidth <= 0 || plotHeight <= 0) {
+            return;
+        }
+        if (ringBitmap == null || ringBitmap.getWidth() != plotWidth
+                || ringBitmap.getHeight() != plotHeight) {
+            ringBitmap = Bitmap.createBitmap(plotWidth, plotHeight, Bitmap.Config.ARGB_8888);
+            ringCanvas = new Canvas(ringBitmap);
+            pendingSoundLevels = new double[plotWidth];
+            pendingPlayed = new boolean[plotWidth];
+            pendingAudioBufferIds = new int[plotWidth];
+            columnAudioBufferIds = new int[plotWidth];
+            ringValid = false;
+        }
+
+        int newFirstPlottedAudioBufferId;
+        double newMinSoundLevel;
+        double newMaxSoundLevel;
+        int newFirstPlayedAudioBufferId;
+        int newLastPlayedAudioBufferId;
+        boolean onlyNewColumnsChanged;
+        int pendingColumnsCount = 0;
+        // The iterator walks the history directly. The lock of the history is
+        // held while the buffers are collected, so the history is not changed
+        // (for instance reset by the UI thread) during the walk. Columns are
+        // drawn after the lock is released.
+        synchronized (audioEventHistory) {
+            final Iterator<AudioBufferInfo> buffersIterator =
+                audioEventHistory.getIteratorOverAudioEventsToPlot(plotWidth);
+            if (!buffersIterator.hasNext()) {
+                // Nothing to plot.
+                ringValid = false;
+                plottedColumnsCount = 0;
+                return;
+            }
+            final AudioBufferInfo firstPlottedBuffer = buffersIterator.next();
+            newFirstPlottedAudioBufferId = firstPlottedBuffer.getAudioBufferId();
+            newMinSoundLevel = audioEventHistory.getMinSoundLevel();
+            newMaxSoundLevel = audioEventHistory.getMaxSoundLevel();
+            newFirstPlayedAudioBufferId = audioEventHistory.getFirstPlayedAudioBufferId();
+            newLastPlayedAudioBufferId = audioEventHistory.getLastPlayedAudioBufferId();
+
+            onlyNewColumnsChanged = ringValid
+            && newMinSoundLevel == minSoundLevel
+            && newMaxSoundLevel == maxSoundLevel
+            && newFirstPlayedAudioBufferId == firstPlayedAudioBufferId
+            && newLastPlayedAudioBufferId == lastPlayedAudioBufferId
+            && newFirstPlottedAudioBufferId >= firstPlottedAudioBufferId;
+
+            // Collect buffers to draw. If only new columns changed, these are the
+            // buffers newer than the previously first plotted buffer, otherwise
+            // all buffers that fit on the plot.
+            AudioBufferInfo audioBufferInfo = firstPlottedBuffer;
+            while (true) {
+                if (onlyNewColumnsChanged
+                        && audioBufferInfo.getAudioBufferId() <= firstPlottedAudioBufferId) {
+                    break;
+                }
+                pendingSoundLevels[pendingColumnsCount] = audioBufferInfo.getSoundLevel();
+                pendingPlayed[pendingColumnsCount] = audioBufferInfo.isPlayed();
+                pendingAudioBufferIds[pendingColumnsCount] = audioBufferInfo.getAudioBufferId();
+                ++pendingColumnsCount;
+                if (pendingColumnsCount == plotWidth || !buffersIterator.hasNext()) {
+                    break;
+                }
+                audioBufferInfo = buffersIterator.next();
+            }
+        }
+
+        minSoundLevel = newMinSoundLevel;
+        maxSoundLevel = newMaxSoundLevel;
+        firstPlayedAudioBufferId = newFirstPlayedAudioBufferId;
+        lastPlayedAudioBufferId = newLastPlayedAudioBufferId;
+        firstPlottedAudioBufferId = newFirstPlottedAudioBufferId;
+        if (onlyNewColumnsChanged && pendingColumnsCount < plotWidth) {
+            // Rotate the ring, so the new buffers are drawn in columns that
+            // precede the previously first plotted column.
+            firstPlottedColumn = wrapColumn(firstPlottedColumn - pendingColumnsCount, plotWidth);
+            plottedColumnsCount = Math.min(plotWidth, plottedColumnsCount + pendingColumnsCount);
+        } else {
+            // All columns are redrawn. Columns that are not drawn need to be
+            // empty (there can be less buffers than columns).
+            ringBitmap.eraseColor(0);
+            firstPlottedColumn = 0;
+            plottedColumnsCount = pendingColumnsCount;
+        }
+        for (int i = 0; i < pendingColumnsCount; ++i) {
+            final int column = wrapColumn(firstPlottedColumn + i, plotWidth);
+            drawColumn(column, pendingSoundLevels[i], pendingPlayed[i], plotHeight);
+            columnAudioBufferIds[column] = pendingAudioBufferIds[i];
+        }
+
+        ringValid = true;
+        copyRingToCanvas(canvas, plotWidth, plotHeight);
+    }
+
+    /**
+     * @param x
+     *            Column of the plot, 0 is the leftmost column.
+     * @return Id of a buffer that was plotted in a given column during the last
+     *         draw call or AudioEventHistory.NO_AUDIO_BUFFER_ID if no buffer
+     *         was plotted there.
+     */
+    public int getAudioBufferIdAtColumn(int x) {
+        if (x < 0 || x >= plottedColumnsCount) {
+            return AudioEventHistory.NO_AUDIO_BUFFER_ID;
+        }
+        return columnAudioBufferIds[wrapColumn(firstPlottedColumn + x,
+                columnAudioBufferIds.length)];
+    }
+
+    /**
+     * Copies ids of buffers plotted during the last draw call, the buffer of
+     * the leftmost column first.
+     * 
+     * @param audioBufferIds
+     *            Array to which the ids are copied, ids of columns that do not
+     *            fit in the array are not copied.
+     * @return Number of copied ids.
+     */
+    public int copyPlottedAudioBufferIds(int[] audioBufferIds) {
+        final int count = Math.min(plottedColumnsCount, audioBufferIds.length);
+        for (int x = 0; x < count; ++x) {
+            audioBufferIds[x] = columnAudioBufferIds[wrapColumn(firstPlottedColumn + x,
+                    columnAudioBufferIds.length)];
+        }
+        return count;
+    }
+
+    /**
+     * Clears a column of the ring and draws in it a line that represents a
+     * buffer with a given sound level.
+     */
+    private void drawColumn(int column, double soundLevel, boolean played, int plotHeight) {
+        ringCanvas.drawRect(column, 0, column + 1, plotHeight, clearPaint);
+        final int height = getHeightForSoundLevel(soundLevel, plotHeight);
+        final int lineStart = (plotHeight - height) / 2;
+        if (played) {
+            ringCanvas.drawRect(column, lineStart, column + 1, lineStart + height,
+                    playedBufferPaint);
+        } else {
+            ringCanvas.drawRect(column, lineStart, column + 1, lineStart + height,
+                    recordedBufferPaint);
+        }
+    }
+
+    /**
+     * Copies the ring to the canvas, so the first plotted column is the
+     * leftmost column of the canvas. Requires two copies: from the first
+     * plotted column to the end of the ring and from the beginning of the ring
+     * to the first plotted column.
+     */
+    private void copyRingToCanvas(Canvas canvas, int plotWidth, int plotHeight) {
+        final int firstPartWidth = plotWidth - firstPlottedColumn;
+        sourceRect.set(firstPlottedColumn, 0, plotWidth, plotHeight);
+        destinationRect.set(0, 0, firstPartWidth, plotHeight);
+        canvas.drawBitmap(ringBitmap, sourceRect, destinationRect, null);
+        if (firstPlottedColumn > 0) {
+            sourceRect.set(0, 0, firstPlottedColumn, plotHeight);
+            destinationRect.set(firstPartWidth, 0, plotWidth, plotHeight);
+            canvas.drawBitmap(ringBitmap, sourceRect, destinationRect, null);
+        }
+    }
+
+    private int wrapColumn(int column, int plotWidth) {
+        final int wrappedColumn = column % plotWidth;
+        return wrappedColumn < 0 ? wrappedColumn + plotWidth : wrappedColumn;
+    }
+
+    /**
+     * Calculates height of a line to represent a given soundLevel. Makes sure
+     * the lowest and the smallest recorded sound levels fit in the plot.
+     */
+    private int getHeightForSoundLevel(double soundLevel, int plotHeight) {
+        return (int) ((soundLevel - minSoundLevel) * (plotHeight - 1)
+                / (maxSoundLevel - minSoundLevel));
+    }
+}
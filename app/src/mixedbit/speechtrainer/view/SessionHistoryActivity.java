@@ -0,0 +1,112 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.view;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.util.Date;
+
+import mixedbit.speechtrainer.R;
+import mixedbit.speechtrainer.TrainingApplication;
+import mixedbit.speechtrainer.library.SessionLibrary;
+import mixedbit.speechtrainer.library.SessionSummary;
+import android.app.ListActivity;
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+/**
+ * Lists training sessions saved in the session library, the most recent
+ * first. Rows are created from summaries kept in memory by the library, audio
+ * files and sound levels of sessions are not read. A selected session is
+ * replayed by the SessionReplayActivity.
+ */
+public class SessionHistoryActivity extends ListActivity {
+    private SessionLibrary sessionLibrary;
+    private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.MEDIUM,
+            DateFormat.SHORT);
+
+    /**
+     * Creates rows only for sessions that are visible, rows that scroll out
+     * of the screen are reused.
+     */
+    private class SessionsAdapter extends BaseAdapter {
+        private final LayoutInflater inflater = getLayoutInflater();
+
+        @Override
+        public int getCount() {
+            return sessionLibrary.getSessionsCount();
+        }
+
+        @Override
+        public SessionSummary getItem(int position) {
+            return sessionLibrary.getSession(getCount() - 1 - position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return getItem(position).getSessionId();
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            View row = convertView;
+            if (row == null) {
+                row = inflater.inflate(android.R.layout.simple_list_item_2, parent, false);
+            }
+            final SessionSummary session = getItem(position);
+            final int durationSeconds = session.getDurationMs() / 1000;
+            ((TextView) row.findViewById(android.R.id.text1)).setText(dateFormat
+                    .format(new Date(session.getSessionId())));
+            ((TextView) row.findViewById(android.R.id.text2)).setText(getString(
+                    R.string.sessionDetails, durationSeconds / 60, durationSeconds % 60,
+                    session.getUtterancesCount(), session.getMeanSoundLevel(),
+                    session.getMinSoundLevel(), session.getMaxSoundLevel()));
+            return row;
+        }
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.session_history);
+        try {
+            sessionLibrary = ((TrainingApplication) getApplication()).getSessionLibrary();
+        } catch (final IOException e) {
+            Toast.makeText(this, R.string.sessionLibraryFailed, Toast.LENGTH_LONG).show();
+            finish();
+            return;
+        }
+        setListAdapter(new SessionsAdapter());
+    }
+
+    @Override
+    protected void onListItemClick(ListView list, View view, int position, long id) {
+        final Intent replayIntent = new Intent(this, SessionReplayActivity.class);
+        replayIntent.putExtra(SessionReplayActivity.SESSION_INDEX,
+                sessionLibrary.getSessionsCount() - 1 - position);
+        startActivity(replayIntent);
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.view;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.concurrent.Executor;
+
+import mixedbit.speechtrainer.R;
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.TrainingApplication;
+import mixedbit.speechtrainer.controller.ArchivedSessionController;
+import mixedbit.speechtrainer.controller.AudioEventBus;
+import mixedbit.speechtrainer.controller.AudioEventListener;
+import mixedbit.speechtrainer.controller.ControllerFactory;
+import mixedbit.speechtrainer.controller.ControllerFactory.ControllerCreatedCallback;
+import mixedbit.speechtrainer.library.SessionLibrary;
+import mixedbit.speechtrainer.library.SessionSummary;
+import android.app.Activity;
+import android.media.AudioManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.view.View;
+import android.view.View.OnClickListener;
+import android.widget.Button;
+import android.widget.SeekBar;
+import android.widget.SeekBar.OnSeekBarChangeListener;
+import android.widget.TextView;
+import android.widget.Toast;
+
+/**
+ * Replays a session saved in the session library. The session is played with
+ * the ArchivedSessionController, which reads audio data directly from the
+ * saved file. The seek bar shows the position in the session and allows to
+ * continue playing from any recorded buffer.
+ *
+ * Intent that starts this activity needs to have an extra int parameter with
+ * an index of the session in the library.
+ */
+public class SessionReplayActivity extends Activity implements AudioEventListener {
+    /**
+     * An ID of an extra parameter of the intent. The parameter holds an index
+     * of the session to replay in the SessionLibrary.
+     */
+    public static final String SESSION_INDEX = "mixedbit.speechtrainer.SessionIndex";
+    private static final int POSITION_REFRESH_INTERVAL_MS = 200;
+
+    private ControllerFactory controllerFactory;
+    // Created in the background, null until created.
+    private ArchivedSessionController controller;
+    private boolean controllerRequested = false;
+    private boolean resumed = false;
+    private boolean playing = false;
+    private Handler uiHandler;
+    private Executor uiExecutor;
+    // Passes audio events from the audio thread to this activity.
+    private AudioEventBus audioEventBus;
+    private SessionLibrary sessionLibrary;
+    private SessionSummary session;
+    private SeekBar positionSeekBar;
+    private Button playPauseButton;
+    private final Runnable positionRefresher = new Runnable() {
+        @Override
+        public void run() {
+            refreshPosition();
+        }
+    };
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.session_replay);
+        setVolumeControlStream(AudioManager.STREAM_MUSIC);
+        final TrainingApplication application = (TrainingApplication) getApplication();
+        controllerFactory = application.getControllerFactory();
+        try {
+            sessionLibrary = application.getSessionLibrary();
+            session = sessionLibrary.getSession(getIntent().getIntExtra(SESSION_INDEX, 0));
+        } catch (final IOException e) {
+            Toast.makeText(this, R.string.sessionLibraryFailed, Toast.LENGTH_LONG).show();
+            finish();
+            return;
+        }
+        uiHandler = new Handler();
+        uiExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                uiHandler.post(command);
+            }
+        };
+        audioEventBus = new AudioEventBus(this, uiExecutor,
+                SpeechTrainerConfig.AUDIO_EVENT_BUS_CAPACITY);
+
+        final int durationSeconds = session.getDurationMs() / 1000;
+        ((TextView) findViewById(R.id.sessionDateView)).setText(DateFormat
+                .getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT).format(
+                        new Date(session.getSessionId())));
+        ((TextView) findViewById(R.id.sessionDetailsView)).setText(getString(
+                R.string.sessionDetails, durationSeconds / 60, durationSeconds % 60,
+                session.getUtterancesCount(), session.getMeanSoundLevel(),
+                session.getMinSoundLevel(), session.getMaxSoundLevel()));
+        positionSeekBar = (SeekBar) findViewById(R.id.positionSeekBar);
+        positionSeekBar.setOnSeekBarChangeListener(new OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (fromUser && controller != null) {
+                    controller.seekToBuffer(progress);
+                }
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+            }
+        });
+        playPauseButton = (Button) findViewById(R.id.playPauseButton);
+        playPauseButton.setOnClickListener(new OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (playing) {
+                    controller.stopTraining();
+                } else {
+                    controller.startTraining();
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        resumed = true;
+        if (controller == null) {
+            requestController();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        resumed = false;
+        if (controller != null) {
+            controller.stopTraining();
+            // Dispatches playingStopped.
+            audioEventBus.dispatchPendingEvents();
+        }
+    }
+
+    private void requestController() {
+        if (controllerRequested) {
+            return;
+        }
+        controllerRequested = true;
+        controllerFactory.createArchivedSessionController(
+                sessionLibrary.getAudioFile(session.getSessionId()), audioEventBus,
+                new ControllerCreatedCallback<ArchivedSessionController>() {
+            @Override
+            public void controllerCreated(ArchivedSessionController createdController) {
+                controller = createdController;
+                positionSeekBar.setMax(controller.getBuffersCount());
+                playPauseButton.setEnabled(true);
+                if (resumed) {
+                    controller.startTraining();
+                }
+            }
+
+            @Override
+            public void controllerCreationFailed(String errorMessage) {
+                controllerRequested = false;
+                Toast.makeText(SessionReplayActivity.this, errorMessage, Toast.LENGTH_LONG)
+                .show();
+                finish();
+            }
+        }, uiExecutor);
+    }
+
+    private void refreshPosition() {
+        uiHandler.removeCallbacks(positionRefresher);
+        if (controller != null) {
+            positionSeekBar.setProgress(controller.getNextBufferIndex());
+        }
+        if (playing) {
+            uiHandler.postDelayed(positionRefresher, POSITION_REFRESH_INTERVAL_MS);
+        }
+    }
+
+    // Audio events are dispatched by the audioEventBus on the UI thread.
+    @Override
+    public void playingStarted() {
+        playing = true;
+        playPauseButton.setText(R.string.pauseButton);
+        refreshPosition();
+    }
+
+    @Override
+    public void playingStopped() {
+        playing = false;
+        playPauseButton.setText(R.string.playButton);
+        refreshPosition();
+    }
+
+    @Override
+    public void audioBufferPlayed(int audioBufferId, double soundLevel) {
+    }
+
+    @Override
+    public void recordingStarted() {
+    }
+
+    @Override
+    public void audioBufferRecorded(int audioBufferId, double soundLevel) {
+    }
+
+    @Override
+    public void audioBufferRecordingFailed() {
+    }
+
+    @Override
+    public void recordingStopped() {
+    }
+}
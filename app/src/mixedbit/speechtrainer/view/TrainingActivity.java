@@ -18,13 +18,26 @@
 
 package mixedbit.speechtrainer.view;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
 import mixedbit.speechtrainer.R;
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.StartupTimer;
 import mixedbit.speechtrainer.TrainingApplication;
+import mixedbit.speechtrainer.controller.AudioDeadlineWatchdog;
+import mixedbit.speechtrainer.controller.AudioEventBus;
 import mixedbit.speechtrainer.controller.AudioEventListener;
 import mixedbit.speechtrainer.controller.AutomaticTrainingController;
 import mixedbit.speechtrainer.controller.ControllerFactory;
+import mixedbit.speechtrainer.controller.ControllerFactory.ControllerCreatedCallback;
 import mixedbit.speechtrainer.controller.InteractiveTrainingController;
 import mixedbit.speechtrainer.controller.TrainingController;
+import mixedbit.speechtrainer.controller.WavSessionExporter;
+import mixedbit.speechtrainer.library.SessionCollector;
+import mixedbit.speechtrainer.library.SessionLevels;
+import mixedbit.speechtrainer.library.SessionLibrary;
 import mixedbit.speechtrainer.model.AudioEventCollector;
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -35,17 +48,19 @@ import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.media.AudioManager;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.view.Gravity;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.WindowManager;
-import android.view.View.OnClickListener;
 import android.view.View.OnTouchListener;
 import android.widget.ImageButton;
 import android.widget.ImageView;
+import android.widget.TextView;
 import android.widget.Toast;
 
 /**
@@ -54,35 +69,80 @@ import android.widget.Toast;
  */
 public class TrainingActivity extends Activity implements OnSharedPreferenceChangeListener,
 AudioEventListener {
+    private static final int METRICS_OVERLAY_REFRESH_INTERVAL_MS = 500;
+    private static final long NO_SESSION_ID = -1;
+
     // Preferences that determine whether the training should be interactive or
     // automatic.
     private SharedPreferences sharedPreferences;
 
     // Set to be automaticTrainingController or interactiveTrainingController
-    // depending on sharedPreferences.
+    // depending on sharedPreferences. Controllers are created in the
+    // background and only when needed, so all these can be null.
     private TrainingController activeTrainingController;
     private AutomaticTrainingController automaticTrainingController;
     private InteractiveTrainingController interactiveTrainingController;
-
+    // Are controllers being created in the background?
+    private boolean automaticTrainingControllerRequested = false;
+    private boolean interactiveTrainingControllerRequested = false;
+    private ControllerFactory controllerFactory;
+    // Executes callbacks on the UI thread.
+    private Handler uiHandler;
+    private Executor uiExecutor;
+    private StartupTimer startupTimer;
+    // Is the activity between onResume and onPause? Training is started when
+    // the activity is resumed and the active controller is created.
+    private boolean resumed = false;
+
+    // Passes audio events from the audio thread to the UI thread.
+    private AudioEventBus audioEventBus;
     // Collects the history of audio events and passes audio events to
-    // the TrainingActivity.
+    // the sessionCollector.
     private AudioEventCollector audioEventCollector;
-    // Plots recently recorded and played buffers. Invalidated each time a new
-    // buffer is recorded or played.
-    private AudioEventView audioEventView;
+    // Collects levels and utterances of a session that is saved to the
+    // session library and passes audio events to the TrainingActivity.
+    private SessionCollector sessionCollector;
+    // Id of the session which recording is exported to the session library
+    // or NO_SESSION_ID.
+    private long exportedSessionId = NO_SESSION_ID;
+    // Library to which the exported session is added (opened when the
+    // export is started).
+    private SessionLibrary sessionLibrary;
+    // Plots recently recorded and played buffers. Redraw is requested each
+    // time a new buffer is recorded or played.
+    private AudioEventPlot audioEventPlot;
     // View that displays device that is active (microphone, speaker or
     // nothing).
     private ImageView activeDeviceView;
     // Elements that are used only during interactive training (recordButton is
-    // actually audioEventView, alias is provided for clarity).
-    private ImageButton recordButton;
+    // actually audioEventPlot, alias is provided for clarity).
+    private View recordButton;
     private View horizontalDividerView;
     private ImageButton replayButton;
 
+    // Informed by the audio thread when the device does not keep up with
+    // recording or playing. The warning is displayed at most once per
+    // training session.
+    private AudioDeadlineWatchdog.Listener deadlineMissListener;
+    private boolean deviceTooSlowWarningShown = false;
+
+    // Debug overlay with live metrics, periodically refreshed when enabled.
+    private TextView metricsOverlayView;
+    private final Runnable metricsOverlayRefresher = new Runnable() {
+        @Override
+        public void run() {
+            refreshMetricsOverlay();
+        }
+    };
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.training);
+        if (SpeechTrainerConfig.DRAW_PLOT_ON_RENDER_THREAD) {
+            setContentView(R.layout.training_surface);
+        } else {
+            setContentView(R.layout.training);
+        }
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
         // Volume controls should change music volume, not ringer volume as it
         // is by default.
@@ -90,62 +150,70 @@ AudioEventListener {
 
         activeDeviceView = (ImageView) findViewById(R.id.activeDeviceView);
 
-        // audioEvenCollector should pass received audio events to this
-        // activity.
-        audioEventCollector = new AudioEventCollector(this);
+        // audioEvenCollector should pass received audio events through the
+        // sessionCollector to this activity.
+        sessionCollector = new SessionCollector(this);
+        audioEventCollector = new AudioEventCollector(sessionCollector);
+        // The bus dispatches events to the audioEventCollector on the UI
+        // thread, so all AudioEventListener methods of this activity are also
+        // called on the UI thread.
+        uiHandler = new Handler();
+        uiExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                uiHandler.post(command);
+            }
+        };
+        audioEventBus = new AudioEventBus(audioEventCollector, uiExecutor,
+                SpeechTrainerConfig.AUDIO_EVENT_BUS_CAPACITY);
 
-        audioEventView = (AudioEventView) findViewById(R.id.recordButton);
+        audioEventPlot = (AudioEventPlot) findViewById(R.id.recordButton);
         // The audioEventCollector provides history of events to be displayed in
-        // the audioEventView.
-        audioEventView.setAudioEventHistory(audioEventCollector);
+        // the audioEventPlot.
+        audioEventPlot.setAudioEventHistory(audioEventCollector);
 
         final TrainingApplication application = (TrainingApplication) getApplication();
-        final ControllerFactory controllerFactory = application.getControllerFactory();
-
-        // Controllers need to pass audio events to the audioEventCollector. The
-        // collector will pass them further to the TrainingApplication.
-        try {
-            automaticTrainingController = controllerFactory
-            .createAutomaticTrainingController(audioEventCollector);
-            interactiveTrainingController = controllerFactory
-            .createInteractiveTrainingController(audioEventCollector);
-        } catch (final ControllerFactory.InitializationException ex) {
-            displayErrorAndFinishActivity(ex.getMessage());
-            return;
-        }
+        controllerFactory = application.getControllerFactory();
+        startupTimer = application.getStartupTimer();
+        audioEventPlot.setMetricsRegistry(controllerFactory.getMetricsRegistry());
+        metricsOverlayView = (TextView) findViewById(R.id.metricsOverlayView);
 
         sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
         // Get notification when preferences change. Preferences determine which
         // training controller should be used.
         sharedPreferences.registerOnSharedPreferenceChangeListener(this);
+        configureRedrawRate();
+        configureLatencyMeasurement();
+        configureBufferTrace();
+        createDeadlineMissListener();
 
         // The whole area in which audio events are plotted is a record button.
-        recordButton = audioEventView;
+        recordButton = findViewById(R.id.recordButton);
         replayButton = (ImageButton) findViewById(R.id.replayButton);
 
         horizontalDividerView = findViewById(R.id.horizontalDividerView);
 
         configureButtons();
         configureActiveSession();
+        startupTimer.milestoneReached("training activity created");
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        // Can be null when the controller initialization failed.
-        if (activeTrainingController != null) {
-            activeTrainingController.startTraining();
-            final boolean tooltipEnabled = this.sharedPreferences.getBoolean("showTooltip", true);
-            if (tooltipEnabled) {
-                showTooltip();
-            }
-        }
+        resumed = true;
+        configureDeadlineMissWarning();
+        configureMetricsOverlay();
+        startTraining();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
+        resumed = false;
         stopTraining();
+        controllerFactory.getAudioDeadlineWatchdog().setListener(null);
+        configureMetricsOverlay();
     }
 
     @Override
@@ -154,8 +222,41 @@ AudioEventListener {
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        // Diagnostics are available only when measurements are collected.
+        menu.findItem(R.id.diagnosticsMenuItem).setVisible(
+                isLatencyMeasured() || isBufferTraceEnabled() || isMetricsOverlayShown());
+        return true;
+    }
+
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (key.equals("batterySaving")) {
+            // Redraw rate can be changed without stopping the training.
+            configureRedrawRate();
+            return;
+        }
+        if (key.equals("measureLatency")) {
+            configureLatencyMeasurement();
+            return;
+        }
+        if (key.equals("traceBuffers")) {
+            configureBufferTrace();
+            return;
+        }
+        if (key.equals("warnWhenTooSlow")) {
+            configureDeadlineMissWarning();
+            return;
+        }
+        if (key.equals("showMetricsOverlay")) {
+            configureMetricsOverlay();
+            return;
+        }
+        if (key.equals("exportRecordings")) {
+            // Export is started with the next training session.
+            return;
+        }
         // Training can be safely stopped even if it is not started.
         stopTraining();
         configureActiveSession();
@@ -191,61 +292,56 @@ AudioEventListener {
                         Uri.parse("market://details?id=mixedbit.speechtrainer"));
                 startActivity(browserIntent);
                 break;
+            case R.id.diagnosticsMenuItem:
+                startActivity(new Intent(this, DiagnosticsActivity.class));
+                break;
+            case R.id.historyMenuItem:
+                startActivity(new Intent(this, SessionHistoryActivity.class));
+                break;
         }
         return true;
     }
 
+    // Audio events are dispatched by the audioEventBus on the UI thread, so
+    // views can be modified directly.
     @Override
     public void playingStarted() {
-        activeDeviceView.post(new Runnable() {
-            @Override
-            public void run() {
-                // Show the speaker image.
-                activeDeviceView.setImageResource(R.drawable.speaker);
-                activeDeviceView.setVisibility(View.VISIBLE);
-            }
-        });
+        // Show the speaker image.
+        activeDeviceView.setImageResource(R.drawable.speaker);
+        activeDeviceView.setVisibility(View.VISIBLE);
     }
 
     @Override
     public void playingStopped() {
-        activeDeviceView.post(new Runnable() {
-            @Override
-            public void run() {
-                if (activeTrainingController == interactiveTrainingController) {
-                    // Hide the speaker image, but only in the interactive mode.
-                    // In the automatic mode recording starts immediately and
-                    // hiding the speaker image causes unnecessary blinking.
-                    activeDeviceView.setVisibility(View.GONE);
-                }
-            }
-        });
+        if (activeTrainingController == interactiveTrainingController) {
+            // Hide the speaker image, but only in the interactive mode.
+            // In the automatic mode recording starts immediately and
+            // hiding the speaker image causes unnecessary blinking.
+            activeDeviceView.setVisibility(View.GONE);
+        }
     }
 
     // Request the plot with audio events to be redrawn when a buffer is played
-    // or recorded.
+    // or recorded. Requests are coalesced, so the plot is not redrawn for each
+    // buffer.
     @Override
     public void audioBufferPlayed(int audioBufferId, double soundLevel) {
-        audioEventView.postInvalidate();
+        audioEventPlot.requestRedraw();
     }
 
     @Override
     public void audioBufferRecorded(int audioBufferId, double soundLevel) {
-        audioEventView.postInvalidate();
+        startupTimer.audioBufferRecorded();
+        audioEventPlot.requestRedraw();
     }
 
 
     // recordStatusView should be enabled only when recording is in progress.
     @Override
     public void recordingStarted() {
-        activeDeviceView.post(new Runnable() {
-            @Override
-            public void run() {
-                // Show the microphone image.
-                activeDeviceView.setImageResource(R.drawable.microphone);
-                activeDeviceView.setVisibility(View.VISIBLE);
-            }
-        });
+        // Show the microphone image.
+        activeDeviceView.setImageResource(R.drawable.microphone);
+        activeDeviceView.setVisibility(View.VISIBLE);
     }
 
     @Override
@@ -257,18 +353,46 @@ AudioEventListener {
     // When recording fails, the TrainingActivity is terminated.
     @Override
     public void audioBufferRecordingFailed() {
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                displayErrorAndFinishActivity("Recording failed. "
-                        + "Please make sure no other application is using the microphone.");
+        displayErrorAndFinishActivity("Recording failed. "
+                + "Please make sure no other application is using the microphone.");
+    }
+
+    /**
+     * Starts training with the active controller. Does nothing if the
+     * controller is not created yet, the training is then started when the
+     * controller is created.
+     */
+    private void startTraining() {
+        if (activeTrainingController != null) {
+            if (activeTrainingController == automaticTrainingController) {
+                // Measurements are collected per training session.
+                controllerFactory.getLatencyRecorder().reset();
             }
-        });
+            deviceTooSlowWarningShown = false;
+            if (isRecordingExported()) {
+                // The controller is started when the export is started, so
+                // no recorded buffer is missing from the exported file.
+                startRecordingExport();
+            } else {
+                activeTrainingController.startTraining();
+            }
+            final boolean tooltipEnabled = this.sharedPreferences.getBoolean("showTooltip", true);
+            if (tooltipEnabled) {
+                showTooltip();
+            }
+        }
     }
 
     private void stopTraining() {
         if (activeTrainingController != null) {
             activeTrainingController.stopTraining();
+            // Events passed before the training stopped could be still waiting
+            // in the bus, these need to be dispatched before the history is
+            // cleared and the session is saved.
+            audioEventBus.dispatchPendingEvents();
+            // Recording is stopped, all recorded audio data is already passed
+            // to the exporter. The export is stopped in the background.
+            stopRecordingExport();
             // Clear the history of audio events. Keeping old audio events on
             // the screen would be misleading, because the old events can no be
             // played after the training was stopped.
@@ -276,6 +400,195 @@ AudioEventListener {
         }
     }
 
+    private void configureRedrawRate() {
+        final boolean batterySaving = this.sharedPreferences.getBoolean("batterySaving", false);
+        if (batterySaving) {
+            audioEventPlot.setMaxRedrawsPerSecond(
+                    SpeechTrainerConfig.BATTERY_SAVING_MAX_REDRAWS_PER_SECOND);
+        } else {
+            audioEventPlot.setMaxRedrawsPerSecond(SpeechTrainerConfig.MAX_REDRAWS_PER_SECOND);
+        }
+    }
+
+    private boolean isLatencyMeasured() {
+        return this.sharedPreferences.getBoolean("measureLatency", false);
+    }
+
+    private void configureLatencyMeasurement() {
+        // Measurement can be enabled and disabled without stopping the
+        // training.
+        controllerFactory.getLatencyRecorder().setEnabled(isLatencyMeasured());
+    }
+
+    private boolean isBufferTraceEnabled() {
+        return this.sharedPreferences.getBoolean("traceBuffers", false);
+    }
+
+    private void configureBufferTrace() {
+        controllerFactory.getBufferTrace().setEnabled(isBufferTraceEnabled());
+    }
+
+    private boolean isRecordingExported() {
+        return this.sharedPreferences.getBoolean("exportRecordings", false);
+    }
+
+    /**
+     * Starts exporting audio data of a new session to the session library in
+     * the background. When the export is started, starts collecting levels
+     * and utterances of the session and starts the active controller.
+     */
+    private void startRecordingExport() {
+        final long sessionId = System.currentTimeMillis();
+        try {
+            sessionLibrary = ((TrainingApplication) getApplication()).getSessionLibrary();
+        } catch (final IOException e) {
+            showExportRecordingFailed();
+            activeTrainingController.startTraining();
+            return;
+        }
+        final File audioFile = sessionLibrary.getAudioFile(sessionId);
+        final WavSessionExporter exporter = controllerFactory.getWavSessionExporter();
+        exportedSessionId = sessionId;
+        controllerFactory.executeInBackground(new Runnable() {
+            @Override
+            public void run() {
+                boolean started = true;
+                try {
+                    exporter.start(audioFile);
+                } catch (final IOException e) {
+                    started = false;
+                }
+                final boolean exportStarted = started;
+                uiExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        recordingExportStarted(sessionId, exportStarted);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Called on the UI thread when the export of a session is started or
+     * fails to start.
+     */
+    private void recordingExportStarted(long sessionId, boolean exportStarted) {
+        if (exportedSessionId != sessionId) {
+            // The training was stopped in the meantime, stopping of the export
+            // is already requested.
+            return;
+        }
+        if (exportStarted) {
+            sessionCollector.startSession();
+        } else {
+            exportedSessionId = NO_SESSION_ID;
+            showExportRecordingFailed();
+        }
+        activeTrainingController.startTraining();
+    }
+
+    /**
+     * Stops the export (if started) and adds the exported session to the
+     * session library in the background. Sessions in which nothing was
+     * recorded are not added.
+     */
+    private void stopRecordingExport() {
+        if (exportedSessionId == NO_SESSION_ID) {
+            return;
+        }
+        final long sessionId = exportedSessionId;
+        exportedSessionId = NO_SESSION_ID;
+        // Not collecting if the training was stopped before the export
+        // started.
+        final SessionLevels levels =
+            sessionCollector.isCollecting() ? sessionCollector.finishSession() : null;
+        final SessionLibrary sessionLibrary = this.sessionLibrary;
+        final WavSessionExporter exporter = controllerFactory.getWavSessionExporter();
+        controllerFactory.executeInBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    exporter.stop();
+                    if (levels == null || levels.getRecordedBuffersCount() == 0) {
+                        sessionLibrary.getAudioFile(sessionId).delete();
+                        return;
+                    }
+                    sessionLibrary.addSession(sessionId, (int) (exporter.getExportedSamplesCount()
+                            * 1000 / SpeechTrainerConfig.SAMPLE_RATE_HZ), levels);
+                } catch (final IOException e) {
+                    uiExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            showExportRecordingFailed();
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void showExportRecordingFailed() {
+        Toast.makeText(getApplicationContext(), R.string.exportRecordingFailed,
+                Toast.LENGTH_SHORT).show();
+    }
+
+    private boolean isMetricsOverlayShown() {
+        return this.sharedPreferences.getBoolean("showMetricsOverlay", false);
+    }
+
+    private void configureMetricsOverlay() {
+        uiHandler.removeCallbacks(metricsOverlayRefresher);
+        if (isMetricsOverlayShown() && resumed) {
+            metricsOverlayView.setVisibility(View.VISIBLE);
+            refreshMetricsOverlay();
+        } else {
+            metricsOverlayView.setVisibility(View.GONE);
+        }
+    }
+
+    private void refreshMetricsOverlay() {
+        metricsOverlayView.setText(controllerFactory.getMetricsRegistry().toString());
+        uiHandler.postDelayed(metricsOverlayRefresher, METRICS_OVERLAY_REFRESH_INTERVAL_MS);
+    }
+
+    private void createDeadlineMissListener() {
+        final Runnable showWarning = new Runnable() {
+            @Override
+            public void run() {
+                showDeviceTooSlowWarning();
+            }
+        };
+        deadlineMissListener = new AudioDeadlineWatchdog.Listener() {
+            @Override
+            public void overrunDetected() {
+                uiExecutor.execute(showWarning);
+            }
+
+            @Override
+            public void underrunDetected() {
+                uiExecutor.execute(showWarning);
+            }
+        };
+    }
+
+    private void configureDeadlineMissWarning() {
+        final boolean warningEnabled = this.sharedPreferences.getBoolean("warnWhenTooSlow", true);
+        // Deadline misses are counted regardless of the preference (these can
+        // be seen in the diagnostics screen).
+        controllerFactory.getAudioDeadlineWatchdog().setListener(
+                warningEnabled && resumed ? deadlineMissListener : null);
+    }
+
+    private void showDeviceTooSlowWarning() {
+        if (deviceTooSlowWarningShown || !resumed) {
+            return;
+        }
+        deviceTooSlowWarningShown = true;
+        Toast.makeText(getApplicationContext(), R.string.deviceTooSlowWarning, Toast.LENGTH_LONG)
+        .show();
+    }
+
     private void showTooltip() {
         String tooltipText = null;
         if (activeTrainingController == interactiveTrainingController) {
@@ -308,6 +621,10 @@ AudioEventListener {
         recordButton.setOnTouchListener(new OnTouchListener() {
             @Override
             public boolean onTouch(View v, MotionEvent event) {
+                if (interactiveTrainingController == null) {
+                    // Not created yet.
+                    return false;
+                }
                 if (event.getAction() == MotionEvent.ACTION_DOWN) {
                     interactiveTrainingController.record();
                 } else if (event.getAction() == MotionEvent.ACTION_UP) {
@@ -317,35 +634,141 @@ AudioEventListener {
             }
         });
 
-        replayButton.setOnClickListener(new OnClickListener() {
+        // The replay button is placed below the plot and spans the whole plot
+        // width. Tapping the button replays from a buffer plotted above the
+        // tapped position (or from the beginning if no recorded buffer is
+        // plotted there). Dragging along the button replays the fragment
+        // plotted above the dragged range in a loop.
+        final int touchSlop = ViewConfiguration.get(this).getScaledTouchSlop();
+        replayButton.setOnTouchListener(new OnTouchListener() {
+            private float downRawX;
+
             @Override
-            public void onClick(View arg) {
-                if (replayButton.isEnabled()) {
-                    interactiveTrainingController.play();
+            public boolean onTouch(View v, MotionEvent event) {
+                if (!replayButton.isEnabled() || interactiveTrainingController == null) {
+                    return false;
+                }
+                if (event.getAction() == MotionEvent.ACTION_DOWN) {
+                    downRawX = event.getRawX();
+                } else if (event.getAction() == MotionEvent.ACTION_UP) {
+                    final int upAudioBufferId = getAudioBufferIdPlottedAt(event.getRawX());
+                    if (Math.abs(event.getRawX() - downRawX) > touchSlop) {
+                        final int downAudioBufferId = getAudioBufferIdPlottedAt(downRawX);
+                        interactiveTrainingController.loop(downAudioBufferId, upAudioBufferId);
+                    } else {
+                        interactiveTrainingController.playFromAudioBuffer(upAudioBufferId);
+                    }
                 }
+                return false;
             }
         });
     }
 
+    /**
+     * @param rawX
+     *            Horizontal position on the screen.
+     * @return Id of a buffer plotted at a given position or
+     *         AudioEventHistory.NO_AUDIO_BUFFER_ID.
+     */
+    private int getAudioBufferIdPlottedAt(float rawX) {
+        final int[] plotLocation = new int[2];
+        recordButton.getLocationOnScreen(plotLocation);
+        return audioEventPlot.getAudioBufferIdAt((int) rawX - plotLocation[0]);
+    }
+
     /**
      * Based on a training mode select by the user, determines which controller
      * should be active and configures controls needed in the select mode.
      */
     private void configureActiveSession() {
-        final boolean speechDetectionMode = this.sharedPreferences.getBoolean(
-                "speechDetectionMode", true);
+        final boolean speechDetectionMode = isSpeechDetectionMode();
         if (speechDetectionMode) {
             activeTrainingController = automaticTrainingController;
+            if (automaticTrainingController == null) {
+                requestAutomaticTrainingController();
+            }
         } else {
             activeTrainingController = interactiveTrainingController;
+            if (interactiveTrainingController == null) {
+                requestInteractiveTrainingController();
+            }
         }
         configureControlsAccordingToMode(speechDetectionMode);
     }
 
+    private boolean isSpeechDetectionMode() {
+        return this.sharedPreferences.getBoolean("speechDetectionMode", true);
+    }
+
+    // Controllers need to pass audio events to the audioEventBus. The bus will
+    // pass them further to the audioEventCollector and the collector to the
+    // TrainingActivity.
+
+    private void requestAutomaticTrainingController() {
+        if (automaticTrainingControllerRequested) {
+            return;
+        }
+        automaticTrainingControllerRequested = true;
+        controllerFactory.createAutomaticTrainingController(audioEventBus,
+                new ControllerCreatedCallback<AutomaticTrainingController>() {
+            @Override
+            public void controllerCreated(AutomaticTrainingController controller) {
+                // Utterance boundaries saved with the session should not
+                // include the pre-roll.
+                controller.setUtteranceListener(sessionCollector);
+                automaticTrainingController = controller;
+                if (isSpeechDetectionMode()) {
+                    activateCreatedController(controller);
+                }
+            }
+
+            @Override
+            public void controllerCreationFailed(String errorMessage) {
+                automaticTrainingControllerRequested = false;
+                displayErrorAndFinishActivity(errorMessage);
+            }
+        }, uiExecutor);
+    }
+
+    private void requestInteractiveTrainingController() {
+        if (interactiveTrainingControllerRequested) {
+            return;
+        }
+        interactiveTrainingControllerRequested = true;
+        controllerFactory.createInteractiveTrainingController(audioEventBus,
+                new ControllerCreatedCallback<InteractiveTrainingController>() {
+            @Override
+            public void controllerCreated(InteractiveTrainingController controller) {
+                interactiveTrainingController = controller;
+                if (!isSpeechDetectionMode()) {
+                    activateCreatedController(controller);
+                }
+            }
+
+            @Override
+            public void controllerCreationFailed(String errorMessage) {
+                interactiveTrainingControllerRequested = false;
+                displayErrorAndFinishActivity(errorMessage);
+            }
+        }, uiExecutor);
+    }
+
+    /**
+     * Makes a newly created controller active and starts training if the
+     * activity is resumed.
+     */
+    private void activateCreatedController(TrainingController controller) {
+        activeTrainingController = controller;
+        startupTimer.milestoneReached("training controller created");
+        if (resumed) {
+            startTraining();
+        }
+    }
+
     private void configureControlsAccordingToMode(boolean speechDetectionMode) {
         if (speechDetectionMode) {
             // recordButton is not hidden because it acts also as
-            // the AudioEventView.
+            // the AudioEventPlot.
             recordButton.setEnabled(false);
             replayButton.setVisibility(View.GONE);
             horizontalDividerView.setVisibility(View.GONE);
@@ -0,0 +1,100 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.benchmarks;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks of the audio hot path with the gc profiler (allocation rate
+ * per operation) and compares latency percentiles of each operation with the
+ * time budget of a single audio buffer. All per buffer work (recording,
+ * computing the sound level, filtering, passing events to the UI) needs to fit
+ * in the budget, otherwise recording falls behind.
+ *
+ * Usage: java -jar benchmarks.jar [JMH options] [benchmark name regexp]
+ */
+public class BenchmarkRunner {
+    // Time it takes to record a single audio buffer.
+    public static final double AUDIO_BUFFER_BUDGET_US = 1000000.0
+    * SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS / SpeechTrainerConfig.SAMPLE_RATE_HZ;
+    private static final double[] REPORTED_PERCENTILES = { 50.0, 99.0, 99.9, 100.0 };
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        final ChainedOptionsBuilder optionsBuilder = new OptionsBuilder()
+        .parent(commandLineOptions).addProfiler(GCProfiler.class);
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            optionsBuilder.include("mixedbit\\.speechtrainer\\..*Benchmark");
+        }
+        final Options options = optionsBuilder.build();
+        final Collection<RunResult> results = new Runner(options).run();
+        printBudgetReport(results);
+    }
+
+    private static void printBudgetReport(Collection<RunResult> results) {
+        System.out.println();
+        System.out.printf("Share of the %.0f us audio buffer budget (sample time percentiles):%n",
+                AUDIO_BUFFER_BUDGET_US);
+        for (final RunResult result : results) {
+            if (result.getParams().getMode() != Mode.SampleTime) {
+                continue;
+            }
+            final Result<?> primary = result.getPrimaryResult();
+            final double toMicros = toMicros(result.getParams().getTimeUnit());
+            final StringBuilder line = new StringBuilder();
+            line.append(result.getParams().getBenchmark());
+            for (final String paramKey : result.getParams().getParamsKeys()) {
+                line.append(' ').append(paramKey).append('=')
+                .append(result.getParams().getParam(paramKey));
+            }
+            for (final double percentile : REPORTED_PERCENTILES) {
+                final double micros = primary.getStatistics().getPercentile(percentile) * toMicros;
+                line.append(String.format("  p%s=%.4f%%", formatPercentile(percentile),
+                        100.0 * micros / AUDIO_BUFFER_BUDGET_US));
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static double toMicros(TimeUnit timeUnit) {
+        return timeUnit.toNanos(1) / 1000.0;
+    }
+
+    private static String formatPercentile(double percentile) {
+        if (percentile == Math.floor(percentile)) {
+            return Integer.toString((int) percentile);
+        }
+        return Double.toString(percentile);
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sequence of sound levels of recorded buffers, loaded from a fixture in the
+ * traces resource directory. The fixture has one sound level per line, lines
+ * starting with '#' are comments.
+ *
+ * Traces allow benchmarks to feed the per buffer code with levels that have a
+ * realistic distribution (silence, speech, pauses between words), which
+ * matters for the code that branches on the silence level.
+ */
+public class LevelTrace {
+    public static final String QUIET_ROOM_SENTENCES = "quiet_room_sentences";
+    public static final String NOISY_STREET_WORDS = "noisy_street_words";
+    public static final String LONG_PAUSES = "long_pauses";
+
+    private final double[] soundLevels;
+
+    private LevelTrace(double[] soundLevels) {
+        this.soundLevels = soundLevels;
+    }
+
+    /**
+     * Loads a trace with a given name (one of the constants of this class).
+     */
+    public static LevelTrace load(String traceName) throws IOException {
+        final InputStream stream = LevelTrace.class.getResourceAsStream(
+                "/traces/" + traceName + ".txt");
+        if (stream == null) {
+            throw new IOException("Unknown level trace " + traceName);
+        }
+        final List<Double> soundLevels = new ArrayList<Double>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                soundLevels.add(Double.parseDouble(line));
+            }
+        } finally {
+            reader.close();
+        }
+        final double[] result = new double[soundLevels.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = soundLevels.get(i);
+        }
+        return new LevelTrace(result);
+    }
+
+    public int length() {
+        return soundLevels.length;
+    }
+
+    public double getSoundLevel(int index) {
+        return soundLevels[index];
+    }
+
+    public double getMaxSoundLevel() {
+        double max = 0.0;
+        for (final double soundLevel : soundLevels) {
+            max = Math.max(max, soundLevel);
+        }
+        return max;
+    }
+
+    /**
+     * Fills audio data with random samples, so the sound level of the data (as
+     * computed by AudioBuffer) is close to a given sound level.
+     */
+    public static void fillWithSamples(short[] audioData, double soundLevel, Random random) {
+        final double rms = Math.sqrt(Math.pow(10.0, soundLevel / 10.0));
+        for (int i = 0; i < audioData.length; ++i) {
+            final double sample = random.nextGaussian() * rms;
+            audioData[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+        }
+    }
+}
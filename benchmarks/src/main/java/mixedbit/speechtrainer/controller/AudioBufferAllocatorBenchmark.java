@@ -0,0 +1,86 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.util.concurrent.TimeUnit;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures allocation and release of audio buffers. The utterance benchmark
+ * allocates buffers for a few seconds of recording and then releases all of
+ * them, like the training controllers do when the recorded data is played or
+ * dropped. Its results are per buffer.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AudioBufferAllocatorBenchmark {
+    // Three seconds of recording. A compile time constant, so it can be used
+    // in the OperationsPerInvocation annotation.
+    private static final int UTTERANCE_LENGTH_IN_BUFFERS = 3 * SpeechTrainerConfig.SAMPLE_RATE_HZ
+    / SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS;
+    private AudioBufferAllocator allocator;
+    private final AudioBuffer[] utteranceBuffers = new AudioBuffer[UTTERANCE_LENGTH_IN_BUFFERS];
+
+    @Setup
+    public void setUp() {
+        allocator = new AudioBufferAllocator(SpeechTrainerConfig.NUMBER_OF_AUDIO_BUFFERS,
+                SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS);
+    }
+
+    @Benchmark
+    public int allocateAndRelease() {
+        final AudioBuffer audioBuffer = allocator.allocateAudioBuffer();
+        final int audioBufferId = audioBuffer.getAudioBufferId();
+        allocator.releaseAudioBuffer(audioBuffer);
+        return audioBufferId;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UTTERANCE_LENGTH_IN_BUFFERS)
+    public int allocateAndReleaseUtterance() {
+        for (int i = 0; i < UTTERANCE_LENGTH_IN_BUFFERS; ++i) {
+            utteranceBuffers[i] = allocator.allocateAudioBuffer();
+        }
+        final int lastAudioBufferId = utteranceBuffers[UTTERANCE_LENGTH_IN_BUFFERS - 1]
+                                                       .getAudioBufferId();
+        for (int i = 0; i < UTTERANCE_LENGTH_IN_BUFFERS; ++i) {
+            allocator.releaseAudioBuffer(utteranceBuffers[i]);
+            utteranceBuffers[i] = null;
+        }
+        return lastAudioBufferId;
+    }
+}
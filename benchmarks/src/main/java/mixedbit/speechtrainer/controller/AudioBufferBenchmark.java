@@ -0,0 +1,75 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.benchmarks.LevelTrace;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures computation of a sound level of a full recorded buffer
+ * (AudioBuffer.audioDataStored computes the level of all stored samples).
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AudioBufferBenchmark {
+    private AudioBufferAllocator allocator;
+    private AudioBuffer audioBuffer;
+
+    @Setup
+    public void setUp() throws Exception {
+        allocator = new AudioBufferAllocator(1,
+                SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS);
+        audioBuffer = allocator.allocateAudioBuffer();
+        // Samples of speech, silence has the same cost.
+        final LevelTrace trace = LevelTrace.load(LevelTrace.QUIET_ROOM_SENTENCES);
+        LevelTrace.fillWithSamples(audioBuffer.getAudioData(), trace.getMaxSoundLevel(),
+                new Random(0));
+    }
+
+    @TearDown
+    public void tearDown() {
+        allocator.releaseAudioBuffer(audioBuffer);
+    }
+
+    @Benchmark
+    public double computeSoundLevel() {
+        audioBuffer.audioDataStored(SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS);
+        return audioBuffer.getSoundLevel();
+    }
+}
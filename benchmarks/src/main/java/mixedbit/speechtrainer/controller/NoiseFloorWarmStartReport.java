@@ -0,0 +1,139 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.io.IOException;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.benchmarks.LevelTrace;
+
+/**
+ * Measures how long it takes the SilenceLevelDetector to make the first
+ * correct decision about speech when a session starts, with and without a
+ * noise floor restored from a previous session.
+ *
+ * Sessions are started at several offsets of each level trace. The reference
+ * decisions come from a detector that processed the trace from the beginning,
+ * so it knows the room. The first correct decision is the first buffer that
+ * both the reference and the measured detector find above the silence level.
+ * The restored noise floor is a snapshot of a detector that processed the
+ * whole trace (a previous session in the same room).
+ *
+ * Usage: java -cp benchmarks.jar
+ * mixedbit.speechtrainer.controller.NoiseFloorWarmStartReport
+ */
+public class NoiseFloorWarmStartReport {
+    private static final int SESSION_START_INTERVAL_S = 5;
+    private static final String[] TRACE_NAMES = { LevelTrace.QUIET_ROOM_SENTENCES,
+        LevelTrace.NOISY_STREET_WORDS, LevelTrace.LONG_PAUSES };
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("Time to the first correct decision about speech, "
+                + "mean and max over sessions:");
+        for (final String traceName : TRACE_NAMES) {
+            printReport(traceName, LevelTrace.load(traceName));
+        }
+    }
+
+    private static void printReport(String traceName, LevelTrace trace) {
+        final SilenceLevelDetector previousSession = new SilenceLevelDetector();
+        for (int i = 0; i < trace.length(); ++i) {
+            previousSession.addSoundLevelMeasurement(trace.getSoundLevel(i));
+        }
+        final NoiseFloorSnapshot snapshot = previousSession.takeSnapshot(0L);
+
+        final int sessionStartInterval = SESSION_START_INTERVAL_S
+        * SpeechTrainerConfig.numberOfBuffersPerSecond();
+        long coldSum = 0;
+        long coldMax = 0;
+        long warmSum = 0;
+        long warmMax = 0;
+        int sessions = 0;
+        // The reference needs to learn the room first, sessions start after the
+        // first interval.
+        for (int start = sessionStartInterval; start < trace.length();
+        start += sessionStartInterval) {
+            final boolean[] reference = referenceDecisions(trace, start);
+            final SilenceLevelDetector cold = new SilenceLevelDetector();
+            final SilenceLevelDetector warm = new SilenceLevelDetector();
+            if (snapshot != null) {
+                warm.restoreSnapshot(snapshot);
+            }
+            final int coldBuffers = buffersToFirstCorrectDecision(cold, trace, start, reference);
+            final int warmBuffers = buffersToFirstCorrectDecision(warm, trace, start, reference);
+            if (coldBuffers < 0 || warmBuffers < 0) {
+                // No speech detected by the reference in this session.
+                continue;
+            }
+            coldSum += coldBuffers;
+            coldMax = Math.max(coldMax, coldBuffers);
+            warmSum += warmBuffers;
+            warmMax = Math.max(warmMax, warmBuffers);
+            ++sessions;
+        }
+        if (sessions == 0) {
+            System.out.printf("%s: no speech detected%n", traceName);
+            return;
+        }
+        System.out.printf("%s (%d sessions): cold %.0f ms (max %.0f ms), "
+                + "warm %.0f ms (max %.0f ms)%n", traceName, sessions,
+                buffersToMillis(coldSum) / sessions, buffersToMillis(coldMax),
+                buffersToMillis(warmSum) / sessions, buffersToMillis(warmMax));
+    }
+
+    /**
+     * @return Decisions (true for a buffer above the silence level) of a
+     *         detector that processed the trace from the beginning, for
+     *         buffers since a given start.
+     */
+    private static boolean[] referenceDecisions(LevelTrace trace, int start) {
+        final SilenceLevelDetector detector = new SilenceLevelDetector();
+        final boolean[] decisions = new boolean[trace.length() - start];
+        for (int i = 0; i < trace.length(); ++i) {
+            final double soundLevel = trace.getSoundLevel(i);
+            detector.addSoundLevelMeasurement(soundLevel);
+            if (i >= start) {
+                decisions[i - start] = detector.isAboveSilenceLevel(soundLevel);
+            }
+        }
+        return decisions;
+    }
+
+    /**
+     * @return Number of buffers since a given start until the detector agrees
+     *         with the reference that a buffer is above the silence level, or
+     *         -1 if this never happens.
+     */
+    private static int buffersToFirstCorrectDecision(SilenceLevelDetector detector,
+            LevelTrace trace, int start, boolean[] reference) {
+        for (int i = start; i < trace.length(); ++i) {
+            final double soundLevel = trace.getSoundLevel(i);
+            detector.addSoundLevelMeasurement(soundLevel);
+            if (reference[i - start] && detector.isAboveSilenceLevel(soundLevel)) {
+                return i - start + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static double buffersToMillis(long buffers) {
+        return 1000.0 * buffers * SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS
+        / SpeechTrainerConfig.SAMPLE_RATE_HZ;
+    }
+}
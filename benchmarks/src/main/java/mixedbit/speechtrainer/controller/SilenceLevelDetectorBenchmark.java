@@ -0,0 +1,69 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.util.concurrent.TimeUnit;
+
+import mixedbit.speechtrainer.benchmarks.LevelTrace;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures updating the silence level with sound levels from a level trace.
+ * The trace is replayed in a loop, each operation consumes a single level.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SilenceLevelDetectorBenchmark {
+    @Param({ LevelTrace.QUIET_ROOM_SENTENCES, LevelTrace.NOISY_STREET_WORDS,
+        LevelTrace.LONG_PAUSES })
+    public String traceName;
+    private LevelTrace trace;
+    private SilenceLevelDetector silenceLevelDetector;
+    private int nextLevelIndex;
+
+    @Setup
+    public void setUp() throws Exception {
+        trace = LevelTrace.load(traceName);
+        silenceLevelDetector = new SilenceLevelDetector();
+        nextLevelIndex = 0;
+    }
+
+    @Benchmark
+    public boolean addSoundLevelMeasurement() {
+        final double soundLevel = trace.getSoundLevel(nextLevelIndex);
+        nextLevelIndex = (nextLevelIndex + 1) % trace.length();
+        silenceLevelDetector.addSoundLevelMeasurement(soundLevel);
+        return silenceLevelDetector.isAboveSilenceLevel(soundLevel);
+    }
+}
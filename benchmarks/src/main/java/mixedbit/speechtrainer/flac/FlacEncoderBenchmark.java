@@ -0,0 +1,124 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.flac;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.benchmarks.LevelTrace;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures FLAC encoding of a recorded session, on a single core with the
+ * streaming FlacEncoder and on all cores with the ParallelFlacEncoder
+ * executed by a ForkJoinPool. The session is built from a level trace: each
+ * recorded buffer is filled with samples of the traced sound level.
+ *
+ * An operation is encoding of one second of the session, so the score (in
+ * operations per second) is the multiple of real time at which sessions are
+ * encoded.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlacEncoderBenchmark {
+    private static final int SESSION_LENGTH_SECONDS = 60;
+
+    /**
+     * Discards encoded data.
+     */
+    private static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+
+    @Param({ LevelTrace.QUIET_ROOM_SENTENCES, LevelTrace.NOISY_STREET_WORDS })
+    public String traceName;
+    private short[] session;
+    private ForkJoinPool pool;
+    private ParallelFlacEncoder parallelEncoder;
+    private final OutputStream output = new NullOutputStream();
+
+    @Setup
+    public void setUp() throws Exception {
+        final LevelTrace trace = LevelTrace.load(traceName);
+        final int bufferSize = SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS;
+        final short[] buffer = new short[bufferSize];
+        final Random random = new Random(0);
+        session = new short[SESSION_LENGTH_SECONDS * SpeechTrainerConfig.SAMPLE_RATE_HZ];
+        for (int offset = 0; offset < session.length; offset += bufferSize) {
+            LevelTrace.fillWithSamples(buffer,
+                    trace.getSoundLevel((offset / bufferSize) % trace.length()), random);
+            System.arraycopy(buffer, 0, session, offset, Math.min(bufferSize,
+                    session.length - offset));
+        }
+        pool = new ForkJoinPool();
+        parallelEncoder = new ParallelFlacEncoder(pool, pool.getParallelism());
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SESSION_LENGTH_SECONDS)
+    public long encodeOnSingleCore() throws IOException {
+        final FlacEncoder encoder = new FlacEncoder(output, SpeechTrainerConfig.SAMPLE_RATE_HZ);
+        // Passed in recorded buffers, as during the training.
+        final int bufferSize = SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS;
+        for (int offset = 0; offset < session.length; offset += bufferSize) {
+            encoder.encode(session, offset, Math.min(bufferSize, session.length - offset));
+        }
+        encoder.finish();
+        return encoder.getTotalSamples();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SESSION_LENGTH_SECONDS)
+    public byte[] encodeOnAllCores() throws IOException, InterruptedException {
+        return parallelEncoder.encode(session, 0, session.length, SpeechTrainerConfig.SAMPLE_RATE_HZ,
+                output);
+    }
+}
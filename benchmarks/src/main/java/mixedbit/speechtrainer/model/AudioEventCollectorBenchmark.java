@@ -0,0 +1,148 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.model;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import mixedbit.speechtrainer.benchmarks.LevelTrace;
+import mixedbit.speechtrainer.controller.AudioEventListener;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures ingestion of recorded buffer events by the AudioEventCollector and
+ * iteration over buffers to plot, which is done by the view on each redraw.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AudioEventCollectorBenchmark {
+    // Recorded buffers are moved to the history only when buffers to plot are
+    // requested. The view does it many times per second, the ingestion
+    // benchmark does it every this many buffers, so the queue of recently
+    // recorded buffers does not grow without bounds.
+    private static final int INGESTED_BUFFERS_PER_PLOT = 64;
+
+    @Param({ "480", "1280" })
+    public int plotWidth;
+    // Is the plot centered on a played buffer that is not among the most
+    // recently recorded ones?
+    @Param({ "false", "true" })
+    public boolean centeredOnPlayedBuffer;
+    private LevelTrace trace;
+    private AudioEventCollector audioEventCollector;
+    private int nextAudioBufferId;
+
+    @Setup
+    public void setUp() throws Exception {
+        trace = LevelTrace.load(LevelTrace.QUIET_ROOM_SENTENCES);
+        audioEventCollector = new AudioEventCollector(new NoOpAudioEventListener());
+        audioEventCollector.recordingStarted();
+        for (nextAudioBufferId = 0; nextAudioBufferId < AudioEventCollector.HISTORY_SIZE;
+        ++nextAudioBufferId) {
+            audioEventCollector.audioBufferRecorded(nextAudioBufferId, nextSoundLevel());
+        }
+        audioEventCollector.recordingStopped();
+        if (centeredOnPlayedBuffer) {
+            audioEventCollector.playingStarted();
+            audioEventCollector.audioBufferPlayed(AudioEventCollector.HISTORY_SIZE / 2,
+                    trace.getSoundLevel(0));
+            audioEventCollector.playingStopped();
+        }
+        audioEventCollector.getIteratorOverAudioEventsToPlot(plotWidth);
+    }
+
+    @Benchmark
+    public double iterateOverAudioEventsToPlot() {
+        double sum = 0.0;
+        final Iterator<AudioBufferInfo> iterator =
+            audioEventCollector.getIteratorOverAudioEventsToPlot(plotWidth);
+        for (int i = 0; i < plotWidth && iterator.hasNext(); ++i) {
+            final AudioBufferInfo audioBufferInfo = iterator.next();
+            if (audioBufferInfo.isPlayed()) {
+                sum -= audioBufferInfo.getSoundLevel();
+            } else {
+                sum += audioBufferInfo.getSoundLevel();
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int audioBufferRecorded() {
+        if (centeredOnPlayedBuffer) {
+            // Recording resets played buffers.
+            audioEventCollector.recordingStarted();
+        }
+        final int audioBufferId = nextAudioBufferId++;
+        audioEventCollector.audioBufferRecorded(audioBufferId, nextSoundLevel());
+        if (audioBufferId % INGESTED_BUFFERS_PER_PLOT == 0) {
+            audioEventCollector.getIteratorOverAudioEventsToPlot(plotWidth);
+        }
+        return audioBufferId;
+    }
+
+    private double nextSoundLevel() {
+        return trace.getSoundLevel(nextAudioBufferId % trace.length());
+    }
+
+    private static class NoOpAudioEventListener implements AudioEventListener {
+        @Override
+        public void audioBufferPlayed(int audioBufferId, double soundLevel) {
+        }
+
+        @Override
+        public void audioBufferRecorded(int audioBufferId, double soundLevel) {
+        }
+
+        @Override
+        public void audioBufferRecordingFailed() {
+        }
+
+        @Override
+        public void playingStarted() {
+        }
+
+        @Override
+        public void playingStopped() {
+        }
+
+        @Override
+        public void recordingStarted() {
+        }
+
+        @Override
+        public void recordingStopped() {
+        }
+    }
+}
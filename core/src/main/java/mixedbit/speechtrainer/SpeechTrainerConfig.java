@@ -0,0 +1,81 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer;
+
+/**
+ * Speech Trainer global configuration parameters.
+ */
+public class SpeechTrainerConfig {
+    // The only rate that is guaranteed to work for recording and playing on all
+    // devices.
+    public static final int SAMPLE_RATE_HZ = 44100;
+
+    // The memory required for audio data is SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS
+    // * 2 * NUMBER_OF_AUDIO_BUFFERS = ~6MB. The maximum time of recording is
+    // SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS * NUMBER_OF_AUDIO_BUFFERS /
+    // SAMPLE_RATE_HZ seconds = ~68 seconds. Should be more than enough for
+    // the speech training purposes.
+    public static final int SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS = 1000;
+    public static final int NUMBER_OF_AUDIO_BUFFERS = 3000;
+
+    // Maximum number of audio events waiting to be passed from the audio
+    // thread to the UI thread. Recording produces about 44 events per second,
+    // so the UI thread would need to be blocked for minutes for the events to
+    // be dropped. Must be a power of two.
+    public static final int AUDIO_EVENT_BUS_CAPACITY = 8192;
+
+    // Number of the most recent audio buffer lifecycle events kept by the
+    // BufferTrace. Each recorded and played buffer produces about five events,
+    // so the trace covers more than a minute of training. Must be a power of
+    // two.
+    public static final int BUFFER_TRACE_CAPACITY = 16384;
+
+    // Number of recorded audio buffers that can wait to be written to a WAV
+    // file by the WavSessionExporter, about three seconds of sound. If the
+    // disk is slower for longer, buffers are dropped from the export.
+    public static final int WAV_EXPORT_QUEUE_CAPACITY_IN_BUFFERS = 128;
+
+    // Number of the most recent audio buffers with silence that are played in
+    // front of an utterance in the automatic training mode, about 110ms. Soft
+    // starts of words (fricatives, aspirated stops) are often below the
+    // silence level and would be clipped without them.
+    public static final int PRE_ROLL_BUFFERS = 5;
+
+    // Length of fades applied at the beginning and at the end of utterances
+    // played in the automatic training mode, about 5ms. Prevents clicks when
+    // playing starts and stops in the middle of a waveform.
+    public static final int FADE_LENGTH_IN_SHORTS = 220;
+
+    // Interval between display frames. The plot of sound levels is never
+    // redrawn more often than once per frame.
+    public static final int DISPLAY_FRAME_INTERVAL_MS = 16;
+    // Limits of plot redraws per second in a normal and in a battery saving
+    // mode.
+    public static final int MAX_REDRAWS_PER_SECOND = 60;
+    public static final int BATTERY_SAVING_MAX_REDRAWS_PER_SECOND = 15;
+    // Should the plot of sound levels be drawn on a separate render thread
+    // (AudioEventSurfaceView) instead of the UI thread (AudioEventView)?
+    public static final boolean DRAW_PLOT_ON_RENDER_THREAD = false;
+
+    // Approximate number of audio buffers needed to store a second of sound.
+    public static int numberOfBuffersPerSecond() {
+        return SAMPLE_RATE_HZ / SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,160 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mixedbit.speechtrainer.Assertions;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+import mixedbit.speechtrainer.controller.RecordPlayTaskManager.RecordPlayTaskState;
+import mixedbit.speechtrainer.metrics.BufferTrace;
+import mixedbit.speechtrainer.metrics.BufferTrace.Event;
+
+/**
+ * Replays a session saved in the session library. Nothing is recorded, the
+ * started training plays the session from the current position until the end
+ * or until the training is stopped, so startTraining and stopTraining act as
+ * play and pause.
+ *
+ * Audio data is read from an ArchivedSessionSource, a single audio buffer at a
+ * time: the buffer is allocated, filled from the source, written to the player
+ * and released. The session is never loaded to the AudioBufferAllocator, so
+ * sessions longer than all audio buffers can be replayed.
+ */
+public class ArchivedSessionController implements TrainingController, RecordPlayStrategy {
+    private static final int NO_SEEK = -1;
+    private final RecordPlayTaskManager recordPlayTaskManager;
+    private final AudioBufferAllocator audioBufferAllocator;
+    private final ArchivedSessionSource source;
+    private final BufferTrace bufferTrace;
+    // Position requested by seekToBuffer, applied by the playing task before
+    // the next buffer is played.
+    private final AtomicInteger requestedBufferIndex = new AtomicInteger(NO_SEEK);
+    // Position of the next buffer to play, updated by the playing task.
+    private volatile int nextBufferIndex = 0;
+
+    ArchivedSessionController(RecordPlayTaskManager recordPlayTaskManager,
+            AudioBufferAllocator audioBufferAllocator, ArchivedSessionSource source) {
+        this.recordPlayTaskManager = recordPlayTaskManager;
+        this.audioBufferAllocator = audioBufferAllocator;
+        this.source = source;
+        this.bufferTrace = audioBufferAllocator.getBufferTrace();
+    }
+
+    /**
+     * Starts playing from the current position or, if the whole session was
+     * played, from the start.
+     * 
+     * @see mixedbit.speechtrainer.controller.TrainingController#startTraining()
+     */
+    @Override
+    public void startTraining() {
+        recordPlayTaskManager.terminateTaskIfRunning();
+        // Sanity check to make sure audio buffers do not leak.
+        audioBufferAllocator.assertAllAudioBuffersAvailable();
+        applyRequestedSeek();
+        if (source.getNextBufferIndex() == source.getBuffersCount()) {
+            source.seekToBuffer(0);
+        }
+        nextBufferIndex = source.getNextBufferIndex();
+        recordPlayTaskManager.startTask(RecordPlayTaskState.PLAY, this);
+    }
+
+    /**
+     * Stops playing, the current position is kept.
+     * 
+     * @see mixedbit.speechtrainer.controller.TrainingController#stopTraining()
+     */
+    @Override
+    public void stopTraining() {
+        recordPlayTaskManager.terminateTaskIfRunning();
+    }
+
+    /**
+     * Moves the position from which the session is played. Takes effect
+     * before the next buffer is played or, if playing is stopped, when it is
+     * started. Can be called from any thread.
+     * 
+     * @param bufferIndex
+     *            Position of a buffer in the session (also the position of
+     *            its sound level in the SessionLevels).
+     */
+    public void seekToBuffer(int bufferIndex) {
+        Assertions.check(bufferIndex >= 0);
+        requestedBufferIndex.set(bufferIndex);
+    }
+
+    /**
+     * @return Position of the next buffer to be played. Can be called from
+     *         any thread.
+     */
+    public int getNextBufferIndex() {
+        final int requested = requestedBufferIndex.get();
+        if (requested != NO_SEEK) {
+            return Math.min(requested, source.getBuffersCount());
+        }
+        return nextBufferIndex;
+    }
+
+    public int getBuffersCount() {
+        return source.getBuffersCount();
+    }
+
+    @Override
+    public RecordPlayTaskState handleRecord(Recorder recorder) {
+        // Tasks are always started in the PLAY state and never switched to
+        // RECORD.
+        Assertions.check(false);
+        return RecordPlayTaskState.TERMINATE;
+    }
+
+    /**
+     * Plays the next buffer of the session. Requests playing to terminate
+     * when the whole session was played.
+     * 
+     * @see mixedbit.speechtrainer.controller.RecordPlayStrategy#handlePlay(mixedbit.speechtrainer.controller.Player)
+     */
+    @Override
+    public RecordPlayTaskState handlePlay(Player player) {
+        applyRequestedSeek();
+        final AudioBuffer audioBuffer = audioBufferAllocator.allocateAudioBuffer();
+        if (audioBuffer == null) {
+            return RecordPlayTaskState.TERMINATE;
+        }
+        try {
+            if (!source.readAudioBuffer(audioBuffer)) {
+                return RecordPlayTaskState.TERMINATE;
+            }
+            nextBufferIndex = source.getNextBufferIndex();
+            player.writeAudioBuffer(audioBuffer);
+            bufferTrace.record(audioBuffer.getAudioBufferId(), Event.PLAYED);
+            return RecordPlayTaskState.PLAY;
+        } finally {
+            audioBufferAllocator.releaseAudioBuffer(audioBuffer);
+        }
+    }
+
+    private void applyRequestedSeek() {
+        final int bufferIndex = requestedBufferIndex.getAndSet(NO_SEEK);
+        if (bufferIndex != NO_SEEK) {
+            source.seekToBuffer(bufferIndex);
+            nextBufferIndex = source.getNextBufferIndex();
+        }
+    }
+}
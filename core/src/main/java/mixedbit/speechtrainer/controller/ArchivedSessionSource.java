@@ -0,0 +1,154 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+
+/**
+ * Recorder that, instead of recording, reads audio data of a session saved by
+ * the WavSessionExporter. The data is memory mapped, so a session of any
+ * length can be read without loading it to the heap, and each read copies
+ * samples of a single buffer directly from the mapping to the audio buffer.
+ *
+ * The exporter writes whole recorded buffers (and silence in place of buffers
+ * it dropped), so the session is read in buffers of the recording size. A
+ * buffer is identified by its position in the session, which is also the
+ * position of its sound level in the SessionLevels. The offset of a buffer in
+ * the file is computed from the position, so reading can continue from any
+ * buffer in constant time.
+ *
+ * The source must be used by a single thread at a time.
+ */
+final class ArchivedSessionSource implements Recorder {
+    private static final int WAV_HEADER_SIZE_IN_BYTES = 44;
+    private static final int BYTES_PER_SAMPLE = 2;
+    private final ShortBuffer samples;
+    private final int bufferSizeInShorts;
+    private final int buffersCount;
+    private int nextBufferIndex = 0;
+
+    /**
+     * Maps audio data of a given WAV file (16 bit mono PCM written by the
+     * WavSessionExporter). If the sizes in the header were not set, because
+     * the export was interrupted, all data that follows the header is mapped.
+     * 
+     * @throws IOException
+     *             if the file can not be mapped or is not in the expected
+     *             format.
+     */
+    public ArchivedSessionSource(File wavFile, int bufferSizeInShorts) throws IOException {
+        this.bufferSizeInShorts = bufferSizeInShorts;
+        final RandomAccessFile file = new RandomAccessFile(wavFile, "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_SIZE_IN_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("WAV header too short.");
+                }
+            }
+            checkHeader(header);
+            long dataSizeInBytes = header.getInt(WAV_HEADER_SIZE_IN_BYTES - 4) & 0xffffffffL;
+            final long availableSizeInBytes = channel.size() - WAV_HEADER_SIZE_IN_BYTES;
+            if (dataSizeInBytes == 0 || dataSizeInBytes > availableSizeInBytes) {
+                dataSizeInBytes = availableSizeInBytes;
+            }
+            dataSizeInBytes -= dataSizeInBytes % BYTES_PER_SAMPLE;
+            // The mapping stays valid after the file is closed.
+            samples = channel.map(FileChannel.MapMode.READ_ONLY, WAV_HEADER_SIZE_IN_BYTES,
+                    dataSizeInBytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        } finally {
+            file.close();
+        }
+        buffersCount = (samples.capacity() + bufferSizeInShorts - 1) / bufferSizeInShorts;
+    }
+
+    /**
+     * @return Number of buffers in the session, the last one can be shorter
+     *         than others.
+     */
+    public int getBuffersCount() {
+        return buffersCount;
+    }
+
+    /**
+     * @return Position of a buffer that will be returned by the next
+     *         readAudioBuffer call, equal to getBuffersCount() if all buffers
+     *         were read.
+     */
+    public int getNextBufferIndex() {
+        return nextBufferIndex;
+    }
+
+    /**
+     * Makes the next readAudioBuffer call return a buffer at a given position.
+     * Positions outside of the session are moved to the first or past the last
+     * buffer.
+     */
+    public void seekToBuffer(int bufferIndex) {
+        nextBufferIndex = Math.max(0, Math.min(bufferIndex, buffersCount));
+    }
+
+    @Override
+    public void startRecording() {
+    }
+
+    /**
+     * Copies samples of the next buffer of the session to a given audio
+     * buffer.
+     * 
+     * @return false if all buffers were already read.
+     */
+    @Override
+    public boolean readAudioBuffer(AudioBuffer audioBuffer) {
+        if (nextBufferIndex >= buffersCount) {
+            return false;
+        }
+        final int offset = nextBufferIndex * bufferSizeInShorts;
+        final int length = Math.min(bufferSizeInShorts, samples.capacity() - offset);
+        samples.position(offset);
+        samples.get(audioBuffer.getAudioData(), 0, length);
+        audioBuffer.audioDataStored(length);
+        ++nextBufferIndex;
+        return true;
+    }
+
+    @Override
+    public void stopRecording() {
+    }
+
+    private static void checkHeader(ByteBuffer header) throws IOException {
+        // RIFF, WAVE and fmt chunk with PCM format, one channel, 16 bits per
+        // sample.
+        if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157
+                || header.getShort(20) != 1 || header.getShort(22) != 1
+                || header.getShort(34) != 8 * BYTES_PER_SAMPLE) {
+            throw new IOException("Not a 16 bit mono PCM WAV file.");
+        }
+    }
+}
@@ -18,21 +18,31 @@
 
 package mixedbit.speechtrainer.controller;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
-
 import mixedbit.speechtrainer.Assertions;
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.metrics.BufferTrace;
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
+import mixedbit.speechtrainer.metrics.BufferTrace.Event;
 
 /**
  * Keeps a fixed pool of buffers for audio samples. Allocates memory for the
  * buffers once and then reuses the buffers. This decreases allocation and
  * garbage collection overhead and guarantees that memory usage is bounded. The
- * class is thread safe.
+ * class is thread safe. Available buffers are kept on a preallocated stack, so
+ * allocating and releasing a buffer does not allocate any memory.
+ *
+ * The allocator owns a BufferTrace of lifecycle events of its buffers. It
+ * traces allocations and releases, users of the buffers trace other events.
+ * The number of buffers in use and allocation failures are counted in a
+ * MetricsRegistry.
  */
 class AudioBufferAllocator {
     /**
      * Buffer for audio samples with additional information about samples
      * (number of samples, combined sound level of all samples kept in the
-     * buffer). This class in not thread safe.
+     * buffer). Players play only a range of the samples, by default all stored
+     * samples, but the range can be trimmed to drop part of the buffer with a
+     * sample accuracy. This class in not thread safe.
      */
     final class AudioBuffer {
         private static final int DECIBEL_MULTIPLIER = 10;
@@ -41,6 +51,10 @@ class AudioBufferAllocator {
         private BufferState bufferState;
         private final short[] audioData;
         private int audioDataLengthInShorts;
+        // Samples in the [playedAudioDataStart, playedAudioDataEnd) range are
+        // played.
+        private int playedAudioDataStart;
+        private int playedAudioDataEnd;
         private double soundLevel;
         private int audioBufferId;
 
@@ -73,9 +87,54 @@ class AudioBufferAllocator {
             "Audio data length too long.");
             checkStateIs(BufferState.ALLOCATED);
             this.audioDataLengthInShorts = audioDataLengthInShorts;
+            this.playedAudioDataStart = 0;
+            this.playedAudioDataEnd = audioDataLengthInShorts;
             computeSoundLevel();
         }
 
+        /**
+         * Limits samples that are played to a given range. Samples outside of
+         * the range are kept, the sound level is not changed. The range is
+         * reset when audioDataStored is called.
+         * 
+         * @param start
+         *            Position of the first played sample.
+         * @param end
+         *            Position after the last played sample, can not be larger
+         *            than the length of the stored audio data.
+         */
+        public void trimPlayedAudioData(int start, int end) {
+            checkStateIs(BufferState.ALLOCATED);
+            Assertions.illegalStateIfFalse(0 <= start && start <= end
+                    && end <= audioDataLengthInShorts, "Played range out of audio data.");
+            this.playedAudioDataStart = start;
+            this.playedAudioDataEnd = end;
+        }
+
+        /**
+         * @return Position of the first sample that should be played.
+         */
+        public int getPlayedAudioDataStart() {
+            checkStateIs(BufferState.ALLOCATED);
+            return playedAudioDataStart;
+        }
+
+        /**
+         * @return Position after the last sample that should be played.
+         */
+        public int getPlayedAudioDataEnd() {
+            checkStateIs(BufferState.ALLOCATED);
+            return playedAudioDataEnd;
+        }
+
+        /**
+         * @return Number of samples that should be played.
+         */
+        public int getPlayedAudioDataLengthInShorts() {
+            checkStateIs(BufferState.ALLOCATED);
+            return playedAudioDataEnd - playedAudioDataStart;
+        }
+
         /**
          * @return Unique id of the allocated buffer. The id is guaranteed to
          *         increase for buffers returned by subsequent
@@ -143,9 +202,16 @@ class AudioBufferAllocator {
         AVAILABLE, ALLOCATED
     }
 
-    ConcurrentLinkedQueue<AudioBuffer> availableBuffers;
+    // Stack of available buffers, the top of the stack is at
+    // availableBuffersCount - 1. Guarded by this.
+    private final AudioBuffer[] availableBuffers;
+    private int availableBuffersCount;
     private final int numberOfBuffers;
     private int nextAudioBufferId = 0;
+    private final BufferTrace bufferTrace =
+        new BufferTrace(SpeechTrainerConfig.BUFFER_TRACE_CAPACITY);
+    private final MetricsRegistry.Gauge buffersInUse;
+    private final MetricsRegistry.Counter allocationFailures;
 
     /**
      * All audio buffers are allocated during the construction of
@@ -155,11 +221,23 @@ class AudioBufferAllocator {
      * @param singleBufferSize
      */
     public AudioBufferAllocator(int numberOfBuffers, int singleBufferSize) {
+        this(numberOfBuffers, singleBufferSize, new MetricsRegistry());
+    }
+
+    /**
+     * @param metricsRegistry
+     *            Registry in which usage of the buffers is counted.
+     */
+    public AudioBufferAllocator(int numberOfBuffers, int singleBufferSize,
+            MetricsRegistry metricsRegistry) {
         this.numberOfBuffers = numberOfBuffers;
-        availableBuffers = new ConcurrentLinkedQueue<AudioBuffer>();
+        buffersInUse = metricsRegistry.gauge("allocator.buffers_in_use");
+        allocationFailures = metricsRegistry.counter("allocator.allocation_failures");
+        availableBuffers = new AudioBuffer[numberOfBuffers];
         for (int i = 0; i < numberOfBuffers; ++i) {
-            availableBuffers.add(new AudioBuffer(singleBufferSize));
+            availableBuffers[i] = new AudioBuffer(singleBufferSize);
         }
+        availableBuffersCount = numberOfBuffers;
     }
 
     /**
@@ -170,12 +248,19 @@ class AudioBufferAllocator {
      * @return AudioBuffer with empty audio data that can be initialized and
      *         used by the caller, null if there are no buffers available.
      */
-    public AudioBuffer allocateAudioBuffer() {
-        final AudioBuffer buffer = availableBuffers.poll();
-        if (buffer != null) {
+    public synchronized AudioBuffer allocateAudioBuffer() {
+        AudioBuffer buffer = null;
+        if (availableBuffersCount > 0) {
+            --availableBuffersCount;
+            buffer = availableBuffers[availableBuffersCount];
+            availableBuffers[availableBuffersCount] = null;
             buffer.setAudioBufferId(nextAudioBufferId);
             ++nextAudioBufferId;
             buffer.changeStateTo(BufferState.ALLOCATED);
+            bufferTrace.record(buffer.getAudioBufferId(), Event.ALLOCATED);
+            buffersInUse.add(1);
+        } else {
+            allocationFailures.increment();
         }
         return buffer;
     }
@@ -185,12 +270,30 @@ class AudioBufferAllocator {
      * to the {@link AudioBufferAllocator} and can not use the buffer anymore.
      * Calling any method on a released buffer is forbidden.
      */
-    public void releaseAudioBuffer(AudioBuffer audioBuffer) {
+    public synchronized void releaseAudioBuffer(AudioBuffer audioBuffer) {
         audioBuffer.checkStateIs(BufferState.ALLOCATED);
+        bufferTrace.record(audioBuffer.getAudioBufferId(), Event.RELEASED);
         // Clear audio data of the released buffer.
         audioBuffer.audioDataStored(0);
         audioBuffer.changeStateTo(BufferState.AVAILABLE);
-        availableBuffers.add(audioBuffer);
+        availableBuffers[availableBuffersCount] = audioBuffer;
+        ++availableBuffersCount;
+        buffersInUse.add(-1);
+    }
+
+    /**
+     * @return Number of buffers in the pool (allocated and available).
+     */
+    public int getNumberOfBuffers() {
+        return numberOfBuffers;
+    }
+
+    /**
+     * @return Trace of lifecycle events of buffers from this allocator
+     *         (disabled by default).
+     */
+    public BufferTrace getBufferTrace() {
+        return bufferTrace;
     }
 
     /**
@@ -198,7 +301,7 @@ class AudioBufferAllocator {
      * should be released and available for allocation. Helps to ensure audio
      * buffers do not leak.
      */
-    public void assertAllAudioBuffersAvailable() {
-        Assertions.check(this.numberOfBuffers == availableBuffers.size());
+    public synchronized void assertAllAudioBuffersAvailable() {
+        Assertions.check(this.numberOfBuffers == availableBuffersCount);
     }
 }
@@ -0,0 +1,137 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import mixedbit.speechtrainer.Assertions;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+
+/**
+ * Recorded audio buffers in the recording order. Backed by an array that is
+ * allocated once, so appending a buffer does not allocate. Appending,
+ * truncating and accessing a buffer at any position take constant time, which
+ * allows playing to start from any position of the recording.
+ * 
+ * The timeline only holds references, releasing buffers to the
+ * AudioBufferAllocator is the responsibility of a caller. The timeline is not
+ * thread safe.
+ */
+final class AudioBufferTimeline {
+    private final AudioBuffer[] buffers;
+    private int size = 0;
+
+    /**
+     * @param capacity
+     *            Maximum number of buffers in the timeline. Because all
+     *            buffers come from an AudioBufferAllocator, the number of
+     *            buffers in the allocator is sufficient.
+     */
+    public AudioBufferTimeline(int capacity) {
+        buffers = new AudioBuffer[capacity];
+    }
+
+    /**
+     * Appends a buffer at the end of the timeline.
+     */
+    public void append(AudioBuffer audioBuffer) {
+        Assertions.check(size < buffers.length);
+        buffers[size] = audioBuffer;
+        ++size;
+    }
+
+    /**
+     * @return A buffer at a given position, 0 is the first recorded buffer.
+     */
+    public AudioBuffer get(int index) {
+        Assertions.check(index >= 0 && index < size);
+        return buffers[index];
+    }
+
+    /**
+     * Finds a position of a buffer with a given id. Ids of buffers appended to
+     * the timeline must increase. When ids of the buffers are consecutive (no
+     * buffer was skipped during recording), the position is computed in
+     * constant time, otherwise it is found with a binary search.
+     * 
+     * @return Position of a buffer with a given id or -1 if the buffer is not
+     *         in the timeline.
+     */
+    public int indexOfAudioBufferId(int audioBufferId) {
+        if (size == 0) {
+            return -1;
+        }
+        final int firstAudioBufferId = buffers[0].getAudioBufferId();
+        final int expectedIndex = audioBufferId - firstAudioBufferId;
+        if (expectedIndex < 0) {
+            return -1;
+        }
+        if (expectedIndex < size && buffers[expectedIndex].getAudioBufferId() == audioBufferId) {
+            return expectedIndex;
+        }
+        int low = 0;
+        int high = Math.min(expectedIndex, size - 1);
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int middleAudioBufferId = buffers[middle].getAudioBufferId();
+            if (middleAudioBufferId < audioBufferId) {
+                low = middle + 1;
+            } else if (middleAudioBufferId > audioBufferId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Number of buffers in the timeline.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes buffers from the end of the timeline, so only newSize first
+     * buffers remain. References above the new size are not cleared, they
+     * point to buffers owned by the allocator and are overwritten by the
+     * following appends.
+     */
+    public void truncate(int newSize) {
+        Assertions.check(newSize >= 0 && newSize <= size);
+        size = newSize;
+    }
+
+    /**
+     * Removes buffers from the beginning of the timeline, the remaining buffers
+     * are moved to the front. Takes time proportional to the number of the
+     * remaining buffers.
+     */
+    public void removeFirst(int count) {
+        Assertions.check(count >= 0 && count <= size);
+        System.arraycopy(buffers, count, buffers, 0, size - count);
+        size -= count;
+    }
+
+    /**
+     * Removes all buffers from the timeline.
+     */
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+/**
+ * Source of monotonic time used to check if recording and playing keep up with
+ * real time. Tests replace the SYSTEM clock with a clock that is advanced
+ * manually.
+ */
+interface AudioClock {
+    /**
+     * Clock backed by System.nanoTime().
+     */
+    public static final AudioClock SYSTEM = new AudioClock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * @return Current time in nanoseconds, only differences between returned
+     *         values are meaningful.
+     */
+    public long nanoTime();
+}
@@ -0,0 +1,274 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
+
+/**
+ * Detects when recording or playing does not keep up with real time. Wraps a
+ * Recorder and a Player and compares wall clock time that passed with the
+ * number of samples read and written.
+ *
+ * Overrun: the microphone produces samples at a constant rate. If samples are
+ * not read fast enough, the input buffer of the recorder fills up and samples
+ * are silently lost. The watchdog estimates the number of samples waiting in
+ * the input buffer and counts an overrun when the estimate exceeds the buffer
+ * size.
+ *
+ * Underrun: the speaker consumes samples at a constant rate. If samples are
+ * not written fast enough, the output buffer of the player becomes empty and
+ * playing is interrupted. The watchdog estimates the number of samples waiting
+ * in the output buffer and counts an underrun when the estimate drops below
+ * zero.
+ *
+ * A sample rate of the audio hardware can slightly differ from the nominal
+ * rate, so the estimates are synchronized each time reading or writing blocks:
+ * a blocking read means the input buffer was empty, a blocking write means the
+ * output buffer was full. After a deadline miss is detected, the estimates are
+ * synchronized again, so a single stall is counted once.
+ *
+ * Overruns and underruns are counted in a MetricsRegistry. Wrapped recorder and
+ * player must be used by a single thread. Counters and the listener can be
+ * accessed from any thread.
+ */
+public class AudioDeadlineWatchdog {
+
+    /**
+     * Informed about detected deadline misses. Methods are called by the
+     * thread that records and plays audio.
+     */
+    public interface Listener {
+        public void overrunDetected();
+
+        public void underrunDetected();
+    }
+
+    private static final long NANOS_IN_SECOND = 1000000000L;
+
+    private final AudioClock clock;
+    private final int sampleRateHz;
+    private final int toleranceInShorts;
+    private final MetricsRegistry.Counter overrunsCount;
+    private final MetricsRegistry.Counter underrunsCount;
+    private volatile Listener listener;
+
+    /**
+     * @param sampleRateHz
+     *            Rate at which audio data is recorded and played.
+     * @param toleranceInShorts
+     *            Number of samples by which the estimates can be off before a
+     *            deadline miss is reported. Should not be smaller than a
+     *            single audio buffer, because reading and writing are done in
+     *            audio buffer units.
+     * @param metricsRegistry
+     *            Registry in which overruns and underruns are counted.
+     */
+    public AudioDeadlineWatchdog(int sampleRateHz, int toleranceInShorts,
+            MetricsRegistry metricsRegistry) {
+        this(AudioClock.SYSTEM, sampleRateHz, toleranceInShorts, metricsRegistry);
+    }
+
+    AudioDeadlineWatchdog(AudioClock clock, int sampleRateHz, int toleranceInShorts) {
+        this(clock, sampleRateHz, toleranceInShorts, new MetricsRegistry());
+    }
+
+    AudioDeadlineWatchdog(AudioClock clock, int sampleRateHz, int toleranceInShorts,
+            MetricsRegistry metricsRegistry) {
+        overrunsCount = metricsRegistry.counter("audio.overruns");
+        underrunsCount = metricsRegistry.counter("audio.underruns");
+        this.clock = clock;
+        this.sampleRateHz = sampleRateHz;
+        this.toleranceInShorts = toleranceInShorts;
+    }
+
+    /**
+     * @param listener
+     *            Listener to be informed about deadline misses or null.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return Number of detected recorder overruns.
+     */
+    public long getOverrunsCount() {
+        return overrunsCount.get();
+    }
+
+    /**
+     * @return Number of detected player underruns.
+     */
+    public long getUnderrunsCount() {
+        return underrunsCount.get();
+    }
+
+    /**
+     * @param recorder
+     *            Recorder to be checked for overruns.
+     * @param inputBufferSizeInShorts
+     *            Size of the input buffer of the recorder.
+     * @return Recorder that delegates to the given recorder.
+     */
+    Recorder watchRecorder(Recorder recorder, int inputBufferSizeInShorts) {
+        return new WatchedRecorder(recorder, inputBufferSizeInShorts);
+    }
+
+    /**
+     * @param player
+     *            Player to be checked for underruns.
+     * @param outputBufferSizeInShorts
+     *            Size of the output buffer of the player.
+     * @return Player that delegates to the given player.
+     */
+    Player watchPlayer(Player player, int outputBufferSizeInShorts) {
+        return new WatchedPlayer(player, outputBufferSizeInShorts);
+    }
+
+    private long nanosToShorts(long nanos) {
+        return nanos * sampleRateHz / NANOS_IN_SECOND;
+    }
+
+    /**
+     * Did an operation on a given number of samples take long enough to
+     * conclude that it blocked, waiting for the audio hardware?
+     */
+    private boolean blocked(long operationNanos, int lengthInShorts) {
+        return nanosToShorts(operationNanos) * 2 >= lengthInShorts;
+    }
+
+    private void overrunDetected() {
+        overrunsCount.increment();
+        final Listener currentListener = listener;
+        if (currentListener != null) {
+            currentListener.overrunDetected();
+        }
+    }
+
+    private void underrunDetected() {
+        underrunsCount.increment();
+        final Listener currentListener = listener;
+        if (currentListener != null) {
+            currentListener.underrunDetected();
+        }
+    }
+
+    private class WatchedRecorder implements Recorder {
+        private final Recorder recorder;
+        private final int inputBufferSizeInShorts;
+        // Time at which the input buffer was known to be empty and the number
+        // of samples read since then.
+        private long syncNanos;
+        private long shortsReadSinceSync;
+
+        public WatchedRecorder(Recorder recorder, int inputBufferSizeInShorts) {
+            this.recorder = recorder;
+            this.inputBufferSizeInShorts = inputBufferSizeInShorts;
+        }
+
+        @Override
+        public void startRecording() {
+            recorder.startRecording();
+            synchronize(clock.nanoTime());
+        }
+
+        @Override
+        public boolean readAudioBuffer(AudioBuffer audioBuffer) {
+            final long readStartNanos = clock.nanoTime();
+            if (!recorder.readAudioBuffer(audioBuffer)) {
+                return false;
+            }
+            final long nowNanos = clock.nanoTime();
+            final int readLength = audioBuffer.getAudioDataLengthInShorts();
+            if (blocked(nowNanos - readStartNanos, readLength)) {
+                synchronize(nowNanos);
+                return true;
+            }
+            shortsReadSinceSync += readLength;
+            final long waitingShorts = nanosToShorts(nowNanos - syncNanos) - shortsReadSinceSync;
+            if (waitingShorts > inputBufferSizeInShorts + toleranceInShorts) {
+                overrunDetected();
+                synchronize(nowNanos);
+            }
+            return true;
+        }
+
+        @Override
+        public void stopRecording() {
+            recorder.stopRecording();
+        }
+
+        private void synchronize(long nowNanos) {
+            syncNanos = nowNanos;
+            shortsReadSinceSync = 0;
+        }
+    }
+
+    private class WatchedPlayer implements Player {
+        private final Player player;
+        private final int outputBufferSizeInShorts;
+        // Time at which the number of samples waiting in the output buffer
+        // was known, that number and the number of samples written since then.
+        private long syncNanos;
+        private long shortsWaitingAtSync;
+        private long shortsWrittenSinceSync;
+
+        public WatchedPlayer(Player player, int outputBufferSizeInShorts) {
+            this.player = player;
+            this.outputBufferSizeInShorts = outputBufferSizeInShorts;
+        }
+
+        @Override
+        public void startPlaying() {
+            player.startPlaying();
+            synchronize(clock.nanoTime(), 0);
+        }
+
+        @Override
+        public void writeAudioBuffer(AudioBuffer audioBuffer) {
+            final long writeStartNanos = clock.nanoTime();
+            final long waitingShorts = shortsWaitingAtSync + shortsWrittenSinceSync
+            - nanosToShorts(writeStartNanos - syncNanos);
+            if (waitingShorts < -toleranceInShorts) {
+                underrunDetected();
+                synchronize(writeStartNanos, 0);
+            }
+            player.writeAudioBuffer(audioBuffer);
+            final long nowNanos = clock.nanoTime();
+            final int writtenLength = audioBuffer.getPlayedAudioDataLengthInShorts();
+            if (blocked(nowNanos - writeStartNanos, writtenLength)) {
+                synchronize(nowNanos, outputBufferSizeInShorts);
+            } else {
+                shortsWrittenSinceSync += writtenLength;
+            }
+        }
+
+        @Override
+        public void stopPlaying() {
+            player.stopPlaying();
+        }
+
+        private void synchronize(long nowNanos, long shortsWaiting) {
+            syncNanos = nowNanos;
+            shortsWaitingAtSync = shortsWaiting;
+            shortsWrittenSinceSync = 0;
+        }
+    }
+}
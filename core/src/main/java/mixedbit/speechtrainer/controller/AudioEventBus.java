@@ -0,0 +1,222 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mixedbit.speechtrainer.Assertions;
+
+/**
+ * Passes audio events from the thread that records and plays audio to a
+ * listener that runs on a different thread (in production code the UI thread).
+ *
+ * Events are written to a preallocated ring, so passing an event does not
+ * allocate memory, does not take locks and never blocks the audio thread. The
+ * listener thread is requested to dispatch events only when the ring changes
+ * from empty to non empty, and it then dispatches all pending events in a
+ * single batch.
+ *
+ * The bus supports a single thread that passes events (the RecordPlayTask
+ * thread) and a single thread that dispatches them (the thread of the given
+ * executor). If the listener thread is too slow and the ring is full, new
+ * per buffer events (recorded, played and recording failed) are dropped and
+ * counted.
+ *
+ * Lifecycle events (recording and playing started and stopped) are not
+ * dropped when per buffer events are: a quarter of the ring is reserved for
+ * them. Listeners rely on these events to track the state (a buffer recorded
+ * without recordingStarted is an error), while a missing buffer only leaves a
+ * gap in the plot. The reserve is exhausted only if the listener thread does
+ * not run for a quarter of the capacity of lifecycle events (four per record
+ * and play cycle), in which case lifecycle events are dropped and counted as
+ * well.
+ */
+public class AudioEventBus implements AudioEventListener {
+    private static final int RECORDING_STARTED = 0;
+    private static final int AUDIO_BUFFER_RECORDED = 1;
+    private static final int AUDIO_BUFFER_RECORDING_FAILED = 2;
+    private static final int RECORDING_STOPPED = 3;
+    private static final int PLAYING_STARTED = 4;
+    private static final int AUDIO_BUFFER_PLAYED = 5;
+    private static final int PLAYING_STOPPED = 6;
+
+    private final AudioEventListener listener;
+    private final Executor dispatchExecutor;
+    private final Runnable dispatchTask = new Runnable() {
+        @Override
+        public void run() {
+            dispatchPendingEvents();
+        }
+    };
+
+    // The ring, an event with sequence number n is kept at the index n & mask.
+    private final int[] eventTypes;
+    private final int[] audioBufferIds;
+    private final double[] soundLevels;
+    private final int capacity;
+    private final int mask;
+    // Number of ring slots that per buffer events can use, the rest is
+    // reserved for lifecycle events.
+    private final int perBufferEventsCapacity;
+    // Sequence number of the next event to be written. Modified only by the
+    // audio thread.
+    private volatile long writeSequence = 0;
+    // Sequence number of the next event to be dispatched. Modified only by the
+    // listener thread.
+    private volatile long readSequence = 0;
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean(false);
+    private final AtomicLong droppedEventsCount = new AtomicLong();
+
+    /**
+     * @param listener
+     *            Listener to which events are dispatched.
+     * @param dispatchExecutor
+     *            Executor of the listener thread.
+     * @param capacity
+     *            Maximum number of events that can wait for dispatch. Must be
+     *            a power of two.
+     */
+    public AudioEventBus(AudioEventListener listener, Executor dispatchExecutor, int capacity) {
+        Assertions.check(capacity > 0 && (capacity & (capacity - 1)) == 0);
+        this.listener = listener;
+        this.dispatchExecutor = dispatchExecutor;
+        this.capacity = capacity;
+        mask = capacity - 1;
+        perBufferEventsCapacity = capacity - Math.max(1, capacity / 4);
+        eventTypes = new int[capacity];
+        audioBufferIds = new int[capacity];
+        soundLevels = new double[capacity];
+    }
+
+    @Override
+    public void recordingStarted() {
+        publish(RECORDING_STARTED, 0, 0.0, capacity);
+    }
+
+    @Override
+    public void audioBufferRecorded(int audioBufferId, double soundLevel) {
+        publish(AUDIO_BUFFER_RECORDED, audioBufferId, soundLevel, perBufferEventsCapacity);
+    }
+
+    @Override
+    public void audioBufferRecordingFailed() {
+        publish(AUDIO_BUFFER_RECORDING_FAILED, 0, 0.0, perBufferEventsCapacity);
+    }
+
+    @Override
+    public void recordingStopped() {
+        publish(RECORDING_STOPPED, 0, 0.0, capacity);
+    }
+
+    @Override
+    public void playingStarted() {
+        publish(PLAYING_STARTED, 0, 0.0, capacity);
+    }
+
+    @Override
+    public void audioBufferPlayed(int audioBufferId, double soundLevel) {
+        publish(AUDIO_BUFFER_PLAYED, audioBufferId, soundLevel, perBufferEventsCapacity);
+    }
+
+    @Override
+    public void playingStopped() {
+        publish(PLAYING_STOPPED, 0, 0.0, capacity);
+    }
+
+    /**
+     * Dispatches all events that are waiting in the ring. Must be called by
+     * the listener thread. Is called automatically by the dispatch executor,
+     * but the listener thread can call it directly when it needs all events
+     * passed so far to be dispatched (for instance after the training is
+     * stopped and before the history of events is cleared).
+     */
+    public void dispatchPendingEvents() {
+        // Cleared before reading the ring, so events written after this point
+        // schedule a new dispatch.
+        dispatchScheduled.set(false);
+        long sequence = readSequence;
+        final long lastWrittenSequence = writeSequence;
+        while (sequence < lastWrittenSequence) {
+            final int index = (int) (sequence & mask);
+            dispatch(eventTypes[index], audioBufferIds[index], soundLevels[index]);
+            ++sequence;
+            readSequence = sequence;
+        }
+    }
+
+    /**
+     * @return Number of events that were dropped because the ring (or its
+     *         part available to the event) was full.
+     */
+    public long getDroppedEventsCount() {
+        return droppedEventsCount.get();
+    }
+
+    /**
+     * @param availableCapacity
+     *            Number of ring slots that the event can use.
+     */
+    private void publish(int eventType, int audioBufferId, double soundLevel,
+            int availableCapacity) {
+        final long sequence = writeSequence;
+        if (sequence - readSequence >= availableCapacity) {
+            droppedEventsCount.incrementAndGet();
+            return;
+        }
+        final int index = (int) (sequence & mask);
+        eventTypes[index] = eventType;
+        audioBufferIds[index] = audioBufferId;
+        soundLevels[index] = soundLevel;
+        // Volatile write, makes the event visible to the listener thread.
+        writeSequence = sequence + 1;
+        if (dispatchScheduled.compareAndSet(false, true)) {
+            dispatchExecutor.execute(dispatchTask);
+        }
+    }
+
+    private void dispatch(int eventType, int audioBufferId, double soundLevel) {
+        switch (eventType) {
+            case RECORDING_STARTED:
+                listener.recordingStarted();
+                break;
+            case AUDIO_BUFFER_RECORDED:
+                listener.audioBufferRecorded(audioBufferId, soundLevel);
+                break;
+            case AUDIO_BUFFER_RECORDING_FAILED:
+                listener.audioBufferRecordingFailed();
+                break;
+            case RECORDING_STOPPED:
+                listener.recordingStopped();
+                break;
+            case PLAYING_STARTED:
+                listener.playingStarted();
+                break;
+            case AUDIO_BUFFER_PLAYED:
+                listener.audioBufferPlayed(audioBufferId, soundLevel);
+                break;
+            case PLAYING_STOPPED:
+                listener.playingStopped();
+                break;
+            default:
+                Assertions.check(false);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+/**
+ * Raises priority of the thread that records and plays audio. Changing thread
+ * priority is platform specific, the Android implementation
+ * (AndroidAudioThreadPriority) is in the app module. Tests and tools that run
+ * outside of Android use UNCHANGED.
+ */
+interface AudioThreadPriority {
+    /**
+     * Leaves the priority of the thread unchanged.
+     */
+    public static final AudioThreadPriority UNCHANGED = new AudioThreadPriority() {
+        @Override
+        public void raiseCurrentThreadPriority() {
+        }
+    };
+
+    /**
+     * Raises priority of the calling thread to a level suitable for recording
+     * and playing audio.
+     */
+    public void raiseCurrentThreadPriority();
+}
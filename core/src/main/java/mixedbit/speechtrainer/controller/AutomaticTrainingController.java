@@ -0,0 +1,285 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import mixedbit.speechtrainer.Assertions;
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+import mixedbit.speechtrainer.controller.RecordPlayTaskManager.RecordPlayTaskState;
+import mixedbit.speechtrainer.controller.SilenceFilter.FilterResult;
+import mixedbit.speechtrainer.metrics.BufferTrace;
+import mixedbit.speechtrainer.metrics.BufferTrace.Event;
+import mixedbit.speechtrainer.metrics.LatencyRecorder;
+
+
+/**
+ * Automatically switches between recording and playing. Starts in a recording
+ * state. Records until a SilenceFilter detects that meaningful and complete
+ * audio data of considerable length was recorded. Plays recorded data that was
+ * not rejected by the SilenceFilter and switches to recording again.
+ *
+ * When the SilenceFilter rejects buffers, the most recent of them are kept as a
+ * pre-roll and played in front of the next utterance, so the soft start of the
+ * utterance that was below the silence level is not clipped. The pre-roll
+ * buffers stay in the recorded buffers timeline, nothing is copied.
+ *
+ * Trailing silence is dropped with a sample accuracy, the last played buffer
+ * can be played only partially. Short raised-cosine fades are applied in place
+ * to the beginning of the first and to the end of the last played buffer, so
+ * playing does not start and stop with a click.
+ *
+ * If a NoiseFloorStore is given, the noise floor learned by the SilenceFilter
+ * is saved when the training is stopped and restored when it is started, so
+ * the silence level is known from the first recorded buffer.
+ *
+ * Played utterances are reported to an UtteranceListener.
+ */
+public class AutomaticTrainingController implements TrainingController, RecordPlayStrategy {
+    private final AudioBufferAllocator audioBufferAllocator;
+    // Buffers recorded since the last playback. Buffers before
+    // nextBufferToPlayIndex were already played and released.
+    private final AudioBufferTimeline recordedBuffers;
+    private int nextBufferToPlayIndex = 0;
+    // Number of the most recent rejected buffers kept as a pre-roll.
+    private int preRollBuffersCount = SpeechTrainerConfig.PRE_ROLL_BUFFERS;
+    private final SilenceFilter silenceFilter;
+    // Passes recorded buffers to the silence filter and detects utterances.
+    private final UtteranceSegmenter utteranceSegmenter;
+    private final RecordPlayTaskManager recordPlayTaskManager;
+    private final LatencyRecorder latencyRecorder;
+    private final BufferTrace bufferTrace;
+    // Null if the noise floor is not kept between sessions.
+    private final NoiseFloorStore noiseFloorStore;
+
+    public AutomaticTrainingController(RecordPlayTaskManager recordPlayTaskManager,
+            SilenceFilter silenceFilter, AudioBufferAllocator audioBufferAllocator) {
+        this(recordPlayTaskManager, silenceFilter, audioBufferAllocator, new LatencyRecorder());
+    }
+
+    public AutomaticTrainingController(RecordPlayTaskManager recordPlayTaskManager,
+            SilenceFilter silenceFilter, AudioBufferAllocator audioBufferAllocator,
+            LatencyRecorder latencyRecorder) {
+        this(recordPlayTaskManager, silenceFilter, audioBufferAllocator, latencyRecorder, null);
+    }
+
+    /**
+     * @param latencyRecorder
+     *            Receives timestamps of recorded and played buffers and of
+     *            the decisions to play. Does nothing when disabled.
+     * @param noiseFloorStore
+     *            Keeps the noise floor between sessions, can be null.
+     */
+    public AutomaticTrainingController(RecordPlayTaskManager recordPlayTaskManager,
+            SilenceFilter silenceFilter, AudioBufferAllocator audioBufferAllocator,
+            LatencyRecorder latencyRecorder, NoiseFloorStore noiseFloorStore) {
+        this.audioBufferAllocator = audioBufferAllocator;
+        this.recordedBuffers = new AudioBufferTimeline(audioBufferAllocator.getNumberOfBuffers());
+        this.silenceFilter = silenceFilter;
+        // Accepted buffers are held by the controller until played, so the
+        // segmenter does not allocate before all buffers are used.
+        this.utteranceSegmenter = new UtteranceSegmenter(silenceFilter,
+                audioBufferAllocator.getNumberOfBuffers());
+        this.recordPlayTaskManager = recordPlayTaskManager;
+        this.latencyRecorder = latencyRecorder;
+        this.bufferTrace = audioBufferAllocator.getBufferTrace();
+        this.noiseFloorStore = noiseFloorStore;
+    }
+
+    /**
+     * Sets the number of the most recent buffers rejected by the SilenceFilter
+     * that are played in front of the next utterance. Can be called only when
+     * the training is stopped.
+     */
+    public void setPreRollBuffersCount(int preRollBuffersCount) {
+        Assertions.check(preRollBuffersCount >= 0);
+        this.preRollBuffersCount = preRollBuffersCount;
+    }
+
+    /**
+     * Sets a listener that is informed about each utterance that is played.
+     * The listener is called by the thread that records. Can be called only
+     * when the training is stopped.
+     * 
+     * @param utteranceListener
+     *            Listener or null if utterances are not needed.
+     */
+    public void setUtteranceListener(UtteranceListener utteranceListener) {
+        utteranceSegmenter.setUtteranceListener(utteranceListener);
+    }
+
+    /**
+     * Automatic training controller starts recording when the training is
+     * started. A stored noise floor that is not stale is restored before
+     * recording starts.
+     * 
+     * @see mixedbit.speechtrainer.controller.TrainingController#startTraining()
+     */
+    @Override
+    public void startTraining() {
+        audioBufferAllocator.assertAllAudioBuffersAvailable();
+        if (noiseFloorStore != null) {
+            NoiseFloorSnapshot snapshot = noiseFloorStore.load();
+            if (snapshot != null && snapshot.isStale(System.currentTimeMillis())) {
+                snapshot = null;
+            }
+            silenceFilter.restoreNoiseFloor(snapshot);
+        }
+        utteranceSegmenter.reset();
+        recordPlayTaskManager.startTask(RecordPlayTaskState.RECORD, this);
+    }
+
+    /**
+     * Stops a currently running task and releases all recorded audio data.
+     * Saves the noise floor learned during the session.
+     * 
+     * @see mixedbit.speechtrainer.controller.TrainingController#stopTraining()
+     */
+    @Override
+    public void stopTraining() {
+        recordPlayTaskManager.terminateTaskIfRunning();
+        releaseRecordedBuffers();
+        if (noiseFloorStore != null) {
+            final NoiseFloorSnapshot snapshot = silenceFilter.takeNoiseFloorSnapshot(System
+                    .currentTimeMillis());
+            if (snapshot != null) {
+                noiseFloorStore.save(snapshot);
+            }
+        }
+    }
+
+    /**
+     * Records an audio buffer. Switches to playing if there are no more audio
+     * buffers available. Terminates if recording of an audio buffer failed.
+     * Passes parameters of the newly recorded buffer to the silence filter.
+     * Depending on an action returned by the filter saves or rejects the buffer
+     * and continues recording or switches to playing.
+     * 
+     * @see mixedbit.speechtrainer.controller.RecordPlayStrategy#handleRecord(mixedbit.speechtrainer.controller.Recorder)
+     */
+    @Override
+    public RecordPlayTaskState handleRecord(Recorder recorder) {
+        final AudioBuffer audioBuffer = audioBufferAllocator.allocateAudioBuffer();
+        if (audioBuffer == null) {
+            // No more audio buffers, play all recorded data to free memory.
+            return RecordPlayTaskState.PLAY;
+        }
+        if (!recorder.readAudioBuffer(audioBuffer)) {
+            bufferTrace.record(audioBuffer.getAudioBufferId(), Event.RECORDING_FAILED);
+            audioBufferAllocator.releaseAudioBuffer(audioBuffer);
+            return RecordPlayTaskState.TERMINATE;
+        }
+        bufferTrace.record(audioBuffer.getAudioBufferId(), Event.RECORDED);
+        latencyRecorder.audioBufferCaptured(audioBuffer.getAudioBufferId());
+        recordedBuffers.append(audioBuffer);
+        final FilterResult filterResult = utteranceSegmenter.filterRecorderBuffer(audioBuffer
+                .getAudioBufferId(), audioBuffer.getSoundLevel(), audioBuffer
+                .getAudioDataLengthInShorts());
+        switch (filterResult.getAction()) {
+            case ACCEPT_BUFFER:
+                bufferTrace.record(audioBuffer.getAudioBufferId(), Event.FILTER_ACCEPT_BUFFER);
+                break;
+            case DROP_TRAILING_BUFFERS_AND_PLAY:
+                bufferTrace.record(audioBuffer.getAudioBufferId(),
+                        Event.FILTER_DROP_TRAILING_BUFFERS_AND_PLAY);
+                latencyRecorder.playbackDecided(audioBuffer.getAudioBufferId()
+                        - filterResult.getNumberOfTrailingSilenceBuffers());
+                int buffersToKeep = recordedBuffers.size()
+                - filterResult.getNumberOfTrailingBuffersToDrop();
+                final int shortsToPlay =
+                    filterResult.getNumberOfShortsToPlayFromFirstDroppedBuffer();
+                if (shortsToPlay > 0) {
+                    // Play the beginning of the first dropped buffer.
+                    recordedBuffers.get(buffersToKeep).trimPlayedAudioData(0, shortsToPlay);
+                    ++buffersToKeep;
+                }
+                for (int i = buffersToKeep; i < recordedBuffers.size(); ++i) {
+                    dropBuffer(recordedBuffers.get(i));
+                }
+                recordedBuffers.truncate(buffersToKeep);
+                return RecordPlayTaskState.PLAY;
+            case DROP_ALL_ACCEPTED_BUFFERS:
+                bufferTrace.record(audioBuffer.getAudioBufferId(),
+                        Event.FILTER_DROP_ALL_ACCEPTED_BUFFERS);
+                releaseRecordedBuffersExceptPreRoll();
+                break;
+        }
+        return RecordPlayTaskState.RECORD;
+    }
+
+    /**
+     * Plays the next audio buffer. Requests recording to start if there are no
+     * more buffers to play, otherwise requests playing to continue. Releases
+     * each played buffer. Fades in the first and fades out the last played
+     * buffer.
+     * 
+     * @see mixedbit.speechtrainer.controller.RecordPlayStrategy#handlePlay(mixedbit.speechtrainer.controller.Player)
+     */
+    @Override
+    public RecordPlayTaskState handlePlay(Player player) {
+        if (nextBufferToPlayIndex < recordedBuffers.size()) {
+            final AudioBuffer bufferToPlay = recordedBuffers.get(nextBufferToPlayIndex);
+            if (nextBufferToPlayIndex == 0) {
+                RaisedCosineFade.fadeIn(bufferToPlay.getAudioData(), bufferToPlay
+                        .getPlayedAudioDataStart(), bufferToPlay.getPlayedAudioDataEnd());
+            }
+            if (nextBufferToPlayIndex == recordedBuffers.size() - 1) {
+                RaisedCosineFade.fadeOut(bufferToPlay.getAudioData(), bufferToPlay
+                        .getPlayedAudioDataStart(), bufferToPlay.getPlayedAudioDataEnd());
+            }
+            ++nextBufferToPlayIndex;
+            player.writeAudioBuffer(bufferToPlay);
+            bufferTrace.record(bufferToPlay.getAudioBufferId(), Event.PLAYED);
+            latencyRecorder.audioBufferWritten(bufferToPlay.getAudioBufferId());
+            audioBufferAllocator.releaseAudioBuffer(bufferToPlay);
+            return RecordPlayTaskState.PLAY;
+        } else {
+            recordedBuffers.clear();
+            nextBufferToPlayIndex = 0;
+            return RecordPlayTaskState.RECORD;
+        }
+    }
+
+    /**
+     * Releases all recorded buffers that were not played.
+     */
+    private void releaseRecordedBuffers() {
+        for (int i = nextBufferToPlayIndex; i < recordedBuffers.size(); ++i) {
+            dropBuffer(recordedBuffers.get(i));
+        }
+        recordedBuffers.clear();
+        nextBufferToPlayIndex = 0;
+    }
+
+    /**
+     * Releases recorded buffers except of preRollBuffersCount most recent ones.
+     * Called only while recording, when no buffers were played.
+     */
+    private void releaseRecordedBuffersExceptPreRoll() {
+        final int buffersToRelease = Math.max(0, recordedBuffers.size() - preRollBuffersCount);
+        for (int i = 0; i < buffersToRelease; ++i) {
+            dropBuffer(recordedBuffers.get(i));
+        }
+        recordedBuffers.removeFirst(buffersToRelease);
+    }
+
+    private void dropBuffer(AudioBuffer audioBuffer) {
+        bufferTrace.record(audioBuffer.getAudioBufferId(), Event.DROPPED);
+        audioBufferAllocator.releaseAudioBuffer(audioBuffer);
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import mixedbit.speechtrainer.Assertions;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+import mixedbit.speechtrainer.controller.RecordPlayTaskManager.RecordPlayTaskState;
+import mixedbit.speechtrainer.metrics.BufferTrace;
+import mixedbit.speechtrainer.metrics.BufferTrace.Event;
+
+
+/**
+ * Controls the training session according to commands that come from the user
+ * (play and record).
+ */
+public class InteractiveTrainingController implements TrainingController, RecordPlayStrategy {
+    // Value of loopLastIndex when recorded data is not played in a loop.
+    private static final int NO_LOOP = -1;
+    private final RecordPlayTaskManager recordPlayTaskManager;
+    private final AudioBufferAllocator audioBufferAllocator;
+    // Buffers recorded since the last record() call.
+    private final AudioBufferTimeline recordedBuffers;
+    // Written by play() and loop() before a playing task is started, read by
+    // the task.
+    private int nextBufferToPlayIndex = 0;
+    private int loopFirstIndex = 0;
+    private int loopLastIndex = NO_LOOP;
+    private final BufferTrace bufferTrace;
+
+    public InteractiveTrainingController(RecordPlayTaskManager recordPlayTaskManager,
+            AudioBufferAllocator audioBufferAllocator) {
+        this.audioBufferAllocator = audioBufferAllocator;
+        this.recordedBuffers = new AudioBufferTimeline(audioBufferAllocator.getNumberOfBuffers());
+        this.recordPlayTaskManager = recordPlayTaskManager;
+        this.bufferTrace = audioBufferAllocator.getBufferTrace();
+    }
+
+    /**
+     * Interactive training controller does nothing when the training is
+     * started. It waits for a user to start recording.
+     * 
+     * @see mixedbit.speechtrainer.controller.TrainingController#startTraining()
+     */
+    @Override
+    public void startTraining() {
+        // Sanity check to make sure audio buffers do not leak.
+        audioBufferAllocator.assertAllAudioBuffersAvailable();
+    }
+
+    /**
+     * Stops a currently running task (if any) and releases all recorded audio
+     * data.
+     * 
+     * @see mixedbit.speechtrainer.controller.TrainingController#stopTraining()
+     */
+    @Override
+    public void stopTraining() {
+        recordPlayTaskManager.terminateTaskIfRunning();
+        releaseRecordedBuffers();
+    }
+
+    /**
+     * Stops a currently running task (if any), releases all already recorded
+     * audio data and starts a new background task to record audio. The
+     * recording task is terminated when play(), record() or stopTraining() are
+     * called or when there are no more AudioBuffers available to hold recorded
+     * data.
+     */
+    public void record() {
+        recordPlayTaskManager.terminateTaskIfRunning();
+        releaseRecordedBuffers();
+        audioBufferAllocator.assertAllAudioBuffersAvailable();
+        recordPlayTaskManager.startTask(RecordPlayTaskState.RECORD, this);
+    }
+
+    /**
+     * Stops a currently running task (if any), and starts a new background task
+     * to play recorded data. play can be called multiple times to replay the
+     * same recorded data. The playing task is terminated when play(), record()
+     * or stopTraining() are called or when all recorded data is played.
+     */
+    public void play() {
+        play(0);
+    }
+
+    /**
+     * Like play(), but starts playing from a given recorded buffer. Buffers
+     * are kept in an AudioBufferTimeline, so starting from any position takes
+     * constant time.
+     * 
+     * @param fromIndex
+     *            Position of the first buffer to play, 0 is the first recorded
+     *            buffer. If the position is not smaller than the number of
+     *            recorded buffers, nothing is played.
+     */
+    public void play(int fromIndex) {
+        Assertions.check(fromIndex >= 0);
+        recordPlayTaskManager.terminateTaskIfRunning();
+        startPlayingTask(fromIndex, NO_LOOP);
+    }
+
+    /**
+     * Like play(), but starts playing from a recorded buffer with a given id
+     * (for example a buffer selected on the plot of sound levels). If the
+     * buffer is not a part of the recorded data, plays all recorded data.
+     */
+    public void playFromAudioBuffer(int audioBufferId) {
+        recordPlayTaskManager.terminateTaskIfRunning();
+        final int fromIndex = recordedBuffers.indexOfAudioBufferId(audioBufferId);
+        startPlayingTask(Math.max(fromIndex, 0), NO_LOOP);
+    }
+
+    /**
+     * Stops a currently running task (if any), and starts a new background task
+     * to play recorded buffers between two given buffers (inclusive) in a loop.
+     * Playing continues from the first buffer directly after the last buffer is
+     * written to the player, so there is no gap between repetitions. The loop
+     * is terminated when play(), record(), loop() or stopTraining() are
+     * called.
+     * 
+     * @param firstAudioBufferId
+     *            Id of one end of the loop.
+     * @param lastAudioBufferId
+     *            Id of another end of the loop, can be smaller than
+     *            firstAudioBufferId. Ends that are outside of the recorded
+     *            data are moved to the first or the last recorded buffer. If
+     *            no recorded buffer is between the ends, all recorded data is
+     *            played once.
+     */
+    public void loop(int firstAudioBufferId, int lastAudioBufferId) {
+        recordPlayTaskManager.terminateTaskIfRunning();
+        if (recordedBuffers.size() == 0) {
+            startPlayingTask(0, NO_LOOP);
+            return;
+        }
+        final int firstRecordedAudioBufferId = recordedBuffers.get(0).getAudioBufferId();
+        final int lastRecordedAudioBufferId = recordedBuffers.get(recordedBuffers.size() - 1)
+        .getAudioBufferId();
+        final int fromIndex = recordedBuffers.indexOfAudioBufferId(Math.max(
+                Math.min(firstAudioBufferId, lastAudioBufferId), firstRecordedAudioBufferId));
+        final int toIndex = recordedBuffers.indexOfAudioBufferId(Math.min(
+                Math.max(firstAudioBufferId, lastAudioBufferId), lastRecordedAudioBufferId));
+        if (fromIndex < 0 || toIndex < fromIndex) {
+            startPlayingTask(0, NO_LOOP);
+            return;
+        }
+        loopFirstIndex = fromIndex;
+        startPlayingTask(fromIndex, toIndex);
+    }
+
+    /**
+     * @return Number of buffers recorded since the last record() call. Must
+     *         not be called while a recording task is running.
+     */
+    public int getRecordedBuffersCount() {
+        return recordedBuffers.size();
+    }
+
+    /**
+     * Records and saves an audio buffer. Requests recording to terminate if
+     * there are no more audio buffers available or if recording failed.
+     * Otherwise requests recording to continue.
+     * 
+     * @see mixedbit.speechtrainer.controller.RecordPlayStrategy#handleRecord(mixedbit.speechtrainer.controller.Recorder)
+     */
+    @Override
+    public RecordPlayTaskState handleRecord(Recorder recorder) {
+        final AudioBuffer audioBuffer = audioBufferAllocator.allocateAudioBuffer();
+        if (audioBuffer == null) {
+            return RecordPlayTaskState.TERMINATE;
+        }
+        if (!recorder.readAudioBuffer(audioBuffer)) {
+            bufferTrace.record(audioBuffer.getAudioBufferId(), Event.RECORDING_FAILED);
+            audioBufferAllocator.releaseAudioBuffer(audioBuffer);
+            return RecordPlayTaskState.TERMINATE;
+        }
+        bufferTrace.record(audioBuffer.getAudioBufferId(), Event.RECORDED);
+        recordedBuffers.append(audioBuffer);
+        return RecordPlayTaskState.RECORD;
+    }
+
+    /**
+     * Plays the next audio buffer. Requests playing to terminate if there are
+     * no more buffers to play, otherwise requests playing to continue. When
+     * playing in a loop, the first buffer of the loop is played after the
+     * last one and playing continues until the task is terminated.
+     * 
+     * @see mixedbit.speechtrainer.controller.RecordPlayStrategy#handlePlay(mixedbit.speechtrainer.controller.Player)
+     */
+    @Override
+    public RecordPlayTaskState handlePlay(Player player) {
+        if (loopLastIndex != NO_LOOP && nextBufferToPlayIndex > loopLastIndex) {
+            // The task stays in the PLAY state, so the player is not stopped
+            // and the first buffer of the loop directly follows the last one.
+            nextBufferToPlayIndex = loopFirstIndex;
+        }
+        if (nextBufferToPlayIndex < recordedBuffers.size()) {
+            final AudioBuffer bufferToPlay = recordedBuffers.get(nextBufferToPlayIndex);
+            ++nextBufferToPlayIndex;
+            player.writeAudioBuffer(bufferToPlay);
+            bufferTrace.record(bufferToPlay.getAudioBufferId(), Event.PLAYED);
+            return RecordPlayTaskState.PLAY;
+        } else {
+            return RecordPlayTaskState.TERMINATE;
+        }
+    }
+
+    private void startPlayingTask(int fromIndex, int loopLastIndex) {
+        this.nextBufferToPlayIndex = fromIndex;
+        this.loopLastIndex = loopLastIndex;
+        recordPlayTaskManager.startTask(RecordPlayTaskState.PLAY, this);
+    }
+
+    private void releaseRecordedBuffers() {
+        for (int i = 0; i < recordedBuffers.size(); ++i) {
+            audioBufferAllocator.releaseAudioBuffer(recordedBuffers.get(i));
+        }
+        recordedBuffers.clear();
+    }
+}
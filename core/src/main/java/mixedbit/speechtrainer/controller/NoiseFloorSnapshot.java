@@ -0,0 +1,72 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+/**
+ * Noise floor learned by a SilenceLevelDetector during a training session.
+ * Allows the next session to start with the silence level of the previous
+ * one, instead of treating the first recorded buffer as silence and learning
+ * the room from scratch.
+ *
+ * Background noise changes over time, so a snapshot older than MAX_AGE_MS is
+ * stale and should not be restored.
+ */
+public final class NoiseFloorSnapshot {
+    public static final long MAX_AGE_MS = 60L * 60L * 1000L;
+    private final double noiseFloor;
+    private final int measurementsCount;
+    private final long takenAtMs;
+
+    /**
+     * @param noiseFloor
+     *            Mean sound level of recent buffers with silence.
+     * @param measurementsCount
+     *            Number of buffers with silence the mean was computed from.
+     * @param takenAtMs
+     *            Wall clock time at which the snapshot was taken.
+     */
+    public NoiseFloorSnapshot(double noiseFloor, int measurementsCount, long takenAtMs) {
+        this.noiseFloor = noiseFloor;
+        this.measurementsCount = measurementsCount;
+        this.takenAtMs = takenAtMs;
+    }
+
+    public double getNoiseFloor() {
+        return noiseFloor;
+    }
+
+    public int getMeasurementsCount() {
+        return measurementsCount;
+    }
+
+    public long getTakenAtMs() {
+        return takenAtMs;
+    }
+
+    /**
+     * @return True if the snapshot is too old to be restored at a given time,
+     *         was taken in the future (the clock was changed) or does not hold
+     *         a valid noise floor (for instance was corrupted in a storage).
+     */
+    public boolean isStale(long nowMs) {
+        final long ageMs = nowMs - takenAtMs;
+        return ageMs < 0 || ageMs > MAX_AGE_MS || measurementsCount <= 0
+        || Double.isNaN(noiseFloor) || Double.isInfinite(noiseFloor);
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+/**
+ * Keeps a noise floor between training sessions. The noise floor depends on
+ * the microphone in use, so the store should keep a separate snapshot for each
+ * audio route (built-in microphone, headset).
+ */
+public interface NoiseFloorStore {
+    /**
+     * @return Snapshot saved for the current audio route or null if there is
+     *         none.
+     */
+    public NoiseFloorSnapshot load();
+
+    /**
+     * Saves a snapshot for the audio route that was current when load was last
+     * called (the route can change during a session, but the snapshot describes
+     * the route with which the session started).
+     */
+    public void save(NoiseFloorSnapshot snapshot);
+}
@@ -0,0 +1,83 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+
+/**
+ * Applies raised-cosine (Hann window) fades in place to a range of audio
+ * samples. Gains are computed once for FADE_LENGTH_IN_SHORTS samples, so a
+ * fade costs a multiplication per faded sample and does not allocate. A range
+ * shorter than two fade lengths is faded over half of its length, so a fade-in
+ * and a fade-out of the same range never overlap.
+ */
+final class RaisedCosineFade {
+    // Gain of each sample of a fade-in, increasing from almost 0 to almost 1.
+    private static final float[] FADE_IN_GAINS =
+        createFadeInGains(SpeechTrainerConfig.FADE_LENGTH_IN_SHORTS);
+
+    private RaisedCosineFade() {
+    }
+
+    /**
+     * Fades in samples at the beginning of the [start, end) range.
+     */
+    public static void fadeIn(short[] audioData, int start, int end) {
+        final int fadeLength = fadeLength(start, end);
+        for (int i = 0; i < fadeLength; ++i) {
+            audioData[start + i] = applyGain(audioData[start + i], gain(i, fadeLength));
+        }
+    }
+
+    /**
+     * Fades out samples at the end of the [start, end) range.
+     */
+    public static void fadeOut(short[] audioData, int start, int end) {
+        final int fadeLength = fadeLength(start, end);
+        for (int i = 0; i < fadeLength; ++i) {
+            audioData[end - 1 - i] = applyGain(audioData[end - 1 - i], gain(i, fadeLength));
+        }
+    }
+
+    static int fadeLength(int start, int end) {
+        return Math.min(FADE_IN_GAINS.length, (end - start) / 2);
+    }
+
+    /**
+     * @return Gain of the i-th sample of a fade-in of a given length.
+     */
+    private static float gain(int i, int fadeLength) {
+        if (fadeLength == FADE_IN_GAINS.length) {
+            return FADE_IN_GAINS[i];
+        }
+        return FADE_IN_GAINS[(int) ((long) i * FADE_IN_GAINS.length / fadeLength)];
+    }
+
+    private static short applyGain(short sample, float gain) {
+        return (short) Math.round(sample * gain);
+    }
+
+    private static float[] createFadeInGains(int fadeLength) {
+        final float[] gains = new float[fadeLength];
+        for (int i = 0; i < fadeLength; ++i) {
+            gains[i] = (float) (0.5 * (1.0 - Math.cos(Math.PI * (i + 0.5) / fadeLength)));
+        }
+        return gains;
+    }
+}
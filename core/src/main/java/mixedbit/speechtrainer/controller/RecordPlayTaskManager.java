@@ -24,6 +24,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
 import mixedbit.speechtrainer.Assertions;
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
 
 /**
  * Strategy passed to the RecordPlayTask. Allows to customize how recording and
@@ -75,8 +76,11 @@ interface RecordPlayStrategy {
 /**
  * Starts and terminates RecordPlayTask using a provided executor service. Every
  * started task needs to be terminated before another task can be started.
+ * Switches between recording and playing and the time it takes a task to
+ * terminate are counted in a MetricsRegistry.
  */
 class RecordPlayTaskManager {
+    private static final double NANOS_IN_MILLI = 1000000.0;
 
     /**
      * State in which RecordPlayTask is. RECORD - the task is recording audio
@@ -87,17 +91,6 @@ class RecordPlayTaskManager {
         RECORD, PLAY, TERMINATE
     }
 
-    /**
-     * Should RecordPlayTask priority be increased. In production setup HIGH
-     * priority should be always used. Increasing the priority fails in the
-     * standard JUnit environment (it works only when JUnit tests are executed
-     * on an Android device or emulator which is slow and doesn't support
-     * mocking with EasyMock).
-     */
-    enum RecordPlayTaskPriority {
-        HIGH, TEST,
-    }
-
     private class RecordPlayTask implements Runnable {
         private RecordPlayTaskState recordPlayTaskState;
         private final RecordPlayStrategy recordPlayStrategy;
@@ -131,10 +124,7 @@ class RecordPlayTaskManager {
 
         @Override
         public void run() {
-            if (recordPlayTaskPriority == RecordPlayTaskPriority.HIGH) {
-                android.os.Process.setThreadPriority(
-                        android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
-            }
+            audioThreadPriority.raiseCurrentThreadPriority();
             startServiceNeededInState(recordPlayTaskState);
             while (!terminateRequested()) {
                 RecordPlayTaskState nextState = null;
@@ -161,6 +151,7 @@ class RecordPlayTaskManager {
          * (recorder or player) and starts a service needed in the new state.
          */
         private void switchState(RecordPlayTaskState newState) {
+            stateSwitches.increment();
             stopServiceNeededInState(recordPlayTaskState);
             startServiceNeededInState(newState);
             if (newState == RecordPlayTaskState.TERMINATE) {
@@ -198,26 +189,42 @@ class RecordPlayTaskManager {
 
     private final Recorder recorder;
     private final Player player;
-    // Currently running task or null if the task is not running.
-    private RecordPlayTask recordPlayTask;
+    // Currently running task or null if the task is not running. Volatile,
+    // because requestTaskTermination can be called from the task thread.
+    private volatile RecordPlayTask recordPlayTask;
     // Future associated with the currently running task.
     private Future<?> recordPlayTaskFuture;
     private final ExecutorService executor;
-    private final RecordPlayTaskPriority recordPlayTaskPriority;
+    private final AudioThreadPriority audioThreadPriority;
+    private final MetricsRegistry.Counter stateSwitches;
+    private final MetricsRegistry.HistogramMetric terminationLatencyNanos;
 
     /**
      * @param executor
      *            Executor service for executing RecordPlay tasks.
-     * @param recordPlayTaskPriority
-     *            HIGH for production code, LOW_USE_ONLY_FOR_TESTS for unit
-     *            tests.
+     * @param audioThreadPriority
+     *            Raises priority of the thread that executes RecordPlay
+     *            tasks.
      */
     public RecordPlayTaskManager(Recorder recorder, Player player, ExecutorService executor,
-            RecordPlayTaskPriority recordPlayTaskPriority) {
+            AudioThreadPriority audioThreadPriority) {
+        this(recorder, player, executor, audioThreadPriority, new MetricsRegistry());
+    }
+
+    /**
+     * @param metricsRegistry
+     *            Registry in which state switches and termination latency are
+     *            counted.
+     */
+    public RecordPlayTaskManager(Recorder recorder, Player player, ExecutorService executor,
+            AudioThreadPriority audioThreadPriority, MetricsRegistry metricsRegistry) {
+        stateSwitches = metricsRegistry.counter("record_play_task.state_switches");
+        terminationLatencyNanos = metricsRegistry.histogram(
+                "record_play_task.termination_latency_ms", NANOS_IN_MILLI);
         this.recorder = recorder;
         this.player = player;
         this.executor = executor;
-        this.recordPlayTaskPriority = recordPlayTaskPriority;
+        this.audioThreadPriority = audioThreadPriority;
     }
 
     /**
@@ -236,6 +243,19 @@ class RecordPlayTaskManager {
         recordPlayTaskFuture = this.executor.submit(recordPlayTask);
     }
 
+    /**
+     * Requests a running task to terminate but, unlike terminateTaskIfRunning,
+     * does not wait until the task exits. Can be called from any thread,
+     * including the thread that executes the task. terminateTaskIfRunning still
+     * needs to be called before a new task is started.
+     */
+    public void requestTaskTermination() {
+        final RecordPlayTask task = recordPlayTask;
+        if (task != null) {
+            task.requestTerminate();
+        }
+    }
+
     /**
      * Request a running task to terminate and waits until the task exits. Can
      * be called if the task already terminated or wasn't started.
@@ -244,6 +264,7 @@ class RecordPlayTaskManager {
         if (recordPlayTask == null) {
             return;
         }
+        final long terminationRequestedNanos = System.nanoTime();
         recordPlayTask.requestTerminate();
 
         boolean waitInterrupted = false;
@@ -257,6 +278,7 @@ class RecordPlayTaskManager {
             } catch (final CancellationException e) {
             }
         } while (waitInterrupted);
+        terminationLatencyNanos.record(System.nanoTime() - terminationRequestedNanos);
 
         recordPlayTask = null;
         recordPlayTaskFuture = null;
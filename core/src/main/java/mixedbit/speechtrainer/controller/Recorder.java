@@ -0,0 +1,54 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+
+/**
+ * Wrapper over AudioRecord that exposes minimal interface for recording
+ * AudioBuffers. Informs AudioEventListener about each executed action
+ * (recording started, audio buffer recorded, recording of audio buffer failed,
+ * recording stopped). As in case of the Player interface, this interface is
+ * extracted from the RecorderImpl to allow mocking with the EasyMock and to
+ * keep the core module independent of Android (RecorderImpl is in the app
+ * module).
+ */
+interface Recorder {
+
+    /**
+     * Starts recording. Calls to readAudioBuffer are allowed only after
+     * recording was started.
+     */
+    public abstract void startRecording();
+
+    /**
+     * Reads recorded audio buffer. Requires recording to be started
+     * (startRecording called). Can block until there is enough audio data
+     * recorded. Returns false if recording failed (this happens for instance
+     * when microphone is used by some other application).
+     */
+    public abstract boolean readAudioBuffer(AudioBuffer audioBuffer);
+
+    /**
+     * Stops recording. Recording can be started again with the startRecording
+     * method.
+     */
+    public abstract void stopRecording();
+
+}
@@ -0,0 +1,135 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.util.Locale;
+
+/**
+ * Parameters of the SilenceLevelDetector and the SilenceFilter. DEFAULTS are
+ * the parameters used by the application, equal to the constants of both
+ * classes. Other parameters are used to tune the detection offline, over
+ * recorded sessions.
+ */
+public final class SilenceDetectionParameters {
+    public static final SilenceDetectionParameters DEFAULTS = new SilenceDetectionParameters(
+            SilenceLevelDetector.SILENCE_LEAVE_MARGIN, SilenceLevelDetector.SILENCE_ENTER_MARGIN,
+            SilenceLevelDetector.SILENCE_HISTORY_LENGTH_S, SilenceFilter.LONG_SILENCE_INTERVAL_MS,
+            SilenceFilter.MIN_LENGTH_OF_MEANINGFUL_DATA_TO_PLAY_MS,
+            SilenceFilter.TRAILING_SILENCE_TO_DROP_MS);
+    private final double silenceLeaveMargin;
+    private final double silenceEnterMargin;
+    private final int silenceHistoryLengthS;
+    private final int longSilenceIntervalMs;
+    private final int minLengthOfMeaningfulDataToPlayMs;
+    private final int trailingSilenceToDropMs;
+
+    /**
+     * See the constants of the SilenceLevelDetector and the SilenceFilter with
+     * the same names for the meaning of the parameters.
+     * 
+     * @throws IllegalArgumentException
+     *             if a parameter is out of its range: margins must be
+     *             non-negative, the history at least a second long, the long
+     *             silence interval positive, other lengths non-negative.
+     */
+    public SilenceDetectionParameters(double silenceLeaveMargin, double silenceEnterMargin,
+            int silenceHistoryLengthS, int longSilenceIntervalMs,
+            int minLengthOfMeaningfulDataToPlayMs, int trailingSilenceToDropMs) {
+        if (!(silenceLeaveMargin >= 0.0) || !(silenceEnterMargin >= 0.0)
+                || silenceHistoryLengthS < 1 || longSilenceIntervalMs < 1
+                || minLengthOfMeaningfulDataToPlayMs < 0 || trailingSilenceToDropMs < 0) {
+            throw new IllegalArgumentException("Invalid silence detection parameters: "
+                    + format(silenceLeaveMargin, silenceEnterMargin, silenceHistoryLengthS,
+                            longSilenceIntervalMs, minLengthOfMeaningfulDataToPlayMs,
+                            trailingSilenceToDropMs));
+        }
+        this.silenceLeaveMargin = silenceLeaveMargin;
+        this.silenceEnterMargin = silenceEnterMargin;
+        this.silenceHistoryLengthS = silenceHistoryLengthS;
+        this.longSilenceIntervalMs = longSilenceIntervalMs;
+        this.minLengthOfMeaningfulDataToPlayMs = minLengthOfMeaningfulDataToPlayMs;
+        this.trailingSilenceToDropMs = trailingSilenceToDropMs;
+    }
+
+    public double getSilenceLeaveMargin() {
+        return silenceLeaveMargin;
+    }
+
+    public double getSilenceEnterMargin() {
+        return silenceEnterMargin;
+    }
+
+    public int getSilenceHistoryLengthS() {
+        return silenceHistoryLengthS;
+    }
+
+    public int getLongSilenceIntervalMs() {
+        return longSilenceIntervalMs;
+    }
+
+    public int getMinLengthOfMeaningfulDataToPlayMs() {
+        return minLengthOfMeaningfulDataToPlayMs;
+    }
+
+    public int getTrailingSilenceToDropMs() {
+        return trailingSilenceToDropMs;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof SilenceDetectionParameters)) {
+            return false;
+        }
+        final SilenceDetectionParameters parameters = (SilenceDetectionParameters) other;
+        return Double.compare(silenceLeaveMargin, parameters.silenceLeaveMargin) == 0
+        && Double.compare(silenceEnterMargin, parameters.silenceEnterMargin) == 0
+        && silenceHistoryLengthS == parameters.silenceHistoryLengthS
+        && longSilenceIntervalMs == parameters.longSilenceIntervalMs
+        && minLengthOfMeaningfulDataToPlayMs == parameters.minLengthOfMeaningfulDataToPlayMs
+        && trailingSilenceToDropMs == parameters.trailingSilenceToDropMs;
+    }
+
+    @Override
+    public int hashCode() {
+        final long leaveMarginBits = Double.doubleToLongBits(silenceLeaveMargin);
+        final long enterMarginBits = Double.doubleToLongBits(silenceEnterMargin);
+        int result = (int) (leaveMarginBits ^ (leaveMarginBits >>> 32));
+        result = 31 * result + (int) (enterMarginBits ^ (enterMarginBits >>> 32));
+        result = 31 * result + silenceHistoryLengthS;
+        result = 31 * result + longSilenceIntervalMs;
+        result = 31 * result + minLengthOfMeaningfulDataToPlayMs;
+        return 31 * result + trailingSilenceToDropMs;
+    }
+
+    @Override
+    public String toString() {
+        return format(silenceLeaveMargin, silenceEnterMargin, silenceHistoryLengthS,
+                longSilenceIntervalMs, minLengthOfMeaningfulDataToPlayMs, trailingSilenceToDropMs);
+    }
+
+    private static String format(double silenceLeaveMargin, double silenceEnterMargin,
+            int silenceHistoryLengthS, int longSilenceIntervalMs,
+            int minLengthOfMeaningfulDataToPlayMs, int trailingSilenceToDropMs) {
+        return String.format(Locale.US, "leave margin %.1f dB, enter margin %.1f dB, "
+                + "history %d s, long silence %d ms, min meaningful %d ms, "
+                + "trailing drop %d ms", silenceLeaveMargin, silenceEnterMargin,
+                silenceHistoryLengthS, longSilenceIntervalMs, minLengthOfMeaningfulDataToPlayMs,
+                trailingSilenceToDropMs);
+    }
+}
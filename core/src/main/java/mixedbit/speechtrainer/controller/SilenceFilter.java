@@ -0,0 +1,377 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import mixedbit.speechtrainer.Assertions;
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
+
+/**
+ * A stateful filter that detects complete chunks of meaningful audio data. The
+ * filtering strategy is following:
+ *
+ * -Drop the whole leading silence (Audio buffers below silence level that are
+ * not proceeded by any audio buffers above silence level).
+ *
+ * -Accept all buffers above silence level.
+ *
+ * -Accept short silence periods if these are proceeded by data above silence
+ * level (such short silence periods are for instance pauses between words in a
+ * sentence).
+ *
+ * -If a long period of silence is detected and already accepted buffers are
+ * long enough, play all accepted data, but drop a part of the trailing silence
+ * period. The part is dropped with a sample accuracy, the first of the dropped
+ * buffers can be dropped only partially. The part of the trailing silence is
+ * dropped to reduce a delay between player stopping playing meaningful audio
+ * data and recorder starting recording again. Dropping all trailing silence
+ * buffers does not work well, it terminates playing too abruptly.
+ *
+ * -If a long period of silence is detected but already accepted buffers are not
+ * long enough, all data is dropped. This rejects audio data above silence level
+ * that is too short to contain anything meaningful and worth playing.
+ *
+ * -Each time the filter requests recorded data to be rejected or played, the
+ * filter state is reset.
+ *
+ * The filter does not perform any action, it just informs the caller what
+ * action should be performed. Returned actions are counted in a
+ * MetricsRegistry.
+ *
+ * The lengths of silence and data are taken from SilenceDetectionParameters,
+ * the constants of this class are their default values.
+ */
+class SilenceFilter {
+    /**
+     * The action that the SilenceFilter user should perform after
+     * filterRecordedBuffer returns.
+     */
+    public enum Action {
+        // Accept the buffer.
+        ACCEPT_BUFFER,
+        // Drop all buffers accepted so far (including the buffer passed to the
+        // filterRecordedBuffer call that returned this action).
+        DROP_ALL_ACCEPTED_BUFFERS,
+        // Drop some number of trailing buffers and play all other accepted
+        // buffers. The number of buffers to drop is hold in the FilterResult.
+        DROP_TRAILING_BUFFERS_AND_PLAY,
+    }
+
+    /**
+     * The result of filterRecordedBuffer call. Wraps Action enum to include
+     * information how many buffers should be dropped when action is
+     * DROP_TRAILING_BUFFERS_AND_PLAY.
+     *
+     * The filter reuses its results, so filtering does not allocate. A result
+     * is valid until the next filterRecordedBuffer call.
+     */
+    public class FilterResult {
+        private final Action action;
+        private int numberOfTrailingBuffersToDrop;
+        private int numberOfTrailingSilenceBuffers;
+        private int numberOfShortsToPlayFromFirstDroppedBuffer;
+
+        FilterResult(Action action, int numberOfTrailingBuffersToDrop) {
+            this(action, numberOfTrailingBuffersToDrop, numberOfTrailingBuffersToDrop);
+        }
+
+        FilterResult(Action action, int numberOfTrailingBuffersToDrop,
+                int numberOfTrailingSilenceBuffers) {
+            this(action, numberOfTrailingBuffersToDrop, numberOfTrailingSilenceBuffers, 0);
+        }
+
+        FilterResult(Action action, int numberOfTrailingBuffersToDrop,
+                int numberOfTrailingSilenceBuffers, int numberOfShortsToPlayFromFirstDroppedBuffer) {
+            Assertions.check(action == Action.DROP_TRAILING_BUFFERS_AND_PLAY);
+            this.action = action;
+            setTrailingBuffers(numberOfTrailingBuffersToDrop, numberOfTrailingSilenceBuffers,
+                    numberOfShortsToPlayFromFirstDroppedBuffer);
+        }
+
+        FilterResult(Action action) {
+            Assertions.check(action != Action.DROP_TRAILING_BUFFERS_AND_PLAY);
+            this.action = action;
+            numberOfTrailingBuffersToDrop = 0;
+            numberOfTrailingSilenceBuffers = 0;
+            numberOfShortsToPlayFromFirstDroppedBuffer = 0;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        /**
+         * Can be called only when getAction() is
+         * DROP_TRAILING_BUFFERS_AND_PLAY. Returns how many buffers should be
+         * dropped. The number includes the buffer that was passed to the
+         * filterRecordedBuffer call that returned this FilterResult.
+         */
+        public int getNumberOfTrailingBuffersToDrop() {
+            Assertions.illegalStateIfFalse(action == Action.DROP_TRAILING_BUFFERS_AND_PLAY);
+            return numberOfTrailingBuffersToDrop;
+        }
+
+        /**
+         * Can be called only when getAction() is
+         * DROP_TRAILING_BUFFERS_AND_PLAY. Returns how many buffers of silence
+         * were recorded after the last buffer above the silence level
+         * (including the buffer that was passed to the filterRecordedBuffer
+         * call that returned this FilterResult). Not all of these buffers are
+         * dropped.
+         */
+        public int getNumberOfTrailingSilenceBuffers() {
+            Assertions.illegalStateIfFalse(action == Action.DROP_TRAILING_BUFFERS_AND_PLAY);
+            return numberOfTrailingSilenceBuffers;
+        }
+
+        /**
+         * Can be called only when getAction() is
+         * DROP_TRAILING_BUFFERS_AND_PLAY. Returns how many samples from the
+         * beginning of the first dropped buffer should still be played (the
+         * rest of the buffer and all the following buffers should be dropped).
+         */
+        public int getNumberOfShortsToPlayFromFirstDroppedBuffer() {
+            Assertions.illegalStateIfFalse(action == Action.DROP_TRAILING_BUFFERS_AND_PLAY);
+            return numberOfShortsToPlayFromFirstDroppedBuffer;
+        }
+
+        private FilterResult setTrailingBuffers(int numberOfTrailingBuffersToDrop,
+                int numberOfTrailingSilenceBuffers, int numberOfShortsToPlayFromFirstDroppedBuffer) {
+            Assertions.check(numberOfTrailingBuffersToDrop <= numberOfTrailingSilenceBuffers);
+            Assertions.check(numberOfShortsToPlayFromFirstDroppedBuffer == 0
+                    || numberOfTrailingBuffersToDrop > 0);
+            this.numberOfTrailingBuffersToDrop = numberOfTrailingBuffersToDrop;
+            this.numberOfTrailingSilenceBuffers = numberOfTrailingSilenceBuffers;
+            this.numberOfShortsToPlayFromFirstDroppedBuffer =
+                numberOfShortsToPlayFromFirstDroppedBuffer;
+            return this;
+        }
+    }
+
+    // When LONG_SILENCE_INTERVAL_MS of silence is detected and combined length
+    // of accepted data above silence level exceeds
+    // MIN_LENGTH_OF_MEANINGFUL_DATA_TO_PLAY_MS, the accepted data is
+    // played. Otherwise, the accepted data is dropped.
+    public static final int LONG_SILENCE_INTERVAL_MS = 200;
+    public static final int MIN_LENGTH_OF_MEANINGFUL_DATA_TO_PLAY_MS = 150;
+    // When accepted data is played, trailing buffers of combined length that is
+    // larger or equal to TRAILING_SILENCE_TO_DROP_MS are dropped. Samples of
+    // the first of these buffers that exceed TRAILING_SILENCE_TO_DROP_MS are
+    // played.
+    public static final int TRAILING_SILENCE_TO_DROP_MS = 20;
+    // Enough for LONG_SILENCE_INTERVAL_MS of standard size audio buffers.
+    private static final int INITIAL_SILENCE_BUFFERS_CAPACITY = 16;
+
+    private final SilenceLevelDetector silenceLevelDetector;
+    private final int longSilenceIntervalMs;
+    private final int minLengthOfMeaningfulDataToPlayMs;
+    private final int trailingSilenceToDropMs;
+    private final int trailingSilenceToDropInShorts;
+    // The combined length of all buffers above silence level since the last
+    // filter reset.
+    private long buffersAboveSilenceLevelCombinedLengthMicroS = 0;
+    // The combined length of recently detected silence. Each buffer above
+    // silence level resets this. It is reset also when the filter is reset.
+    private long recentSilenceCombinedLengthMicroS = 0;
+    // The length of each individual recent buffer with silence (a stack with
+    // the most recent buffer on top). Reset together with
+    // recentSilenceCombinedLengthMicros. The array grows if more buffers are
+    // needed, but is never shrunk, so in a steady state no memory is
+    // allocated.
+    private int[] recentSilenceBuffersLengthInShorts = new int[INITIAL_SILENCE_BUFFERS_CAPACITY];
+    private int recentSilenceBuffersCount = 0;
+    // Results of computeTrailingBuffersToDrop.
+    private int trailingBuffersToDrop;
+    private int shortsToPlayFromFirstDroppedBuffer;
+    // Results returned by the filter, reused to avoid allocations.
+    private final FilterResult acceptBufferResult = new FilterResult(Action.ACCEPT_BUFFER);
+    private final FilterResult dropAllAcceptedBuffersResult = new FilterResult(
+            Action.DROP_ALL_ACCEPTED_BUFFERS);
+    private final FilterResult dropTrailingBuffersAndPlayResult = new FilterResult(
+            Action.DROP_TRAILING_BUFFERS_AND_PLAY, 0, 0);
+    // Number of returned results, indexed by action ordinal.
+    private final MetricsRegistry.Counter[] actionCounters =
+        new MetricsRegistry.Counter[Action.values().length];
+
+    public SilenceFilter(SilenceLevelDetector silenceLevelDetector) {
+        this(silenceLevelDetector, new MetricsRegistry());
+    }
+
+    public SilenceFilter(SilenceLevelDetector silenceLevelDetector,
+            MetricsRegistry metricsRegistry) {
+        this(silenceLevelDetector, SilenceDetectionParameters.DEFAULTS, metricsRegistry);
+    }
+
+    /**
+     * @param parameters
+     *            Parameters of the filter, the detector should be created with
+     *            the same parameters.
+     */
+    public SilenceFilter(SilenceLevelDetector silenceLevelDetector,
+            SilenceDetectionParameters parameters, MetricsRegistry metricsRegistry) {
+        this.silenceLevelDetector = silenceLevelDetector;
+        longSilenceIntervalMs = parameters.getLongSilenceIntervalMs();
+        minLengthOfMeaningfulDataToPlayMs = parameters.getMinLengthOfMeaningfulDataToPlayMs();
+        trailingSilenceToDropMs = parameters.getTrailingSilenceToDropMs();
+        trailingSilenceToDropInShorts = trailingSilenceToDropMs
+        * SpeechTrainerConfig.SAMPLE_RATE_HZ / 1000;
+        for (final Action action : Action.values()) {
+            actionCounters[action.ordinal()] = metricsRegistry.counter("silence_filter."
+                    + action.name().toLowerCase());
+        }
+    }
+
+    /**
+     * Resets the state of the filter. The state is also reset automatically
+     * when filterRecorderBuffer returns DROP_ALL_ACCEPTED_BUFFERS, or
+     * DROP_TRAILING_BUFFERS_AND_PLAY,
+     */
+    public void reset() {
+        buffersAboveSilenceLevelCombinedLengthMicroS = 0;
+        recentSilenceCombinedLengthMicroS = 0;
+        recentSilenceBuffersCount = 0;
+    }
+
+    /**
+     * Starts the silence level detection with a noise floor of a previous
+     * session.
+     *
+     * @param snapshot
+     *            Noise floor to restore or null to start detection from
+     *            scratch.
+     */
+    public void restoreNoiseFloor(NoiseFloorSnapshot snapshot) {
+        if (snapshot == null) {
+            silenceLevelDetector.reset();
+        } else {
+            silenceLevelDetector.restoreSnapshot(snapshot);
+        }
+    }
+
+    /**
+     * @return Noise floor learned by the silence level detector or null if it
+     *         is not known.
+     */
+    public NoiseFloorSnapshot takeNoiseFloorSnapshot(long nowMs) {
+        return silenceLevelDetector.takeSnapshot(nowMs);
+    }
+
+    /**
+     * Based on the current state of the filter, sound level and length of newly
+     * recorded buffer, decides what action should be performed.
+     *
+     * @param bufferSoundLevel
+     *            sound level of the recorded buffer.
+     * @param bufferLengthInShorts
+     *            length of the recorded buffer.
+     * @return Action that the caller should perform.
+     */
+    public FilterResult filterRecorderBuffer(double bufferSoundLevel, int bufferLengthInShorts) {
+        final FilterResult result = decide(bufferSoundLevel, bufferLengthInShorts);
+        actionCounters[result.getAction().ordinal()].increment();
+        return result;
+    }
+
+    private FilterResult decide(double bufferSoundLevel, int bufferLengthInShorts) {
+        final long bufferLengthMicros = lengthInShortsToMicros(bufferLengthInShorts);
+        silenceLevelDetector.addSoundLevelMeasurement(bufferSoundLevel);
+
+        if (silenceLevelDetector.isAboveSilenceLevel(bufferSoundLevel)) {
+            buffersAboveSilenceLevelCombinedLengthMicroS += bufferLengthMicros;
+            recentSilenceCombinedLengthMicroS = 0;
+            recentSilenceBuffersCount = 0;
+        } else {
+            recentSilenceCombinedLengthMicroS += bufferLengthMicros;
+            pushRecentSilenceBufferLength(bufferLengthInShorts);
+
+            if (buffersAboveSilenceLevelCombinedLengthMicroS == 0) {
+                // Drop each buffer of leading silence.
+                reset();
+                return dropAllAcceptedBuffersResult;
+            }
+            if (micros2Milis(recentSilenceCombinedLengthMicroS) >= longSilenceIntervalMs) {
+                // Long silence detected.
+
+                if (micros2Milis(buffersAboveSilenceLevelCombinedLengthMicroS)
+                        >= minLengthOfMeaningfulDataToPlayMs) {
+                    // Data above the silence level is long enough. Drop a part
+                    // of trailing silence and play.
+                    final int trailingSilenceBuffers = recentSilenceBuffersCount;
+                    computeTrailingBuffersToDrop();
+                    reset();
+                    return dropTrailingBuffersAndPlayResult.setTrailingBuffers(
+                            trailingBuffersToDrop, trailingSilenceBuffers,
+                            shortsToPlayFromFirstDroppedBuffer);
+                } else {
+                    // Data above the silence level is too short. Drop it.
+                    reset();
+                    return dropAllAcceptedBuffersResult;
+
+                }
+            }
+            // Short silence, accept it.
+        }
+        return acceptBufferResult;
+    }
+
+    private void pushRecentSilenceBufferLength(int bufferLengthInShorts) {
+        if (recentSilenceBuffersCount == recentSilenceBuffersLengthInShorts.length) {
+            final int[] grown = new int[2 * recentSilenceBuffersLengthInShorts.length];
+            System.arraycopy(recentSilenceBuffersLengthInShorts, 0, grown, 0,
+                    recentSilenceBuffersCount);
+            recentSilenceBuffersLengthInShorts = grown;
+        }
+        recentSilenceBuffersLengthInShorts[recentSilenceBuffersCount] = bufferLengthInShorts;
+        ++recentSilenceBuffersCount;
+    }
+
+    private long micros2Milis(long microSeconds) {
+        return microSeconds / 1000;
+    }
+
+    private long lengthInShortsToMicros(int bufferLengthInShorts) {
+        return 1000000L * bufferLengthInShorts / SpeechTrainerConfig.SAMPLE_RATE_HZ;
+    }
+
+    /**
+     * Sets trailingBuffersToDrop and shortsToPlayFromFirstDroppedBuffer.
+     */
+    private void computeTrailingBuffersToDrop() {
+        trailingBuffersToDrop = 0;
+        int trailingBuffersToDropLengthInShorts = 0;
+        // Count how many trailing buffers have length equal or larger than
+        // TRAILING_SILENCE_TO_DROP_MS.
+        while (recentSilenceBuffersCount > 0
+                && micros2Milis(lengthInShortsToMicros(trailingBuffersToDropLengthInShorts))
+                < trailingSilenceToDropMs) {
+            --recentSilenceBuffersCount;
+            trailingBuffersToDropLengthInShorts +=
+                recentSilenceBuffersLengthInShorts[recentSilenceBuffersCount];
+            trailingBuffersToDrop += 1;
+        }
+        // The dropped buffers can be longer than TRAILING_SILENCE_TO_DROP_MS,
+        // the excess is at the beginning of the first dropped buffer.
+        // All other dropped buffers together are shorter than
+        // TRAILING_SILENCE_TO_DROP_MS, so the excess is always shorter than
+        // the first dropped buffer.
+        shortsToPlayFromFirstDroppedBuffer = Math.max(0, trailingBuffersToDropLengthInShorts
+                - trailingSilenceToDropInShorts);
+    }
+
+}
@@ -0,0 +1,206 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+
+/**
+ * Estimates a silence level based on measurements of sound level. Determines if
+ * a given sound level is above the silence level.
+ * 
+ * The general idea is to find and update a mean sound level of samples that
+ * included silence. All samples for which sound level is less than the mean
+ * plus some threshold are determined to be silence.
+ * 
+ * A very similar approach along with comparison to alternatives is described in
+ * 'A Comparative Study of Speech Detection Methods' by Stefaan Van Gerven and
+ * Fei Xie.
+ * 
+ * A more detailed description follows:
+ * 
+ * The silence level is initialized to a large value, so the first sound level
+ * measurement is guaranteed to be below the silence level (it is not important
+ * if it really is silence).
+ * 
+ * A list of recent measurements of sound levels that were below the silence
+ * level is kept. The length of the list is limited, so the silence level is not
+ * skewed by the old measures.
+ * 
+ * -If a measurement of sound level is below the silence level, the measurement
+ * is added to the list. The silence level is updated to be a mean of all
+ * measures on the list plus SILENCE_LEAVE_MARGIN.
+ * 
+ * -If a measurement of sound level is above the silence level, the silence
+ * level is updated to be a mean of all measures on the list plus
+ * SILENCE_ENTER_MARGIN. The measure is not added to the list.
+ *
+ * The noise floor (the mean of the list) can be saved at the end of a session
+ * and restored at the start of the next one. The list is then initialized with
+ * copies of the saved mean, so the restored noise floor is gradually replaced
+ * by new measurements. Until a measurement close to the restored noise floor
+ * confirms it, the restored noise floor is suspected to be stale (the room or
+ * the microphone could have changed) and it is discarded if:
+ *
+ * -A measurement is more than SILENCE_LEAVE_MARGIN below the noise floor (the
+ * room became quieter).
+ *
+ * -UNCONFIRMED_NOISE_FLOOR_MAX_LENGTH measurements in a row are above the
+ * silence level (the room became louder and the detector would never learn
+ * it, because measurements above the silence level are not added to the list).
+ *
+ * When the noise floor is discarded, the detector starts from scratch.
+ *
+ * The margins and the history length are taken from
+ * SilenceDetectionParameters, the constants of this class are their default
+ * values.
+ */
+class SilenceLevelDetector {
+    // When silence is recorded, silence level is that much above the mean of
+    // recent sound levels of samples with silence.
+    public static final double SILENCE_LEAVE_MARGIN = 5.0;
+    // When meaningful sound is recorded, silence level is that much above the
+    // mean of recent sound levels of samples with silence.
+    public static final double SILENCE_ENTER_MARGIN = 2.0;
+    // Silence sound level is discarded if combined length of newer measures
+    // with silence exceeds this const.
+    public static final int SILENCE_HISTORY_LENGTH_S = 5;
+    // History length but in number of samples, not in seconds.
+    public static final int SILENCE_HISTORY_LENGTH = SILENCE_HISTORY_LENGTH_S
+    * SpeechTrainerConfig.numberOfBuffersPerSecond();
+    // At most that many measures are restored from a noise floor snapshot, so
+    // a second of new silence weights as much as the restored noise floor.
+    public static final int RESTORED_HISTORY_LENGTH =
+        SpeechTrainerConfig.numberOfBuffersPerSecond();
+    // Number of measures above the silence level in a row after which an
+    // unconfirmed restored noise floor is discarded (two seconds).
+    public static final int UNCONFIRMED_NOISE_FLOOR_MAX_LENGTH =
+        2 * SpeechTrainerConfig.numberOfBuffersPerSecond();
+    // Keeps the most recent measures of the sound level but only for samples
+    // that were below silence level. A ring of at most SILENCE_HISTORY_LENGTH
+    // - 1 measures, the oldest measure is at silenceHistoryStart.
+    private final double[] silenceHistory;
+    private final double silenceLeaveMargin;
+    private final double silenceEnterMargin;
+    private int silenceHistoryStart = 0;
+    private int silenceHistorySize = 0;
+    // Sum of all values in the silenceHistory ring.
+    private double silenceHistorySum = 0.0;
+    private double silenceLevel = Double.MAX_VALUE;
+    // Noise floor that was restored from a snapshot but not yet confirmed by
+    // a measure of silence, or NaN.
+    private double unconfirmedNoiseFloor = Double.NaN;
+    // Number of measures above the silence level since the noise floor was
+    // restored.
+    private int measuresAboveUnconfirmedNoiseFloor = 0;
+
+    public SilenceLevelDetector() {
+        this(SilenceDetectionParameters.DEFAULTS);
+    }
+
+    public SilenceLevelDetector(SilenceDetectionParameters parameters) {
+        silenceLeaveMargin = parameters.getSilenceLeaveMargin();
+        silenceEnterMargin = parameters.getSilenceEnterMargin();
+        silenceHistory = new double[parameters.getSilenceHistoryLengthS()
+                                    * SpeechTrainerConfig.numberOfBuffersPerSecond() - 1];
+    }
+
+    public void addSoundLevelMeasurement(double soundLevel) {
+        if (!Double.isNaN(unconfirmedNoiseFloor)) {
+            verifyRestoredNoiseFloor(soundLevel);
+        }
+        if (!isAboveSilenceLevel(soundLevel)) {
+            if (silenceHistorySize == silenceHistory.length) {
+                // Replace the oldest measure.
+                final double removedValue = silenceHistory[silenceHistoryStart];
+                silenceHistory[silenceHistoryStart] = soundLevel;
+                silenceHistoryStart = (silenceHistoryStart + 1) % silenceHistory.length;
+                silenceHistorySum -= removedValue;
+            } else {
+                silenceHistory[(silenceHistoryStart + silenceHistorySize)
+                               % silenceHistory.length] = soundLevel;
+                ++silenceHistorySize;
+            }
+            silenceHistorySum += soundLevel;
+            silenceLevel = mean() + silenceLeaveMargin;
+        } else {
+            silenceLevel = mean() + silenceEnterMargin;
+        }
+    }
+
+    public boolean isAboveSilenceLevel(double soundLevel) {
+        return soundLevel > silenceLevel;
+    }
+
+    /**
+     * Forgets all measurements, the next measurement is treated as silence.
+     */
+    public void reset() {
+        silenceHistoryStart = 0;
+        silenceHistorySize = 0;
+        silenceHistorySum = 0.0;
+        silenceLevel = Double.MAX_VALUE;
+        unconfirmedNoiseFloor = Double.NaN;
+        measuresAboveUnconfirmedNoiseFloor = 0;
+    }
+
+    /**
+     * @return The current noise floor or null if nothing is known about it (no
+     *         measurements or a restored noise floor was not yet confirmed).
+     */
+    public NoiseFloorSnapshot takeSnapshot(long nowMs) {
+        if (silenceHistorySize == 0 || !Double.isNaN(unconfirmedNoiseFloor)) {
+            return null;
+        }
+        return new NoiseFloorSnapshot(mean(), silenceHistorySize, nowMs);
+    }
+
+    /**
+     * Replaces all measurements with a noise floor from a snapshot. The caller
+     * is responsible for not restoring stale snapshots.
+     */
+    public void restoreSnapshot(NoiseFloorSnapshot snapshot) {
+        reset();
+        final double noiseFloor = snapshot.getNoiseFloor();
+        silenceHistorySize = Math.min(Math.min(snapshot.getMeasurementsCount(),
+                RESTORED_HISTORY_LENGTH), silenceHistory.length);
+        for (int i = 0; i < silenceHistorySize; ++i) {
+            silenceHistory[i] = noiseFloor;
+        }
+        silenceHistorySum = noiseFloor * silenceHistorySize;
+        silenceLevel = noiseFloor + silenceLeaveMargin;
+        unconfirmedNoiseFloor = noiseFloor;
+    }
+
+    private void verifyRestoredNoiseFloor(double soundLevel) {
+        if (soundLevel < unconfirmedNoiseFloor - silenceLeaveMargin) {
+            reset();
+        } else if (isAboveSilenceLevel(soundLevel)) {
+            ++measuresAboveUnconfirmedNoiseFloor;
+            if (measuresAboveUnconfirmedNoiseFloor >= UNCONFIRMED_NOISE_FLOOR_MAX_LENGTH) {
+                reset();
+            }
+        } else {
+            unconfirmedNoiseFloor = Double.NaN;
+        }
+    }
+
+    private double mean() {
+        return silenceHistorySum / silenceHistorySize;
+    }
+}
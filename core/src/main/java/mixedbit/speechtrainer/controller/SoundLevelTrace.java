@@ -0,0 +1,99 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.io.File;
+import java.io.IOException;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+
+/**
+ * Sound levels and lengths of all buffers of a session saved by the
+ * WavSessionExporter. The SilenceFilter sees only these two values of each
+ * buffer, so a trace read once can be segmented many times, with different
+ * SilenceDetectionParameters, without reading the audio data again. Segmenting
+ * the trace gives the same utterances as segmenting the WAV file.
+ *
+ * The trace is immutable, so it can be segmented by many threads at once.
+ */
+public final class SoundLevelTrace {
+    private final double[] soundLevels;
+    private final int[] lengthsInShorts;
+    private final long lengthInShorts;
+
+    private SoundLevelTrace(double[] soundLevels, int[] lengthsInShorts, long lengthInShorts) {
+        this.soundLevels = soundLevels;
+        this.lengthsInShorts = lengthsInShorts;
+        this.lengthInShorts = lengthInShorts;
+    }
+
+    /**
+     * Reads a session in buffers of the recording size and computes their
+     * sound levels.
+     * 
+     * @throws IOException
+     *             if the file can not be read.
+     */
+    public static SoundLevelTrace readWavFile(File wavFile) throws IOException {
+        final ArchivedSessionSource source = new ArchivedSessionSource(wavFile,
+                SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS);
+        final AudioBuffer audioBuffer = new AudioBufferAllocator(1,
+                SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS).allocateAudioBuffer();
+        final double[] soundLevels = new double[source.getBuffersCount()];
+        final int[] lengthsInShorts = new int[source.getBuffersCount()];
+        long lengthInShorts = 0;
+        for (int i = 0; source.readAudioBuffer(audioBuffer); ++i) {
+            soundLevels[i] = audioBuffer.getSoundLevel();
+            lengthsInShorts[i] = audioBuffer.getAudioDataLengthInShorts();
+            lengthInShorts += lengthsInShorts[i];
+        }
+        return new SoundLevelTrace(soundLevels, lengthsInShorts, lengthInShorts);
+    }
+
+    public int getBuffersCount() {
+        return soundLevels.length;
+    }
+
+    public double getSoundLevel(int bufferIndex) {
+        return soundLevels[bufferIndex];
+    }
+
+    public int getBufferLengthInShorts(int bufferIndex) {
+        return lengthsInShorts[bufferIndex];
+    }
+
+    /**
+     * @return Length of the session in shorts.
+     */
+    public long getLengthInShorts() {
+        return lengthInShorts;
+    }
+
+    /**
+     * Passes all buffers of the trace to a given segmenter, which should be
+     * new (or reset, with a fresh noise floor). Buffers are identified by
+     * their positions in the session.
+     */
+    public void segment(UtteranceSegmenter segmenter) {
+        for (int i = 0; i < soundLevels.length; ++i) {
+            segmenter.processBuffer(i, soundLevels[i], lengthsInShorts[i]);
+        }
+    }
+}
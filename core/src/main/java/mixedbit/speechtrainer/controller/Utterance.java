@@ -0,0 +1,97 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+
+/**
+ * An utterance detected by the UtteranceSegmenter. Positions are in samples
+ * since the segmenter was reset, buffers are identified by ids assigned by
+ * the AudioBufferAllocator. Sound levels are computed from sound levels of
+ * the buffers of the utterance, including short pauses between words.
+ *
+ * The segmenter reuses a single utterance object, so detecting utterances does
+ * not allocate. An utterance is valid only during the
+ * UtteranceListener.utteranceDetected call.
+ */
+public final class Utterance {
+    private int firstAudioBufferId;
+    private int lastAudioBufferId;
+    private long startInShorts;
+    private long endInShorts;
+    private double meanSoundLevel;
+    private double peakSoundLevel;
+
+    Utterance() {
+    }
+
+    void set(int firstAudioBufferId, int lastAudioBufferId, long startInShorts,
+            long endInShorts, double meanSoundLevel, double peakSoundLevel) {
+        this.firstAudioBufferId = firstAudioBufferId;
+        this.lastAudioBufferId = lastAudioBufferId;
+        this.startInShorts = startInShorts;
+        this.endInShorts = endInShorts;
+        this.meanSoundLevel = meanSoundLevel;
+        this.peakSoundLevel = peakSoundLevel;
+    }
+
+    public int getFirstAudioBufferId() {
+        return firstAudioBufferId;
+    }
+
+    /**
+     * @return Id of the last buffer of the utterance. The buffer can belong to
+     *         the utterance only partially (up to getEndInShorts).
+     */
+    public int getLastAudioBufferId() {
+        return lastAudioBufferId;
+    }
+
+    /**
+     * @return Position of the first sample of the utterance.
+     */
+    public long getStartInShorts() {
+        return startInShorts;
+    }
+
+    /**
+     * @return Position after the last sample of the utterance.
+     */
+    public long getEndInShorts() {
+        return endInShorts;
+    }
+
+    public long getDurationMs() {
+        return (endInShorts - startInShorts) * 1000 / SpeechTrainerConfig.SAMPLE_RATE_HZ;
+    }
+
+    /**
+     * @return Mean of sound levels of the buffers of the utterance.
+     */
+    public double getMeanSoundLevel() {
+        return meanSoundLevel;
+    }
+
+    /**
+     * @return The highest sound level of the buffers of the utterance.
+     */
+    public double getPeakSoundLevel() {
+        return peakSoundLevel;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+/**
+ * Receives utterances detected by the UtteranceSegmenter. Called on the thread
+ * that passes buffers to the segmenter (the audio thread during training), so
+ * implementations should return quickly.
+ */
+public interface UtteranceListener {
+    /**
+     * Called when the end of an utterance was detected. The utterance is valid
+     * only during the call.
+     */
+    public void utteranceDetected(Utterance utterance);
+}
@@ -0,0 +1,234 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.io.File;
+import java.io.IOException;
+
+import mixedbit.speechtrainer.Assertions;
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+import mixedbit.speechtrainer.controller.SilenceFilter.FilterResult;
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
+
+/**
+ * Splits a stream of audio buffers into utterances with a SilenceFilter. The
+ * filter decides about each buffer, the segmenter follows the decisions and
+ * informs an UtteranceListener about each utterance that the filter requests
+ * to be played: where the utterance starts and ends in the stream and how
+ * loud it is.
+ *
+ * The same segmenter is used live by the AutomaticTrainingController and
+ * offline, over sessions saved to WAV files (segmentWavFile), so utterances of
+ * a saved session are exactly these that were played during the training.
+ *
+ * Buffers accepted by the filter are kept in arrays that grow when needed but
+ * never shrink, so in a steady state segmentation does not allocate. The
+ * AutomaticTrainingController sizes the arrays for all buffers of its
+ * allocator, so these grow during the training only if the filter keeps
+ * accepting after all buffers were used. The segmenter is not thread safe.
+ */
+public final class UtteranceSegmenter {
+    private static final int INITIAL_ACCEPTED_BUFFERS_CAPACITY = 256;
+    private final SilenceFilter silenceFilter;
+    private final Utterance utterance = new Utterance();
+    private UtteranceListener utteranceListener;
+    // Position of the next buffer in the stream.
+    private long nextBufferStartInShorts = 0;
+    // Buffers accepted by the filter since its last reset.
+    private int[] acceptedAudioBufferIds;
+    private double[] acceptedSoundLevels;
+    private int[] acceptedLengthsInShorts;
+    private int acceptedBuffersCount = 0;
+    private long firstAcceptedBufferStartInShorts;
+
+    /**
+     * Creates a segmenter with a silence filter and a silence level detector
+     * with default parameters.
+     */
+    public UtteranceSegmenter() {
+        this(SilenceDetectionParameters.DEFAULTS);
+    }
+
+    /**
+     * Creates a segmenter with a silence filter and a silence level detector
+     * with given parameters.
+     */
+    public UtteranceSegmenter(SilenceDetectionParameters parameters) {
+        this(new SilenceFilter(new SilenceLevelDetector(parameters), parameters,
+                new MetricsRegistry()));
+    }
+
+    UtteranceSegmenter(SilenceFilter silenceFilter) {
+        this(silenceFilter, INITIAL_ACCEPTED_BUFFERS_CAPACITY);
+    }
+
+    /**
+     * @param acceptedBuffersCapacity
+     *            Number of accepted buffers that can be kept without
+     *            allocating.
+     */
+    UtteranceSegmenter(SilenceFilter silenceFilter, int acceptedBuffersCapacity) {
+        Assertions.check(acceptedBuffersCapacity > 0);
+        this.silenceFilter = silenceFilter;
+        acceptedAudioBufferIds = new int[acceptedBuffersCapacity];
+        acceptedSoundLevels = new double[acceptedBuffersCapacity];
+        acceptedLengthsInShorts = new int[acceptedBuffersCapacity];
+    }
+
+    /**
+     * @param utteranceListener
+     *            Listener informed about detected utterances, null if
+     *            utterances are not needed.
+     */
+    public void setUtteranceListener(UtteranceListener utteranceListener) {
+        this.utteranceListener = utteranceListener;
+    }
+
+    /**
+     * Resets the silence filter and starts a new stream, positions of
+     * utterances are counted from 0 again.
+     */
+    public void reset() {
+        silenceFilter.reset();
+        nextBufferStartInShorts = 0;
+        acceptedBuffersCount = 0;
+    }
+
+    /**
+     * Passes the next buffer of the stream to the silence filter.
+     */
+    public void processBuffer(int audioBufferId, double soundLevel, int lengthInShorts) {
+        filterRecorderBuffer(audioBufferId, soundLevel, lengthInShorts);
+    }
+
+    /**
+     * Like processBuffer, but returns the decision of the filter.
+     */
+    FilterResult filterRecorderBuffer(int audioBufferId, double soundLevel, int lengthInShorts) {
+        final long bufferStartInShorts = nextBufferStartInShorts;
+        nextBufferStartInShorts += lengthInShorts;
+        final FilterResult filterResult = silenceFilter.filterRecorderBuffer(soundLevel,
+                lengthInShorts);
+        switch (filterResult.getAction()) {
+            case ACCEPT_BUFFER:
+                accept(audioBufferId, soundLevel, lengthInShorts, bufferStartInShorts);
+                break;
+            case DROP_ALL_ACCEPTED_BUFFERS:
+                acceptedBuffersCount = 0;
+                break;
+            case DROP_TRAILING_BUFFERS_AND_PLAY:
+                accept(audioBufferId, soundLevel, lengthInShorts, bufferStartInShorts);
+                utteranceDetected(filterResult);
+                acceptedBuffersCount = 0;
+                break;
+        }
+        return filterResult;
+    }
+
+    /**
+     * Segments a session saved by the WavSessionExporter with a segmenter with
+     * default parameters. Buffers are identified by their positions in the
+     * session.
+     * 
+     * @return Length of the session in shorts.
+     * @throws IOException
+     *             if the file can not be read.
+     */
+    public static long segmentWavFile(File wavFile, UtteranceListener utteranceListener)
+    throws IOException {
+        return segmentWavFile(wavFile, SilenceDetectionParameters.DEFAULTS, utteranceListener);
+    }
+
+    /**
+     * Like segmentWavFile(File, UtteranceListener), but with a segmenter with
+     * given parameters.
+     */
+    public static long segmentWavFile(File wavFile, SilenceDetectionParameters parameters,
+            UtteranceListener utteranceListener) throws IOException {
+        final ArchivedSessionSource source = new ArchivedSessionSource(wavFile,
+                SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS);
+        final AudioBuffer audioBuffer = new AudioBufferAllocator(1,
+                SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS).allocateAudioBuffer();
+        final UtteranceSegmenter segmenter = new UtteranceSegmenter(parameters);
+        segmenter.setUtteranceListener(utteranceListener);
+        int bufferIndex = source.getNextBufferIndex();
+        while (source.readAudioBuffer(audioBuffer)) {
+            segmenter.processBuffer(bufferIndex, audioBuffer.getSoundLevel(),
+                    audioBuffer.getAudioDataLengthInShorts());
+            bufferIndex = source.getNextBufferIndex();
+        }
+        return segmenter.nextBufferStartInShorts;
+    }
+
+    private void accept(int audioBufferId, double soundLevel, int lengthInShorts,
+            long bufferStartInShorts) {
+        if (acceptedBuffersCount == 0) {
+            firstAcceptedBufferStartInShorts = bufferStartInShorts;
+        }
+        if (acceptedBuffersCount == acceptedAudioBufferIds.length) {
+            final int[] grownIds = new int[2 * acceptedBuffersCount];
+            System.arraycopy(acceptedAudioBufferIds, 0, grownIds, 0, acceptedBuffersCount);
+            acceptedAudioBufferIds = grownIds;
+            final double[] grownLevels = new double[2 * acceptedBuffersCount];
+            System.arraycopy(acceptedSoundLevels, 0, grownLevels, 0, acceptedBuffersCount);
+            acceptedSoundLevels = grownLevels;
+            final int[] grownLengths = new int[2 * acceptedBuffersCount];
+            System.arraycopy(acceptedLengthsInShorts, 0, grownLengths, 0, acceptedBuffersCount);
+            acceptedLengthsInShorts = grownLengths;
+        }
+        acceptedAudioBufferIds[acceptedBuffersCount] = audioBufferId;
+        acceptedSoundLevels[acceptedBuffersCount] = soundLevel;
+        acceptedLengthsInShorts[acceptedBuffersCount] = lengthInShorts;
+        ++acceptedBuffersCount;
+    }
+
+    private void utteranceDetected(FilterResult filterResult) {
+        final UtteranceListener listener = utteranceListener;
+        if (listener == null) {
+            return;
+        }
+        // The dropped part of the trailing silence is not a part of the
+        // utterance, but the first dropped buffer can be kept partially.
+        int keptBuffersCount = acceptedBuffersCount
+        - filterResult.getNumberOfTrailingBuffersToDrop();
+        final int shortsToPlay = filterResult.getNumberOfShortsToPlayFromFirstDroppedBuffer();
+        if (shortsToPlay > 0) {
+            ++keptBuffersCount;
+        }
+        if (keptBuffersCount <= 0) {
+            return;
+        }
+        long endInShorts = firstAcceptedBufferStartInShorts;
+        double soundLevelsSum = 0.0;
+        double peakSoundLevel = acceptedSoundLevels[0];
+        for (int i = 0; i < keptBuffersCount; ++i) {
+            endInShorts += acceptedLengthsInShorts[i];
+            soundLevelsSum += acceptedSoundLevels[i];
+            peakSoundLevel = Math.max(peakSoundLevel, acceptedSoundLevels[i]);
+        }
+        if (shortsToPlay > 0) {
+            endInShorts -= acceptedLengthsInShorts[keptBuffersCount - 1] - shortsToPlay;
+        }
+        utterance.set(acceptedAudioBufferIds[0], acceptedAudioBufferIds[keptBuffersCount - 1],
+                firstAcceptedBufferStartInShorts, endInShorts, soundLevelsSum / keptBuffersCount,
+                peakSoundLevel);
+        listener.utteranceDetected(utterance);
+    }
+}
@@ -0,0 +1,428 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+import mixedbit.speechtrainer.Assertions;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
+
+/**
+ * Streams recorded audio data to a WAV file (16 bit mono PCM). Recorded
+ * buffers are released by training controllers, so without the exporter
+ * recordings are lost when training stops.
+ *
+ * The thread that records audio never waits for the disk. Recorded samples are
+ * copied to one of preallocated chunks and passed through a bounded queue to a
+ * writer thread that is started for each exported session. The writer
+ * converts samples to little endian in a single direct ByteBuffer and writes
+ * them with a FileChannel. If the disk is too slow and no free chunk is
+ * available, a recorded buffer is dropped from the export and counted in a
+ * MetricsRegistry. Samples of dropped buffers are written as silence, so each
+ * recorded buffer keeps its offset in the file and the file stays aligned with
+ * sound levels collected for the session. Sizes in the WAV header are not
+ * known in advance, the header is patched when the export is stopped.
+ *
+ * start and stop must be called by a single thread. The recorder returned by
+ * exportRecorder must be used by a single thread, which can differ from the
+ * thread that starts and stops exports.
+ */
+public class WavSessionExporter {
+    private static final int WAV_HEADER_SIZE_IN_BYTES = 44;
+    private static final int BYTES_PER_SAMPLE = 2;
+    // The largest number of bytes of audio data that sizes in the WAV header
+    // can describe.
+    private static final long MAX_DATA_SIZE_IN_BYTES = 0xffffffffL - WAV_HEADER_SIZE_IN_BYTES
+    + 8;
+
+    /**
+     * Samples of a recorded buffer that wait to be written.
+     */
+    private static class Chunk {
+        private final short[] samples;
+        private int lengthInShorts;
+        // Length of buffers dropped just before this one, written as silence
+        // before the samples.
+        private long silenceLengthInShorts;
+
+        public Chunk(int capacityInShorts) {
+            samples = new short[capacityInShorts];
+        }
+    }
+
+    private final int sampleRateHz;
+    private final ThreadFactory writerThreadFactory;
+    private final BlockingQueue<Chunk> freeChunks;
+    // One place larger than the number of chunks, so the end of session marker
+    // always fits.
+    private final BlockingQueue<Chunk> filledChunks;
+    // Passed to the writer thread after the last filled chunk.
+    private final Chunk endOfSession = new Chunk(0);
+    // Used only by the writer thread.
+    private final ByteBuffer dataBuffer;
+    private final ShortBuffer dataBufferAsShorts;
+    private final ByteBuffer silenceBuffer;
+    private final MetricsRegistry.Counter writtenBuffersCount;
+    private final MetricsRegistry.Counter droppedBuffersCount;
+
+    // Checked by the recording thread for each buffer.
+    private volatile boolean exporting = false;
+    // Length of buffers dropped since the last filled chunk, accessed by the
+    // recording thread and read by stop after the recording is stopped.
+    private volatile long droppedLengthInShorts;
+    // State of the current export, accessed by the thread that starts and
+    // stops exports and by the writer thread (the thread start and join
+    // provide the synchronization).
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private Thread writerThread;
+    private long dataSizeInBytes;
+    private IOException writeError;
+
+    /**
+     * @param sampleRateHz
+     *            Rate at which exported audio data is recorded.
+     * @param singleBufferSizeInShorts
+     *            Maximum length of a recorded audio buffer.
+     * @param queueCapacityInBuffers
+     *            Number of recorded buffers that can wait to be written.
+     * @param metricsRegistry
+     *            Registry in which written and dropped buffers are counted.
+     */
+    public WavSessionExporter(int sampleRateHz, int singleBufferSizeInShorts,
+            int queueCapacityInBuffers, MetricsRegistry metricsRegistry) {
+        this(sampleRateHz, singleBufferSizeInShorts, queueCapacityInBuffers, metricsRegistry,
+                new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "WavExportThread");
+            }
+        });
+    }
+
+    /**
+     * @param writerThreadFactory
+     *            Creates a writer thread for each exported session.
+     */
+    WavSessionExporter(int sampleRateHz, int singleBufferSizeInShorts,
+            int queueCapacityInBuffers, MetricsRegistry metricsRegistry,
+            ThreadFactory writerThreadFactory) {
+        this.sampleRateHz = sampleRateHz;
+        this.writerThreadFactory = writerThreadFactory;
+        freeChunks = new ArrayBlockingQueue<Chunk>(queueCapacityInBuffers);
+        filledChunks = new ArrayBlockingQueue<Chunk>(queueCapacityInBuffers + 1);
+        for (int i = 0; i < queueCapacityInBuffers; ++i) {
+            freeChunks.add(new Chunk(singleBufferSizeInShorts));
+        }
+        dataBuffer = ByteBuffer.allocateDirect(singleBufferSizeInShorts * BYTES_PER_SAMPLE);
+        dataBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        dataBufferAsShorts = dataBuffer.asShortBuffer();
+        // Direct buffers are zeroed when allocated.
+        silenceBuffer = ByteBuffer.allocateDirect(singleBufferSizeInShorts * BYTES_PER_SAMPLE);
+        writtenBuffersCount = metricsRegistry.counter("wav_export.buffers_written");
+        droppedBuffersCount = metricsRegistry.counter("wav_export.buffers_dropped");
+    }
+
+    /**
+     * Starts exporting recorded audio data to a given file. The file is
+     * overwritten.
+     * 
+     * @throws IOException
+     *             if the file can not be opened or the header written.
+     */
+    public void start(File wavFile) throws IOException {
+        Assertions.illegalStateIfFalse(!exporting, "Export already started.");
+        // Chunks that were filled after the previous export stopped are not
+        // written.
+        Chunk staleChunk;
+        while ((staleChunk = filledChunks.poll()) != null) {
+            if (staleChunk != endOfSession) {
+                freeChunks.offer(staleChunk);
+            }
+        }
+        file = new RandomAccessFile(wavFile, "rw");
+        try {
+            file.setLength(0);
+            channel = file.getChannel();
+            dataSizeInBytes = 0;
+            droppedLengthInShorts = 0;
+            writeError = null;
+            writeFully(createHeader(), 0);
+        } catch (final IOException e) {
+            closeFile();
+            throw e;
+        }
+        writerThread = writerThreadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                writeFilledChunks();
+            }
+        });
+        writerThread.start();
+        exporting = true;
+    }
+
+    /**
+     * Stops the current export (if any). Should be called after the recording
+     * is stopped. Waits until all recorded audio data is written (audio data
+     * of dropped buffers as silence), sets sizes in the WAV header and closes
+     * the file.
+     * 
+     * @throws IOException
+     *             if writing of the audio data or of the header failed. The
+     *             file is closed anyway.
+     */
+    public void stop() throws IOException {
+        if (!exporting) {
+            return;
+        }
+        exporting = false;
+        // Buffers dropped at the end of the session.
+        endOfSession.silenceLengthInShorts = droppedLengthInShorts;
+        filledChunks.offer(endOfSession);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                writerThread.join();
+                break;
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+        try {
+            if (writeError != null) {
+                throw writeError;
+            }
+            final ByteBuffer sizes = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            sizes.putInt(0, (int) (WAV_HEADER_SIZE_IN_BYTES - 8 + dataSizeInBytes));
+            writeFully(sizes, 4);
+            sizes.putInt(0, (int) dataSizeInBytes);
+            writeFully(sizes, WAV_HEADER_SIZE_IN_BYTES - 4);
+        } finally {
+            closeFile();
+        }
+    }
+
+    /**
+     * @return Is audio data being exported?
+     */
+    public boolean isExporting() {
+        return exporting;
+    }
+
+    /**
+     * @return Number of samples written to the WAV file by the last stopped
+     *         export.
+     */
+    public long getExportedSamplesCount() {
+        Assertions.illegalStateIfFalse(!exporting, "Export not stopped.");
+        return dataSizeInBytes / BYTES_PER_SAMPLE;
+    }
+
+    /**
+     * @return Number of recorded buffers that were written to WAV files.
+     */
+    public long getWrittenBuffersCount() {
+        return writtenBuffersCount.get();
+    }
+
+    /**
+     * @return Number of recorded buffers that were not written, because the
+     *         disk did not keep up.
+     */
+    public long getDroppedBuffersCount() {
+        return droppedBuffersCount.get();
+    }
+
+    /**
+     * @param recorder
+     *            Recorder which audio data should be exported.
+     * @return Recorder that delegates to the given recorder and passes each
+     *         successfully read buffer to the exporter (if the export is
+     *         started).
+     */
+    Recorder exportRecorder(final Recorder recorder) {
+        return new Recorder() {
+            @Override
+            public void startRecording() {
+                recorder.startRecording();
+            }
+
+            @Override
+            public boolean readAudioBuffer(AudioBuffer audioBuffer) {
+                if (!recorder.readAudioBuffer(audioBuffer)) {
+                    return false;
+                }
+                audioBufferRecorded(audioBuffer);
+                return true;
+            }
+
+            @Override
+            public void stopRecording() {
+                recorder.stopRecording();
+            }
+        };
+    }
+
+    /**
+     * Called by the recording thread. Never blocks and never allocates.
+     */
+    private void audioBufferRecorded(AudioBuffer audioBuffer) {
+        if (!exporting) {
+            return;
+        }
+        final Chunk chunk = freeChunks.poll();
+        if (chunk == null) {
+            droppedBuffersCount.increment();
+            droppedLengthInShorts += audioBuffer.getAudioDataLengthInShorts();
+            return;
+        }
+        chunk.silenceLengthInShorts = droppedLengthInShorts;
+        droppedLengthInShorts = 0;
+        chunk.lengthInShorts = audioBuffer.getAudioDataLengthInShorts();
+        System.arraycopy(audioBuffer.getAudioData(), 0, chunk.samples, 0,
+                chunk.lengthInShorts);
+        // Never fails, all chunks fit in the queue.
+        filledChunks.offer(chunk);
+    }
+
+    /**
+     * Executed by the writer thread until the end of session marker is
+     * received. After a write fails, remaining chunks are dropped.
+     */
+    private void writeFilledChunks() {
+        while (true) {
+            final Chunk chunk;
+            try {
+                chunk = filledChunks.take();
+            } catch (final InterruptedException e) {
+                // Nobody else interrupts the writer thread, the end of session
+                // marker is the only way to stop it.
+                continue;
+            }
+            if (chunk == endOfSession) {
+                if (writeError == null && fitsInWavFile(chunk)) {
+                    try {
+                        writeSilence(chunk.silenceLengthInShorts);
+                    } catch (final IOException e) {
+                        writeError = e;
+                    }
+                }
+                return;
+            }
+            boolean written = false;
+            if (writeError == null && fitsInWavFile(chunk)) {
+                try {
+                    writeSilence(chunk.silenceLengthInShorts);
+                    writeChunk(chunk);
+                    written = true;
+                } catch (final IOException e) {
+                    writeError = e;
+                }
+            }
+            // Returned before it is counted, so the chunk is free once the
+            // buffer is reported as written.
+            freeChunks.offer(chunk);
+            if (written) {
+                writtenBuffersCount.increment();
+            } else {
+                droppedBuffersCount.increment();
+            }
+        }
+    }
+
+    private boolean fitsInWavFile(Chunk chunk) {
+        return dataSizeInBytes
+        + (chunk.silenceLengthInShorts + chunk.lengthInShorts) * BYTES_PER_SAMPLE
+        <= MAX_DATA_SIZE_IN_BYTES;
+    }
+
+    private void writeChunk(Chunk chunk) throws IOException {
+        dataBufferAsShorts.clear();
+        dataBufferAsShorts.put(chunk.samples, 0, chunk.lengthInShorts);
+        dataBuffer.clear();
+        dataBuffer.limit(chunk.lengthInShorts * BYTES_PER_SAMPLE);
+        writeFully(dataBuffer, WAV_HEADER_SIZE_IN_BYTES + dataSizeInBytes);
+        dataSizeInBytes += chunk.lengthInShorts * BYTES_PER_SAMPLE;
+    }
+
+    private void writeSilence(long lengthInShorts) throws IOException {
+        long remainingInBytes = lengthInShorts * BYTES_PER_SAMPLE;
+        while (remainingInBytes > 0) {
+            silenceBuffer.clear();
+            silenceBuffer.limit((int) Math.min(remainingInBytes, silenceBuffer.capacity()));
+            writeFully(silenceBuffer, WAV_HEADER_SIZE_IN_BYTES + dataSizeInBytes);
+            dataSizeInBytes += silenceBuffer.limit();
+            remainingInBytes -= silenceBuffer.limit();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        buffer.rewind();
+        long writePosition = position;
+        while (buffer.hasRemaining()) {
+            writePosition += channel.write(buffer, writePosition);
+        }
+    }
+
+    /**
+     * @return Canonical WAV header of 16 bit mono PCM data with sizes set to
+     *         0.
+     */
+    private ByteBuffer createHeader() {
+        final ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_SIZE_IN_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[] { 'R', 'I', 'F', 'F' });
+        header.putInt(0);
+        header.put(new byte[] { 'W', 'A', 'V', 'E', 'f', 'm', 't', ' ' });
+        // Size of the format chunk, PCM format, number of channels.
+        header.putInt(16);
+        header.putShort((short) 1);
+        header.putShort((short) 1);
+        header.putInt(sampleRateHz);
+        // Byte rate, block align and bits per sample.
+        header.putInt(sampleRateHz * BYTES_PER_SAMPLE);
+        header.putShort((short) BYTES_PER_SAMPLE);
+        header.putShort((short) (8 * BYTES_PER_SAMPLE));
+        header.put(new byte[] { 'd', 'a', 't', 'a' });
+        header.putInt(0);
+        return header;
+    }
+
+    private void closeFile() throws IOException {
+        channel = null;
+        final RandomAccessFile fileToClose = file;
+        file = null;
+        fileToClose.close();
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.flac;
+
+/**
+ * Writes values of arbitrary bit lengths, most significant bit first, to a
+ * growable byte array. The array is reused after reset, so writing does not
+ * allocate once the array is large enough.
+ */
+final class FlacBitWriter {
+    private byte[] bytes;
+    // Number of complete bytes written.
+    private int length;
+    // Bits that do not form a complete byte yet, in the lowest bits.
+    private long accumulator;
+    private int accumulatedBits;
+
+    public FlacBitWriter(int initialCapacityInBytes) {
+        bytes = new byte[initialCapacityInBytes];
+    }
+
+    public void reset() {
+        length = 0;
+        accumulator = 0;
+        accumulatedBits = 0;
+    }
+
+    /**
+     * Writes the lowest bitCount bits of a value.
+     * 
+     * @param bitCount
+     *            Number of bits to write, 0 to 32.
+     */
+    public void writeBits(int value, int bitCount) {
+        if (bitCount == 0) {
+            return;
+        }
+        accumulator = (accumulator << bitCount) | (value & ((1L << bitCount) - 1));
+        accumulatedBits += bitCount;
+        while (accumulatedBits >= 8) {
+            accumulatedBits -= 8;
+            if (length == bytes.length) {
+                final byte[] largerBytes = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, largerBytes, 0, length);
+                bytes = largerBytes;
+            }
+            bytes[length] = (byte) (accumulator >>> accumulatedBits);
+            ++length;
+        }
+    }
+
+    /**
+     * Writes a value in the unary code: a given number of zeros followed by a
+     * one.
+     */
+    public void writeUnary(int value) {
+        while (value >= 32) {
+            writeBits(0, 32);
+            value -= 32;
+        }
+        writeBits(1, value + 1);
+    }
+
+    /**
+     * Writes a signed value with the Rice code with a given parameter. The
+     * value is folded to an unsigned one (0, -1, 1, -2, ... become 0, 1, 2,
+     * 3, ...), higher bits are written with the unary code, parameter lowest
+     * bits are written verbatim.
+     */
+    public void writeRice(int value, int parameter) {
+        final int folded = (value << 1) ^ (value >> 31);
+        final int quotient = folded >>> parameter;
+        if (quotient + 1 + parameter <= 32) {
+            writeBits((1 << parameter) | (folded & ((1 << parameter) - 1)),
+                    quotient + 1 + parameter);
+        } else {
+            writeUnary(quotient);
+            writeBits(folded, parameter);
+        }
+    }
+
+    /**
+     * Pads written bits with zeros to a byte boundary.
+     */
+    public void alignToByte() {
+        if (accumulatedBits > 0) {
+            writeBits(0, 8 - accumulatedBits);
+        }
+    }
+
+    /**
+     * @return Number of complete bytes written.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return Array with written bytes, valid until the next write.
+     */
+    public byte[] bytes() {
+        return bytes;
+    }
+}
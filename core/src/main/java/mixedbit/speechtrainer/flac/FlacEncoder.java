@@ -0,0 +1,201 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.flac;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import mixedbit.speechtrainer.Assertions;
+
+/**
+ * Streaming lossless encoder of 16 bit mono audio data to the FLAC format.
+ * Samples are passed in chunks of any length (for example recorded audio
+ * buffers), each complete block of BLOCK_SIZE samples is encoded and written
+ * as a FLAC frame right away, so memory use does not depend on the length of
+ * the stream.
+ *
+ * The stream header is written before the number of samples is known, with
+ * the total number of samples, frame sizes and the MD5 signature set to
+ * 'unknown' (decoders accept such streams). When the output is seekable,
+ * getStreamHeader returns the complete header after finish, which can
+ * overwrite the first STREAM_HEADER_SIZE_IN_BYTES bytes of the output.
+ *
+ * The class is not thread safe. See ParallelFlacEncoder for encoding
+ * recordings that are already complete on multiple threads.
+ */
+public class FlacEncoder {
+    /** Number of samples in each frame, except the last one. */
+    public static final int BLOCK_SIZE = 4096;
+    /** Size of the 'fLaC' marker and of the STREAMINFO metadata block. */
+    public static final int STREAM_HEADER_SIZE_IN_BYTES = 42;
+    private static final int STREAMINFO_SIZE_IN_BYTES = 34;
+    private static final int MD5_SIZE_IN_BYTES = 16;
+
+    private final OutputStream output;
+    private final int sampleRateHz;
+    private final FlacFrameEncoder frameEncoder = new FlacFrameEncoder(BLOCK_SIZE);
+    // Samples of the block that is not complete yet.
+    private final short[] block = new short[BLOCK_SIZE];
+    private int blockLength = 0;
+    private long frameNumber = 0;
+    private long totalSamples = 0;
+    private int minFrameSize = Integer.MAX_VALUE;
+    private int maxFrameSize = 0;
+    private final MessageDigest md5;
+    private final byte[] md5Input = new byte[BLOCK_SIZE * 2];
+    private byte[] md5Signature;
+
+    /**
+     * Writes the stream header to the output.
+     * 
+     * @param sampleRateHz
+     *            Rate at which encoded samples were recorded.
+     */
+    public FlacEncoder(OutputStream output, int sampleRateHz) throws IOException {
+        this.output = output;
+        this.sampleRateHz = sampleRateHz;
+        md5 = createMd5();
+        output.write(createStreamHeader(sampleRateHz, 0, 0, 0, new byte[MD5_SIZE_IN_BYTES]));
+    }
+
+    /**
+     * Encodes samples. Complete blocks are written to the output, remaining
+     * samples wait for the next call or for finish.
+     */
+    public void encode(short[] samples, int offset, int length) throws IOException {
+        Assertions.illegalStateIfFalse(md5Signature == null, "Encoder already finished.");
+        while (length > 0) {
+            final int copied = Math.min(length, BLOCK_SIZE - blockLength);
+            System.arraycopy(samples, offset, block, blockLength, copied);
+            blockLength += copied;
+            offset += copied;
+            length -= copied;
+            if (blockLength == BLOCK_SIZE) {
+                writeBlock();
+            }
+        }
+    }
+
+    /**
+     * Encodes and writes remaining samples. No more samples can be encoded
+     * afterwards. Does not close the output.
+     */
+    public void finish() throws IOException {
+        Assertions.illegalStateIfFalse(md5Signature == null, "Encoder already finished.");
+        if (blockLength > 0) {
+            writeBlock();
+        }
+        md5Signature = md5.digest();
+    }
+
+    /**
+     * @return Stream header with the total number of samples, minimum and
+     *         maximum frame sizes and the MD5 signature of encoded samples.
+     *         Can be called only after finish.
+     */
+    public byte[] getStreamHeader() {
+        Assertions.illegalStateIfFalse(md5Signature != null, "Encoder not finished.");
+        return createStreamHeader(sampleRateHz, totalSamples,
+                frameNumber == 0 ? 0 : minFrameSize, maxFrameSize, md5Signature);
+    }
+
+    /**
+     * @return Number of samples passed to encode.
+     */
+    public long getTotalSamples() {
+        return totalSamples + blockLength;
+    }
+
+    private void writeBlock() throws IOException {
+        updateMd5(md5, block, 0, blockLength, md5Input);
+        final FlacBitWriter frame = frameEncoder.encodeFrame(block, 0, blockLength, frameNumber);
+        output.write(frame.bytes(), 0, frame.length());
+        minFrameSize = Math.min(minFrameSize, frame.length());
+        maxFrameSize = Math.max(maxFrameSize, frame.length());
+        totalSamples += blockLength;
+        ++frameNumber;
+        blockLength = 0;
+    }
+
+    /**
+     * @param totalSamples
+     *            Number of samples in the stream or 0 if unknown.
+     * @param minFrameSize
+     *            Size of the smallest frame in bytes or 0 if unknown.
+     * @param maxFrameSize
+     *            Size of the largest frame in bytes or 0 if unknown.
+     * @param md5Signature
+     *            MD5 of samples (little endian) or zeros if unknown.
+     * @return The 'fLaC' marker followed by the STREAMINFO block.
+     */
+    static byte[] createStreamHeader(int sampleRateHz, long totalSamples, int minFrameSize,
+            int maxFrameSize, byte[] md5Signature) {
+        final FlacBitWriter writer = new FlacBitWriter(STREAM_HEADER_SIZE_IN_BYTES);
+        writer.writeBits(0x664c6143, 32);
+        // The last metadata block, type STREAMINFO.
+        writer.writeBits(1, 1);
+        writer.writeBits(0, 7);
+        writer.writeBits(STREAMINFO_SIZE_IN_BYTES, 24);
+        writer.writeBits(BLOCK_SIZE, 16);
+        writer.writeBits(BLOCK_SIZE, 16);
+        writer.writeBits(minFrameSize, 24);
+        writer.writeBits(maxFrameSize, 24);
+        writer.writeBits(sampleRateHz, 20);
+        // One channel, 16 bits per sample.
+        writer.writeBits(0, 3);
+        writer.writeBits(FlacFrameEncoder.BITS_PER_SAMPLE - 1, 5);
+        writer.writeBits((int) (totalSamples >>> 32), 4);
+        writer.writeBits((int) totalSamples, 32);
+        for (final byte b : md5Signature) {
+            writer.writeBits(b, 8);
+        }
+        final byte[] header = new byte[STREAM_HEADER_SIZE_IN_BYTES];
+        System.arraycopy(writer.bytes(), 0, header, 0, STREAM_HEADER_SIZE_IN_BYTES);
+        return header;
+    }
+
+    static MessageDigest createMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (final NoSuchAlgorithmException e) {
+            // Every Java platform is required to support MD5.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Updates the MD5 signature with samples as FLAC defines it: little endian
+     * bytes of each sample.
+     * 
+     * @param scratch
+     *            Array for the bytes of samples, at least twice as long as
+     *            length.
+     */
+    static void updateMd5(MessageDigest md5, short[] samples, int offset, int length,
+            byte[] scratch) {
+        for (int i = 0; i < length; ++i) {
+            final short sample = samples[offset + i];
+            scratch[2 * i] = (byte) sample;
+            scratch[2 * i + 1] = (byte) (sample >> 8);
+        }
+        md5.update(scratch, 0, 2 * length);
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.flac;
+
+import mixedbit.speechtrainer.Assertions;
+
+/**
+ * Encodes blocks of 16 bit mono samples to FLAC frames. Each frame is
+ * independent of other frames, so frames can be encoded in parallel, each
+ * thread with its own FlacFrameEncoder.
+ *
+ * A block is encoded as a CONSTANT subframe if all samples are equal,
+ * otherwise with the fixed polynomial predictor (order 0 to 4) that gives the
+ * smallest estimated size, or VERBATIM if no predictor reduces the size.
+ * Residuals are coded with the Rice code, with the partition order and Rice
+ * parameters chosen from the sums of folded residuals.
+ *
+ * The class is not thread safe.
+ */
+final class FlacFrameEncoder {
+    static final int BITS_PER_SAMPLE = 16;
+    private static final int MAX_FIXED_ORDER = 4;
+    private static final int MAX_PARTITION_ORDER = 8;
+    // Parameter 15 is reserved for the escape code.
+    private static final int MAX_RICE_PARAMETER = 14;
+    private static final int RICE_PARAMETER_BITS = 4;
+    private static final int SUBFRAME_CONSTANT = 0x00;
+    private static final int SUBFRAME_VERBATIM = 0x01;
+    private static final int SUBFRAME_FIXED = 0x08;
+
+    private final int maxBlockSize;
+    private final FlacBitWriter writer;
+    // Residuals of each fixed predictor order for the current block.
+    private final int[][] residuals;
+    // Sums of folded residuals of partitions, for the current partition order.
+    private final long[] partitionSums = new long[1 << MAX_PARTITION_ORDER];
+    // Partitioning (partition order and Rice parameters) of the best
+    // partitioning found for a residual and of the residual of the best
+    // predictor order.
+    private final int[] riceParameters = new int[1 << MAX_PARTITION_ORDER];
+    private final int[] bestRiceParameters = new int[1 << MAX_PARTITION_ORDER];
+    private int bestPartitionOrder;
+    private final int[] bestOrderRiceParameters = new int[1 << MAX_PARTITION_ORDER];
+    private int bestOrderPartitionOrder;
+
+    /**
+     * @param maxBlockSize
+     *            Maximum number of samples in a block, at most 65536.
+     */
+    public FlacFrameEncoder(int maxBlockSize) {
+        Assertions.check(maxBlockSize > 0 && maxBlockSize <= 65536);
+        this.maxBlockSize = maxBlockSize;
+        writer = new FlacBitWriter(maxBlockSize * 2 + 64);
+        residuals = new int[MAX_FIXED_ORDER + 1][maxBlockSize];
+    }
+
+    /**
+     * Encodes a block of samples to a frame.
+     * 
+     * @param frameNumber
+     *            Number of the frame in a stream, 0 for the first frame.
+     * @return Writer with the encoded frame, valid until the next call.
+     */
+    public FlacBitWriter encodeFrame(short[] samples, int offset, int blockSize,
+            long frameNumber) {
+        Assertions.check(blockSize > 0 && blockSize <= maxBlockSize);
+        writer.reset();
+        writeFrameHeader(blockSize, frameNumber);
+        writeSubframe(samples, offset, blockSize);
+        writer.alignToByte();
+        writer.writeBits(FlacCrc.crc16(writer.bytes(), 0, writer.length()), 16);
+        return writer;
+    }
+
+    private void writeFrameHeader(int blockSize, long frameNumber) {
+        // Sync code and the fixed block size strategy.
+        writer.writeBits(0xfff8, 16);
+        // Block size stored at the end of the header on 16 bits.
+        writer.writeBits(0x7, 4);
+        // Sample rate from the STREAMINFO.
+        writer.writeBits(0x0, 4);
+        // One channel.
+        writer.writeBits(0x0, 4);
+        // 16 bits per sample, reserved bit.
+        writer.writeBits(0x4, 3);
+        writer.writeBits(0, 1);
+        writeUtf8(frameNumber);
+        writer.writeBits(blockSize - 1, 16);
+        writer.writeBits(FlacCrc.crc8(writer.bytes(), 0, writer.length()), 8);
+    }
+
+    /**
+     * Writes a number with the UTF-8 like code used by FLAC for frame numbers.
+     */
+    private void writeUtf8(long value) {
+        if (value < 0x80) {
+            writer.writeBits((int) value, 8);
+            return;
+        }
+        int continuationBytes;
+        if (value < 0x800) {
+            continuationBytes = 1;
+        } else if (value < 0x10000) {
+            continuationBytes = 2;
+        } else if (value < 0x200000) {
+            continuationBytes = 3;
+        } else if (value < 0x4000000) {
+            continuationBytes = 4;
+        } else {
+            Assertions.check(value < 0x80000000L);
+            continuationBytes = 5;
+        }
+        final int firstByteMarker = (0xff00 >> (continuationBytes + 1)) & 0xff;
+        writer.writeBits(firstByteMarker | (int) (value >>> (6 * continuationBytes)), 8);
+        for (int i = continuationBytes - 1; i >= 0; --i) {
+            writer.writeBits(0x80 | (int) ((value >>> (6 * i)) & 0x3f), 8);
+        }
+    }
+
+    private void writeSubframe(short[] samples, int offset, int blockSize) {
+        if (isConstant(samples, offset, blockSize)) {
+            writeSubframeHeader(SUBFRAME_CONSTANT);
+            writer.writeBits(samples[offset], BITS_PER_SAMPLE);
+            return;
+        }
+        computeResiduals(samples, offset, blockSize);
+        long bestBits = (long) BITS_PER_SAMPLE * blockSize;
+        int bestOrder = -1;
+        for (int order = 0; order <= MAX_FIXED_ORDER && order < blockSize; ++order) {
+            final long bits = (long) BITS_PER_SAMPLE * order
+            + findBestPartitioning(residuals[order], order, blockSize);
+            if (bits < bestBits) {
+                bestBits = bits;
+                bestOrder = order;
+                System.arraycopy(bestRiceParameters, 0, bestOrderRiceParameters, 0,
+                        1 << bestPartitionOrder);
+                bestOrderPartitionOrder = bestPartitionOrder;
+            }
+        }
+        if (bestOrder < 0) {
+            writeSubframeHeader(SUBFRAME_VERBATIM);
+            for (int i = 0; i < blockSize; ++i) {
+                writer.writeBits(samples[offset + i], BITS_PER_SAMPLE);
+            }
+            return;
+        }
+        writeSubframeHeader(SUBFRAME_FIXED | bestOrder);
+        for (int i = 0; i < bestOrder; ++i) {
+            writer.writeBits(samples[offset + i], BITS_PER_SAMPLE);
+        }
+        writeResidual(residuals[bestOrder], bestOrder, blockSize);
+    }
+
+    private void writeSubframeHeader(int type) {
+        // Zero padding bit, type, no wasted bits.
+        writer.writeBits(0, 1);
+        writer.writeBits(type, 6);
+        writer.writeBits(0, 1);
+    }
+
+    private static boolean isConstant(short[] samples, int offset, int blockSize) {
+        final short first = samples[offset];
+        for (int i = 1; i < blockSize; ++i) {
+            if (samples[offset + i] != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes residuals of all fixed predictors. A residual of order n is
+     * the difference of consecutive residuals of order n - 1, defined from
+     * the n-th sample.
+     */
+    private void computeResiduals(short[] samples, int offset, int blockSize) {
+        final int[] orderZero = residuals[0];
+        for (int i = 0; i < blockSize; ++i) {
+            orderZero[i] = samples[offset + i];
+        }
+        for (int order = 1; order <= MAX_FIXED_ORDER && order < blockSize; ++order) {
+            final int[] previous = residuals[order - 1];
+            final int[] current = residuals[order];
+            for (int i = order; i < blockSize; ++i) {
+                current[i] = previous[i] - previous[i - 1];
+            }
+        }
+    }
+
+    /**
+     * Finds a partition order and Rice parameters for which the residual has
+     * the smallest estimated size. Stores the parameters in bestRiceParameters
+     * and the order in bestPartitionOrder.
+     * 
+     * @return Estimated size of the coded residual in bits.
+     */
+    private long findBestPartitioning(int[] residual, int predictorOrder, int blockSize) {
+        int maxPartitionOrder = 0;
+        while (maxPartitionOrder < MAX_PARTITION_ORDER
+                && (blockSize & ((1 << (maxPartitionOrder + 1)) - 1)) == 0
+                && (blockSize >> (maxPartitionOrder + 1)) > predictorOrder) {
+            ++maxPartitionOrder;
+        }
+        // Sums of the smallest partitions, sums of larger partitions are
+        // computed by merging neighbours.
+        final int partitionSize = blockSize >> maxPartitionOrder;
+        int sample = predictorOrder;
+        for (int partition = 0; partition < (1 << maxPartitionOrder); ++partition) {
+            long sum = 0;
+            final int end = (partition + 1) * partitionSize;
+            for (; sample < end; ++sample) {
+                final int value = residual[sample];
+                sum += (value << 1) ^ (value >> 31);
+            }
+            partitionSums[partition] = sum;
+        }
+
+        long bestBits = Long.MAX_VALUE;
+        for (int partitionOrder = maxPartitionOrder; partitionOrder >= 0; --partitionOrder) {
+            final int partitions = 1 << partitionOrder;
+            if (partitionOrder < maxPartitionOrder) {
+                for (int partition = 0; partition < partitions; ++partition) {
+                    partitionSums[partition] = partitionSums[2 * partition]
+                    + partitionSums[2 * partition + 1];
+                }
+            }
+            // Residual coding method and the partition order.
+            long bits = 2 + 4;
+            for (int partition = 0; partition < partitions; ++partition) {
+                int samplesInPartition = blockSize >> partitionOrder;
+                if (partition == 0) {
+                    samplesInPartition -= predictorOrder;
+                }
+                final int parameter = riceParameter(partitionSums[partition],
+                        samplesInPartition);
+                riceParameters[partition] = parameter;
+                bits += RICE_PARAMETER_BITS + (long) samplesInPartition * (parameter + 1)
+                + (partitionSums[partition] >>> parameter);
+            }
+            if (bits < bestBits) {
+                bestBits = bits;
+                bestPartitionOrder = partitionOrder;
+                System.arraycopy(riceParameters, 0, bestRiceParameters, 0, partitions);
+            }
+        }
+        return bestBits;
+    }
+
+    /**
+     * @return Rice parameter close to optimal for a partition with a given
+     *         number of samples and a given sum of folded residuals.
+     */
+    private static int riceParameter(long sum, int samplesInPartition) {
+        if (samplesInPartition == 0) {
+            return 0;
+        }
+        final long mean = sum / samplesInPartition;
+        int parameter = 0;
+        while (parameter < MAX_RICE_PARAMETER && (mean >>> (parameter + 1)) > 0) {
+            ++parameter;
+        }
+        return parameter;
+    }
+
+    private void writeResidual(int[] residual, int predictorOrder, int blockSize) {
+        // Rice coding with 4 bit parameters.
+        writer.writeBits(0, 2);
+        writer.writeBits(bestOrderPartitionOrder, 4);
+        final int partitions = 1 << bestOrderPartitionOrder;
+        final int partitionSize = blockSize >> bestOrderPartitionOrder;
+        int sample = predictorOrder;
+        for (int partition = 0; partition < partitions; ++partition) {
+            final int parameter = bestOrderRiceParameters[partition];
+            writer.writeBits(parameter, RICE_PARAMETER_BITS);
+            final int end = (partition + 1) * partitionSize;
+            for (; sample < end; ++sample) {
+                writer.writeRice(residual[sample], parameter);
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.flac;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import mixedbit.speechtrainer.Assertions;
+
+/**
+ * Encodes a complete recording (for example a session archived after
+ * training) to the FLAC format on multiple threads. FLAC frames are
+ * independent, so groups of consecutive frames are encoded by separate tasks
+ * and written to the output in order. Produces the same frames as the
+ * FlacEncoder.
+ *
+ * Tasks are executed by a given ExecutorService. A ForkJoinPool can be used
+ * where it is available (it is not on the Android versions supported by the
+ * application). The number of tasks that are submitted but not written is
+ * bounded, so memory use does not depend on the length of the recording.
+ */
+public class ParallelFlacEncoder {
+    private static final int FRAMES_PER_TASK = 8;
+
+    private final ExecutorService executor;
+    private final int maxPendingTasks;
+    // Each thread of the executor encodes with its own encoder.
+    private final ThreadLocal<FlacFrameEncoder> frameEncoders = new ThreadLocal<FlacFrameEncoder>() {
+        @Override
+        protected FlacFrameEncoder initialValue() {
+            return new FlacFrameEncoder(FlacEncoder.BLOCK_SIZE);
+        }
+    };
+
+    /**
+     * @param executor
+     *            Executes encoding tasks.
+     * @param parallelism
+     *            Number of threads of the executor.
+     */
+    public ParallelFlacEncoder(ExecutorService executor, int parallelism) {
+        Assertions.check(parallelism > 0);
+        this.executor = executor;
+        // Tasks waiting in the executor keep all threads busy while completed
+        // tasks are written.
+        this.maxPendingTasks = 2 * parallelism;
+    }
+
+    /**
+     * Encodes samples and writes the FLAC stream to the output. The written
+     * header contains the number of samples, frame sizes and the MD5
+     * signature are set to 'unknown'. The signature is computed by the
+     * calling thread while frames are encoded, so it is known only when all
+     * frames are written. Does not close the output.
+     * 
+     * @return Stream header with the MD5 signature, which can overwrite the
+     *         first STREAM_HEADER_SIZE_IN_BYTES bytes of a seekable output.
+     * @throws InterruptedException
+     *             if the calling thread was interrupted while waiting for
+     *             encoded frames. The output is not complete.
+     */
+    public byte[] encode(final short[] samples, final int offset, int length, int sampleRateHz,
+            OutputStream output) throws IOException, InterruptedException {
+        final MessageDigest md5 = FlacEncoder.createMd5();
+        final byte[] md5Input = new byte[FlacEncoder.BLOCK_SIZE * 2];
+        output.write(FlacEncoder.createStreamHeader(sampleRateHz, length, 0, 0,
+                new byte[md5.getDigestLength()]));
+
+        final int end = offset + length;
+        final long totalFrames = (length + FlacEncoder.BLOCK_SIZE - 1) / FlacEncoder.BLOCK_SIZE;
+        final LinkedList<Future<byte[]>> pendingTasks = new LinkedList<Future<byte[]>>();
+        long nextTaskFrame = 0;
+        long nextWrittenFrame = 0;
+        try {
+            while (nextTaskFrame < totalFrames || !pendingTasks.isEmpty()) {
+                while (nextTaskFrame < totalFrames && pendingTasks.size() < maxPendingTasks) {
+                    final long firstFrame = nextTaskFrame;
+                    final long lastFrame = Math.min(totalFrames, firstFrame + FRAMES_PER_TASK);
+                    pendingTasks.add(executor.submit(new Callable<byte[]>() {
+                        @Override
+                        public byte[] call() {
+                            return encodeFrames(samples, offset, end, firstFrame, lastFrame);
+                        }
+                    }));
+                    nextTaskFrame = lastFrame;
+                }
+                // Samples of the next written frames are digested while the
+                // tasks encode them.
+                final long lastWrittenFrame = Math.min(totalFrames,
+                        nextWrittenFrame + FRAMES_PER_TASK);
+                for (long frame = nextWrittenFrame; frame < lastWrittenFrame; ++frame) {
+                    final int blockOffset = (int) (frame * FlacEncoder.BLOCK_SIZE);
+                    FlacEncoder.updateMd5(md5, samples, offset + blockOffset,
+                            Math.min(FlacEncoder.BLOCK_SIZE, length - blockOffset), md5Input);
+                }
+                nextWrittenFrame = lastWrittenFrame;
+                output.write(getEncodedFrames(pendingTasks.removeFirst()));
+            }
+        } finally {
+            for (final Future<byte[]> task : pendingTasks) {
+                task.cancel(false);
+            }
+        }
+        return FlacEncoder.createStreamHeader(sampleRateHz, length, 0, 0, md5.digest());
+    }
+
+    /**
+     * Executed by a thread of the executor.
+     * 
+     * @return Encoded frames with numbers from firstFrame (inclusive) to
+     *         lastFrame (exclusive).
+     */
+    private byte[] encodeFrames(short[] samples, int offset, int end, long firstFrame,
+            long lastFrame) {
+        final FlacFrameEncoder frameEncoder = frameEncoders.get();
+        final ByteArrayOutputStream frames = new ByteArrayOutputStream(
+                (int) (lastFrame - firstFrame) * FlacEncoder.BLOCK_SIZE);
+        for (long frame = firstFrame; frame < lastFrame; ++frame) {
+            final int blockOffset = offset + (int) (frame * FlacEncoder.BLOCK_SIZE);
+            final int blockSize = Math.min(FlacEncoder.BLOCK_SIZE, end - blockOffset);
+            final FlacBitWriter encoded = frameEncoder.encodeFrame(samples, blockOffset,
+                    blockSize, frame);
+            frames.write(encoded.bytes(), 0, encoded.length());
+        }
+        return frames.toByteArray();
+    }
+
+    private static byte[] getEncodedFrames(Future<byte[]> task) throws InterruptedException {
+        try {
+            return task.get();
+        } catch (final ExecutionException e) {
+            // Encoding does not throw checked exceptions.
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.library;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.controller.AudioEventListener;
+import mixedbit.speechtrainer.controller.Utterance;
+import mixedbit.speechtrainer.controller.UtteranceListener;
+
+/**
+ * Collects sound levels of recorded buffers and utterance boundaries of a
+ * training session that is saved to the SessionLibrary. Passes all audio events
+ * to a chained listener.
+ *
+ * An utterance is the fragment played first after each recording. In the
+ * automatic training these are fragments that the SilenceFilter detected as
+ * speech, in the interactive training the fragment the user first chose to
+ * replay. Replays of the same recording are not counted as separate
+ * utterances.
+ *
+ * The automatic training plays a pre-roll of rejected buffers in front of
+ * each utterance. To leave the pre-roll out of utterance boundaries, the
+ * collector should be set as the UtteranceListener of the automatic training
+ * controller, an utterance then starts at the first buffer of the utterance
+ * detected by the UtteranceSegmenter.
+ *
+ * The collector must receive audio events on a single thread (in production
+ * code the UI thread to which events are passed by the AudioEventBus).
+ * Utterances are received on the audio thread.
+ */
+public class SessionCollector implements AudioEventListener, UtteranceListener {
+    private static final int NO_AUDIO_BUFFER_ID = -1;
+    private final AudioEventListener nextListener;
+
+    private boolean collecting = false;
+    // Grown when full, so arrays are reallocated only a few times during a
+    // long session.
+    private int[] audioBufferIds = new int[SpeechTrainerConfig.NUMBER_OF_AUDIO_BUFFERS];
+    private float[] soundLevels = new float[SpeechTrainerConfig.NUMBER_OF_AUDIO_BUFFERS];
+    private int recordedBuffersCount;
+    private int[] utteranceBoundaries = new int[64];
+    private int utterancesCount;
+
+    // Is the next played fragment an utterance (first played after recording)?
+    private boolean utterancePlayExpected = false;
+    private int firstPlayedAudioBufferId = NO_AUDIO_BUFFER_ID;
+    private int lastPlayedAudioBufferId = NO_AUDIO_BUFFER_ID;
+    // Set by the audio thread before the detected utterance is played, so the
+    // UI thread sees it when the playing stopped event is dispatched.
+    private volatile int detectedUtteranceFirstAudioBufferId = NO_AUDIO_BUFFER_ID;
+
+    /**
+     * @param nextListener
+     *            A chained listener to which all audio events are passed.
+     */
+    public SessionCollector(AudioEventListener nextListener) {
+        this.nextListener = nextListener;
+    }
+
+    /**
+     * Starts collecting levels and utterances of a new session. Levels and
+     * utterances of a previous session are discarded.
+     */
+    public void startSession() {
+        collecting = true;
+        recordedBuffersCount = 0;
+        utterancesCount = 0;
+        utterancePlayExpected = false;
+    }
+
+    /**
+     * Stops collecting.
+     * 
+     * @return Levels and utterances collected since startSession.
+     */
+    public SessionLevels finishSession() {
+        collecting = false;
+        final float[] sessionSoundLevels = new float[recordedBuffersCount];
+        System.arraycopy(soundLevels, 0, sessionSoundLevels, 0, recordedBuffersCount);
+        final int[] sessionUtteranceBoundaries = new int[2 * utterancesCount];
+        System.arraycopy(utteranceBoundaries, 0, sessionUtteranceBoundaries, 0,
+                2 * utterancesCount);
+        return new SessionLevels(sessionSoundLevels, sessionUtteranceBoundaries);
+    }
+
+    public boolean isCollecting() {
+        return collecting;
+    }
+
+    @Override
+    public void recordingStarted() {
+        utterancePlayExpected = collecting;
+        nextListener.recordingStarted();
+    }
+
+    @Override
+    public void audioBufferRecorded(int audioBufferId, double soundLevel) {
+        if (collecting) {
+            if (recordedBuffersCount == soundLevels.length) {
+                growLevels();
+            }
+            audioBufferIds[recordedBuffersCount] = audioBufferId;
+            soundLevels[recordedBuffersCount] = (float) soundLevel;
+            ++recordedBuffersCount;
+        }
+        nextListener.audioBufferRecorded(audioBufferId, soundLevel);
+    }
+
+    @Override
+    public void audioBufferRecordingFailed() {
+        nextListener.audioBufferRecordingFailed();
+    }
+
+    @Override
+    public void recordingStopped() {
+        nextListener.recordingStopped();
+    }
+
+    @Override
+    public void playingStarted() {
+        firstPlayedAudioBufferId = NO_AUDIO_BUFFER_ID;
+        lastPlayedAudioBufferId = NO_AUDIO_BUFFER_ID;
+        nextListener.playingStarted();
+    }
+
+    @Override
+    public void audioBufferPlayed(int audioBufferId, double soundLevel) {
+        if (firstPlayedAudioBufferId == NO_AUDIO_BUFFER_ID) {
+            firstPlayedAudioBufferId = audioBufferId;
+        }
+        lastPlayedAudioBufferId = audioBufferId;
+        nextListener.audioBufferPlayed(audioBufferId, soundLevel);
+    }
+
+    @Override
+    public void playingStopped() {
+        if (collecting && utterancePlayExpected
+                && firstPlayedAudioBufferId != NO_AUDIO_BUFFER_ID) {
+            utterancePlayExpected = false;
+            int firstUtteranceAudioBufferId = firstPlayedAudioBufferId;
+            final int detectedFirstAudioBufferId = detectedUtteranceFirstAudioBufferId;
+            // Not within the played fragment in the interactive training, or
+            // if the audio thread already detected a next utterance.
+            if (detectedFirstAudioBufferId >= firstPlayedAudioBufferId
+                    && detectedFirstAudioBufferId <= lastPlayedAudioBufferId) {
+                // Skips the pre-roll.
+                firstUtteranceAudioBufferId = detectedFirstAudioBufferId;
+            }
+            addUtterance(indexOfAudioBufferId(firstUtteranceAudioBufferId),
+                    indexOfAudioBufferId(lastPlayedAudioBufferId));
+        }
+        nextListener.playingStopped();
+    }
+
+    /**
+     * Called on the audio thread before the detected utterance is played.
+     */
+    @Override
+    public void utteranceDetected(Utterance utterance) {
+        utteranceDetected(utterance.getFirstAudioBufferId());
+    }
+
+    // Utterance objects are created only by the UtteranceSegmenter, tests call
+    // this method directly.
+    void utteranceDetected(int firstAudioBufferId) {
+        detectedUtteranceFirstAudioBufferId = firstAudioBufferId;
+    }
+
+    private void addUtterance(int firstBufferIndex, int lastBufferIndex) {
+        // Buffers could be recorded before the session started.
+        if (firstBufferIndex < 0 || lastBufferIndex < 0) {
+            return;
+        }
+        if (2 * utterancesCount == utteranceBoundaries.length) {
+            final int[] grownBoundaries = new int[2 * utteranceBoundaries.length];
+            System.arraycopy(utteranceBoundaries, 0, grownBoundaries, 0,
+                    utteranceBoundaries.length);
+            utteranceBoundaries = grownBoundaries;
+        }
+        utteranceBoundaries[2 * utterancesCount] = firstBufferIndex;
+        utteranceBoundaries[2 * utterancesCount + 1] = lastBufferIndex;
+        ++utterancesCount;
+    }
+
+    /**
+     * @return Index of a recorded buffer with a given id or -1 if the buffer
+     *         was not recorded during the session. Ids of recorded buffers
+     *         increase, so these are binary searched.
+     */
+    private int indexOfAudioBufferId(int audioBufferId) {
+        int low = 0;
+        int high = recordedBuffersCount - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (audioBufferIds[middle] < audioBufferId) {
+                low = middle + 1;
+            } else if (audioBufferIds[middle] > audioBufferId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private void growLevels() {
+        final int[] grownIds = new int[2 * audioBufferIds.length];
+        System.arraycopy(audioBufferIds, 0, grownIds, 0, recordedBuffersCount);
+        audioBufferIds = grownIds;
+        final float[] grownLevels = new float[2 * soundLevels.length];
+        System.arraycopy(soundLevels, 0, grownLevels, 0, recordedBuffersCount);
+        soundLevels = grownLevels;
+    }
+}
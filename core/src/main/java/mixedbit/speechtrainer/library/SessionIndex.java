@@ -0,0 +1,198 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Append only file with summaries of saved sessions. The file starts with a
+ * header (magic number and format version), followed by fixed size records,
+ * so a record of a session with a given index is at a known offset.
+ *
+ * Each record ends with a CRC32 of its content. A record is appended with a
+ * single write at the end of the file, followed by a sync. When the
+ * application is killed during an append, the file ends with a partial or
+ * corrupted record. Such record and anything that follows it are truncated
+ * when the index is opened, so appended records are either complete or
+ * absent.
+ *
+ * All records are kept in memory in their binary form (44 bytes per
+ * session) and decoded on request. Records must be appended by a single thread
+ * at a time. size and get can be called concurrently by other threads, these
+ * do not wait for the disk, an appended record becomes visible to them after
+ * it is synced.
+ */
+final class SessionIndex {
+    static final int HEADER_SIZE_IN_BYTES = 8;
+    static final int RECORD_SIZE_IN_BYTES = 44;
+    private static final int MAGIC = 0x53544958;
+    private static final int VERSION = 1;
+    private static final int INITIAL_CAPACITY_IN_RECORDS = 64;
+    private static final int CRC_OFFSET = RECORD_SIZE_IN_BYTES - 4;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    // Valid records from the file, followed by free space for new records.
+    private ByteBuffer records;
+    private int recordsCount;
+    private final ByteBuffer recordToAppend = ByteBuffer.allocate(RECORD_SIZE_IN_BYTES);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Opens the index file, creates it if it does not exist. Truncates a
+     * partial or corrupted record left by an interrupted append.
+     * 
+     * @throws IOException
+     *             if the file can not be read or has an unsupported format.
+     */
+    public SessionIndex(File indexFile) throws IOException {
+        file = new RandomAccessFile(indexFile, "rw");
+        channel = file.getChannel();
+        try {
+            load();
+        } catch (final IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public synchronized int size() {
+        return recordsCount;
+    }
+
+    /**
+     * @return Summary of a session with a given index. Sessions are indexed
+     *         in the order in which they were appended.
+     */
+    public synchronized SessionSummary get(int index) {
+        if (index < 0 || index >= recordsCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + recordsCount);
+        }
+        final int offset = index * RECORD_SIZE_IN_BYTES;
+        return new SessionSummary(records.getLong(offset), records.getLong(offset + 8),
+                records.getInt(offset + 16), records.getInt(offset + 20),
+                records.getInt(offset + 24), records.getFloat(offset + 28),
+                records.getFloat(offset + 32), records.getFloat(offset + 36));
+    }
+
+    /**
+     * Appends a record to the end of the index and syncs it to the disk.
+     */
+    public void append(SessionSummary summary) throws IOException {
+        recordToAppend.clear();
+        recordToAppend.putLong(summary.getSessionId());
+        recordToAppend.putLong(summary.getLevelsOffset());
+        recordToAppend.putInt(summary.getDurationMs());
+        recordToAppend.putInt(summary.getRecordedBuffersCount());
+        recordToAppend.putInt(summary.getUtterancesCount());
+        recordToAppend.putFloat((float) summary.getMinSoundLevel());
+        recordToAppend.putFloat((float) summary.getMeanSoundLevel());
+        recordToAppend.putFloat((float) summary.getMaxSoundLevel());
+        recordToAppend.putInt(computeCrc(recordToAppend.array(), 0));
+        writeFully(recordToAppend, recordOffsetInFile(size()));
+        channel.force(false);
+        addRecord(recordToAppend);
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private synchronized void addRecord(ByteBuffer record) {
+        if (records.capacity() < (recordsCount + 1) * RECORD_SIZE_IN_BYTES) {
+            final ByteBuffer grownRecords = ByteBuffer.allocate(2 * records.capacity());
+            System.arraycopy(records.array(), 0, grownRecords.array(), 0,
+                    recordsCount * RECORD_SIZE_IN_BYTES);
+            records = grownRecords;
+        }
+        System.arraycopy(record.array(), 0, records.array(),
+                recordsCount * RECORD_SIZE_IN_BYTES, RECORD_SIZE_IN_BYTES);
+        ++recordsCount;
+    }
+
+    private void load() throws IOException {
+        final long fileSize = channel.size();
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE_IN_BYTES);
+        if (fileSize < HEADER_SIZE_IN_BYTES) {
+            // A new file or the header write was interrupted.
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            channel.truncate(0);
+            writeFully(header, 0);
+            channel.force(false);
+        } else {
+            readFully(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported format of the session index.");
+            }
+        }
+        final int storedRecordsCount = (int) ((Math.max(fileSize, HEADER_SIZE_IN_BYTES)
+                - HEADER_SIZE_IN_BYTES) / RECORD_SIZE_IN_BYTES);
+        records = ByteBuffer.allocate(Math.max(storedRecordsCount, INITIAL_CAPACITY_IN_RECORDS)
+                * RECORD_SIZE_IN_BYTES);
+        records.limit(storedRecordsCount * RECORD_SIZE_IN_BYTES);
+        readFully(records, HEADER_SIZE_IN_BYTES);
+        records.clear();
+
+        recordsCount = 0;
+        while (recordsCount < storedRecordsCount
+                && computeCrc(records.array(), recordsCount * RECORD_SIZE_IN_BYTES)
+                == records.getInt(recordsCount * RECORD_SIZE_IN_BYTES + CRC_OFFSET)) {
+            ++recordsCount;
+        }
+        if (recordOffsetInFile(recordsCount) < fileSize) {
+            channel.truncate(recordOffsetInFile(recordsCount));
+            channel.force(false);
+        }
+    }
+
+    private int computeCrc(byte[] data, int recordOffset) {
+        crc.reset();
+        crc.update(data, recordOffset, CRC_OFFSET);
+        return (int) crc.getValue();
+    }
+
+    private static long recordOffsetInFile(int index) {
+        return HEADER_SIZE_IN_BYTES + (long) index * RECORD_SIZE_IN_BYTES;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        buffer.rewind();
+        long writePosition = position;
+        while (buffer.hasRemaining()) {
+            writePosition += channel.write(buffer, writePosition);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        long readPosition = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, readPosition);
+            if (read < 0) {
+                throw new IOException("Unexpected end of the session index.");
+            }
+            readPosition += read;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.library;
+
+import mixedbit.speechtrainer.Assertions;
+
+/**
+ * Sound levels of all buffers recorded during a training session and
+ * boundaries of utterances. Utterance boundaries are indexes of the first and
+ * the last recorded buffer of the utterance.
+ */
+public class SessionLevels {
+    private final float[] soundLevels;
+    // Pairs of the first and the last buffer index of each utterance.
+    private final int[] utteranceBoundaries;
+
+    SessionLevels(float[] soundLevels, int[] utteranceBoundaries) {
+        Assertions.check(utteranceBoundaries.length % 2 == 0);
+        this.soundLevels = soundLevels;
+        this.utteranceBoundaries = utteranceBoundaries;
+    }
+
+    public int getRecordedBuffersCount() {
+        return soundLevels.length;
+    }
+
+    /**
+     * @return Sound level of a recorded buffer with a given index.
+     */
+    public double getSoundLevel(int bufferIndex) {
+        return soundLevels[bufferIndex];
+    }
+
+    public int getUtterancesCount() {
+        return utteranceBoundaries.length / 2;
+    }
+
+    /**
+     * @return Index of the first recorded buffer of a given utterance.
+     */
+    public int getUtteranceFirstBufferIndex(int utteranceIndex) {
+        return utteranceBoundaries[2 * utteranceIndex];
+    }
+
+    /**
+     * @return Index of the last recorded buffer of a given utterance.
+     */
+    public int getUtteranceLastBufferIndex(int utteranceIndex) {
+        return utteranceBoundaries[2 * utteranceIndex + 1];
+    }
+
+    float[] getSoundLevels() {
+        return soundLevels;
+    }
+
+    int[] getUtteranceBoundaries() {
+        return utteranceBoundaries;
+    }
+}
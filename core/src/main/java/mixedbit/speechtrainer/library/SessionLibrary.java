@@ -0,0 +1,188 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Persistent collection of training sessions kept in a single directory. For
+ * each session the library keeps a WAV file with audio data, sound levels of
+ * recorded buffers, utterance boundaries and a summary in the SessionIndex.
+ *
+ * Summaries of all sessions are kept in memory, so sessions can be listed
+ * without reading any other files. Sound levels and utterance boundaries of
+ * all sessions are appended to a single levels file, the summary of a session
+ * stores an offset of its data in this file.
+ *
+ * Adding a session takes constant time regardless of the number of saved
+ * sessions. Levels are written and synced before the summary is appended to
+ * the index, so the index never refers to data that is not on the disk. Data
+ * written to the levels file by an interrupted addition, which has no summary
+ * in the index, is overwritten by the next addition.
+ *
+ * Sessions must be added by a single thread at a time (in production code a
+ * background thread, so the UI thread never waits for syncs). Other threads
+ * can concurrently list sessions and read levels, these see a session once
+ * its addition completes.
+ */
+public class SessionLibrary {
+    private static final String INDEX_FILE = "sessions.idx";
+    private static final String LEVELS_FILE = "levels.dat";
+    private static final int BYTES_PER_LEVEL = 4;
+    private static final int BYTES_PER_UTTERANCE = 8;
+
+    private final File directory;
+    private final SessionIndex index;
+    private final RandomAccessFile levelsFile;
+    private final FileChannel levelsChannel;
+
+    /**
+     * Opens the library in a given directory, creates files of an empty
+     * library if these do not exist.
+     * 
+     * @throws IOException
+     *             if the library can not be opened.
+     */
+    public SessionLibrary(File directory) throws IOException {
+        this.directory = directory;
+        index = new SessionIndex(new File(directory, INDEX_FILE));
+        try {
+            levelsFile = new RandomAccessFile(new File(directory, LEVELS_FILE), "rw");
+        } catch (final IOException e) {
+            index.close();
+            throw e;
+        }
+        levelsChannel = levelsFile.getChannel();
+    }
+
+    /**
+     * @return File in which audio data of a session with a given id is (or
+     *         should be) saved.
+     */
+    public File getAudioFile(long sessionId) {
+        return new File(directory, "session-" + sessionId + ".wav");
+    }
+
+    public int getSessionsCount() {
+        return index.size();
+    }
+
+    /**
+     * @return Summary of a session with a given index. Sessions are indexed
+     *         in the order in which they were added.
+     */
+    public SessionSummary getSession(int sessionIndex) {
+        return index.get(sessionIndex);
+    }
+
+    /**
+     * Adds a session which audio data was saved to getAudioFile(sessionId).
+     * 
+     * @param sessionId
+     *            Time at which the session started in milliseconds since the
+     *            epoch.
+     * @param durationMs
+     *            Length of the saved audio data.
+     * @param levels
+     *            Sound levels and utterances of the session.
+     * @return Summary of the added session.
+     * @throws IOException
+     *             if the session could not be saved. The library is then left
+     *             as if the session was not added.
+     */
+    public SessionSummary addSession(long sessionId, int durationMs, SessionLevels levels)
+    throws IOException {
+        final float[] soundLevels = levels.getSoundLevels();
+        float minSoundLevel = soundLevels.length > 0 ? Float.MAX_VALUE : 0;
+        float maxSoundLevel = 0;
+        double soundLevelsSum = 0;
+        for (final float soundLevel : soundLevels) {
+            minSoundLevel = Math.min(minSoundLevel, soundLevel);
+            maxSoundLevel = Math.max(maxSoundLevel, soundLevel);
+            soundLevelsSum += soundLevel;
+        }
+        final float meanSoundLevel = soundLevels.length > 0
+        ? (float) (soundLevelsSum / soundLevels.length) : 0;
+        final SessionSummary summary = new SessionSummary(sessionId, getLevelsEndOffset(),
+                durationMs, soundLevels.length, levels.getUtterancesCount(), minSoundLevel,
+                meanSoundLevel, maxSoundLevel);
+
+        final ByteBuffer data = ByteBuffer.allocate(getLevelsSizeInBytes(summary));
+        data.asFloatBuffer().put(soundLevels);
+        data.position(soundLevels.length * BYTES_PER_LEVEL);
+        data.asIntBuffer().put(levels.getUtteranceBoundaries());
+        data.clear();
+        long writePosition = summary.getLevelsOffset();
+        while (data.hasRemaining()) {
+            writePosition += levelsChannel.write(data, writePosition);
+        }
+        // Removes data of interrupted additions that could follow.
+        levelsChannel.truncate(writePosition);
+        levelsChannel.force(false);
+        index.append(summary);
+        return summary;
+    }
+
+    /**
+     * Reads sound levels and utterance boundaries of a given session.
+     */
+    public SessionLevels readLevels(SessionSummary summary) throws IOException {
+        final ByteBuffer data = ByteBuffer.allocate(getLevelsSizeInBytes(summary));
+        long readPosition = summary.getLevelsOffset();
+        while (data.hasRemaining()) {
+            final int read = levelsChannel.read(data, readPosition);
+            if (read < 0) {
+                throw new IOException("Unexpected end of the levels file.");
+            }
+            readPosition += read;
+        }
+        data.clear();
+        final float[] soundLevels = new float[summary.getRecordedBuffersCount()];
+        data.asFloatBuffer().get(soundLevels);
+        data.position(soundLevels.length * BYTES_PER_LEVEL);
+        final int[] utteranceBoundaries = new int[2 * summary.getUtterancesCount()];
+        data.asIntBuffer().get(utteranceBoundaries);
+        return new SessionLevels(soundLevels, utteranceBoundaries);
+    }
+
+    public void close() throws IOException {
+        try {
+            levelsFile.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    private long getLevelsEndOffset() {
+        if (index.size() == 0) {
+            return 0;
+        }
+        final SessionSummary lastSession = index.get(index.size() - 1);
+        return lastSession.getLevelsOffset() + getLevelsSizeInBytes(lastSession);
+    }
+
+    private static int getLevelsSizeInBytes(SessionSummary summary) {
+        return summary.getRecordedBuffersCount() * BYTES_PER_LEVEL
+        + summary.getUtterancesCount() * BYTES_PER_UTTERANCE;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.library;
+
+/**
+ * Summary of a saved training session kept in the index of the
+ * SessionLibrary. Allows to list sessions without reading their audio data and
+ * sound levels.
+ */
+public class SessionSummary {
+    private final long sessionId;
+    private final long levelsOffset;
+    private final int durationMs;
+    private final int recordedBuffersCount;
+    private final int utterancesCount;
+    private final float minSoundLevel;
+    private final float meanSoundLevel;
+    private final float maxSoundLevel;
+
+    SessionSummary(long sessionId, long levelsOffset, int durationMs,
+            int recordedBuffersCount, int utterancesCount, float minSoundLevel,
+            float meanSoundLevel, float maxSoundLevel) {
+        this.sessionId = sessionId;
+        this.levelsOffset = levelsOffset;
+        this.durationMs = durationMs;
+        this.recordedBuffersCount = recordedBuffersCount;
+        this.utterancesCount = utterancesCount;
+        this.minSoundLevel = minSoundLevel;
+        this.meanSoundLevel = meanSoundLevel;
+        this.maxSoundLevel = maxSoundLevel;
+    }
+
+    /**
+     * @return Unique id of the session, time at which the session started in
+     *         milliseconds since the epoch.
+     */
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return Length of the saved audio data.
+     */
+    public int getDurationMs() {
+        return durationMs;
+    }
+
+    /**
+     * @return Number of buffers recorded during the session.
+     */
+    public int getRecordedBuffersCount() {
+        return recordedBuffersCount;
+    }
+
+    /**
+     * @return Number of utterances detected during the session.
+     */
+    public int getUtterancesCount() {
+        return utterancesCount;
+    }
+
+    /**
+     * @return Sound level of the most quiet recorded buffer.
+     */
+    public double getMinSoundLevel() {
+        return minSoundLevel;
+    }
+
+    /**
+     * @return Average of sound levels of all recorded buffers.
+     */
+    public double getMeanSoundLevel() {
+        return meanSoundLevel;
+    }
+
+    /**
+     * @return Sound level of the most loud recorded buffer.
+     */
+    public double getMaxSoundLevel() {
+        return maxSoundLevel;
+    }
+
+    /**
+     * @return Offset of the session sound levels in the levels file of the
+     *         library.
+     */
+    long getLevelsOffset() {
+        return levelsOffset;
+    }
+}
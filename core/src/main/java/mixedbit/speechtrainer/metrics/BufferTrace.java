@@ -0,0 +1,240 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.metrics;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import mixedbit.speechtrainer.Assertions;
+
+/**
+ * Fixed size ring of events in the lifecycle of audio buffers (allocated,
+ * recorded, filtered, dropped, played, released). Helps to diagnose glitches
+ * such as clipped words or late replay: the ring keeps the most recent events
+ * and can be dumped on demand.
+ *
+ * Each event is stored with the id of the audio buffer, a System.nanoTime()
+ * timestamp and the id of the thread that recorded the event. All memory is
+ * allocated during the construction, recording an event does not allocate.
+ * Events can be recorded by multiple threads, each event claims a slot of the
+ * ring with an atomic increment of a sequence number. The slot is published by
+ * storing the sequence number of the event in it. A dump reads the sequence
+ * number of a slot before and after reading the event (a seqlock) and skips
+ * the slot unless both reads give the expected sequence number, so events
+ * that are being written or were overwritten during the dump are not
+ * emitted torn. Fields of events are kept in atomic arrays, so their reads
+ * and writes can not be reordered with the accesses to the sequence numbers.
+ *
+ * The trace is disabled by default, a disabled trace does not read the clock
+ * and returns immediately.
+ */
+public class BufferTrace {
+    /**
+     * Event in the lifecycle of an audio buffer.
+     */
+    public enum Event {
+        ALLOCATED,
+        RECORDED,
+        RECORDING_FAILED,
+        // Actions returned by the SilenceFilter for the recorded buffer.
+        FILTER_ACCEPT_BUFFER,
+        FILTER_DROP_ALL_ACCEPTED_BUFFERS,
+        FILTER_DROP_TRAILING_BUFFERS_AND_PLAY,
+        // The buffer was discarded without being played.
+        DROPPED,
+        PLAYED,
+        RELEASED,
+    }
+
+    private static final Event[] EVENTS = Event.values();
+    // Written at the beginning of the binary dump.
+    private static final int BINARY_DUMP_MAGIC = 0x53544254;
+    private static final int BINARY_DUMP_VERSION = 1;
+    private static final long EMPTY_SLOT = -1;
+
+    /**
+     * A copy of an event read from the ring by a dump.
+     */
+    private static class EventRecord {
+        long timestampNanos;
+        long threadId;
+        int audioBufferId;
+        byte event;
+    }
+
+    private final int capacity;
+    private final int slotMask;
+    private final AtomicLong nextSequence = new AtomicLong(0);
+    // Sequence number of the event stored in each slot, EMPTY_SLOT if the
+    // slot is being written or was never written.
+    private final AtomicLongArray slotSequences;
+    private final AtomicLongArray timestampsNanos;
+    private final AtomicLongArray threadIds;
+    // The audio buffer id in the upper bits and the event ordinal in the
+    // lowest byte, so both are written with a single atomic write.
+    private final AtomicLongArray audioBufferIdsAndEvents;
+    private volatile boolean enabled = false;
+
+    /**
+     * @param capacity
+     *            Number of the most recent events kept. Must be a power of two.
+     */
+    public BufferTrace(int capacity) {
+        Assertions.check(capacity > 0 && (capacity & (capacity - 1)) == 0);
+        this.capacity = capacity;
+        this.slotMask = capacity - 1;
+        slotSequences = new AtomicLongArray(capacity);
+        timestampsNanos = new AtomicLongArray(capacity);
+        threadIds = new AtomicLongArray(capacity);
+        audioBufferIdsAndEvents = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; ++i) {
+            slotSequences.set(i, EMPTY_SLOT);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables recording of events. Events recorded so far are
+     * kept.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Records an event for an audio buffer with a given id.
+     */
+    public void record(int audioBufferId, Event event) {
+        if (!enabled) {
+            return;
+        }
+        final long sequence = nextSequence.getAndIncrement();
+        final int slot = (int) (sequence & slotMask);
+        slotSequences.set(slot, EMPTY_SLOT);
+        timestampsNanos.set(slot, System.nanoTime());
+        threadIds.set(slot, Thread.currentThread().getId());
+        audioBufferIdsAndEvents.set(slot, ((long) audioBufferId << 8) | event.ordinal());
+        // Publishes the slot.
+        slotSequences.set(slot, sequence);
+    }
+
+    /**
+     * @return Number of events recorded since the trace was created, including
+     *         events that were overwritten.
+     */
+    public long getRecordedEventsCount() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Writes the events kept in the ring, the oldest first, as text. Each line
+     * contains the sequence number of the event, the timestamp in nanoseconds,
+     * the thread id, the audio buffer id and the event name, separated by
+     * spaces.
+     */
+    public void dumpText(Writer writer) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        final EventRecord record = new EventRecord();
+        final long endSequence = nextSequence.get();
+        for (long sequence = firstKeptSequence(endSequence); sequence < endSequence; ++sequence) {
+            if (!readEvent(sequence, record)) {
+                // Not published yet or already overwritten.
+                continue;
+            }
+            line.setLength(0);
+            line.append(sequence).append(' ').append(record.timestampNanos).append(' ')
+            .append(record.threadId).append(' ').append(record.audioBufferId).append(' ')
+            .append(EVENTS[record.event].name()).append('\n');
+            writer.write(line.toString());
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the events kept in the ring, the oldest first, in a compact
+     * binary format: a header (magic number, version, number of events) and a
+     * record for each event (sequence number, timestamp in nanoseconds, thread
+     * id, audio buffer id, event ordinal). All values are big-endian.
+     */
+    public void dumpBinary(OutputStream outputStream) throws IOException {
+        final long endSequence = nextSequence.get();
+        final long startSequence = firstKeptSequence(endSequence);
+        // Slots that turn out to be unpublished are written with the
+        // EMPTY_SLOT sequence number and zeroed fields, so the number of
+        // records in the header is exact.
+        final DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(BINARY_DUMP_MAGIC);
+        output.writeInt(BINARY_DUMP_VERSION);
+        output.writeInt((int) (endSequence - startSequence));
+        final EventRecord record = new EventRecord();
+        for (long sequence = startSequence; sequence < endSequence; ++sequence) {
+            if (readEvent(sequence, record)) {
+                output.writeLong(sequence);
+                output.writeLong(record.timestampNanos);
+                output.writeLong(record.threadId);
+                output.writeInt(record.audioBufferId);
+                output.writeByte(record.event);
+            } else {
+                output.writeLong(EMPTY_SLOT);
+                output.writeLong(0L);
+                output.writeLong(0L);
+                output.writeInt(0);
+                output.writeByte(0);
+            }
+        }
+        output.flush();
+    }
+
+    /**
+     * Copies an event with a given sequence number to a record.
+     * 
+     * @return false if the event is not published or was overwritten, the
+     *         record is then not valid.
+     */
+    private boolean readEvent(long sequence, EventRecord record) {
+        final int slot = (int) (sequence & slotMask);
+        if (slotSequences.get(slot) != sequence) {
+            return false;
+        }
+        record.timestampNanos = timestampsNanos.get(slot);
+        record.threadId = threadIds.get(slot);
+        final long audioBufferIdAndEvent = audioBufferIdsAndEvents.get(slot);
+        record.audioBufferId = (int) (audioBufferIdAndEvent >> 8);
+        record.event = (byte) audioBufferIdAndEvent;
+        // A writer that started to overwrite the slot during the reads above
+        // has marked it as empty, the mark is seen by the read below if any
+        // field written after it was seen.
+        return slotSequences.get(slot) == sequence;
+    }
+
+    private long firstKeptSequence(long endSequence) {
+        return Math.max(0, endSequence - capacity);
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.metrics;
+
+import mixedbit.speechtrainer.Assertions;
+
+/**
+ * Distribution of non negative long values (usually latencies in
+ * nanoseconds). Values are counted in a fixed set of buckets: each power of
+ * two range is split into SUB_BUCKETS_COUNT buckets of equal width, so the
+ * relative error of a reported percentile is at most 1/SUB_BUCKETS_COUNT,
+ * regardless of the magnitude of values. All memory is allocated during the
+ * construction, recording a value does not allocate and takes constant time,
+ * so the histogram can be used on the audio thread.
+ *
+ * The class is not thread safe.
+ */
+public class Histogram {
+    private static final int SUB_BUCKETS_BITS = 3;
+    public static final int SUB_BUCKETS_COUNT = 1 << SUB_BUCKETS_BITS;
+    // Values smaller than SUB_BUCKETS_COUNT have own buckets, then there are
+    // SUB_BUCKETS_COUNT buckets for each of the remaining power of two ranges
+    // of positive long values.
+    private static final int BUCKETS_COUNT = SUB_BUCKETS_COUNT
+    + (Long.SIZE - 1 - SUB_BUCKETS_BITS) * SUB_BUCKETS_COUNT;
+
+    private final long[] bucketCounts = new long[BUCKETS_COUNT];
+    private long count;
+    private long sum;
+    private long min;
+    private long max;
+
+    public Histogram() {
+        reset();
+    }
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        ++bucketCounts[bucketIndex(value)];
+        ++count;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds all values recorded by another histogram to this histogram.
+     */
+    public void add(Histogram other) {
+        if (other.count == 0) {
+            return;
+        }
+        for (int i = 0; i < BUCKETS_COUNT; ++i) {
+            bucketCounts[i] += other.bucketCounts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Forgets all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS_COUNT; ++i) {
+            bucketCounts[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The smallest recorded value, 0 if no values were recorded.
+     */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * @return The largest recorded value, 0 if no values were recorded.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return The mean of recorded values, 0 if no values were recorded.
+     */
+    public double getMean() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile
+     *            Percentile in the range [0, 100].
+     * @return The value below or equal to which the given percentile of
+     *         recorded values are. The value is the upper bound of the bucket
+     *         that contains the percentile (but never more than the largest
+     *         recorded value). 0 if no values were recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        Assertions.check(percentile >= 0.0 && percentile <= 100.0);
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long countBelow = 0;
+        for (int i = 0; i < BUCKETS_COUNT; ++i) {
+            countBelow += bucketCounts[i];
+            if (countBelow >= rank) {
+                return Math.max(getMin(), Math.min(max, bucketUpperBound(i)));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return Summary of the distribution (count, min, mean, percentiles and
+     *         max) with values divided by a given divisor (for instance 1000
+     *         to report nanoseconds as microseconds).
+     */
+    public String toString(double divisor) {
+        return String.format("count=%d min=%.1f mean=%.1f p50=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+                count, getMin() / divisor, getMean() / divisor,
+                getValueAtPercentile(50.0) / divisor, getValueAtPercentile(99.0) / divisor,
+                getValueAtPercentile(99.9) / divisor, getMax() / divisor);
+    }
+
+    @Override
+    public String toString() {
+        return toString(1.0);
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS_COUNT) {
+            return (int) value;
+        }
+        final int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = highestBit - SUB_BUCKETS_BITS;
+        final int subBucket = (int) (value >>> shift) - SUB_BUCKETS_COUNT;
+        return SUB_BUCKETS_COUNT + shift * SUB_BUCKETS_COUNT + subBucket;
+    }
+
+    /**
+     * @return The largest value that is counted in a bucket with a given index.
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS_COUNT) {
+            return index;
+        }
+        final int shift = (index - SUB_BUCKETS_COUNT) / SUB_BUCKETS_COUNT;
+        final long subBucket = (index - SUB_BUCKETS_COUNT) % SUB_BUCKETS_COUNT;
+        final long lowerBound = (SUB_BUCKETS_COUNT + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
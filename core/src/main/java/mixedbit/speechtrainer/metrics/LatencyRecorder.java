@@ -0,0 +1,202 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.metrics;
+
+import java.util.Arrays;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+
+/**
+ * Measures the delay between the end of an utterance and the start of its
+ * playback in the automatic training mode. The delay is a sum of the silence
+ * that needs to be detected before the recording is played
+ * (SilenceFilter.LONG_SILENCE_INTERVAL_MS), the time to stop the recorder and
+ * start the player, and the latency of the output buffer.
+ *
+ * The controller timestamps each buffer when it is captured, the filter
+ * decision to play, and each buffer when it is written to the player. The
+ * moment at which a written buffer becomes audible is estimated as the write
+ * time plus the output latency (the length of the output buffer of the
+ * player). Stages of the delay are counted in histograms, one value per
+ * playback or, for CAPTURE_TO_WRITE, per played buffer.
+ *
+ * The recorder is disabled by default, a disabled recorder does not read the
+ * clock and returns immediately. Timestamps are passed by the audio thread,
+ * histograms can be read by any thread.
+ */
+public class LatencyRecorder {
+    /**
+     * Measured stage of the mic to speaker delay.
+     */
+    public enum Stage {
+        // From the capture of the last buffer above the silence level to the
+        // filter decision to play.
+        UTTERANCE_END_TO_DECISION,
+        // From the decision to play to the write of the first played buffer
+        // (includes stopping the recorder and starting the player).
+        DECISION_TO_FIRST_WRITE,
+        // From the capture of the last buffer above the silence level to the
+        // estimated moment the first played buffer is audible.
+        UTTERANCE_END_TO_AUDIBLE,
+        // From the capture of a buffer to its write to the player.
+        CAPTURE_TO_WRITE,
+    }
+
+    private static final long NO_TIMESTAMP = -1;
+    private final Histogram[] histograms = new Histogram[Stage.values().length];
+    // Capture timestamps indexed by audio buffer id modulo length. There are
+    // never more recorded buffers than audio buffers, so timestamps of buffers
+    // waiting to be played are never overwritten. NO_TIMESTAMP for buffers
+    // captured while the recorder was disabled.
+    private final long[] captureNanos = new long[SpeechTrainerConfig.NUMBER_OF_AUDIO_BUFFERS];
+    private volatile boolean enabled = false;
+    private volatile long outputLatencyNanos = 0;
+    private long utteranceEndNanos = NO_TIMESTAMP;
+    private long decisionNanos = NO_TIMESTAMP;
+
+    public LatencyRecorder() {
+        for (int i = 0; i < histograms.length; ++i) {
+            histograms[i] = new Histogram();
+        }
+        Arrays.fill(captureNanos, NO_TIMESTAMP);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the measurements. Measurements done so far are
+     * kept. The measurements can be enabled during a session, buffers captured
+     * before that are not measured.
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        if (enabled && !this.enabled) {
+            // The audio thread does not write timestamps until it sees the
+            // recorder enabled, after these are cleared.
+            Arrays.fill(captureNanos, NO_TIMESTAMP);
+            decisionNanos = NO_TIMESTAMP;
+            utteranceEndNanos = NO_TIMESTAMP;
+        }
+        this.enabled = enabled;
+    }
+
+    /**
+     * Sets the estimated time between writing data to the player and the data
+     * being audible.
+     */
+    public void setOutputLatencyNanos(long outputLatencyNanos) {
+        this.outputLatencyNanos = outputLatencyNanos;
+    }
+
+    public long getOutputLatencyNanos() {
+        return outputLatencyNanos;
+    }
+
+    /**
+     * Called after a buffer with a given id was recorded.
+     */
+    public void audioBufferCaptured(int audioBufferId) {
+        if (!enabled) {
+            return;
+        }
+        captureNanos[audioBufferId % captureNanos.length] = System.nanoTime();
+    }
+
+    /**
+     * Called after the filter decided to play recorded buffers.
+     *
+     * @param utteranceEndAudioBufferId
+     *            Id of the last buffer above the silence level.
+     */
+    public synchronized void playbackDecided(int utteranceEndAudioBufferId) {
+        if (!enabled) {
+            return;
+        }
+        decisionNanos = System.nanoTime();
+        utteranceEndNanos = captureNanos[utteranceEndAudioBufferId % captureNanos.length];
+        if (utteranceEndNanos != NO_TIMESTAMP) {
+            histograms[Stage.UTTERANCE_END_TO_DECISION.ordinal()].record(
+                    decisionNanos - utteranceEndNanos);
+        }
+    }
+
+    /**
+     * Called after a buffer with a given id was written to the player.
+     */
+    public synchronized void audioBufferWritten(int audioBufferId) {
+        if (!enabled) {
+            return;
+        }
+        final long nowNanos = System.nanoTime();
+        final long capturedNanos = captureNanos[audioBufferId % captureNanos.length];
+        if (capturedNanos != NO_TIMESTAMP) {
+            histograms[Stage.CAPTURE_TO_WRITE.ordinal()].record(nowNanos - capturedNanos);
+        }
+        if (decisionNanos != NO_TIMESTAMP) {
+            histograms[Stage.DECISION_TO_FIRST_WRITE.ordinal()].record(nowNanos - decisionNanos);
+            if (utteranceEndNanos != NO_TIMESTAMP) {
+                histograms[Stage.UTTERANCE_END_TO_AUDIBLE.ordinal()].record(
+                        nowNanos + outputLatencyNanos - utteranceEndNanos);
+            }
+            decisionNanos = NO_TIMESTAMP;
+            utteranceEndNanos = NO_TIMESTAMP;
+        }
+    }
+
+    /**
+     * Copies the histogram of a given stage to a given histogram.
+     */
+    public synchronized void copyHistogram(Stage stage, Histogram target) {
+        target.reset();
+        target.add(histograms[stage.ordinal()]);
+    }
+
+    /**
+     * Forgets all measurements (used when a new session starts).
+     */
+    public synchronized void reset() {
+        for (final Histogram histogram : histograms) {
+            histogram.reset();
+        }
+        decisionNanos = NO_TIMESTAMP;
+        utteranceEndNanos = NO_TIMESTAMP;
+    }
+
+    /**
+     * @return Histograms of all stages in the CSV format, one stage per row,
+     *         values in microseconds.
+     */
+    public synchronized String toCsv() {
+        final StringBuilder csv = new StringBuilder(
+                "stage,count,min_us,mean_us,p50_us,p90_us,p99_us,max_us\n");
+        for (final Stage stage : Stage.values()) {
+            final Histogram histogram = histograms[stage.ordinal()];
+            csv.append(stage.name().toLowerCase()).append(',')
+            .append(histogram.getCount()).append(',')
+            .append(histogram.getMin() / 1000).append(',')
+            .append(Math.round(histogram.getMean() / 1000)).append(',')
+            .append(histogram.getValueAtPercentile(50.0) / 1000).append(',')
+            .append(histogram.getValueAtPercentile(90.0) / 1000).append(',')
+            .append(histogram.getValueAtPercentile(99.0) / 1000).append(',')
+            .append(histogram.getMax() / 1000).append('\n');
+        }
+        return csv.toString();
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import mixedbit.speechtrainer.Assertions;
+
+/**
+ * Named counters, gauges and histograms that describe the state of the audio
+ * pipeline. Metrics are registered when components are created (registration
+ * allocates), updating a registered metric does not allocate, so it can be
+ * done by the audio thread for each buffer.
+ *
+ * Registering a metric with a name that is already registered returns the
+ * existing metric, so successive controllers that share the registry update
+ * the same metrics. Metrics are printed in the registration order.
+ *
+ * The class is thread safe.
+ */
+public class MetricsRegistry {
+    /**
+     * Counter that can be incremented by multiple threads without contention.
+     * Each thread increments one of several stripes (chosen by the thread id),
+     * the value is the sum of all stripes.
+     */
+    public static final class Counter {
+        private static final int STRIPES_COUNT = 4;
+        // Stripes are spaced by a cache line (8 longs), so threads that
+        // increment different stripes do not share a cache line.
+        private static final int STRIPE_SPACING = 8;
+        private final AtomicLongArray stripes = new AtomicLongArray(STRIPES_COUNT
+                * STRIPE_SPACING);
+
+        private Counter() {
+        }
+
+        public void increment() {
+            add(1);
+        }
+
+        public void add(long delta) {
+            final int stripe = (int) Thread.currentThread().getId() & (STRIPES_COUNT - 1);
+            stripes.addAndGet(stripe * STRIPE_SPACING, delta);
+        }
+
+        public long get() {
+            long sum = 0;
+            for (int i = 0; i < STRIPES_COUNT; ++i) {
+                sum += stripes.get(i * STRIPE_SPACING);
+            }
+            return sum;
+        }
+
+        private void reset() {
+            for (int i = 0; i < STRIPES_COUNT; ++i) {
+                stripes.set(i * STRIPE_SPACING, 0);
+            }
+        }
+    }
+
+    /**
+     * Current value of some quantity (for instance the number of allocated
+     * buffers) together with the maximum value seen since the last reset.
+     */
+    public static final class Gauge {
+        private final AtomicLong value = new AtomicLong();
+        private final AtomicLong maxValue = new AtomicLong();
+
+        private Gauge() {
+        }
+
+        public void set(long newValue) {
+            value.set(newValue);
+            updateMax(newValue);
+        }
+
+        public void add(long delta) {
+            updateMax(value.addAndGet(delta));
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        public long getMax() {
+            return maxValue.get();
+        }
+
+        private void updateMax(long newValue) {
+            long currentMax = maxValue.get();
+            while (newValue > currentMax && !maxValue.compareAndSet(currentMax, newValue)) {
+                currentMax = maxValue.get();
+            }
+        }
+
+        private void reset() {
+            // The current value describes the state of a component and is not
+            // reset.
+            maxValue.set(value.get());
+        }
+    }
+
+    /**
+     * Distribution of recorded values kept in a fixed bucket Histogram.
+     * Recording takes a lock, but the lock is expected to be taken by a single
+     * thread and is not contended.
+     */
+    public static final class HistogramMetric {
+        private final Histogram histogram = new Histogram();
+        private final double divisor;
+
+        private HistogramMetric(double divisor) {
+            this.divisor = divisor;
+        }
+
+        public synchronized void record(long value) {
+            histogram.record(value);
+        }
+
+        /**
+         * Copies recorded values to the given histogram (the histogram is reset
+         * first).
+         */
+        public synchronized void copyTo(Histogram destination) {
+            destination.reset();
+            destination.add(histogram);
+        }
+
+        private synchronized void reset() {
+            histogram.reset();
+        }
+
+        private synchronized String format() {
+            return histogram.toString(divisor);
+        }
+    }
+
+    private final Map<String, Object> metricsByName = new HashMap<String, Object>();
+    private final List<String> names = new ArrayList<String>();
+
+    /**
+     * @return Counter registered with the given name.
+     */
+    public synchronized Counter counter(String name) {
+        Counter counter = (Counter) lookup(name, Counter.class);
+        if (counter == null) {
+            counter = new Counter();
+            register(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * @return Gauge registered with the given name.
+     */
+    public synchronized Gauge gauge(String name) {
+        Gauge gauge = (Gauge) lookup(name, Gauge.class);
+        if (gauge == null) {
+            gauge = new Gauge();
+            register(name, gauge);
+        }
+        return gauge;
+    }
+
+    /**
+     * @param divisor
+     *            Recorded values are divided by the divisor when printed (for
+     *            instance 1000000.0 to print nanoseconds as milliseconds).
+     * @return Histogram registered with the given name.
+     */
+    public synchronized HistogramMetric histogram(String name, double divisor) {
+        HistogramMetric histogram = (HistogramMetric) lookup(name, HistogramMetric.class);
+        if (histogram == null) {
+            histogram = new HistogramMetric(divisor);
+            register(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Resets all counters and histograms, and maximums of gauges.
+     */
+    public synchronized void reset() {
+        for (final String name : names) {
+            final Object metric = metricsByName.get(name);
+            if (metric instanceof Counter) {
+                ((Counter) metric).reset();
+            } else if (metric instanceof Gauge) {
+                ((Gauge) metric).reset();
+            } else {
+                ((HistogramMetric) metric).reset();
+            }
+        }
+    }
+
+    /**
+     * Writes all metrics, one per line, in the registration order.
+     */
+    public void dumpText(Writer output) throws IOException {
+        output.write(toString());
+        output.flush();
+    }
+
+    /**
+     * @return All metrics, one per line, in the registration order.
+     */
+    @Override
+    public synchronized String toString() {
+        final StringBuilder result = new StringBuilder();
+        for (final String name : names) {
+            final Object metric = metricsByName.get(name);
+            result.append(name).append(' ');
+            if (metric instanceof Counter) {
+                result.append(((Counter) metric).get());
+            } else if (metric instanceof Gauge) {
+                final Gauge gauge = (Gauge) metric;
+                result.append(gauge.get()).append(" max=").append(gauge.getMax());
+            } else {
+                result.append(((HistogramMetric) metric).format());
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    private Object lookup(String name, Class<?> metricClass) {
+        final Object metric = metricsByName.get(name);
+        Assertions.illegalStateIfFalse(metric == null || metricClass.isInstance(metric),
+                "Metric " + name + " registered with a different type.");
+        return metric;
+    }
+
+    private void register(String name, Object metric) {
+        metricsByName.put(name, metric);
+        names.add(name);
+    }
+}
@@ -115,7 +115,7 @@ public class AudioEventCollector implements AudioEventListener, AudioEventHistor
     }
 
     @Override
-    public void resetHistory() {
+    public synchronized void resetHistory() {
         maxSoundLevel = 0.0;
         minSoundLevel = Double.MAX_VALUE;
         recentlyRecordedBuffers.clear();
@@ -189,6 +189,22 @@ public class AudioEventCollector implements AudioEventListener, AudioEventHistor
         return maxSoundLevel;
     }
 
+    @Override
+    public synchronized int getFirstPlayedAudioBufferId() {
+        if (firstBufferPlayed == null) {
+            return NO_AUDIO_BUFFER_ID;
+        }
+        return firstBufferPlayed.getAudioBufferId();
+    }
+
+    @Override
+    public synchronized int getLastPlayedAudioBufferId() {
+        if (lastBufferPlayed == null) {
+            return NO_AUDIO_BUFFER_ID;
+        }
+        return lastBufferPlayed.getAudioBufferId();
+    }
+
     @Override
     public synchronized Iterator<AudioBufferInfo> getIteratorOverAudioEventsToPlot(
             int plotWidth) {
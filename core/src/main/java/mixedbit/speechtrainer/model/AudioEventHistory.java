@@ -24,8 +24,19 @@ import java.util.Iterator;
  * Stores and manages information about recorded and played buffers for
  * displaying in the UI. Provides an iterator pointing at the first buffer to be
  * plotted.
+ *
+ * All methods are thread safe, but the iterator walks the history directly,
+ * so it is invalidated by resetHistory and by the next
+ * getIteratorOverAudioEventsToPlot call. A thread that plots the history
+ * while other threads can use it must obtain and use the iterator while
+ * holding the lock of the history (synchronized on the history object).
  */
 public interface AudioEventHistory {
+    /**
+     * Returned by getFirstPlayedAudioBufferId() and getLastPlayedAudioBufferId()
+     * when no buffer is marked as played. Audio buffer ids are never negative.
+     */
+    public static final int NO_AUDIO_BUFFER_ID = -1;
 
     /**
      * @return The minimum sound level of all recorded buffers. Along with
@@ -38,6 +49,20 @@ public interface AudioEventHistory {
      */
     public double getMaxSoundLevel();
 
+    /**
+     * @return Id of the first buffer that is marked as played or
+     *         NO_AUDIO_BUFFER_ID if no buffer is marked. Along with
+     *         getLastPlayedAudioBufferId() allows to detect when the range of
+     *         marked buffers changes.
+     */
+    public int getFirstPlayedAudioBufferId();
+
+    /**
+     * @return Id of the last buffer that is marked as played or
+     *         NO_AUDIO_BUFFER_ID if no buffer is marked.
+     */
+    public int getLastPlayedAudioBufferId();
+
     /**
      * 
      * @param plotWidth
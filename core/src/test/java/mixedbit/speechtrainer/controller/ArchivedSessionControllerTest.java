@@ -0,0 +1,180 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import mixedbit.speechtrainer.controller.RecordPlayTaskManager.RecordPlayTaskState;
+
+public class ArchivedSessionControllerTest extends TrainingControllerTest {
+    // Two full buffers and a half of a buffer.
+    private static final int SESSION_LENGTH_IN_SHORTS = 5 * AUDIO_BUFFER_SIZE / 2;
+    private File wavFile;
+    private ArchivedSessionController trainingController;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        wavFile = File.createTempFile("session", ".wav");
+        writeWavFile(SESSION_LENGTH_IN_SHORTS, true);
+        trainingController = new ArchivedSessionController(mockRecordPlayTaskManager,
+                audioBufferAllocator, new ArchivedSessionSource(wavFile, AUDIO_BUFFER_SIZE));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        wavFile.delete();
+        super.tearDown();
+    }
+
+    @Override
+    protected TrainingController getTrainingController() {
+        return trainingController;
+    }
+
+    /**
+     * Writes a WAV file with samples equal to their positions.
+     * 
+     * @param sizesSet
+     *            Are sizes set in the header (are not set if an export was
+     *            interrupted)?
+     */
+    private void writeWavFile(int lengthInShorts, boolean sizesSet) throws IOException {
+        final short[] samples = new short[lengthInShorts];
+        for (int i = 0; i < lengthInShorts; ++i) {
+            samples[i] = (short) i;
+        }
+        TestWavFiles.writeWavFile(wavFile, samples);
+        if (!sizesSet) {
+            final RandomAccessFile file = new RandomAccessFile(wavFile, "rw");
+            try {
+                // RIFF chunk and data chunk sizes.
+                file.seek(4);
+                file.writeInt(0);
+                file.seek(40);
+                file.writeInt(0);
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    private void assertBufferPlayed(int bufferIndex) {
+        assertEquals(RecordPlayTaskState.PLAY, trainingController.handlePlay(testPlayer));
+        final short[] played = testPlayer.getLastPlayedAudioDataCopy();
+        assertEquals(Math.min(AUDIO_BUFFER_SIZE, SESSION_LENGTH_IN_SHORTS - bufferIndex
+                * AUDIO_BUFFER_SIZE), played.length);
+        for (int i = 0; i < played.length; ++i) {
+            assertEquals(bufferIndex * AUDIO_BUFFER_SIZE + i, played[i]);
+        }
+        assertEquals(bufferIndex + 1, trainingController.getNextBufferIndex());
+    }
+
+    private void expectPlayingStarted() {
+        mockRecordPlayTaskManager.terminateTaskIfRunning();
+        mockRecordPlayTaskManager.startTask(RecordPlayTaskState.PLAY, trainingController);
+    }
+
+    public void testSessionPlayedBufferByBuffer() {
+        expectPlayingStarted();
+        replayAll();
+
+        assertEquals(3, trainingController.getBuffersCount());
+        trainingController.startTraining();
+        for (int i = 0; i < 3; ++i) {
+            assertBufferPlayed(i);
+            // A single buffer is used at a time.
+            audioBufferAllocator.assertAllAudioBuffersAvailable();
+        }
+        assertEquals(RecordPlayTaskState.TERMINATE, trainingController.handlePlay(testPlayer));
+        audioBufferAllocator.assertAllAudioBuffersAvailable();
+        verifyAll();
+    }
+
+    public void testPlayingContinuesFromStoppedPositionAndRestartsAtEnd() {
+        expectPlayingStarted();
+        mockRecordPlayTaskManager.terminateTaskIfRunning();
+        expectPlayingStarted();
+        expectPlayingStarted();
+        replayAll();
+
+        trainingController.startTraining();
+        assertBufferPlayed(0);
+        trainingController.stopTraining();
+        trainingController.startTraining();
+        assertBufferPlayed(1);
+        assertBufferPlayed(2);
+        assertEquals(RecordPlayTaskState.TERMINATE, trainingController.handlePlay(testPlayer));
+        trainingController.startTraining();
+        assertEquals(0, trainingController.getNextBufferIndex());
+        assertBufferPlayed(0);
+        verifyAll();
+    }
+
+    public void testSeekWhilePlaying() {
+        expectPlayingStarted();
+        replayAll();
+
+        trainingController.startTraining();
+        assertBufferPlayed(0);
+        trainingController.seekToBuffer(2);
+        assertEquals(2, trainingController.getNextBufferIndex());
+        assertBufferPlayed(2);
+        trainingController.seekToBuffer(1);
+        assertBufferPlayed(1);
+        // Positions past the end are moved to the end.
+        trainingController.seekToBuffer(100);
+        assertEquals(3, trainingController.getNextBufferIndex());
+        assertEquals(RecordPlayTaskState.TERMINATE, trainingController.handlePlay(testPlayer));
+        verifyAll();
+    }
+
+    public void testSeekBeforePlayingStarted() {
+        expectPlayingStarted();
+        replayAll();
+
+        trainingController.seekToBuffer(1);
+        trainingController.startTraining();
+        assertBufferPlayed(1);
+        verifyAll();
+    }
+
+    public void testWholeFileReadWhenSizesNotSet() throws Exception {
+        writeWavFile(SESSION_LENGTH_IN_SHORTS, false);
+        assertEquals(3, new ArchivedSessionSource(wavFile, AUDIO_BUFFER_SIZE).getBuffersCount());
+    }
+
+    public void testFileInUnexpectedFormatRejected() throws Exception {
+        final FileOutputStream output = new FileOutputStream(wavFile);
+        try {
+            output.write(new byte[100]);
+        } finally {
+            output.close();
+        }
+        try {
+            new ArchivedSessionSource(wavFile, AUDIO_BUFFER_SIZE);
+            fail("File in unexpected format accepted.");
+        } catch (final IOException e) {
+            // Expected.
+        }
+    }
+}
@@ -18,8 +18,11 @@
 
 package mixedbit.speechtrainer.controller;
 
+import java.io.StringWriter;
+
 import junit.framework.TestCase;
 import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
 
 public class AudioBufferAllocatorTest extends TestCase {
     private static final int BUFFER_SIZE = 100;
@@ -146,4 +149,74 @@ public class AudioBufferAllocatorTest extends TestCase {
             // Expected.
         }
     }
+
+    public void testAllocationAndReleaseTraced() throws Exception {
+        // Nothing is traced until the trace is enabled.
+        allocator.releaseAudioBuffer(allocator.allocateAudioBuffer());
+        assertEquals(0, allocator.getBufferTrace().getRecordedEventsCount());
+
+        allocator.getBufferTrace().setEnabled(true);
+        final AudioBuffer buffer = allocator.allocateAudioBuffer();
+        final int audioBufferId = buffer.getAudioBufferId();
+        allocator.releaseAudioBuffer(buffer);
+
+        final StringWriter dump = new StringWriter();
+        allocator.getBufferTrace().dumpText(dump);
+        final String[] lines = dump.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].endsWith(" " + audioBufferId + " ALLOCATED"));
+        assertTrue(lines[1].endsWith(" " + audioBufferId + " RELEASED"));
+    }
+
+    public void testUsageCountedInMetrics() {
+        final MetricsRegistry metricsRegistry = new MetricsRegistry();
+        final AudioBufferAllocator countingAllocator = new AudioBufferAllocator(
+                NUMBER_OF_BUFFERS, BUFFER_SIZE, metricsRegistry);
+        final AudioBuffer[] buffers = new AudioBuffer[NUMBER_OF_BUFFERS];
+        for (int i = 0; i < NUMBER_OF_BUFFERS; ++i) {
+            buffers[i] = countingAllocator.allocateAudioBuffer();
+        }
+        assertNull(countingAllocator.allocateAudioBuffer());
+        countingAllocator.releaseAudioBuffer(buffers[0]);
+
+        final MetricsRegistry.Gauge buffersInUse = metricsRegistry
+        .gauge("allocator.buffers_in_use");
+        assertEquals(NUMBER_OF_BUFFERS - 1, buffersInUse.get());
+        assertEquals(NUMBER_OF_BUFFERS, buffersInUse.getMax());
+        assertEquals(1, metricsRegistry.counter("allocator.allocation_failures").get());
+    }
+
+    public void testPlayedRangeTrimmedAndResetWhenDataStored() {
+        final AudioBuffer buffer = allocator.allocateAudioBuffer();
+        buffer.audioDataStored(50);
+        assertEquals(0, buffer.getPlayedAudioDataStart());
+        assertEquals(50, buffer.getPlayedAudioDataEnd());
+
+        buffer.trimPlayedAudioData(10, 30);
+        assertEquals(10, buffer.getPlayedAudioDataStart());
+        assertEquals(30, buffer.getPlayedAudioDataEnd());
+        assertEquals(20, buffer.getPlayedAudioDataLengthInShorts());
+        assertEquals(50, buffer.getAudioDataLengthInShorts());
+
+        buffer.audioDataStored(40);
+        assertEquals(0, buffer.getPlayedAudioDataStart());
+        assertEquals(40, buffer.getPlayedAudioDataEnd());
+    }
+
+    public void testPlayedRangeOutOfAudioDataRejected() {
+        final AudioBuffer buffer = allocator.allocateAudioBuffer();
+        buffer.audioDataStored(50);
+        try {
+            buffer.trimPlayedAudioData(0, 51);
+            fail("Played range longer than audio data accepted.");
+        } catch (final IllegalStateException e) {
+            // Expected.
+        }
+        try {
+            buffer.trimPlayedAudioData(20, 10);
+            fail("Played range with end before start accepted.");
+        } catch (final IllegalStateException e) {
+            // Expected.
+        }
+    }
 }
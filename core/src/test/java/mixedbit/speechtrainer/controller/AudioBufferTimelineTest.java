@@ -0,0 +1,140 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import junit.framework.TestCase;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+
+public class AudioBufferTimelineTest extends TestCase {
+    private static final int NUMBER_OF_BUFFERS = 5;
+
+    private final AudioBufferAllocator allocator = new AudioBufferAllocator(NUMBER_OF_BUFFERS, 10);
+    private final AudioBufferTimeline timeline = new AudioBufferTimeline(NUMBER_OF_BUFFERS);
+
+    private AudioBuffer[] appendAllBuffers() {
+        final AudioBuffer[] appended = new AudioBuffer[NUMBER_OF_BUFFERS];
+        for (int i = 0; i < NUMBER_OF_BUFFERS; ++i) {
+            appended[i] = allocator.allocateAudioBuffer();
+            timeline.append(appended[i]);
+        }
+        return appended;
+    }
+
+    public void testBuffersAccessibleAtAnyPosition() {
+        assertEquals(0, timeline.size());
+        final AudioBuffer[] appended = appendAllBuffers();
+        assertEquals(NUMBER_OF_BUFFERS, timeline.size());
+        for (int i = NUMBER_OF_BUFFERS - 1; i >= 0; --i) {
+            assertSame(appended[i], timeline.get(i));
+        }
+    }
+
+    public void testIndexOfAudioBufferId() {
+        final AudioBuffer[] appended = appendAllBuffers();
+        for (int i = 0; i < NUMBER_OF_BUFFERS; ++i) {
+            assertEquals(i, timeline.indexOfAudioBufferId(appended[i].getAudioBufferId()));
+        }
+        assertEquals(-1, timeline.indexOfAudioBufferId(appended[0].getAudioBufferId() - 1));
+        assertEquals(-1, timeline.indexOfAudioBufferId(
+                appended[NUMBER_OF_BUFFERS - 1].getAudioBufferId() + 1));
+    }
+
+    public void testIndexOfAudioBufferIdWithNotConsecutiveIds() {
+        final AudioBuffer first = allocator.allocateAudioBuffer();
+        final AudioBuffer skipped = allocator.allocateAudioBuffer();
+        final AudioBuffer third = allocator.allocateAudioBuffer();
+        final AudioBuffer fourth = allocator.allocateAudioBuffer();
+        timeline.append(first);
+        timeline.append(third);
+        timeline.append(fourth);
+        assertEquals(0, timeline.indexOfAudioBufferId(first.getAudioBufferId()));
+        assertEquals(-1, timeline.indexOfAudioBufferId(skipped.getAudioBufferId()));
+        assertEquals(1, timeline.indexOfAudioBufferId(third.getAudioBufferId()));
+        assertEquals(2, timeline.indexOfAudioBufferId(fourth.getAudioBufferId()));
+    }
+
+    public void testIndexOfAudioBufferIdInEmptyTimeline() {
+        assertEquals(-1, timeline.indexOfAudioBufferId(0));
+    }
+
+    public void testTruncateRemovesBuffersFromEnd() {
+        final AudioBuffer[] appended = appendAllBuffers();
+        timeline.truncate(2);
+        assertEquals(2, timeline.size());
+        assertSame(appended[1], timeline.get(1));
+        try {
+            timeline.get(2);
+            fail("Truncated buffer accessible.");
+        } catch (final AssertionError e) {
+            // Expected.
+        }
+
+        // Positions of truncated buffers are reused.
+        timeline.append(appended[4]);
+        assertEquals(3, timeline.size());
+        assertSame(appended[4], timeline.get(2));
+    }
+
+    public void testTruncateCanNotExtendTimeline() {
+        appendAllBuffers();
+        timeline.truncate(1);
+        try {
+            timeline.truncate(2);
+            fail("Timeline extended by truncate.");
+        } catch (final AssertionError e) {
+            // Expected.
+        }
+    }
+
+    public void testClearRemovesAllBuffers() {
+        appendAllBuffers();
+        timeline.clear();
+        assertEquals(0, timeline.size());
+        // After clear, the whole capacity is available again.
+        appendAllBuffers();
+        assertEquals(NUMBER_OF_BUFFERS, timeline.size());
+    }
+
+    public void testCapacityBounded() {
+        final AudioBuffer buffer = allocator.allocateAudioBuffer();
+        for (int i = 0; i < NUMBER_OF_BUFFERS; ++i) {
+            timeline.append(buffer);
+        }
+        try {
+            timeline.append(buffer);
+            fail("Buffer appended to a full timeline.");
+        } catch (final AssertionError e) {
+            // Expected.
+        }
+    }
+
+    public void testRemoveFirstMovesRemainingBuffersToFront() {
+        final AudioBuffer[] appended = appendAllBuffers();
+        timeline.removeFirst(3);
+        assertEquals(2, timeline.size());
+        assertSame(appended[3], timeline.get(0));
+        assertSame(appended[4], timeline.get(1));
+        assertEquals(0, timeline.indexOfAudioBufferId(appended[3].getAudioBufferId()));
+
+        timeline.append(appended[0]);
+        assertEquals(3, timeline.size());
+        timeline.removeFirst(3);
+        assertEquals(0, timeline.size());
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import junit.framework.TestCase;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+
+import org.easymock.EasyMock;
+
+public class AudioDeadlineWatchdogTest extends TestCase {
+    private static final int SAMPLE_RATE_HZ = 44100;
+    private static final int AUDIO_BUFFER_SIZE = 1000;
+    private static final int DEVICE_BUFFER_SIZE = 4000;
+
+    private static class ManualClock implements AudioClock {
+        private long nanos = 0;
+
+        @Override
+        public long nanoTime() {
+            return nanos;
+        }
+
+        public void advanceShorts(long shorts) {
+            nanos += shorts * 1000000000L / SAMPLE_RATE_HZ;
+        }
+    }
+
+    /**
+     * Fills each buffer and advances the clock as if reading blocked for a
+     * configured number of samples.
+     */
+    private class FakeRecorder implements Recorder {
+        private int blockShorts = AUDIO_BUFFER_SIZE;
+
+        @Override
+        public void startRecording() {
+        }
+
+        @Override
+        public boolean readAudioBuffer(AudioBuffer audioBuffer) {
+            clock.advanceShorts(blockShorts);
+            audioBuffer.audioDataStored(AUDIO_BUFFER_SIZE);
+            return true;
+        }
+
+        @Override
+        public void stopRecording() {
+        }
+
+        public void setBlockShorts(int blockShorts) {
+            this.blockShorts = blockShorts;
+        }
+    }
+
+    /**
+     * Advances the clock as if writing blocked for a configured number of
+     * samples.
+     */
+    private class FakePlayer implements Player {
+        private int blockShorts = 0;
+
+        @Override
+        public void startPlaying() {
+        }
+
+        @Override
+        public void writeAudioBuffer(AudioBuffer audioBuffer) {
+            clock.advanceShorts(blockShorts);
+        }
+
+        @Override
+        public void stopPlaying() {
+        }
+
+        public void setBlockShorts(int blockShorts) {
+            this.blockShorts = blockShorts;
+        }
+    }
+
+    private ManualClock clock;
+    private AudioDeadlineWatchdog watchdog;
+    private FakeRecorder fakeRecorder;
+    private FakePlayer fakePlayer;
+    private Recorder recorder;
+    private Player player;
+    private AudioBuffer audioBuffer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clock = new ManualClock();
+        watchdog = new AudioDeadlineWatchdog(clock, SAMPLE_RATE_HZ, AUDIO_BUFFER_SIZE);
+        fakeRecorder = new FakeRecorder();
+        fakePlayer = new FakePlayer();
+        recorder = watchdog.watchRecorder(fakeRecorder, DEVICE_BUFFER_SIZE);
+        player = watchdog.watchPlayer(fakePlayer, DEVICE_BUFFER_SIZE);
+        audioBuffer = new AudioBufferAllocator(1, AUDIO_BUFFER_SIZE).allocateAudioBuffer();
+        audioBuffer.audioDataStored(AUDIO_BUFFER_SIZE);
+    }
+
+    public void testNoOverrunsWhenReadingKeepsUp() {
+        recorder.startRecording();
+        for (int i = 0; i < 10000; ++i) {
+            // Processing of a buffer takes a fraction of the buffer length.
+            clock.advanceShorts(AUDIO_BUFFER_SIZE / 4);
+            fakeRecorder.setBlockShorts(AUDIO_BUFFER_SIZE - AUDIO_BUFFER_SIZE / 4);
+            assertTrue(recorder.readAudioBuffer(audioBuffer));
+        }
+        assertEquals(0, watchdog.getOverrunsCount());
+    }
+
+    public void testOverrunDetectedWhenProcessingStalls() {
+        recorder.startRecording();
+        assertTrue(recorder.readAudioBuffer(audioBuffer));
+        // Processing takes longer than the input buffer can hold, recorded
+        // data is already waiting, so reads do not block.
+        clock.advanceShorts(DEVICE_BUFFER_SIZE + 3 * AUDIO_BUFFER_SIZE);
+        fakeRecorder.setBlockShorts(0);
+        assertTrue(recorder.readAudioBuffer(audioBuffer));
+        assertEquals(1, watchdog.getOverrunsCount());
+        // The stall is counted once, even if the backlog is read with
+        // successive non blocking reads.
+        for (int i = 0; i < DEVICE_BUFFER_SIZE / AUDIO_BUFFER_SIZE; ++i) {
+            assertTrue(recorder.readAudioBuffer(audioBuffer));
+        }
+        assertEquals(1, watchdog.getOverrunsCount());
+    }
+
+    public void testShortStallIsNotOverrun() {
+        recorder.startRecording();
+        assertTrue(recorder.readAudioBuffer(audioBuffer));
+        // The input buffer holds the data recorded during the stall.
+        clock.advanceShorts(DEVICE_BUFFER_SIZE / 2);
+        fakeRecorder.setBlockShorts(0);
+        for (int i = 0; i < DEVICE_BUFFER_SIZE / AUDIO_BUFFER_SIZE / 2; ++i) {
+            assertTrue(recorder.readAudioBuffer(audioBuffer));
+        }
+        assertEquals(0, watchdog.getOverrunsCount());
+    }
+
+    public void testFailedReadIsNotChecked() {
+        final Recorder failingRecorder = EasyMock.createMock(Recorder.class);
+        EasyMock.expect(failingRecorder.readAudioBuffer(audioBuffer)).andReturn(false);
+        EasyMock.replay(failingRecorder);
+        clock.advanceShorts(10 * DEVICE_BUFFER_SIZE);
+        assertFalse(watchdog.watchRecorder(failingRecorder, DEVICE_BUFFER_SIZE).readAudioBuffer(
+                audioBuffer));
+        assertEquals(0, watchdog.getOverrunsCount());
+        EasyMock.verify(failingRecorder);
+    }
+
+    public void testNoUnderrunsWhenOutputBufferIsFull() {
+        player.startPlaying();
+        // Output buffer is filled without blocking, next writes block until
+        // there is space.
+        for (int i = 0; i < DEVICE_BUFFER_SIZE / AUDIO_BUFFER_SIZE; ++i) {
+            player.writeAudioBuffer(audioBuffer);
+        }
+        fakePlayer.setBlockShorts(AUDIO_BUFFER_SIZE - AUDIO_BUFFER_SIZE / 4);
+        for (int i = 0; i < 10000; ++i) {
+            clock.advanceShorts(AUDIO_BUFFER_SIZE / 4);
+            player.writeAudioBuffer(audioBuffer);
+        }
+        assertEquals(0, watchdog.getUnderrunsCount());
+    }
+
+    public void testUnderrunDetectedWhenWritingStalls() {
+        player.startPlaying();
+        player.writeAudioBuffer(audioBuffer);
+        player.writeAudioBuffer(audioBuffer);
+        // Two buffers are played, but a next buffer is written after much
+        // longer time.
+        clock.advanceShorts(4 * AUDIO_BUFFER_SIZE);
+        player.writeAudioBuffer(audioBuffer);
+        assertEquals(1, watchdog.getUnderrunsCount());
+        // Writing keeps up again.
+        player.writeAudioBuffer(audioBuffer);
+        player.writeAudioBuffer(audioBuffer);
+        assertEquals(1, watchdog.getUnderrunsCount());
+    }
+
+    public void testListenerInformed() {
+        final AudioDeadlineWatchdog.Listener listener = EasyMock
+        .createStrictMock(AudioDeadlineWatchdog.Listener.class);
+        listener.overrunDetected();
+        listener.underrunDetected();
+        EasyMock.replay(listener);
+        watchdog.setListener(listener);
+
+        recorder.startRecording();
+        clock.advanceShorts(2 * DEVICE_BUFFER_SIZE);
+        fakeRecorder.setBlockShorts(0);
+        recorder.readAudioBuffer(audioBuffer);
+
+        player.startPlaying();
+        clock.advanceShorts(2 * AUDIO_BUFFER_SIZE);
+        player.writeAudioBuffer(audioBuffer);
+        EasyMock.verify(listener);
+
+        assertEquals(1, watchdog.getOverrunsCount());
+        assertEquals(1, watchdog.getUnderrunsCount());
+    }
+}
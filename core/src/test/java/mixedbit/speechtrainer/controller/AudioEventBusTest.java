@@ -0,0 +1,173 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+public class AudioEventBusTest extends TestCase {
+    /**
+     * Executor that keeps submitted tasks until they are explicitly run.
+     */
+    private class QueueingExecutor implements Executor {
+        private final Queue<Runnable> tasks = new LinkedList<Runnable>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        public int getTasksCount() {
+            return tasks.size();
+        }
+
+        public void runTasks() {
+            while (!tasks.isEmpty()) {
+                tasks.remove().run();
+            }
+        }
+    }
+
+    private static final int CAPACITY = 8;
+    private AudioEventListener mockAudioEventListener;
+    private QueueingExecutor executor;
+    private AudioEventBus audioEventBus;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mockAudioEventListener = EasyMock.createStrictMock(AudioEventListener.class);
+        executor = new QueueingExecutor();
+        audioEventBus = new AudioEventBus(mockAudioEventListener, executor, CAPACITY);
+    }
+
+    private void replayAll() {
+        EasyMock.replay(mockAudioEventListener);
+    }
+
+    private void verifyAll() {
+        EasyMock.verify(mockAudioEventListener);
+    }
+
+    public void testEventsDispatchedInOrderByExecutor() {
+        mockAudioEventListener.recordingStarted();
+        mockAudioEventListener.audioBufferRecorded(1, 12.5);
+        mockAudioEventListener.audioBufferRecordingFailed();
+        mockAudioEventListener.recordingStopped();
+        mockAudioEventListener.playingStarted();
+        mockAudioEventListener.audioBufferPlayed(1, 12.5);
+        mockAudioEventListener.playingStopped();
+        replayAll();
+
+        audioEventBus.recordingStarted();
+        audioEventBus.audioBufferRecorded(1, 12.5);
+        audioEventBus.audioBufferRecordingFailed();
+        audioEventBus.recordingStopped();
+        audioEventBus.playingStarted();
+        audioEventBus.audioBufferPlayed(1, 12.5);
+        audioEventBus.playingStopped();
+        // All events should be dispatched in a single batch.
+        assertEquals(1, executor.getTasksCount());
+        executor.runTasks();
+        verifyAll();
+    }
+
+    public void testDispatchScheduledAgainAfterBatchIsDispatched() {
+        mockAudioEventListener.audioBufferRecorded(1, 10.0);
+        mockAudioEventListener.audioBufferRecorded(2, 20.0);
+        replayAll();
+
+        audioEventBus.audioBufferRecorded(1, 10.0);
+        executor.runTasks();
+        audioEventBus.audioBufferRecorded(2, 20.0);
+        assertEquals(1, executor.getTasksCount());
+        executor.runTasks();
+        verifyAll();
+    }
+
+    public void testPendingEventsCanBeDispatchedDirectly() {
+        mockAudioEventListener.recordingStarted();
+        mockAudioEventListener.recordingStopped();
+        replayAll();
+
+        audioEventBus.recordingStarted();
+        audioEventBus.recordingStopped();
+        audioEventBus.dispatchPendingEvents();
+        verifyAll();
+        // Scheduled dispatch should not dispatch events again.
+        executor.runTasks();
+        verifyAll();
+    }
+
+    public void testEventsDroppedWhenRingIsFull() {
+        // A quarter of the ring is reserved for lifecycle events.
+        final int perBufferEventsCapacity = CAPACITY - CAPACITY / 4;
+        for (int i = 0; i < perBufferEventsCapacity; ++i) {
+            mockAudioEventListener.audioBufferRecorded(i, 10.0);
+        }
+        mockAudioEventListener.audioBufferRecorded(CAPACITY + 2, 10.0);
+        replayAll();
+
+        for (int i = 0; i < perBufferEventsCapacity + 2; ++i) {
+            audioEventBus.audioBufferRecorded(i, 10.0);
+        }
+        assertEquals(2, audioEventBus.getDroppedEventsCount());
+        executor.runTasks();
+        // After the ring was emptied, new events should be accepted.
+        audioEventBus.audioBufferRecorded(CAPACITY + 2, 10.0);
+        executor.runTasks();
+        assertEquals(2, audioEventBus.getDroppedEventsCount());
+        verifyAll();
+    }
+
+    public void testLifecycleEventsNotDroppedWhenPerBufferEventsAre() {
+        final int perBufferEventsCapacity = CAPACITY - CAPACITY / 4;
+        for (int i = 0; i < perBufferEventsCapacity; ++i) {
+            mockAudioEventListener.audioBufferPlayed(i, 10.0);
+        }
+        mockAudioEventListener.playingStopped();
+        mockAudioEventListener.recordingStarted();
+        replayAll();
+
+        for (int i = 0; i < perBufferEventsCapacity + 1; ++i) {
+            audioEventBus.audioBufferPlayed(i, 10.0);
+        }
+        audioEventBus.playingStopped();
+        audioEventBus.recordingStarted();
+        // Per buffer events can not use the reserve.
+        audioEventBus.audioBufferRecorded(0, 10.0);
+        assertEquals(2, audioEventBus.getDroppedEventsCount());
+        executor.runTasks();
+        verifyAll();
+    }
+
+    public void testCapacityMustBePowerOfTwo() {
+        try {
+            new AudioEventBus(mockAudioEventListener, executor, 6);
+            fail("Capacity that is not a power of two accepted.");
+        } catch (final AssertionError e) {
+            // Expected.
+        }
+    }
+}
@@ -18,8 +18,11 @@
 
 package mixedbit.speechtrainer.controller;
 
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
 import mixedbit.speechtrainer.controller.RecordPlayTaskManager.RecordPlayTaskState;
 import mixedbit.speechtrainer.controller.SilenceFilter.Action;
+import mixedbit.speechtrainer.metrics.LatencyRecorder;
 
 import org.easymock.Capture;
 import org.easymock.EasyMock;
@@ -61,8 +64,8 @@ public class AutomaticTrainingControllerTest extends TrainingControllerTest {
         final Capture<Integer> bufferLengthCapture = new Capture<Integer>();
         // Recorded buffer should be passed to the silence filter.
         EasyMock.expect(
-                mockSilenceFilter.filterRecorderBuffer(EasyMock.capture(soundLevelCapture),
-                        EasyMock.capture(bufferLengthCapture))).andReturn(
+                mockSilenceFilter.filterRecorderBuffer(EasyMock.captureDouble(soundLevelCapture),
+                        EasyMock.captureInt(bufferLengthCapture))).andReturn(
                                 mockSilenceFilter.new FilterResult(Action.ACCEPT_BUFFER));
         replayAll();
 
@@ -87,6 +90,8 @@ public class AutomaticTrainingControllerTest extends TrainingControllerTest {
         final int trailingBuffersToDrop = 2;
         final int totalBuffersToRecord = leadingBuffersToDrop + buffersToPlay
         + trailingBuffersToDrop;
+        // Without a pre-roll all leading buffers are dropped.
+        trainingController.setPreRollBuffersCount(0);
         expectTrainingStarted();
         // Expect totalBuffersToRecord to be filtered. When a buffer number
         // leadingBufferToDrop is recorded, all buffers should be dropped. Next,
@@ -177,4 +182,167 @@ public class AutomaticTrainingControllerTest extends TrainingControllerTest {
         assertEquals(RecordPlayTaskState.TERMINATE, trainingController.handleRecord(testRecorder));
         verifyAll();
     }
+
+    public void testNoiseFloorRestoredWhenTrainingStarts() {
+        final NoiseFloorStore mockNoiseFloorStore = control.createMock(NoiseFloorStore.class);
+        trainingController = new AutomaticTrainingController(mockRecordPlayTaskManager,
+                mockSilenceFilter, audioBufferAllocator, new LatencyRecorder(),
+                mockNoiseFloorStore);
+        final NoiseFloorSnapshot snapshot = new NoiseFloorSnapshot(20.0, 100, System
+                .currentTimeMillis());
+        EasyMock.expect(mockNoiseFloorStore.load()).andReturn(snapshot);
+        mockSilenceFilter.restoreNoiseFloor(snapshot);
+        expectTrainingStarted();
+        replayAll();
+
+        trainingController.startTraining();
+        verifyAll();
+    }
+
+    public void testStaleNoiseFloorNotRestored() {
+        final NoiseFloorStore mockNoiseFloorStore = control.createMock(NoiseFloorStore.class);
+        trainingController = new AutomaticTrainingController(mockRecordPlayTaskManager,
+                mockSilenceFilter, audioBufferAllocator, new LatencyRecorder(),
+                mockNoiseFloorStore);
+        EasyMock.expect(mockNoiseFloorStore.load()).andReturn(
+                new NoiseFloorSnapshot(20.0, 100, System.currentTimeMillis()
+                        - NoiseFloorSnapshot.MAX_AGE_MS - 1000));
+        // The detection should start from scratch.
+        mockSilenceFilter.restoreNoiseFloor(null);
+        expectTrainingStarted();
+        replayAll();
+
+        trainingController.startTraining();
+        verifyAll();
+    }
+
+    public void testNoiseFloorSavedWhenTrainingStops() {
+        final NoiseFloorStore mockNoiseFloorStore = control.createMock(NoiseFloorStore.class);
+        trainingController = new AutomaticTrainingController(mockRecordPlayTaskManager,
+                mockSilenceFilter, audioBufferAllocator, new LatencyRecorder(),
+                mockNoiseFloorStore);
+        final NoiseFloorSnapshot snapshot = new NoiseFloorSnapshot(20.0, 100, 0L);
+        mockRecordPlayTaskManager.terminateTaskIfRunning();
+        EasyMock.expect(mockSilenceFilter.takeNoiseFloorSnapshot(EasyMock.anyLong())).andReturn(
+                snapshot);
+        mockNoiseFloorStore.save(snapshot);
+        // Nothing to save after the second session.
+        mockRecordPlayTaskManager.terminateTaskIfRunning();
+        EasyMock.expect(mockSilenceFilter.takeNoiseFloorSnapshot(EasyMock.anyLong())).andReturn(
+                null);
+        replayAll();
+
+        trainingController.stopTraining();
+        trainingController.stopTraining();
+        verifyAll();
+    }
+
+    public void testMostRecentRejectedBuffersPlayedAsPreRoll() {
+        final int preRollBuffers = 2;
+        final int leadingBuffersToDrop = 4;
+        final int buffersToPlay = 3;
+        trainingController.setPreRollBuffersCount(preRollBuffers);
+        expectTrainingStarted();
+        // Each buffer of leading silence is rejected separately.
+        EasyMock.expect(
+                mockSilenceFilter.filterRecorderBuffer(EasyMock.anyDouble(), EasyMock.anyInt()))
+                .andReturn(mockSilenceFilter.new FilterResult(Action.DROP_ALL_ACCEPTED_BUFFERS))
+                .times(leadingBuffersToDrop)
+                .andReturn(mockSilenceFilter.new FilterResult(Action.ACCEPT_BUFFER))
+                .times(buffersToPlay)
+                .andReturn(mockSilenceFilter.new FilterResult(
+                        Action.DROP_TRAILING_BUFFERS_AND_PLAY, 1))
+                        .times(1);
+        replayAll();
+
+        trainingController.startTraining();
+        for (int i = 0; i < leadingBuffersToDrop + buffersToPlay; ++i) {
+            assertEquals(RecordPlayTaskState.RECORD, trainingController.handleRecord(testRecorder));
+        }
+        assertEquals(RecordPlayTaskState.PLAY, trainingController.handleRecord(testRecorder));
+
+        // The last preRollBuffers rejected buffers should be played in front
+        // of the accepted buffers.
+        for (int i = 0; i < preRollBuffers + buffersToPlay; ++i) {
+            assertEquals(RecordPlayTaskState.PLAY, trainingController.handlePlay(testPlayer));
+            assertEquals(i + leadingBuffersToDrop - preRollBuffers, testPlayer
+                    .getLastPlayedAudioDataCopy()[0]);
+        }
+        assertEquals(RecordPlayTaskState.RECORD, trainingController.handlePlay(testPlayer));
+        assertEquals(preRollBuffers + buffersToPlay, testPlayer.getPlayedBuffersCount());
+        audioBufferAllocator.assertAllAudioBuffersAvailable();
+        verifyAll();
+    }
+
+    public void testPreRollBuffersReleasedWhenTrainingStops() {
+        expectTrainingStarted();
+        EasyMock.expect(
+                mockSilenceFilter.filterRecorderBuffer(EasyMock.anyDouble(), EasyMock.anyInt()))
+                .andReturn(mockSilenceFilter.new FilterResult(Action.DROP_ALL_ACCEPTED_BUFFERS))
+                .anyTimes();
+        mockRecordPlayTaskManager.terminateTaskIfRunning();
+        replayAll();
+
+        trainingController.startTraining();
+        for (int i = 0; i < 3 * SpeechTrainerConfig.PRE_ROLL_BUFFERS; ++i) {
+            assertEquals(RecordPlayTaskState.RECORD, trainingController.handleRecord(testRecorder));
+        }
+        trainingController.stopTraining();
+        audioBufferAllocator.assertAllAudioBuffersAvailable();
+        verifyAll();
+    }
+
+    public void testBeginningOfFirstDroppedBufferPlayedWithFades() {
+        final int bufferLength = AUDIO_BUFFER_SIZE;
+        final int shortsToPlayFromDroppedBuffer = bufferLength / 4;
+        final short sample = 1000;
+        // Records buffers filled with a constant sample.
+        final Recorder constantRecorder = new Recorder() {
+            @Override
+            public void startRecording() {
+            }
+
+            @Override
+            public boolean readAudioBuffer(AudioBuffer audioBuffer) {
+                for (int i = 0; i < bufferLength; ++i) {
+                    audioBuffer.getAudioData()[i] = sample;
+                }
+                audioBuffer.audioDataStored(bufferLength);
+                return true;
+            }
+
+            @Override
+            public void stopRecording() {
+            }
+        };
+        expectTrainingStarted();
+        EasyMock.expect(
+                mockSilenceFilter.filterRecorderBuffer(EasyMock.anyDouble(), EasyMock.anyInt()))
+                .andReturn(mockSilenceFilter.new FilterResult(Action.ACCEPT_BUFFER)).times(2)
+                .andReturn(mockSilenceFilter.new FilterResult(
+                        Action.DROP_TRAILING_BUFFERS_AND_PLAY, 2, 2,
+                        shortsToPlayFromDroppedBuffer)).times(1);
+        replayAll();
+
+        trainingController.startTraining();
+        trainingController.handleRecord(constantRecorder);
+        trainingController.handleRecord(constantRecorder);
+        assertEquals(RecordPlayTaskState.PLAY, trainingController.handleRecord(constantRecorder));
+
+        // The first buffer is faded in.
+        assertEquals(RecordPlayTaskState.PLAY, trainingController.handlePlay(testPlayer));
+        short[] played = testPlayer.getLastPlayedAudioDataCopy();
+        assertEquals(bufferLength, played.length);
+        assertTrue(played[0] < sample / 10);
+        assertEquals(sample, played[bufferLength - 1]);
+        // Only the beginning of the second buffer is played and faded out.
+        assertEquals(RecordPlayTaskState.PLAY, trainingController.handlePlay(testPlayer));
+        played = testPlayer.getLastPlayedAudioDataCopy();
+        assertEquals(shortsToPlayFromDroppedBuffer, played.length);
+        assertEquals(sample, played[0]);
+        assertTrue(played[shortsToPlayFromDroppedBuffer - 1] < sample / 10);
+        assertEquals(RecordPlayTaskState.RECORD, trainingController.handlePlay(testPlayer));
+        audioBufferAllocator.assertAllAudioBuffersAvailable();
+        verifyAll();
+    }
 }
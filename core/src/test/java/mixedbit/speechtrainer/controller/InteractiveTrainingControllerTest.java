@@ -122,6 +122,103 @@ public class InteractiveTrainingControllerTest extends TrainingControllerTest {
         verifyAll();
     }
 
+    public void testPlayFromOffset() {
+        final int numberOfBuffersToRecord = 7;
+        final int firstBufferToPlay = 4;
+        mockRecordPlayTaskManager.terminateTaskIfRunning();
+        mockRecordPlayTaskManager.startTask(RecordPlayTaskState.RECORD, trainingController);
+
+        mockRecordPlayTaskManager.terminateTaskIfRunning();
+        mockRecordPlayTaskManager.startTask(RecordPlayTaskState.PLAY, trainingController);
+        replayAll();
+
+        trainingController.startTraining();
+        trainingController.record();
+        for (short i = 0; i < numberOfBuffersToRecord; i++) {
+            assertEquals(RecordPlayTaskState.RECORD, trainingController.handleRecord(testRecorder));
+        }
+        assertEquals(numberOfBuffersToRecord, trainingController.getRecordedBuffersCount());
+
+        // Only buffers starting from firstBufferToPlay should be played.
+        trainingController.play(firstBufferToPlay);
+        for (int i = firstBufferToPlay; i < numberOfBuffersToRecord; i++) {
+            assertEquals(RecordPlayTaskState.PLAY, trainingController.handlePlay(testPlayer));
+            assertEquals(i, testPlayer.getLastPlayedAudioDataCopy()[0]);
+        }
+        assertEquals(RecordPlayTaskState.TERMINATE, trainingController.handlePlay(testPlayer));
+        assertEquals(numberOfBuffersToRecord - firstBufferToPlay, testPlayer
+                .getPlayedBuffersCount());
+        verifyAll();
+    }
+
+    /**
+     * Records a given number of buffers and expects a playing task to be
+     * started afterwards. Audio data of each recorded buffer is its position in the
+     * recording.
+     */
+    private void recordAndExpectPlaying(int numberOfBuffersToRecord) {
+        mockRecordPlayTaskManager.terminateTaskIfRunning();
+        mockRecordPlayTaskManager.startTask(RecordPlayTaskState.RECORD, trainingController);
+        mockRecordPlayTaskManager.terminateTaskIfRunning();
+        mockRecordPlayTaskManager.startTask(RecordPlayTaskState.PLAY, trainingController);
+        replayAll();
+
+        trainingController.startTraining();
+        trainingController.record();
+        for (short i = 0; i < numberOfBuffersToRecord; i++) {
+            assertEquals(RecordPlayTaskState.RECORD, trainingController.handleRecord(testRecorder));
+        }
+    }
+
+    public void testPlayFromAudioBuffer() {
+        recordAndExpectPlaying(7);
+        // No buffer was recorded before, so ids are equal to positions.
+        trainingController.playFromAudioBuffer(5);
+        for (int i = 5; i < 7; i++) {
+            assertEquals(RecordPlayTaskState.PLAY, trainingController.handlePlay(testPlayer));
+            assertEquals(i, testPlayer.getLastPlayedAudioDataCopy()[0]);
+        }
+        assertEquals(RecordPlayTaskState.TERMINATE, trainingController.handlePlay(testPlayer));
+        verifyAll();
+    }
+
+    public void testPlayFromNotRecordedAudioBufferPlaysAllBuffers() {
+        recordAndExpectPlaying(3);
+        trainingController.playFromAudioBuffer(100);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(RecordPlayTaskState.PLAY, trainingController.handlePlay(testPlayer));
+            assertEquals(i, testPlayer.getLastPlayedAudioDataCopy()[0]);
+        }
+        assertEquals(RecordPlayTaskState.TERMINATE, trainingController.handlePlay(testPlayer));
+        verifyAll();
+    }
+
+    public void testLoopPlaysRangeWithoutLeavingPlayState() {
+        recordAndExpectPlaying(7);
+        // Ends of the loop can be given in any order.
+        trainingController.loop(4, 2);
+        for (int repetition = 0; repetition < 3; ++repetition) {
+            for (int i = 2; i <= 4; i++) {
+                assertEquals(RecordPlayTaskState.PLAY, trainingController.handlePlay(testPlayer));
+                assertEquals(i, testPlayer.getLastPlayedAudioDataCopy()[0]);
+            }
+        }
+        assertEquals(9, testPlayer.getPlayedBuffersCount());
+        verifyAll();
+    }
+
+    public void testLoopEndsOutsideOfRecordingAreMovedToRecording() {
+        recordAndExpectPlaying(4);
+        trainingController.loop(-5, 100);
+        for (int repetition = 0; repetition < 2; ++repetition) {
+            for (int i = 0; i < 4; i++) {
+                assertEquals(RecordPlayTaskState.PLAY, trainingController.handlePlay(testPlayer));
+                assertEquals(i, testPlayer.getLastPlayedAudioDataCopy()[0]);
+            }
+        }
+        verifyAll();
+    }
+
     public void testPlayingTerminatesWhenNoRecordedBuffers() {
         mockRecordPlayTaskManager.terminateTaskIfRunning();
         mockRecordPlayTaskManager.startTask(RecordPlayTaskState.PLAY, trainingController);
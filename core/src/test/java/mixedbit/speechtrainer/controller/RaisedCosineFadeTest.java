@@ -0,0 +1,87 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import junit.framework.TestCase;
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+
+public class RaisedCosineFadeTest extends TestCase {
+    private static final int FADE_LENGTH = SpeechTrainerConfig.FADE_LENGTH_IN_SHORTS;
+    private static final short SAMPLE = 10000;
+
+    private short[] constantAudioData(int length) {
+        final short[] audioData = new short[length];
+        for (int i = 0; i < length; ++i) {
+            audioData[i] = SAMPLE;
+        }
+        return audioData;
+    }
+
+    public void testFadeInIncreasesGainOnlyAtBeginningOfRange() {
+        final int start = 10;
+        final int end = start + 4 * FADE_LENGTH;
+        final short[] audioData = constantAudioData(end + 10);
+        RaisedCosineFade.fadeIn(audioData, start, end);
+
+        // Samples out of the range are not changed.
+        assertEquals(SAMPLE, audioData[start - 1]);
+        assertEquals(SAMPLE, audioData[end]);
+        assertTrue(audioData[start] < SAMPLE / 100);
+        for (int i = start + 1; i < start + FADE_LENGTH; ++i) {
+            assertTrue(audioData[i] >= audioData[i - 1]);
+        }
+        // Raised-cosine is half way at the middle of the fade.
+        assertEquals(SAMPLE / 2, audioData[start + FADE_LENGTH / 2], SAMPLE / 100);
+        for (int i = start + FADE_LENGTH; i < end; ++i) {
+            assertEquals(SAMPLE, audioData[i]);
+        }
+    }
+
+    public void testFadeOutMirrorsFadeIn() {
+        final int length = 3 * FADE_LENGTH;
+        final short[] fadedIn = constantAudioData(length);
+        final short[] fadedOut = constantAudioData(length);
+        RaisedCosineFade.fadeIn(fadedIn, 0, length);
+        RaisedCosineFade.fadeOut(fadedOut, 0, length);
+        for (int i = 0; i < length; ++i) {
+            assertEquals(fadedIn[i], fadedOut[length - 1 - i]);
+        }
+    }
+
+    public void testShortRangeFadedOverHalfOfItsLength() {
+        // Odd length, so there is a single middle sample.
+        final int length = FADE_LENGTH / 2 + 1;
+        final short[] audioData = constantAudioData(length);
+        assertEquals(length / 2, RaisedCosineFade.fadeLength(0, length));
+        RaisedCosineFade.fadeIn(audioData, 0, length);
+        RaisedCosineFade.fadeOut(audioData, 0, length);
+        assertTrue(audioData[0] < SAMPLE / 100);
+        assertTrue(audioData[length - 1] < SAMPLE / 100);
+        // Fades do not overlap, the middle sample is not changed.
+        assertEquals(SAMPLE, audioData[length / 2]);
+    }
+
+    public void testEmptyAndSingleSampleRangesNotChanged() {
+        final short[] audioData = constantAudioData(2);
+        RaisedCosineFade.fadeIn(audioData, 1, 1);
+        RaisedCosineFade.fadeOut(audioData, 0, 1);
+        assertEquals(SAMPLE, audioData[0]);
+        assertEquals(SAMPLE, audioData[1]);
+    }
+}
@@ -24,7 +24,6 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
-import mixedbit.speechtrainer.controller.RecordPlayTaskManager.RecordPlayTaskPriority;
 import mixedbit.speechtrainer.controller.RecordPlayTaskManager.RecordPlayTaskState;
 
 import org.easymock.EasyMock;
@@ -48,7 +47,7 @@ public class RecordPlayTaskManagerTest extends TestCase {
         mockPlayer = control.createMock(Player.class);
         executorService = Executors.newSingleThreadExecutor();
         recordPlayTaskManager = new RecordPlayTaskManager(mockRecorder, mockPlayer,
-                executorService, RecordPlayTaskPriority.TEST);
+                executorService, AudioThreadPriority.UNCHANGED);
     }
 
     private void replayAll() {
@@ -204,6 +203,30 @@ public class RecordPlayTaskManagerTest extends TestCase {
         verifyAll();
     }
 
+    public void testTerminationRequestedWithoutWaiting() {
+        mockRecorder.startRecording();
+        // handleRecord requests the task to continue recording, but also
+        // requests the task to terminate. The task should exit after
+        // handleRecord returns.
+        EasyMock.expect(mockStrategy.handleRecord(mockRecorder)).andAnswer(
+                new IAnswer<RecordPlayTaskState>() {
+                    @Override
+                    public RecordPlayTaskState answer() throws Throwable {
+                        recordPlayTaskManager.requestTaskTermination();
+                        return RecordPlayTaskState.RECORD;
+                    }
+                });
+        mockRecorder.stopRecording();
+        replayAll();
+
+        recordPlayTaskManager.startTask(RecordPlayTaskState.RECORD, mockStrategy);
+        waitForTaskToFinish();
+        verifyAll();
+        recordPlayTaskManager.terminateTaskIfRunning();
+        // No task is running, the request should be ignored.
+        recordPlayTaskManager.requestTaskTermination();
+    }
+
     public void testTwoTasksNotStartedSimultaneously() {
         // The task will die because mocks are not configured, but
         // terminateTask needs to be called anyway before the next task can be
@@ -24,6 +24,7 @@ import mixedbit.speechtrainer.controller.SilenceFilter;
 import mixedbit.speechtrainer.controller.SilenceLevelDetector;
 import mixedbit.speechtrainer.controller.SilenceFilter.Action;
 import mixedbit.speechtrainer.controller.SilenceFilter.FilterResult;
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
 
 import org.easymock.EasyMock;
 
@@ -154,6 +155,39 @@ public class SilenceFilterTest extends TestCase {
         // (testPartOfTrailingSilenceIsDroppedWhenPlayingIsRequested tests
         // this).
         assertEquals(1, result.getNumberOfTrailingBuffersToDrop());
+        // The buffer is longer than TRAILING_SILENCE_TO_DROP_MS, its
+        // beginning should still be played.
+        assertEquals(BufferLengthMsToShorts(SilenceFilter.LONG_SILENCE_INTERVAL_MS)
+                - SilenceFilter.TRAILING_SILENCE_TO_DROP_MS * SpeechTrainerConfig.SAMPLE_RATE_HZ
+                / 1000, result.getNumberOfShortsToPlayFromFirstDroppedBuffer());
+        verifyAll();
+    }
+
+    public void testParametersDetermineLengthsOfSilenceAndData() {
+        final double soundLevelAboveSilence = 72;
+        final double soundLevelBelowSilence = 32;
+        // Long silence of 400 ms, at least 50 ms of data, no trailing silence
+        // dropped.
+        silenceFilter = new SilenceFilter(mockSilenceLevelDetector,
+                new SilenceDetectionParameters(5.0, 2.0, 5, 400, 50, 0), new MetricsRegistry());
+
+        expectSoundAboveSilenceLevel(soundLevelAboveSilence);
+        expectSoundBelowSilenceLevel(soundLevelBelowSilence);
+        expectSoundBelowSilenceLevel(soundLevelBelowSilence);
+        replayAll();
+
+        FilterResult result = silenceFilter.filterRecorderBuffer(soundLevelAboveSilence,
+                BufferLengthMsToShorts(50));
+        assertEquals(Action.ACCEPT_BUFFER, result.getAction());
+        // With default parameters this would be a long silence.
+        result = silenceFilter.filterRecorderBuffer(soundLevelBelowSilence,
+                BufferLengthMsToShorts(SilenceFilter.LONG_SILENCE_INTERVAL_MS));
+        assertEquals(Action.ACCEPT_BUFFER, result.getAction());
+        result = silenceFilter.filterRecorderBuffer(soundLevelBelowSilence,
+                BufferLengthMsToShorts(400 - SilenceFilter.LONG_SILENCE_INTERVAL_MS));
+        assertEquals(Action.DROP_TRAILING_BUFFERS_AND_PLAY, result.getAction());
+        assertEquals(0, result.getNumberOfTrailingBuffersToDrop());
+        assertEquals(2, result.getNumberOfTrailingSilenceBuffers());
         verifyAll();
     }
 
@@ -230,6 +264,15 @@ public class SilenceFilterTest extends TestCase {
         // SilenceFilter.TRAILING_SILENCE_TO_DROP_MS, so 10 last buffers
         // should be dropped.
         assertEquals(10, result.getNumberOfTrailingBuffersToDrop());
+        // Buffer lengths were rounded up, exactly TRAILING_SILENCE_TO_DROP_MS
+        // should be dropped, so the excess of the first dropped buffer should
+        // be played.
+        assertEquals(10 * BufferLengthMsToShorts(singleSilenceBufferLengthMs)
+                - SilenceFilter.TRAILING_SILENCE_TO_DROP_MS * SpeechTrainerConfig.SAMPLE_RATE_HZ
+                / 1000, result.getNumberOfShortsToPlayFromFirstDroppedBuffer());
+        // All buffers below silence level are trailing silence.
+        assertEquals(SilenceFilter.LONG_SILENCE_INTERVAL_MS / singleSilenceBufferLengthMs,
+                result.getNumberOfTrailingSilenceBuffers());
         verifyAll();
     }
 
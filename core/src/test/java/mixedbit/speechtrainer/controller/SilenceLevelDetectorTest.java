@@ -0,0 +1,282 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import junit.framework.TestCase;
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+
+public class SilenceLevelDetectorTest extends TestCase {
+    private static final double DELTA = 0.001;
+    private final SilenceLevelDetector silenceLevelDetector = new SilenceLevelDetector();
+
+
+    public void testFirstSampleIsTreatedAsSilence() {
+        // The first sample should be treated as silence. Because it is the only
+        // sample, it is equal to the mean value. The silence level should be
+        // set to the mean + SILENCE_LEAVE_MARGIN.
+        silenceLevelDetector.addSoundLevelMeasurement(123.0);
+
+        assertFalse(silenceLevelDetector.isAboveSilenceLevel(123.0));
+        assertFalse(silenceLevelDetector.isAboveSilenceLevel(
+                123.0 + SilenceLevelDetector.SILENCE_LEAVE_MARGIN));
+        assertTrue(silenceLevelDetector.isAboveSilenceLevel(
+                123.0 + SilenceLevelDetector.SILENCE_LEAVE_MARGIN + DELTA));
+    }
+
+    public void testSilenceLevelIsSilenceLeaveMarginAboveTheMeanWhenRecordingSilence() {
+        // All samples are below the silence level.
+        silenceLevelDetector.addSoundLevelMeasurement(105.0);
+        silenceLevelDetector.addSoundLevelMeasurement(3.0);
+        silenceLevelDetector.addSoundLevelMeasurement(6.0);
+
+        // (105 + 3 + 6) / 3 = 37
+        assertFalse(silenceLevelDetector
+                .isAboveSilenceLevel(38.0 + SilenceLevelDetector.SILENCE_LEAVE_MARGIN));
+        assertTrue(silenceLevelDetector.isAboveSilenceLevel(38.0
+                + SilenceLevelDetector.SILENCE_LEAVE_MARGIN + DELTA));
+
+    }
+
+    public void testSilenceLevelIsSilenceEnterMarginAboveTheMeanWhenRecordingMeaningfulSound() {
+        silenceLevelDetector.addSoundLevelMeasurement(3.0);
+        silenceLevelDetector.addSoundLevelMeasurement(6.0);
+        // Add a sample above the silence level. It should not be included in
+        // the mean calculation and it should cause the silence level to be set
+        // SILENCE_ENTER_MARGIN above the mean.
+        silenceLevelDetector.addSoundLevelMeasurement(105.0);
+
+        // (3 + 6) / 2 = 4.5
+        assertFalse(silenceLevelDetector
+                .isAboveSilenceLevel(4.5 + SilenceLevelDetector.SILENCE_ENTER_MARGIN));
+        assertTrue(silenceLevelDetector.isAboveSilenceLevel(4.5
+                + SilenceLevelDetector.SILENCE_ENTER_MARGIN + DELTA));
+
+    }
+
+    public void testSwitchFromSilenceEnterMarginToSilenceLeaveMargin() {
+        silenceLevelDetector.addSoundLevelMeasurement(6.0);
+        // Add a sample above the silence level. It should not be included in
+        // the mean calculation and it should cause the silence level to be set
+        // SILENCE_ENTER_MARGIN above the mean.
+        silenceLevelDetector.addSoundLevelMeasurement(105.0);
+        // Add a sample below the silence level. It should be included in the
+        // mean calculation and it should cause the silence level to be set
+        // SILENCE_LEAVE_MARGIN below the mean.
+        silenceLevelDetector.addSoundLevelMeasurement(3.0);
+
+        // (3 + 6) / 2 = 4.5
+        assertFalse(silenceLevelDetector
+                .isAboveSilenceLevel(4.5 + SilenceLevelDetector.SILENCE_LEAVE_MARGIN));
+        assertTrue(silenceLevelDetector.isAboveSilenceLevel(4.5
+                + SilenceLevelDetector.SILENCE_LEAVE_MARGIN + DELTA));
+
+    }
+
+    public void testOldMeasuresAreDiscarded() {
+        for (int i = 0; i < SilenceLevelDetector.SILENCE_HISTORY_LENGTH; i++) {
+            silenceLevelDetector.addSoundLevelMeasurement(100.0);
+        }
+        // Adding SILENCE_HISTORY_LENGTH measures should discard all initial
+        // measures.
+        for (int i = 0; i < SilenceLevelDetector.SILENCE_HISTORY_LENGTH; i++) {
+            silenceLevelDetector.addSoundLevelMeasurement(3.0);
+        }
+        // Make sure initial measures are not taken into account.
+        assertTrue(silenceLevelDetector
+                .isAboveSilenceLevel(3.0 + SilenceLevelDetector.SILENCE_LEAVE_MARGIN + DELTA));
+    }
+
+    public void testParametersDetermineMarginsAndHistoryLength() {
+        final SilenceLevelDetector detector = new SilenceLevelDetector(
+                new SilenceDetectionParameters(10.0, 4.0, 1, 200, 150, 20));
+        final int historyLength = SpeechTrainerConfig.numberOfBuffersPerSecond();
+        for (int i = 0; i < historyLength; i++) {
+            detector.addSoundLevelMeasurement(100.0);
+        }
+        // A second of new measures discards all initial measures.
+        for (int i = 0; i < historyLength; i++) {
+            detector.addSoundLevelMeasurement(3.0);
+        }
+        assertFalse(detector.isAboveSilenceLevel(13.0));
+        assertTrue(detector.isAboveSilenceLevel(13.0 + DELTA));
+
+        detector.addSoundLevelMeasurement(50.0);
+        assertTrue(detector.isAboveSilenceLevel(7.0 + DELTA));
+    }
+
+    public void testDefaultParametersEqualConstants() {
+        final SilenceDetectionParameters defaults = SilenceDetectionParameters.DEFAULTS;
+        assertEquals(SilenceLevelDetector.SILENCE_LEAVE_MARGIN, defaults.getSilenceLeaveMargin(),
+                DELTA);
+        assertEquals(SilenceLevelDetector.SILENCE_ENTER_MARGIN, defaults.getSilenceEnterMargin(),
+                DELTA);
+        assertEquals(SilenceLevelDetector.SILENCE_HISTORY_LENGTH_S, defaults
+                .getSilenceHistoryLengthS());
+        assertEquals(SilenceFilter.LONG_SILENCE_INTERVAL_MS, defaults.getLongSilenceIntervalMs());
+        assertEquals(SilenceFilter.MIN_LENGTH_OF_MEANINGFUL_DATA_TO_PLAY_MS, defaults
+                .getMinLengthOfMeaningfulDataToPlayMs());
+        assertEquals(SilenceFilter.TRAILING_SILENCE_TO_DROP_MS, defaults
+                .getTrailingSilenceToDropMs());
+        assertEquals(defaults, new SilenceDetectionParameters(5.0, 2.0, 5, 200, 150, 20));
+    }
+
+    public void testInvalidParametersRejected() {
+        try {
+            new SilenceDetectionParameters(-1.0, 2.0, 5, 200, 150, 20);
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException e) {
+        }
+        try {
+            new SilenceDetectionParameters(5.0, 2.0, 0, 200, 150, 20);
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException e) {
+        }
+    }
+
+    public void testSnapshotOfEmptyDetectorIsNull() {
+        assertNull(silenceLevelDetector.takeSnapshot(1000L));
+    }
+
+    public void testSnapshotHoldsMeanOfSilenceMeasures() {
+        silenceLevelDetector.addSoundLevelMeasurement(3.0);
+        silenceLevelDetector.addSoundLevelMeasurement(6.0);
+        // Above the silence level, not included in the snapshot.
+        silenceLevelDetector.addSoundLevelMeasurement(105.0);
+
+        final NoiseFloorSnapshot snapshot = silenceLevelDetector.takeSnapshot(1000L);
+        assertEquals(4.5, snapshot.getNoiseFloor(), DELTA);
+        assertEquals(2, snapshot.getMeasurementsCount());
+        assertEquals(1000L, snapshot.getTakenAtMs());
+    }
+
+    public void testRestoredNoiseFloorDeterminesSilenceLevel() {
+        silenceLevelDetector.restoreSnapshot(new NoiseFloorSnapshot(20.0, 100, 0L));
+
+        assertFalse(silenceLevelDetector
+                .isAboveSilenceLevel(20.0 + SilenceLevelDetector.SILENCE_LEAVE_MARGIN));
+        assertTrue(silenceLevelDetector.isAboveSilenceLevel(20.0
+                + SilenceLevelDetector.SILENCE_LEAVE_MARGIN + DELTA));
+        // Unlike in a detector that starts from scratch, the first measure of
+        // speech is above the silence level.
+        silenceLevelDetector.addSoundLevelMeasurement(60.0);
+        assertTrue(silenceLevelDetector.isAboveSilenceLevel(60.0));
+    }
+
+    public void testRestoredNoiseFloorIsReplacedByNewMeasures() {
+        silenceLevelDetector.restoreSnapshot(new NoiseFloorSnapshot(20.0, 1000, 0L));
+        // The restored noise floor weights as much as
+        // RESTORED_HISTORY_LENGTH new measures.
+        for (int i = 0; i < SilenceLevelDetector.RESTORED_HISTORY_LENGTH; i++) {
+            silenceLevelDetector.addSoundLevelMeasurement(24.0);
+        }
+        // (20 + 24) / 2 = 22
+        assertFalse(silenceLevelDetector
+                .isAboveSilenceLevel(22.0 + SilenceLevelDetector.SILENCE_LEAVE_MARGIN));
+        assertTrue(silenceLevelDetector.isAboveSilenceLevel(22.0
+                + SilenceLevelDetector.SILENCE_LEAVE_MARGIN + DELTA));
+        assertEquals(2 * SilenceLevelDetector.RESTORED_HISTORY_LENGTH, silenceLevelDetector
+                .takeSnapshot(0L).getMeasurementsCount());
+    }
+
+    public void testUnconfirmedNoiseFloorIsNotSnapshotted() {
+        silenceLevelDetector.restoreSnapshot(new NoiseFloorSnapshot(20.0, 100, 0L));
+        assertNull(silenceLevelDetector.takeSnapshot(0L));
+        silenceLevelDetector.addSoundLevelMeasurement(60.0);
+        assertNull(silenceLevelDetector.takeSnapshot(0L));
+        // Silence confirms the restored noise floor.
+        silenceLevelDetector.addSoundLevelMeasurement(21.0);
+        assertNotNull(silenceLevelDetector.takeSnapshot(0L));
+    }
+
+    public void testNoiseFloorDiscardedWhenRoomBecameQuieter() {
+        silenceLevelDetector.restoreSnapshot(new NoiseFloorSnapshot(40.0, 100, 0L));
+        silenceLevelDetector.addSoundLevelMeasurement(20.0);
+
+        // The detector started from scratch with the quieter measure.
+        final NoiseFloorSnapshot snapshot = silenceLevelDetector.takeSnapshot(0L);
+        assertEquals(20.0, snapshot.getNoiseFloor(), DELTA);
+        assertEquals(1, snapshot.getMeasurementsCount());
+    }
+
+    public void testNoiseFloorDiscardedWhenRoomBecameLouder() {
+        silenceLevelDetector.restoreSnapshot(new NoiseFloorSnapshot(20.0, 100, 0L));
+        for (int i = 0; i < SilenceLevelDetector.UNCONFIRMED_NOISE_FLOOR_MAX_LENGTH - 1; i++) {
+            silenceLevelDetector.addSoundLevelMeasurement(50.0);
+            assertTrue(silenceLevelDetector.isAboveSilenceLevel(50.0));
+        }
+        // Too long above the restored silence level, the detector should start
+        // from scratch and treat the measure as silence.
+        silenceLevelDetector.addSoundLevelMeasurement(50.0);
+        assertFalse(silenceLevelDetector.isAboveSilenceLevel(50.0));
+        assertEquals(50.0, silenceLevelDetector.takeSnapshot(0L).getNoiseFloor(), DELTA);
+    }
+
+    public void testResetForgetsAllMeasures() {
+        silenceLevelDetector.addSoundLevelMeasurement(3.0);
+        silenceLevelDetector.reset();
+        assertNull(silenceLevelDetector.takeSnapshot(0L));
+        silenceLevelDetector.addSoundLevelMeasurement(105.0);
+        assertFalse(silenceLevelDetector.isAboveSilenceLevel(105.0));
+    }
+
+    public void testStaleSnapshots() {
+        final NoiseFloorSnapshot snapshot = new NoiseFloorSnapshot(20.0, 100, 1000L);
+        assertFalse(snapshot.isStale(1000L));
+        assertFalse(snapshot.isStale(1000L + NoiseFloorSnapshot.MAX_AGE_MS));
+        assertTrue(snapshot.isStale(1000L + NoiseFloorSnapshot.MAX_AGE_MS + 1));
+        // Taken in the future.
+        assertTrue(snapshot.isStale(999L));
+        assertTrue(new NoiseFloorSnapshot(Double.NaN, 100, 1000L).isStale(1000L));
+        assertTrue(new NoiseFloorSnapshot(20.0, 0, 1000L).isStale(1000L));
+    }
+
+    /**
+     * Measures the number of buffers until the first buffer of speech is
+     * detected when the user starts speaking as soon as the training starts.
+     * The detector that starts from scratch takes the first utterance for
+     * silence and needs the following pause to learn the room.
+     */
+    public void testWarmStartDetectsSpeechImmediately() {
+        final int buffersPerSecond = SpeechTrainerConfig.numberOfBuffersPerSecond();
+        final double[] soundLevels = new double[4 * buffersPerSecond];
+        for (int i = 0; i < soundLevels.length; i++) {
+            // Speech in the first and the last second, silence between.
+            final boolean speech = i < buffersPerSecond || i >= 3 * buffersPerSecond;
+            soundLevels[i] = speech ? 60.0 : 30.0;
+        }
+        final NoiseFloorSnapshot snapshot = new NoiseFloorSnapshot(30.0, 1000, 0L);
+        final SilenceLevelDetector warmDetector = new SilenceLevelDetector();
+        warmDetector.restoreSnapshot(snapshot);
+
+        assertEquals(0, firstBufferAboveSilenceLevel(warmDetector, soundLevels));
+        assertEquals(3 * buffersPerSecond, firstBufferAboveSilenceLevel(silenceLevelDetector,
+                soundLevels));
+    }
+
+    private static int firstBufferAboveSilenceLevel(SilenceLevelDetector detector,
+            double[] soundLevels) {
+        for (int i = 0; i < soundLevels.length; i++) {
+            detector.addSoundLevelMeasurement(soundLevels[i]);
+            if (detector.isAboveSilenceLevel(soundLevels[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.util.Random;
+
+/**
+ * Simulated user of Speech Trainer. Says utterances of random length separated
+ * by pauses of random length, on top of a background noise. Utterances are
+ * sequences of syllables, each syllable raises the sound level above the noise
+ * and then lowers it back. All randomness comes from a seeded generator, so a
+ * speaker created with the same seed and queried at the same times produces
+ * the same sound levels.
+ */
+class SimulatedSpeaker {
+    private static final double NOISE_JITTER = 1.5;
+    private static final long SYLLABLE_LENGTH_MS = 200;
+    private final Random random;
+    private final double noiseLevel;
+    private final double speechLevel;
+    private final long minUtteranceMs;
+    private final long maxUtteranceMs;
+    private final long minPauseMs;
+    private final long maxPauseMs;
+
+    // Current segment of the script (an utterance or a pause) lasts from
+    // segmentStart (inclusive) to segmentEnd (exclusive), in samples.
+    // The script starts with a pause (the first segment flips this).
+    private boolean speaking = true;
+    private long segmentStart = 0;
+    private long segmentEnd = 0;
+    private int utterancesCount = 0;
+
+    /**
+     * @param noiseLevel
+     *            Sound level of the background noise.
+     * @param speechLevel
+     *            Peak sound level of syllables.
+     */
+    public SimulatedSpeaker(long seed, double noiseLevel, double speechLevel,
+            long minUtteranceMs, long maxUtteranceMs, long minPauseMs, long maxPauseMs) {
+        this.random = new Random(seed);
+        this.noiseLevel = noiseLevel;
+        this.speechLevel = speechLevel;
+        this.minUtteranceMs = minUtteranceMs;
+        this.maxUtteranceMs = maxUtteranceMs;
+        this.minPauseMs = minPauseMs;
+        this.maxPauseMs = maxPauseMs;
+    }
+
+    /**
+     * Speaker that says sentences in a quiet room.
+     */
+    public static SimulatedSpeaker quietRoom(long seed) {
+        return new SimulatedSpeaker(seed, 25.0, 65.0, 800, 4000, 1000, 3000);
+    }
+
+    /**
+     * @return Sound level at a given time. Times passed to subsequent calls
+     *         must not decrease. Utterances that end between the calls (for
+     *         instance while the recording was stopped) are skipped.
+     */
+    public double soundLevelAt(long timeInSamples) {
+        while (timeInSamples >= segmentEnd) {
+            startNextSegment();
+        }
+        final double noise = noiseLevel + random.nextGaussian() * NOISE_JITTER;
+        if (!speaking) {
+            return noise;
+        }
+        final long syllableLength = VirtualAudioClock.millisToSamples(SYLLABLE_LENGTH_MS);
+        final double syllablePhase = (double) ((timeInSamples - segmentStart) % syllableLength)
+        / syllableLength;
+        final double envelope = Math.sin(Math.PI * syllablePhase);
+        return Math.max(noise, noiseLevel + (speechLevel - noiseLevel)
+                * (0.4 + 0.6 * envelope));
+    }
+
+    /**
+     * @return Number of utterances that were started so far.
+     */
+    public int getUtterancesCount() {
+        return utterancesCount;
+    }
+
+    private void startNextSegment() {
+        speaking = !speaking;
+        segmentStart = segmentEnd;
+        final long lengthMs;
+        if (speaking) {
+            ++utterancesCount;
+            lengthMs = randomLength(minUtteranceMs, maxUtteranceMs);
+        } else {
+            lengthMs = randomLength(minPauseMs, maxPauseMs);
+        }
+        segmentEnd = segmentStart + VirtualAudioClock.millisToSamples(lengthMs);
+    }
+
+    private long randomLength(long minMs, long maxMs) {
+        return minMs + (long) (random.nextDouble() * (maxMs - minMs));
+    }
+}
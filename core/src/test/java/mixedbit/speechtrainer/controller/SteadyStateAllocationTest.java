@@ -0,0 +1,75 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import junit.framework.TestCase;
+
+/**
+ * Makes sure the code executed by the audio thread for each recorded and
+ * played buffer does not allocate memory once warmed up. Allocations would
+ * cause garbage collection pauses during recording and playing.
+ */
+public class SteadyStateAllocationTest extends TestCase {
+    private static final long SEED = 11;
+    private static final long MINUTE_MS = 60 * 1000;
+
+    public void testAutomaticTrainingDoesNotAllocatePerBuffer() {
+        if (!TrainingSimulator.isAllocationTrackingSupported()) {
+            return;
+        }
+        final TrainingSimulator simulator = new TrainingSimulator(
+                SimulatedSpeaker.quietRoom(SEED), SEED);
+        simulator.runAutomaticTraining(5 * MINUTE_MS);
+        simulator.startAllocationTracking();
+        simulator.runAutomaticTraining(30 * MINUTE_MS);
+
+        assertTrue(simulator.getTrackedBuffersCount() > 0);
+        assertEquals(simulator.getReport(), 0, simulator.getTrackedAllocatedBytes());
+    }
+
+    public void testLongUtterancesDoNotAllocate() {
+        if (!TrainingSimulator.isAllocationTrackingSupported()) {
+            return;
+        }
+        // Each utterance is longer than 8 s, so has more than 256 buffers.
+        final TrainingSimulator simulator = new TrainingSimulator(new SimulatedSpeaker(SEED,
+                25.0, 65.0, 8000, 10000, 1000, 3000), SEED);
+        simulator.runAutomaticTraining(MINUTE_MS);
+        // A new controller is created, so its first utterance is tracked.
+        simulator.startAllocationTracking();
+        simulator.runAutomaticTraining(MINUTE_MS);
+
+        assertTrue(simulator.getTrackedBuffersCount() > 0);
+        assertEquals(simulator.getReport(), 0, simulator.getTrackedAllocatedBytes());
+    }
+
+    public void testInteractiveTrainingDoesNotAllocatePerBuffer() {
+        if (!TrainingSimulator.isAllocationTrackingSupported()) {
+            return;
+        }
+        final TrainingSimulator simulator = new TrainingSimulator(
+                SimulatedSpeaker.quietRoom(SEED), SEED);
+        simulator.runInteractiveTraining(20, 5000);
+        simulator.startAllocationTracking();
+        simulator.runInteractiveTraining(100, 5000);
+
+        assertTrue(simulator.getTrackedBuffersCount() > 0);
+        assertEquals(simulator.getReport(), 0, simulator.getTrackedAllocatedBytes());
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.io.File;
+import java.io.IOException;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
+
+/**
+ * Writes WAV files used as test fixtures with the WavSessionExporter, so tests
+ * read files in exactly the format of exported sessions. Shared with tests of
+ * the tools module.
+ */
+public final class TestWavFiles {
+    private static final int BUFFER_SIZE_IN_SHORTS =
+        SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS;
+
+    private TestWavFiles() {
+    }
+
+    /**
+     * Writes given samples to a WAV file (16 bit mono PCM recorded with
+     * SpeechTrainerConfig.SAMPLE_RATE_HZ).
+     */
+    public static void writeWavFile(File wavFile, final short[] samples) throws IOException {
+        final int buffersCount = (samples.length + BUFFER_SIZE_IN_SHORTS - 1)
+        / BUFFER_SIZE_IN_SHORTS;
+        // All buffers fit in the queue, so none is dropped.
+        final WavSessionExporter exporter = new WavSessionExporter(
+                SpeechTrainerConfig.SAMPLE_RATE_HZ, BUFFER_SIZE_IN_SHORTS,
+                Math.max(1, buffersCount), new MetricsRegistry());
+        final Recorder recorder = exporter.exportRecorder(new Recorder() {
+            private int position = 0;
+
+            @Override
+            public void startRecording() {
+            }
+
+            @Override
+            public boolean readAudioBuffer(AudioBuffer audioBuffer) {
+                final int length = Math.min(BUFFER_SIZE_IN_SHORTS, samples.length - position);
+                System.arraycopy(samples, position, audioBuffer.getAudioData(), 0, length);
+                audioBuffer.audioDataStored(length);
+                position += length;
+                return true;
+            }
+
+            @Override
+            public void stopRecording() {
+            }
+        });
+        final AudioBufferAllocator allocator = new AudioBufferAllocator(1, BUFFER_SIZE_IN_SHORTS);
+        exporter.start(wavFile);
+        for (int i = 0; i < buffersCount; ++i) {
+            final AudioBuffer audioBuffer = allocator.allocateAudioBuffer();
+            recorder.readAudioBuffer(audioBuffer);
+            allocator.releaseAudioBuffer(audioBuffer);
+        }
+        exporter.stop();
+    }
+}
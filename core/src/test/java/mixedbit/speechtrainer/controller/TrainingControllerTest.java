@@ -116,9 +116,10 @@ public abstract class TrainingControllerTest extends TestCase {
         }
 
         private void copyRecordedAudioData(AudioBuffer audioBuffer) {
-            lastPlayedAudioDataCopy = new short[audioBuffer.getAudioDataLengthInShorts()];
-            for (int i = 0; i < audioBuffer.getAudioDataLengthInShorts(); i++) {
-                lastPlayedAudioDataCopy[i] = audioBuffer.getAudioData()[i];
+            lastPlayedAudioDataCopy = new short[audioBuffer.getPlayedAudioDataLengthInShorts()];
+            for (int i = 0; i < lastPlayedAudioDataCopy.length; i++) {
+                lastPlayedAudioDataCopy[i] =
+                    audioBuffer.getAudioData()[audioBuffer.getPlayedAudioDataStart() + i];
             }
         }
 
@@ -0,0 +1,419 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import mixedbit.speechtrainer.Assertions;
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+import mixedbit.speechtrainer.metrics.Histogram;
+import mixedbit.speechtrainer.metrics.LatencyRecorder;
+
+/**
+ * Deterministic simulation of training sessions. Drives the real
+ * RecordPlayTaskManager, controllers, SilenceFilter and AudioBufferAllocator
+ * with a simulated recorder and player that advance a virtual audio clock
+ * instead of blocking. Tasks submitted by the RecordPlayTaskManager are
+ * executed on the calling thread, so no real threads and no real time are
+ * involved and hours of training are simulated in seconds.
+ *
+ * The task is stopped when the virtual clock reaches a scheduled time (the
+ * simulated recorder and player check the time after each buffer). This
+ * allows to script user actions (such as pressing the record and the play
+ * button) at given points of the virtual time.
+ *
+ * The simulator measures the wall clock time that the simulated code spends
+ * processing each recorded and played buffer (from the moment the recorder or
+ * the player returns a buffer until the moment it is asked for the next one).
+ * When allocation tracking is started, it also counts bytes allocated by the
+ * simulated code in the same intervals (requires a JVM that supports
+ * com.sun.management.ThreadMXBean).
+ */
+class TrainingSimulator {
+    // Levels of the prerecorded sample blocks, sound levels of simulated
+    // buffers are rounded to integers.
+    private static final int MAX_SOUND_LEVEL = 90;
+    private static final long NO_STOP = Long.MAX_VALUE;
+    // Size of the input buffer of the simulated recorder and of the output
+    // buffer of the simulated player, a typical minimum for 44100Hz.
+    private static final int SIMULATED_DEVICE_BUFFER_SIZE_IN_SHORTS = 4096;
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+        allocationTrackingThreadMXBean();
+
+    /**
+     * Executes submitted tasks on the thread that calls runSubmittedTasks.
+     */
+    private static class InlineExecutorService extends AbstractExecutorService {
+        private final Queue<Runnable> submittedTasks = new LinkedList<Runnable>();
+        private boolean shutdown = false;
+
+        @Override
+        public void execute(Runnable command) {
+            submittedTasks.add(command);
+        }
+
+        public void runSubmittedTasks() {
+            while (!submittedTasks.isEmpty()) {
+                submittedTasks.remove().run();
+            }
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return submittedTasks.isEmpty();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && submittedTasks.isEmpty();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            final List<Runnable> notExecuted = new LinkedList<Runnable>(submittedTasks);
+            submittedTasks.clear();
+            return notExecuted;
+        }
+    }
+
+    private class SimulatedRecorder implements Recorder {
+        private boolean recording = false;
+        private long lastBufferReturnedNanos;
+        private long lastBufferReturnedAllocatedBytes;
+
+        @Override
+        public void startRecording() {
+            Assertions.illegalStateIfFalse(!recording && !player.playing);
+            recording = true;
+            lastBufferReturnedNanos = 0;
+        }
+
+        @Override
+        public boolean readAudioBuffer(AudioBuffer audioBuffer) {
+            Assertions.illegalStateIfFalse(recording);
+            if (lastBufferReturnedNanos != 0) {
+                recordProcessingNanos.record(System.nanoTime() - lastBufferReturnedNanos);
+                trackAllocationsSince(lastBufferReturnedAllocatedBytes);
+            }
+            final int level = (int) Math.round(speaker.soundLevelAt(clock.getElapsedSamples()));
+            final short[] samples = sampleBlocks[Math.max(0, Math.min(MAX_SOUND_LEVEL, level))];
+            System.arraycopy(samples, 0, audioBuffer.getAudioData(), 0, samples.length);
+            audioBuffer.audioDataStored(samples.length);
+            clock.advance(samples.length);
+            ++recordedBuffersCount;
+            stopTaskIfScheduled();
+            lastBufferReturnedAllocatedBytes = allocatedBytes();
+            lastBufferReturnedNanos = System.nanoTime();
+            return true;
+        }
+
+        @Override
+        public void stopRecording() {
+            Assertions.illegalStateIfFalse(recording);
+            recording = false;
+        }
+    }
+
+    private class SimulatedPlayer implements Player {
+        private boolean playing = false;
+        private long lastBufferReturnedNanos;
+        private long lastBufferReturnedAllocatedBytes;
+
+        @Override
+        public void startPlaying() {
+            Assertions.illegalStateIfFalse(!playing && !recorder.recording);
+            playing = true;
+            lastBufferReturnedNanos = 0;
+            playbackStartTimesMs.add(clock.getElapsedMillis());
+        }
+
+        @Override
+        public void writeAudioBuffer(AudioBuffer audioBuffer) {
+            Assertions.illegalStateIfFalse(playing);
+            if (lastBufferReturnedNanos != 0) {
+                playProcessingNanos.record(System.nanoTime() - lastBufferReturnedNanos);
+                trackAllocationsSince(lastBufferReturnedAllocatedBytes);
+            }
+            clock.advance(audioBuffer.getPlayedAudioDataLengthInShorts());
+            ++playedBuffersCount;
+            stopTaskIfScheduled();
+            lastBufferReturnedAllocatedBytes = allocatedBytes();
+            lastBufferReturnedNanos = System.nanoTime();
+        }
+
+        @Override
+        public void stopPlaying() {
+            Assertions.illegalStateIfFalse(playing);
+            playing = false;
+        }
+    }
+
+    private final VirtualAudioClock clock = new VirtualAudioClock();
+    private final SimulatedSpeaker speaker;
+    private final short[][] sampleBlocks;
+    private final SimulatedRecorder recorder = new SimulatedRecorder();
+    private final SimulatedPlayer player = new SimulatedPlayer();
+    private final InlineExecutorService executor = new InlineExecutorService();
+    private final AudioBufferAllocator audioBufferAllocator;
+    private final RecordPlayTaskManager recordPlayTaskManager;
+    private final Histogram recordProcessingNanos = new Histogram();
+    private final Histogram playProcessingNanos = new Histogram();
+    private final LatencyRecorder latencyRecorder = new LatencyRecorder();
+    private final AudioDeadlineWatchdog watchdog = new AudioDeadlineWatchdog(clock,
+            SpeechTrainerConfig.SAMPLE_RATE_HZ,
+            SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS);
+    private long stopTaskAtSamples = NO_STOP;
+    private long recordedBuffersCount = 0;
+    private long playedBuffersCount = 0;
+    private final List<Long> playbackStartTimesMs = new ArrayList<Long>();
+    private boolean allocationTrackingStarted = false;
+    private long trackedAllocatedBytes = 0;
+    private long trackedBuffersCount = 0;
+
+    public TrainingSimulator(SimulatedSpeaker speaker, long seed) {
+        this.speaker = speaker;
+        sampleBlocks = createSampleBlocks(new Random(seed));
+        audioBufferAllocator = new AudioBufferAllocator(
+                SpeechTrainerConfig.NUMBER_OF_AUDIO_BUFFERS,
+                SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS);
+        recordPlayTaskManager = new RecordPlayTaskManager(
+                watchdog.watchRecorder(recorder, SIMULATED_DEVICE_BUFFER_SIZE_IN_SHORTS),
+                watchdog.watchPlayer(player, SIMULATED_DEVICE_BUFFER_SIZE_IN_SHORTS), executor,
+                AudioThreadPriority.UNCHANGED);
+        latencyRecorder.setEnabled(true);
+        audioBufferAllocator.getBufferTrace().setEnabled(true);
+    }
+
+    public AutomaticTrainingController createAutomaticTrainingController() {
+        return new AutomaticTrainingController(recordPlayTaskManager, new SilenceFilter(
+                new SilenceLevelDetector()), audioBufferAllocator, latencyRecorder);
+    }
+
+    public InteractiveTrainingController createInteractiveTrainingController() {
+        return new InteractiveTrainingController(recordPlayTaskManager, audioBufferAllocator);
+    }
+
+    /**
+     * Simulates automatic training that lasts a given time.
+     */
+    public void runAutomaticTraining(long durationMs) {
+        final AutomaticTrainingController controller = createAutomaticTrainingController();
+        controller.startTraining();
+        runSubmittedTasksFor(durationMs);
+        controller.stopTraining();
+        audioBufferAllocator.assertAllAudioBuffersAvailable();
+    }
+
+    /**
+     * Simulates an interactive training with a given number of rounds. In each
+     * round the user records for a given time and then plays the recording
+     * until its end.
+     */
+    public void runInteractiveTraining(int rounds, long recordingMs) {
+        final InteractiveTrainingController controller = createInteractiveTrainingController();
+        controller.startTraining();
+        for (int i = 0; i < rounds; ++i) {
+            controller.record();
+            runSubmittedTasksFor(recordingMs);
+            controller.play();
+            runSubmittedTasksFor(NO_STOP);
+        }
+        controller.stopTraining();
+        audioBufferAllocator.assertAllAudioBuffersAvailable();
+    }
+
+    /**
+     * Runs tasks submitted to the RecordPlayTaskManager until they terminate
+     * on their own or until a given virtual time passes.
+     */
+    public void runSubmittedTasksFor(long durationMs) {
+        stopTaskAtSamples = durationMs == NO_STOP ? NO_STOP : clock.getElapsedSamples()
+                + VirtualAudioClock.millisToSamples(durationMs);
+        executor.runSubmittedTasks();
+        stopTaskAtSamples = NO_STOP;
+    }
+
+    public VirtualAudioClock getClock() {
+        return clock;
+    }
+
+    public long getRecordedBuffersCount() {
+        return recordedBuffersCount;
+    }
+
+    public long getPlayedBuffersCount() {
+        return playedBuffersCount;
+    }
+
+    /**
+     * @return Virtual times at which playing was started, in milliseconds.
+     */
+    public List<Long> getPlaybackStartTimesMs() {
+        return playbackStartTimesMs;
+    }
+
+    /**
+     * @return Distribution of wall clock time spent processing each recorded
+     *         buffer, in nanoseconds.
+     */
+    public Histogram getRecordProcessingNanos() {
+        return recordProcessingNanos;
+    }
+
+    /**
+     * @return Distribution of wall clock time spent processing each played
+     *         buffer, in nanoseconds.
+     */
+    public Histogram getPlayProcessingNanos() {
+        return playProcessingNanos;
+    }
+
+    /**
+     * @return Latency recorder of automatic training controllers. Measures
+     *         wall clock time, so only counts of measurements are
+     *         deterministic.
+     */
+    public LatencyRecorder getLatencyRecorder() {
+        return latencyRecorder;
+    }
+
+    /**
+     * @return Watchdog of the simulated recorder and player. The simulated
+     *         devices advance the virtual clock, so deadlines should never be
+     *         missed.
+     */
+    public AudioDeadlineWatchdog getAudioDeadlineWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * @return Can allocations be tracked on this JVM?
+     */
+    public static boolean isAllocationTrackingSupported() {
+        return THREAD_MX_BEAN != null;
+    }
+
+    /**
+     * Starts counting bytes allocated by the simulated code while it processes
+     * buffers. Allocations done by the simulated recorder and player, and
+     * while tasks are started or switched between recording and playing, are
+     * not counted. Should be called after the simulation is warmed up (all
+     * classes loaded and initialized).
+     */
+    public void startAllocationTracking() {
+        Assertions.illegalStateIfFalse(isAllocationTrackingSupported());
+        allocationTrackingStarted = true;
+        trackedAllocatedBytes = 0;
+        trackedBuffersCount = 0;
+    }
+
+    public long getTrackedAllocatedBytes() {
+        return trackedAllocatedBytes;
+    }
+
+    public long getTrackedBuffersCount() {
+        return trackedBuffersCount;
+    }
+
+    /**
+     * @return Summary of the simulation with processing latency distributions
+     *         in microseconds.
+     */
+    public String getReport() {
+        return String.format("simulated %d s, recorded %d buffers, played %d buffers in %d "
+                + "playbacks%n  record processing [us]: %s%n  play processing [us]: %s",
+                clock.getElapsedMillis() / 1000, recordedBuffersCount, playedBuffersCount,
+                playbackStartTimesMs.size(), recordProcessingNanos.toString(1000.0),
+                playProcessingNanos.toString(1000.0));
+    }
+
+    private void trackAllocationsSince(long allocatedBytesAtStart) {
+        if (allocationTrackingStarted) {
+            trackedAllocatedBytes += allocatedBytes() - allocatedBytesAtStart;
+            ++trackedBuffersCount;
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (THREAD_MX_BEAN == null) {
+            return 0;
+        }
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean allocationTrackingThreadMXBean() {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        final com.sun.management.ThreadMXBean allocationTrackingBean =
+            (com.sun.management.ThreadMXBean) threadMXBean;
+        if (!allocationTrackingBean.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        allocationTrackingBean.setThreadAllocatedMemoryEnabled(true);
+        return allocationTrackingBean;
+    }
+
+    private void stopTaskIfScheduled() {
+        if (clock.getElapsedSamples() >= stopTaskAtSamples) {
+            recordPlayTaskManager.requestTaskTermination();
+        }
+    }
+
+    /**
+     * Creates a block of samples for each integer sound level, so recorded
+     * buffers contain audio data with the requested sound level without
+     * generating samples for each buffer.
+     */
+    private static short[][] createSampleBlocks(Random random) {
+        final short[][] blocks = new short[MAX_SOUND_LEVEL + 1][];
+        for (int level = 0; level <= MAX_SOUND_LEVEL; ++level) {
+            final double rms = Math.sqrt(Math.pow(10.0, level / 10.0));
+            final short[] block = new short[SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS];
+            for (int i = 0; i < block.length; ++i) {
+                final double sample = random.nextGaussian() * rms;
+                block[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+            }
+            blocks[level] = block;
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import junit.framework.TestCase;
+import mixedbit.speechtrainer.metrics.Histogram;
+import mixedbit.speechtrainer.metrics.LatencyRecorder.Stage;
+
+public class TrainingSimulatorTest extends TestCase {
+    private static final long SEED = 1234;
+    private static final long HOUR_MS = 60 * 60 * 1000;
+
+    private TrainingSimulator createSimulator() {
+        return new TrainingSimulator(SimulatedSpeaker.quietRoom(SEED), SEED);
+    }
+
+    public void testAutomaticTrainingIsDeterministic() {
+        final TrainingSimulator first = createSimulator();
+        final TrainingSimulator second = createSimulator();
+        first.runAutomaticTraining(10 * 60 * 1000);
+        second.runAutomaticTraining(10 * 60 * 1000);
+
+        assertFalse(first.getPlaybackStartTimesMs().isEmpty());
+        assertEquals(first.getPlaybackStartTimesMs(), second.getPlaybackStartTimesMs());
+        assertEquals(first.getRecordedBuffersCount(), second.getRecordedBuffersCount());
+        assertEquals(first.getPlayedBuffersCount(), second.getPlayedBuffersCount());
+    }
+
+    public void testHoursOfAutomaticTraining() {
+        final SimulatedSpeaker speaker = SimulatedSpeaker.quietRoom(SEED);
+        final TrainingSimulator simulator = new TrainingSimulator(speaker, SEED);
+        simulator.runAutomaticTraining(3 * HOUR_MS);
+
+        assertTrue(simulator.getClock().getElapsedMillis() >= 3 * HOUR_MS);
+        // Utterances said while the recording is played are not recorded, but
+        // most of the utterances should be detected and played back.
+        final int playbacksCount = simulator.getPlaybackStartTimesMs().size();
+        assertTrue(simulator.getReport(), playbacksCount > speaker.getUtterancesCount() / 2);
+        assertTrue(playbacksCount <= speaker.getUtterancesCount());
+        // Leading silence is never played.
+        assertTrue(simulator.getPlayedBuffersCount() < simulator.getRecordedBuffersCount());
+        // Processing time is measured for all but the first buffer after the
+        // recording or playing is started.
+        assertTrue(simulator.getRecordProcessingNanos().getCount()
+                >= simulator.getRecordedBuffersCount() - playbacksCount - 1);
+        assertTrue(simulator.getPlayProcessingNanos().getCount()
+                >= simulator.getPlayedBuffersCount() - playbacksCount);
+        // Simulated devices never stall.
+        assertEquals(0, simulator.getAudioDeadlineWatchdog().getOverrunsCount());
+        assertEquals(0, simulator.getAudioDeadlineWatchdog().getUnderrunsCount());
+    }
+
+    public void testPlayingStartsShortlyAfterUtteranceEnds() {
+        // A speaker that never pauses longer than the silence filter allows
+        // before the recording is played.
+        final SimulatedSpeaker speaker = new SimulatedSpeaker(SEED, 25.0, 65.0, 1000, 1000,
+                1000, 1000);
+        final TrainingSimulator simulator = new TrainingSimulator(speaker, SEED);
+        simulator.runAutomaticTraining(HOUR_MS);
+
+        // The first utterance ends 2s after the start, the recording is played
+        // when the long silence is detected.
+        final long firstPlaybackStartMs = simulator.getPlaybackStartTimesMs().get(0);
+        assertTrue(firstPlaybackStartMs >= 2000 + SilenceFilter.LONG_SILENCE_INTERVAL_MS);
+        assertTrue(firstPlaybackStartMs <= 2000 + SilenceFilter.LONG_SILENCE_INTERVAL_MS + 50);
+    }
+
+    public void testLatencyMeasuredForEachPlayback() {
+        final TrainingSimulator simulator = createSimulator();
+        simulator.runAutomaticTraining(10 * 60 * 1000);
+
+        final Histogram histogram = new Histogram();
+        simulator.getLatencyRecorder().copyHistogram(Stage.UTTERANCE_END_TO_DECISION, histogram);
+        assertEquals(simulator.getPlaybackStartTimesMs().size(), histogram.getCount());
+        simulator.getLatencyRecorder().copyHistogram(Stage.CAPTURE_TO_WRITE, histogram);
+        assertEquals(simulator.getPlayedBuffersCount(), histogram.getCount());
+    }
+
+    public void testInteractiveTraining() {
+        final TrainingSimulator simulator = createSimulator();
+        simulator.runInteractiveTraining(100, 5000);
+
+        assertEquals(100, simulator.getPlaybackStartTimesMs().size());
+        // Everything that was recorded is played.
+        assertEquals(simulator.getRecordedBuffersCount(), simulator.getPlayedBuffersCount());
+        // Each round takes twice the recording time.
+        assertTrue(simulator.getClock().getElapsedMillis() >= 100 * 2 * 5000);
+        assertTrue(simulator.getClock().getElapsedMillis() <= 100 * 2 * 5100);
+    }
+}
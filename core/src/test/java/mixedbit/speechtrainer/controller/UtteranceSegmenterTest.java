@@ -0,0 +1,173 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.controller.SilenceFilter.Action;
+
+import org.easymock.EasyMock;
+
+public class UtteranceSegmenterTest extends TestCase {
+    private static final double DELTA = 0.001;
+    private static final int BUFFER_LENGTH = 1000;
+    private SilenceFilter mockSilenceFilter;
+    private UtteranceSegmenter segmenter;
+    private final List<String> utterances = new ArrayList<String>();
+    private final List<Double> meanSoundLevels = new ArrayList<Double>();
+    private final List<Double> peakSoundLevels = new ArrayList<Double>();
+
+    /**
+     * Records utterances as strings "firstId-lastId:start-end", the utterance
+     * object is valid only during the call.
+     */
+    private final UtteranceListener utteranceListener = new UtteranceListener() {
+        @Override
+        public void utteranceDetected(Utterance utterance) {
+            utterances.add(utterance.getFirstAudioBufferId() + "-"
+                    + utterance.getLastAudioBufferId() + ":" + utterance.getStartInShorts()
+                    + "-" + utterance.getEndInShorts());
+            meanSoundLevels.add(utterance.getMeanSoundLevel());
+            peakSoundLevels.add(utterance.getPeakSoundLevel());
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mockSilenceFilter = EasyMock.createMock(SilenceFilter.class);
+        segmenter = new UtteranceSegmenter(mockSilenceFilter);
+        segmenter.setUtteranceListener(utteranceListener);
+    }
+
+    private void expectActions(Action... actions) {
+        for (final Action action : actions) {
+            EasyMock.expect(
+                    mockSilenceFilter.filterRecorderBuffer(EasyMock.anyDouble(), EasyMock
+                            .eq(BUFFER_LENGTH))).andReturn(
+                                    mockSilenceFilter.new FilterResult(action));
+        }
+    }
+
+    private void expectPlay(int trailingBuffersToDrop, int shortsToPlayFromFirstDroppedBuffer) {
+        EasyMock.expect(
+                mockSilenceFilter.filterRecorderBuffer(EasyMock.anyDouble(), EasyMock
+                        .eq(BUFFER_LENGTH))).andReturn(
+                                mockSilenceFilter.new FilterResult(
+                                        Action.DROP_TRAILING_BUFFERS_AND_PLAY,
+                                        trailingBuffersToDrop, trailingBuffersToDrop,
+                                        shortsToPlayFromFirstDroppedBuffer));
+    }
+
+    public void testUtteranceBoundariesAndLevels() {
+        // Two buffers of leading silence, three accepted buffers and two
+        // buffers of silence, the first one dropped partially.
+        expectActions(Action.DROP_ALL_ACCEPTED_BUFFERS, Action.DROP_ALL_ACCEPTED_BUFFERS,
+                Action.ACCEPT_BUFFER, Action.ACCEPT_BUFFER, Action.ACCEPT_BUFFER,
+                Action.ACCEPT_BUFFER);
+        expectPlay(2, 100);
+        EasyMock.replay(mockSilenceFilter);
+
+        final double[] soundLevels = { 30.0, 31.0, 50.0, 70.0, 60.0, 30.0, 30.0 };
+        for (int i = 0; i < soundLevels.length; ++i) {
+            segmenter.processBuffer(10 + i, soundLevels[i], BUFFER_LENGTH);
+        }
+
+        assertEquals(1, utterances.size());
+        // Buffers 12-14 are kept, 15 is kept partially, 16 is dropped.
+        assertEquals("12-15:" + 2 * BUFFER_LENGTH + "-" + (5 * BUFFER_LENGTH + 100), utterances
+                .get(0));
+        assertEquals((50.0 + 70.0 + 60.0 + 30.0) / 4, meanSoundLevels.get(0), DELTA);
+        assertEquals(70.0, peakSoundLevels.get(0), DELTA);
+        EasyMock.verify(mockSilenceFilter);
+    }
+
+    public void testDroppedBuffersAreNotPartOfUtterance() {
+        // Accepted data too short, dropped.
+        expectActions(Action.ACCEPT_BUFFER, Action.DROP_ALL_ACCEPTED_BUFFERS,
+                Action.ACCEPT_BUFFER);
+        expectPlay(1, 0);
+        EasyMock.replay(mockSilenceFilter);
+
+        for (int i = 0; i < 4; ++i) {
+            segmenter.processBuffer(i, 50.0, BUFFER_LENGTH);
+        }
+
+        assertEquals(Arrays.asList("2-2:" + 2 * BUFFER_LENGTH + "-" + 3 * BUFFER_LENGTH),
+                utterances);
+        EasyMock.verify(mockSilenceFilter);
+    }
+
+    public void testResetStartsNewStream() {
+        expectActions(Action.ACCEPT_BUFFER);
+        mockSilenceFilter.reset();
+        expectActions(Action.ACCEPT_BUFFER);
+        expectPlay(1, 0);
+        EasyMock.replay(mockSilenceFilter);
+
+        segmenter.processBuffer(0, 50.0, BUFFER_LENGTH);
+        segmenter.reset();
+        segmenter.processBuffer(1, 50.0, BUFFER_LENGTH);
+        segmenter.processBuffer(2, 50.0, BUFFER_LENGTH);
+
+        // Buffer 0 was forgotten and positions are counted from the reset.
+        assertEquals(Arrays.asList("1-1:0-" + BUFFER_LENGTH), utterances);
+        EasyMock.verify(mockSilenceFilter);
+    }
+
+    public void testSegmentWavFile() throws IOException {
+        final int sampleRate = SpeechTrainerConfig.SAMPLE_RATE_HZ;
+        // A second of noise, half a second of speech and a second of noise.
+        final short[] samples = new short[5 * sampleRate / 2];
+        final Random random = new Random(0);
+        for (int i = 0; i < samples.length; ++i) {
+            final boolean speech = i >= sampleRate && i < 3 * sampleRate / 2;
+            samples[i] = (short) (random.nextGaussian() * (speech ? 3000 : 30));
+        }
+        final File wavFile = File.createTempFile("utterance", ".wav");
+        try {
+            TestWavFiles.writeWavFile(wavFile, samples);
+            assertEquals(samples.length, UtteranceSegmenter.segmentWavFile(wavFile,
+                    utteranceListener));
+
+            assertEquals(1, utterances.size());
+            // The trace of the file is segmented to the same utterance.
+            final SoundLevelTrace trace = SoundLevelTrace.readWavFile(wavFile);
+            assertEquals(samples.length, trace.getLengthInShorts());
+            final UtteranceSegmenter traceSegmenter = new UtteranceSegmenter();
+            traceSegmenter.setUtteranceListener(utteranceListener);
+            trace.segment(traceSegmenter);
+            assertEquals(2, utterances.size());
+            assertEquals(utterances.get(0), utterances.get(1));
+
+            // Speech starts in the middle of buffer 44.
+            assertTrue(utterances.get(0), utterances.get(0).startsWith("44-"));
+            assertTrue(peakSoundLevels.get(0) > 65.0);
+        } finally {
+            wavFile.delete();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+
+/**
+ * Virtual time of a simulated training session. The time is measured in audio
+ * samples and advances only when the simulated recorder records or the
+ * simulated player plays samples, so the simulation does not depend on the
+ * wall clock and runs as fast as the simulated code allows.
+ */
+class VirtualAudioClock implements AudioClock {
+    private long elapsedSamples = 0;
+
+    public void advance(int samples) {
+        elapsedSamples += samples;
+    }
+
+    public long getElapsedSamples() {
+        return elapsedSamples;
+    }
+
+    @Override
+    public long nanoTime() {
+        return elapsedSamples * 1000000000L / SpeechTrainerConfig.SAMPLE_RATE_HZ;
+    }
+
+    public long getElapsedMillis() {
+        return samplesToMillis(elapsedSamples);
+    }
+
+    public static long millisToSamples(long millis) {
+        return millis * SpeechTrainerConfig.SAMPLE_RATE_HZ / 1000;
+    }
+
+    public static long samplesToMillis(long samples) {
+        return samples * 1000 / SpeechTrainerConfig.SAMPLE_RATE_HZ;
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.controller;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+
+import junit.framework.TestCase;
+import mixedbit.speechtrainer.controller.AudioBufferAllocator.AudioBuffer;
+import mixedbit.speechtrainer.metrics.MetricsRegistry;
+
+public class WavSessionExporterTest extends TestCase {
+    private static final int SAMPLE_RATE_HZ = 44100;
+    private static final int AUDIO_BUFFER_SIZE = 10;
+    private static final int QUEUE_CAPACITY = 2;
+
+    /**
+     * Writer threads created by the factory wait until writing is allowed.
+     */
+    private final CountDownLatch writingAllowed = new CountDownLatch(1);
+    private final ThreadFactory delayedWriterThreadFactory = new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writingAllowed.await();
+                    } catch (final InterruptedException e) {
+                        return;
+                    }
+                    runnable.run();
+                }
+            });
+        }
+    };
+
+    /**
+     * Fills each buffer with consecutive numbers.
+     */
+    private class TestRecorder implements Recorder {
+        private short nextSample = 0;
+
+        @Override
+        public void startRecording() {
+        }
+
+        @Override
+        public boolean readAudioBuffer(AudioBuffer audioBuffer) {
+            for (int i = 0; i < AUDIO_BUFFER_SIZE; ++i) {
+                audioBuffer.getAudioData()[i] = nextSample;
+                ++nextSample;
+            }
+            audioBuffer.audioDataStored(AUDIO_BUFFER_SIZE);
+            return true;
+        }
+
+        @Override
+        public void stopRecording() {
+        }
+    }
+
+    private final AudioBufferAllocator allocator = new AudioBufferAllocator(1, AUDIO_BUFFER_SIZE);
+    private final WavSessionExporter exporter = new WavSessionExporter(SAMPLE_RATE_HZ,
+            AUDIO_BUFFER_SIZE, QUEUE_CAPACITY, new MetricsRegistry(), delayedWriterThreadFactory);
+    private final Recorder recorder = exporter.exportRecorder(new TestRecorder());
+    private File wavFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        wavFile = File.createTempFile("session", ".wav");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        wavFile.delete();
+        super.tearDown();
+    }
+
+    private void recordBuffers(int numberOfBuffers) {
+        for (int i = 0; i < numberOfBuffers; ++i) {
+            final AudioBuffer audioBuffer = allocator.allocateAudioBuffer();
+            assertTrue(recorder.readAudioBuffer(audioBuffer));
+            allocator.releaseAudioBuffer(audioBuffer);
+        }
+    }
+
+    private ByteBuffer readWavFile() throws Exception {
+        final RandomAccessFile file = new RandomAccessFile(wavFile, "r");
+        try {
+            final byte[] content = new byte[(int) file.length()];
+            file.readFully(content);
+            return ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            file.close();
+        }
+    }
+
+    private void assertWavHeader(ByteBuffer wav, int expectedDataSize) {
+        assertEquals(44 + expectedDataSize, wav.limit());
+        assertEquals('R', wav.get(0));
+        assertEquals('F', wav.get(3));
+        assertEquals(36 + expectedDataSize, wav.getInt(4));
+        assertEquals('W', wav.get(8));
+        // PCM, mono.
+        assertEquals(1, wav.getShort(20));
+        assertEquals(1, wav.getShort(22));
+        assertEquals(SAMPLE_RATE_HZ, wav.getInt(24));
+        assertEquals(16, wav.getShort(34));
+        assertEquals('d', wav.get(36));
+        assertEquals(expectedDataSize, wav.getInt(40));
+    }
+
+    public void testRecordedBuffersWrittenToWavFile() throws Exception {
+        writingAllowed.countDown();
+        exporter.start(wavFile);
+        assertTrue(exporter.isExporting());
+        recordBuffers(QUEUE_CAPACITY);
+        exporter.stop();
+        assertFalse(exporter.isExporting());
+
+        final ByteBuffer wav = readWavFile();
+        assertWavHeader(wav, QUEUE_CAPACITY * AUDIO_BUFFER_SIZE * 2);
+        for (int i = 0; i < QUEUE_CAPACITY * AUDIO_BUFFER_SIZE; ++i) {
+            assertEquals(i, wav.getShort(44 + 2 * i));
+        }
+        assertEquals(QUEUE_CAPACITY, exporter.getWrittenBuffersCount());
+        assertEquals(0, exporter.getDroppedBuffersCount());
+        assertEquals(QUEUE_CAPACITY * AUDIO_BUFFER_SIZE, exporter.getExportedSamplesCount());
+    }
+
+    public void testBuffersDroppedWhenWriterDoesNotKeepUp() throws Exception {
+        exporter.start(wavFile);
+        // The writer thread does not write yet, so only QUEUE_CAPACITY
+        // buffers can wait to be written.
+        recordBuffers(QUEUE_CAPACITY + 3);
+        assertEquals(3, exporter.getDroppedBuffersCount());
+        writingAllowed.countDown();
+        exporter.stop();
+
+        // Dropped buffers are written as silence.
+        final ByteBuffer wav = readWavFile();
+        assertWavHeader(wav, (QUEUE_CAPACITY + 3) * AUDIO_BUFFER_SIZE * 2);
+        for (int i = 0; i < (QUEUE_CAPACITY + 3) * AUDIO_BUFFER_SIZE; ++i) {
+            assertEquals(i < QUEUE_CAPACITY * AUDIO_BUFFER_SIZE ? i : 0,
+                    wav.getShort(44 + 2 * i));
+        }
+        assertEquals(QUEUE_CAPACITY, exporter.getWrittenBuffersCount());
+        assertEquals((QUEUE_CAPACITY + 3) * AUDIO_BUFFER_SIZE,
+                exporter.getExportedSamplesCount());
+    }
+
+    public void testBuffersRecordedAfterDroppedOnesKeepTheirOffsets() throws Exception {
+        exporter.start(wavFile);
+        recordBuffers(QUEUE_CAPACITY + 2);
+        writingAllowed.countDown();
+        while (exporter.getWrittenBuffersCount() < QUEUE_CAPACITY) {
+            Thread.sleep(1);
+        }
+        recordBuffers(1);
+        exporter.stop();
+
+        final ByteBuffer wav = readWavFile();
+        final int droppedOffset = QUEUE_CAPACITY * AUDIO_BUFFER_SIZE;
+        final int lastOffset = (QUEUE_CAPACITY + 2) * AUDIO_BUFFER_SIZE;
+        assertWavHeader(wav, (lastOffset + AUDIO_BUFFER_SIZE) * 2);
+        for (int i = 0; i < lastOffset + AUDIO_BUFFER_SIZE; ++i) {
+            final int expectedSample = (i < droppedOffset || i >= lastOffset) ? i : 0;
+            assertEquals(expectedSample, wav.getShort(44 + 2 * i));
+        }
+        assertEquals(2, exporter.getDroppedBuffersCount());
+    }
+
+    public void testBuffersNotExportedWhenExportStopped() throws Exception {
+        writingAllowed.countDown();
+        recordBuffers(1);
+        exporter.start(wavFile);
+        exporter.stop();
+        recordBuffers(1);
+        // Stopping not started export does nothing.
+        exporter.stop();
+
+        assertWavHeader(readWavFile(), 0);
+        assertEquals(0, exporter.getWrittenBuffersCount());
+        assertEquals(0, exporter.getDroppedBuffersCount());
+    }
+
+    public void testChunksReusedBySuccessiveExports() throws Exception {
+        writingAllowed.countDown();
+        for (int i = 0; i < 3; ++i) {
+            exporter.start(wavFile);
+            recordBuffers(QUEUE_CAPACITY);
+            exporter.stop();
+        }
+        assertEquals(3 * QUEUE_CAPACITY, exporter.getWrittenBuffersCount());
+        assertEquals(0, exporter.getDroppedBuffersCount());
+    }
+}
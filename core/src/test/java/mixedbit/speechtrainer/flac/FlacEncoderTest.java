@@ -0,0 +1,179 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.flac;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class FlacEncoderTest extends TestCase {
+    private static final int SAMPLE_RATE_HZ = 44100;
+
+    /**
+     * @return Samples similar to recorded speech: a few harmonics with a
+     *         slowly changing amplitude and a bit of noise.
+     */
+    static short[] createVoiceLikeSamples(int length, long seed) {
+        final Random random = new Random(seed);
+        final short[] samples = new short[length];
+        for (int i = 0; i < length; ++i) {
+            final double time = (double) i / SAMPLE_RATE_HZ;
+            final double envelope = 0.5 + 0.5 * Math.sin(2 * Math.PI * 3 * time);
+            double value = 0;
+            for (int harmonic = 1; harmonic <= 4; ++harmonic) {
+                value += Math.sin(2 * Math.PI * 150 * harmonic * time) / harmonic;
+            }
+            samples[i] = (short) (6000 * envelope * value + random.nextGaussian() * 30);
+        }
+        return samples;
+    }
+
+    private static byte[] encode(short[] samples, int chunkLength) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final FlacEncoder encoder = new FlacEncoder(output, SAMPLE_RATE_HZ);
+        for (int offset = 0; offset < samples.length; offset += chunkLength) {
+            encoder.encode(samples, offset, Math.min(chunkLength, samples.length - offset));
+        }
+        encoder.finish();
+        assertEquals(samples.length, encoder.getTotalSamples());
+        // Write the complete header, as if the output was seekable.
+        final byte[] encoded = output.toByteArray();
+        System.arraycopy(encoder.getStreamHeader(), 0, encoded, 0,
+                FlacEncoder.STREAM_HEADER_SIZE_IN_BYTES);
+        return encoded;
+    }
+
+    private static FlacTestDecoder encodeAndDecode(short[] samples) throws Exception {
+        final FlacTestDecoder decoded = FlacTestDecoder.decode(encode(samples, 1000));
+        assertTrue(Arrays.equals(samples, decoded.samples));
+        return decoded;
+    }
+
+    public void testVoiceLikeSamplesCompressedLosslessly() throws Exception {
+        final short[] samples = createVoiceLikeSamples(10 * FlacEncoder.BLOCK_SIZE + 123, 1);
+        final byte[] encoded = encode(samples, 1000);
+        final FlacTestDecoder decoded = FlacTestDecoder.decode(encoded);
+        assertTrue(Arrays.equals(samples, decoded.samples));
+        assertEquals(11, decoded.framesCount);
+        assertEquals(11, decoded.subframeTypeCounts[2]);
+        // The noise alone needs about 7 bits per sample.
+        assertTrue("Encoded size " + encoded.length,
+                encoded.length < 2 * samples.length * 6 / 10);
+    }
+
+    public void testStreamInfo() throws Exception {
+        final short[] samples = createVoiceLikeSamples(3 * FlacEncoder.BLOCK_SIZE, 2);
+        final FlacTestDecoder decoded = encodeAndDecode(samples);
+        assertEquals(SAMPLE_RATE_HZ, decoded.sampleRateHz);
+        assertEquals(FlacEncoder.BLOCK_SIZE, decoded.minBlockSize);
+        assertEquals(FlacEncoder.BLOCK_SIZE, decoded.maxBlockSize);
+        assertEquals(samples.length, decoded.totalSamples);
+        assertTrue(decoded.minFrameSize > 0);
+        assertTrue(decoded.minFrameSize <= decoded.maxFrameSize);
+        // The decoder verified the MD5 signature.
+        assertFalse(Arrays.equals(new byte[16], decoded.md5Signature));
+    }
+
+    public void testStreamWithoutCompleteHeaderDecodable() throws Exception {
+        final short[] samples = createVoiceLikeSamples(2 * FlacEncoder.BLOCK_SIZE, 3);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final FlacEncoder encoder = new FlacEncoder(output, SAMPLE_RATE_HZ);
+        encoder.encode(samples, 0, samples.length);
+        encoder.finish();
+        final FlacTestDecoder decoded = FlacTestDecoder.decode(output.toByteArray());
+        assertEquals(0, decoded.totalSamples);
+        assertTrue(Arrays.equals(samples, decoded.samples));
+    }
+
+    public void testSilenceEncodedAsConstantSubframes() throws Exception {
+        final short[] samples = new short[5 * FlacEncoder.BLOCK_SIZE];
+        Arrays.fill(samples, 2 * FlacEncoder.BLOCK_SIZE, samples.length, (short) -7);
+        final byte[] encoded = encode(samples, 4096);
+        final FlacTestDecoder decoded = FlacTestDecoder.decode(encoded);
+        assertTrue(Arrays.equals(samples, decoded.samples));
+        assertEquals(5, decoded.subframeTypeCounts[0]);
+        assertTrue(encoded.length < FlacEncoder.STREAM_HEADER_SIZE_IN_BYTES + 5 * 20);
+    }
+
+    public void testNoiseEncodedAsVerbatimSubframes() throws Exception {
+        final Random random = new Random(4);
+        final short[] samples = new short[2 * FlacEncoder.BLOCK_SIZE];
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = (short) random.nextInt();
+        }
+        final FlacTestDecoder decoded = encodeAndDecode(samples);
+        assertEquals(2, decoded.subframeTypeCounts[1]);
+    }
+
+    public void testExtremeSamples() throws Exception {
+        final short[] samples = new short[FlacEncoder.BLOCK_SIZE + 17];
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = i % 3 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+        }
+        encodeAndDecode(samples);
+    }
+
+    public void testShortStreams() throws Exception {
+        for (final int length : new int[] { 0, 1, 2, 5, 16 }) {
+            final short[] samples = createVoiceLikeSamples(length, length);
+            final FlacTestDecoder decoded = encodeAndDecode(samples);
+            assertEquals(length == 0 ? 0 : 1, decoded.framesCount);
+        }
+    }
+
+    public void testOutputDoesNotDependOnChunkLength() throws Exception {
+        final short[] samples = createVoiceLikeSamples(4 * FlacEncoder.BLOCK_SIZE + 1, 5);
+        final byte[] expected = encode(samples, samples.length);
+        for (final int chunkLength : new int[] { 1, 999, FlacEncoder.BLOCK_SIZE,
+                FlacEncoder.BLOCK_SIZE + 1 }) {
+            assertTrue(Arrays.equals(expected, encode(samples, chunkLength)));
+        }
+    }
+
+    public void testFrameNumbersLargerThanOneByte() throws Exception {
+        // Frame numbers from 128 are coded on more than one byte.
+        final short[] samples = createVoiceLikeSamples(200 * 64, 6);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final FlacFrameEncoder frameEncoder = new FlacFrameEncoder(64);
+        for (int frame = 0; frame < 200; ++frame) {
+            final FlacBitWriter encoded = frameEncoder.encodeFrame(samples, frame * 64, 64, frame);
+            output.write(encoded.bytes(), 0, encoded.length());
+        }
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(FlacEncoder.createStreamHeader(SAMPLE_RATE_HZ, samples.length, 0, 0,
+                new byte[16]));
+        output.writeTo(stream);
+        final FlacTestDecoder decoded = FlacTestDecoder.decode(stream.toByteArray());
+        assertEquals(200, decoded.framesCount);
+        assertTrue(Arrays.equals(samples, decoded.samples));
+    }
+
+    public void testEncodeAfterFinishNotAllowed() throws Exception {
+        final FlacEncoder encoder = new FlacEncoder(new ByteArrayOutputStream(), SAMPLE_RATE_HZ);
+        encoder.finish();
+        try {
+            encoder.encode(new short[1], 0, 1);
+            fail("Samples encoded after finish.");
+        } catch (final IllegalStateException e) {
+            // Expected.
+        }
+    }
+}
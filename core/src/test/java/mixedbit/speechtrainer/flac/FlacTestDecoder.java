@@ -0,0 +1,297 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.flac;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+/**
+ * Minimal FLAC decoder for verifying encoded streams in tests. Supports mono
+ * streams with CONSTANT, VERBATIM and FIXED subframes. Checks the structure of
+ * a stream, CRCs of each frame, consecutive frame numbers and the MD5
+ * signature (if known). Deliberately independent of the encoder code.
+ */
+class FlacTestDecoder {
+    private final byte[] data;
+    private long bitPosition = 0;
+
+    int minBlockSize;
+    int maxBlockSize;
+    int minFrameSize;
+    int maxFrameSize;
+    int sampleRateHz;
+    int channels;
+    int bitsPerSample;
+    long totalSamples;
+    byte[] md5Signature;
+    int framesCount;
+    // Number of subframes of each type: CONSTANT, VERBATIM, FIXED.
+    final int[] subframeTypeCounts = new int[3];
+    short[] samples;
+    private int samplesCount;
+
+    private FlacTestDecoder(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Decodes a stream, fails an assertion if the stream is not valid.
+     */
+    public static FlacTestDecoder decode(byte[] data) throws Exception {
+        final FlacTestDecoder decoder = new FlacTestDecoder(data);
+        decoder.decodeStream();
+        return decoder;
+    }
+
+    private void decodeStream() throws Exception {
+        Assert.assertEquals(0x664c6143L, readBits(32));
+        boolean lastMetadataBlock = false;
+        boolean streamInfoRead = false;
+        while (!lastMetadataBlock) {
+            lastMetadataBlock = readBits(1) == 1;
+            final int type = (int) readBits(7);
+            final int length = (int) readBits(24);
+            if (type == 0) {
+                Assert.assertEquals(34, length);
+                decodeStreamInfo();
+                streamInfoRead = true;
+            } else {
+                bitPosition += 8L * length;
+            }
+        }
+        Assert.assertTrue(streamInfoRead);
+        Assert.assertEquals(1, channels);
+        Assert.assertEquals(16, bitsPerSample);
+
+        samples = new short[1024];
+        while (bitPosition < 8L * data.length) {
+            decodeFrame();
+        }
+        samples = Arrays.copyOf(samples, samplesCount);
+        if (totalSamples != 0) {
+            Assert.assertEquals(totalSamples, samplesCount);
+        }
+        if (!Arrays.equals(new byte[16], md5Signature)) {
+            final MessageDigest md5 = MessageDigest.getInstance("MD5");
+            for (final short sample : samples) {
+                md5.update((byte) sample);
+                md5.update((byte) (sample >> 8));
+            }
+            Assert.assertTrue("MD5 mismatch", Arrays.equals(md5.digest(), md5Signature));
+        }
+    }
+
+    private void decodeStreamInfo() {
+        minBlockSize = (int) readBits(16);
+        maxBlockSize = (int) readBits(16);
+        minFrameSize = (int) readBits(24);
+        maxFrameSize = (int) readBits(24);
+        sampleRateHz = (int) readBits(20);
+        channels = (int) readBits(3) + 1;
+        bitsPerSample = (int) readBits(5) + 1;
+        totalSamples = readBits(36);
+        md5Signature = new byte[16];
+        for (int i = 0; i < 16; ++i) {
+            md5Signature[i] = (byte) readBits(8);
+        }
+    }
+
+    private void decodeFrame() {
+        Assert.assertEquals(0, bitPosition % 8);
+        final int frameStart = (int) (bitPosition / 8);
+        Assert.assertEquals(0x7ffc, readBits(15));
+        Assert.assertEquals("Only fixed block size supported", 0, readBits(1));
+        final int blockSizeCode = (int) readBits(4);
+        final int sampleRateCode = (int) readBits(4);
+        Assert.assertEquals("Only mono supported", 0, readBits(4));
+        final int sampleSizeCode = (int) readBits(3);
+        Assert.assertTrue(sampleSizeCode == 0 || sampleSizeCode == 4);
+        Assert.assertEquals(0, readBits(1));
+        Assert.assertEquals(framesCount, readUtf8());
+        final int blockSize;
+        if (blockSizeCode == 1) {
+            blockSize = 192;
+        } else if (blockSizeCode >= 2 && blockSizeCode <= 5) {
+            blockSize = 576 << (blockSizeCode - 2);
+        } else if (blockSizeCode == 6) {
+            blockSize = (int) readBits(8) + 1;
+        } else if (blockSizeCode == 7) {
+            blockSize = (int) readBits(16) + 1;
+        } else {
+            Assert.assertTrue(blockSizeCode >= 8);
+            blockSize = 256 << (blockSizeCode - 8);
+        }
+        Assert.assertTrue("Sample rate must not be in the header", sampleRateCode < 12);
+        final int headerEnd = (int) (bitPosition / 8);
+        Assert.assertEquals("Header CRC", crc8(frameStart, headerEnd), readBits(8));
+
+        decodeSubframe(blockSize);
+
+        bitPosition = (bitPosition + 7) / 8 * 8;
+        final int frameEnd = (int) (bitPosition / 8);
+        Assert.assertEquals("Frame CRC", crc16(frameStart, frameEnd), readBits(16));
+        ++framesCount;
+    }
+
+    private void decodeSubframe(int blockSize) {
+        Assert.assertEquals(0, readBits(1));
+        final int type = (int) readBits(6);
+        Assert.assertEquals("Wasted bits not supported", 0, readBits(1));
+        final int[] block = new int[blockSize];
+        if (type == 0) {
+            ++subframeTypeCounts[0];
+            Arrays.fill(block, readSigned(16));
+        } else if (type == 1) {
+            ++subframeTypeCounts[1];
+            for (int i = 0; i < blockSize; ++i) {
+                block[i] = readSigned(16);
+            }
+        } else if (type >= 8 && type <= 12) {
+            ++subframeTypeCounts[2];
+            final int order = type - 8;
+            for (int i = 0; i < order; ++i) {
+                block[i] = readSigned(16);
+            }
+            decodeResidual(block, order);
+            for (int i = order; i < blockSize; ++i) {
+                switch (order) {
+                    case 1:
+                        block[i] += block[i - 1];
+                        break;
+                    case 2:
+                        block[i] += 2 * block[i - 1] - block[i - 2];
+                        break;
+                    case 3:
+                        block[i] += 3 * block[i - 1] - 3 * block[i - 2] + block[i - 3];
+                        break;
+                    case 4:
+                        block[i] += 4 * block[i - 1] - 6 * block[i - 2] + 4 * block[i - 3]
+                        - block[i - 4];
+                        break;
+                }
+            }
+        } else {
+            Assert.fail("Unsupported subframe type " + type);
+        }
+        for (final int sample : block) {
+            Assert.assertTrue(sample >= Short.MIN_VALUE && sample <= Short.MAX_VALUE);
+            if (samplesCount == samples.length) {
+                samples = Arrays.copyOf(samples, samples.length * 2);
+            }
+            samples[samplesCount] = (short) sample;
+            ++samplesCount;
+        }
+    }
+
+    /**
+     * Reads a residual into block[order...blockSize).
+     */
+    private void decodeResidual(int[] block, int order) {
+        final int method = (int) readBits(2);
+        Assert.assertTrue(method <= 1);
+        final int parameterBits = method == 0 ? 4 : 5;
+        final int escapeParameter = (1 << parameterBits) - 1;
+        final int partitionOrder = (int) readBits(4);
+        final int partitions = 1 << partitionOrder;
+        Assert.assertEquals(0, block.length % partitions);
+        int sample = order;
+        for (int partition = 0; partition < partitions; ++partition) {
+            final int end = (partition + 1) * (block.length / partitions);
+            final int parameter = (int) readBits(parameterBits);
+            if (parameter == escapeParameter) {
+                final int bits = (int) readBits(5);
+                for (; sample < end; ++sample) {
+                    block[sample] = readSigned(bits);
+                }
+            } else {
+                for (; sample < end; ++sample) {
+                    long quotient = 0;
+                    while (readBits(1) == 0) {
+                        ++quotient;
+                    }
+                    final long folded = (quotient << parameter) | readBits(parameter);
+                    block[sample] = (int) ((folded >>> 1) ^ -(folded & 1));
+                }
+            }
+        }
+    }
+
+    private long readUtf8() {
+        final int first = (int) readBits(8);
+        if ((first & 0x80) == 0) {
+            return first;
+        }
+        int continuationBytes = 0;
+        while ((first & (0x40 >> continuationBytes)) != 0) {
+            ++continuationBytes;
+        }
+        Assert.assertTrue(continuationBytes >= 1 && continuationBytes <= 6);
+        long value = first & (0x3f >> continuationBytes);
+        for (int i = 0; i < continuationBytes; ++i) {
+            final int next = (int) readBits(8);
+            Assert.assertEquals(0x80, next & 0xc0);
+            value = (value << 6) | (next & 0x3f);
+        }
+        return value;
+    }
+
+    private long readBits(int count) {
+        long value = 0;
+        for (int i = 0; i < count; ++i) {
+            Assert.assertTrue("Unexpected end of stream", bitPosition < 8L * data.length);
+            final int bit = (data[(int) (bitPosition / 8)] >> (7 - (int) (bitPosition % 8))) & 1;
+            value = (value << 1) | bit;
+            ++bitPosition;
+        }
+        return value;
+    }
+
+    private int readSigned(int count) {
+        if (count == 0) {
+            return 0;
+        }
+        final long value = readBits(count);
+        return (int) (value << (64 - count) >> (64 - count));
+    }
+
+    private int crc8(int start, int end) {
+        int crc = 0;
+        for (int i = start; i < end; ++i) {
+            crc ^= data[i] & 0xff;
+            for (int bit = 0; bit < 8; ++bit) {
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xff : (crc << 1) & 0xff;
+            }
+        }
+        return crc;
+    }
+
+    private int crc16(int start, int end) {
+        int crc = 0;
+        for (int i = start; i < end; ++i) {
+            crc ^= (data[i] & 0xff) << 8;
+            for (int bit = 0; bit < 8; ++bit) {
+                crc = (crc & 0x8000) != 0 ? ((crc << 1) ^ 0x8005) & 0xffff
+                        : (crc << 1) & 0xffff;
+            }
+        }
+        return crc;
+    }
+}
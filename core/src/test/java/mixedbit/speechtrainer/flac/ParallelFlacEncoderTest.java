@@ -0,0 +1,93 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.flac;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+public class ParallelFlacEncoderTest extends TestCase {
+    private static final int SAMPLE_RATE_HZ = 44100;
+    private static final int THREADS = 3;
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testSameFramesAsStreamingEncoder() throws Exception {
+        // Enough frames for more tasks than can be pending at once.
+        final short[] samples = FlacEncoderTest.createVoiceLikeSamples(
+                100 * FlacEncoder.BLOCK_SIZE + 55, 7);
+        final ByteArrayOutputStream parallelOutput = new ByteArrayOutputStream();
+        final byte[] header = new ParallelFlacEncoder(executor, THREADS).encode(samples, 0,
+                samples.length, SAMPLE_RATE_HZ, parallelOutput);
+        final ByteArrayOutputStream streamingOutput = new ByteArrayOutputStream();
+        final FlacEncoder streamingEncoder = new FlacEncoder(streamingOutput, SAMPLE_RATE_HZ);
+        streamingEncoder.encode(samples, 0, samples.length);
+        streamingEncoder.finish();
+
+        final byte[] parallel = parallelOutput.toByteArray();
+        final byte[] streaming = streamingOutput.toByteArray();
+        assertTrue(Arrays.equals(
+                Arrays.copyOfRange(streaming, FlacEncoder.STREAM_HEADER_SIZE_IN_BYTES,
+                        streaming.length),
+                Arrays.copyOfRange(parallel, FlacEncoder.STREAM_HEADER_SIZE_IN_BYTES,
+                        parallel.length)));
+
+        // Without the signature the stream is decoded too.
+        assertTrue(Arrays.equals(samples, FlacTestDecoder.decode(parallel).samples));
+        System.arraycopy(header, 0, parallel, 0, header.length);
+        final FlacTestDecoder decoded = FlacTestDecoder.decode(parallel);
+        assertTrue(Arrays.equals(samples, decoded.samples));
+        assertEquals(samples.length, decoded.totalSamples);
+        // The decoder verified the MD5 signature.
+        assertFalse(Arrays.equals(new byte[16], decoded.md5Signature));
+    }
+
+    public void testEncodesPartOfArray() throws Exception {
+        final short[] samples = FlacEncoderTest.createVoiceLikeSamples(
+                3 * FlacEncoder.BLOCK_SIZE, 8);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ParallelFlacEncoder(executor, THREADS).encode(samples, 100, samples.length - 200,
+                SAMPLE_RATE_HZ, output);
+        final FlacTestDecoder decoded = FlacTestDecoder.decode(output.toByteArray());
+        assertTrue(Arrays.equals(Arrays.copyOfRange(samples, 100, samples.length - 100),
+                decoded.samples));
+    }
+
+    public void testEmptyRecording() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ParallelFlacEncoder(executor, THREADS).encode(new short[0], 0, 0, SAMPLE_RATE_HZ,
+                output);
+        final FlacTestDecoder decoded = FlacTestDecoder.decode(output.toByteArray());
+        assertEquals(0, decoded.framesCount);
+    }
+}
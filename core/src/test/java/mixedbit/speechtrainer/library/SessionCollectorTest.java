@@ -0,0 +1,159 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.library;
+
+import junit.framework.TestCase;
+import mixedbit.speechtrainer.controller.AudioEventListener;
+
+import org.easymock.EasyMock;
+
+public class SessionCollectorTest extends TestCase {
+    private AudioEventListener mockNextListener;
+    private SessionCollector sessionCollector;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mockNextListener = EasyMock.createNiceMock(AudioEventListener.class);
+        EasyMock.replay(mockNextListener);
+        sessionCollector = new SessionCollector(mockNextListener);
+    }
+
+    private void record(int firstAudioBufferId, int buffersCount) {
+        sessionCollector.recordingStarted();
+        for (int i = 0; i < buffersCount; ++i) {
+            sessionCollector.audioBufferRecorded(firstAudioBufferId + i, firstAudioBufferId + i);
+        }
+        sessionCollector.recordingStopped();
+    }
+
+    private void play(int firstAudioBufferId, int lastAudioBufferId) {
+        sessionCollector.playingStarted();
+        for (int i = firstAudioBufferId; i <= lastAudioBufferId; ++i) {
+            sessionCollector.audioBufferPlayed(i, i);
+        }
+        sessionCollector.playingStopped();
+    }
+
+    public void testEventsPassedToNextListener() {
+        final AudioEventListener strictNextListener = EasyMock
+        .createStrictMock(AudioEventListener.class);
+        strictNextListener.recordingStarted();
+        strictNextListener.audioBufferRecorded(3, 20.0);
+        strictNextListener.audioBufferRecordingFailed();
+        strictNextListener.recordingStopped();
+        strictNextListener.playingStarted();
+        strictNextListener.audioBufferPlayed(3, 20.0);
+        strictNextListener.playingStopped();
+        EasyMock.replay(strictNextListener);
+
+        sessionCollector = new SessionCollector(strictNextListener);
+        sessionCollector.startSession();
+        sessionCollector.recordingStarted();
+        sessionCollector.audioBufferRecorded(3, 20.0);
+        sessionCollector.audioBufferRecordingFailed();
+        sessionCollector.recordingStopped();
+        sessionCollector.playingStarted();
+        sessionCollector.audioBufferPlayed(3, 20.0);
+        sessionCollector.playingStopped();
+        EasyMock.verify(strictNextListener);
+    }
+
+    public void testLevelsCollectedOnlyDuringSession() {
+        record(0, 3);
+        sessionCollector.startSession();
+        assertTrue(sessionCollector.isCollecting());
+        record(3, 4);
+        final SessionLevels levels = sessionCollector.finishSession();
+        assertFalse(sessionCollector.isCollecting());
+        record(7, 2);
+
+        assertEquals(4, levels.getRecordedBuffersCount());
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(3.0 + i, levels.getSoundLevel(i));
+        }
+    }
+
+    public void testManyLevelsCollected() {
+        final int buffersCount = 10000;
+        sessionCollector.startSession();
+        record(0, buffersCount);
+        final SessionLevels levels = sessionCollector.finishSession();
+        assertEquals(buffersCount, levels.getRecordedBuffersCount());
+        assertEquals(buffersCount - 1.0, levels.getSoundLevel(buffersCount - 1));
+    }
+
+    public void testFirstFragmentPlayedAfterRecordingIsUtterance() {
+        sessionCollector.startSession();
+        record(100, 10);
+        play(102, 107);
+        // Replay of the same recording is not a new utterance.
+        play(100, 109);
+        record(110, 5);
+        play(111, 113);
+        final SessionLevels levels = sessionCollector.finishSession();
+
+        assertEquals(2, levels.getUtterancesCount());
+        assertEquals(2, levels.getUtteranceFirstBufferIndex(0));
+        assertEquals(7, levels.getUtteranceLastBufferIndex(0));
+        assertEquals(11, levels.getUtteranceFirstBufferIndex(1));
+        assertEquals(13, levels.getUtteranceLastBufferIndex(1));
+    }
+
+    public void testPreRollNotIncludedInDetectedUtterance() {
+        sessionCollector.startSession();
+        record(100, 10);
+        // Buffers 100-102 are the pre-roll.
+        sessionCollector.utteranceDetected(103);
+        play(100, 107);
+        // Detected utterance outside of the played fragment is ignored.
+        record(110, 5);
+        play(111, 113);
+        final SessionLevels levels = sessionCollector.finishSession();
+
+        assertEquals(2, levels.getUtterancesCount());
+        assertEquals(3, levels.getUtteranceFirstBufferIndex(0));
+        assertEquals(7, levels.getUtteranceLastBufferIndex(0));
+        assertEquals(11, levels.getUtteranceFirstBufferIndex(1));
+        assertEquals(13, levels.getUtteranceLastBufferIndex(1));
+    }
+
+    public void testUtterancesRecordedBeforeSessionIgnored() {
+        record(0, 10);
+        sessionCollector.startSession();
+        play(2, 5);
+        record(10, 10);
+        play(0, 15);
+        final SessionLevels levels = sessionCollector.finishSession();
+        assertEquals(0, levels.getUtterancesCount());
+    }
+
+    public void testManyUtterancesCollected() {
+        final int utterancesCount = 1000;
+        sessionCollector.startSession();
+        for (int i = 0; i < utterancesCount; ++i) {
+            record(2 * i, 2);
+            play(2 * i, 2 * i + 1);
+        }
+        final SessionLevels levels = sessionCollector.finishSession();
+        assertEquals(utterancesCount, levels.getUtterancesCount());
+        assertEquals(2 * utterancesCount - 1,
+                levels.getUtteranceLastBufferIndex(utterancesCount - 1));
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+public class SessionLibraryTest extends TestCase {
+    private File directory;
+    private SessionLibrary library;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("library", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        library = new SessionLibrary(directory);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        library.close();
+        for (final File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    private static SessionLevels createLevels(int recordedBuffersCount, int utterancesCount) {
+        final float[] soundLevels = new float[recordedBuffersCount];
+        for (int i = 0; i < recordedBuffersCount; ++i) {
+            soundLevels[i] = 10 + i;
+        }
+        final int[] utteranceBoundaries = new int[2 * utterancesCount];
+        for (int i = 0; i < utteranceBoundaries.length; ++i) {
+            utteranceBoundaries[i] = i;
+        }
+        return new SessionLevels(soundLevels, utteranceBoundaries);
+    }
+
+    private void reopenLibrary() throws Exception {
+        library.close();
+        library = new SessionLibrary(directory);
+    }
+
+    private long getIndexFileLength() {
+        return new File(directory, "sessions.idx").length();
+    }
+
+    private void assertLevels(SessionLevels expected, SessionLevels actual) {
+        assertEquals(expected.getRecordedBuffersCount(), actual.getRecordedBuffersCount());
+        for (int i = 0; i < expected.getRecordedBuffersCount(); ++i) {
+            assertEquals(expected.getSoundLevel(i), actual.getSoundLevel(i));
+        }
+        assertEquals(expected.getUtterancesCount(), actual.getUtterancesCount());
+        for (int i = 0; i < expected.getUtterancesCount(); ++i) {
+            assertEquals(expected.getUtteranceFirstBufferIndex(i),
+                    actual.getUtteranceFirstBufferIndex(i));
+            assertEquals(expected.getUtteranceLastBufferIndex(i),
+                    actual.getUtteranceLastBufferIndex(i));
+        }
+    }
+
+    public void testEmptyLibrary() throws Exception {
+        assertEquals(0, library.getSessionsCount());
+        reopenLibrary();
+        assertEquals(0, library.getSessionsCount());
+        assertEquals(new File(directory, "session-7.wav"), library.getAudioFile(7));
+    }
+
+    public void testAddedSessionsSummarized() throws Exception {
+        final SessionSummary summary = library.addSession(1000L, 2500, createLevels(5, 2));
+        assertEquals(1, library.getSessionsCount());
+        assertEquals(1000L, summary.getSessionId());
+        assertEquals(2500, summary.getDurationMs());
+        assertEquals(5, summary.getRecordedBuffersCount());
+        assertEquals(2, summary.getUtterancesCount());
+        assertEquals(10.0, summary.getMinSoundLevel());
+        assertEquals(12.0, summary.getMeanSoundLevel());
+        assertEquals(14.0, summary.getMaxSoundLevel());
+        assertEquals(1000L, library.getSession(0).getSessionId());
+    }
+
+    public void testSessionsAndLevelsPersisted() throws Exception {
+        final int sessionsCount = 100;
+        for (int i = 0; i < sessionsCount; ++i) {
+            library.addSession(i, i * 10, createLevels(i, i % 4));
+        }
+        reopenLibrary();
+        assertEquals(sessionsCount, library.getSessionsCount());
+        for (int i = 0; i < sessionsCount; ++i) {
+            final SessionSummary summary = library.getSession(i);
+            assertEquals(i, summary.getSessionId());
+            assertEquals(i * 10, summary.getDurationMs());
+            assertLevels(createLevels(i, i % 4), library.readLevels(summary));
+        }
+    }
+
+    public void testPartialRecordTruncated() throws Exception {
+        library.addSession(1, 100, createLevels(3, 1));
+        library.addSession(2, 200, createLevels(4, 1));
+        library.close();
+        // Simulates an append interrupted in the middle of the second record.
+        final long oneRecordLength = getIndexFileLength() - SessionIndex.RECORD_SIZE_IN_BYTES;
+        final RandomAccessFile indexFile = new RandomAccessFile(
+                new File(directory, "sessions.idx"), "rw");
+        indexFile.setLength(oneRecordLength + SessionIndex.RECORD_SIZE_IN_BYTES / 2);
+        indexFile.close();
+
+        library = new SessionLibrary(directory);
+        assertEquals(1, library.getSessionsCount());
+        assertEquals(oneRecordLength, getIndexFileLength());
+        // Levels of the lost session are overwritten by the next addition.
+        final SessionSummary summary = library.addSession(3, 300, createLevels(6, 2));
+        // 3 levels and 1 utterance of the first session.
+        assertEquals(3 * 4 + 8, summary.getLevelsOffset());
+        reopenLibrary();
+        assertEquals(2, library.getSessionsCount());
+        assertLevels(createLevels(3, 1), library.readLevels(library.getSession(0)));
+        assertLevels(createLevels(6, 2), library.readLevels(library.getSession(1)));
+    }
+
+    public void testCorruptedRecordTruncated() throws Exception {
+        library.addSession(1, 100, createLevels(3, 1));
+        library.addSession(2, 200, createLevels(4, 1));
+        library.close();
+        final RandomAccessFile indexFile = new RandomAccessFile(
+                new File(directory, "sessions.idx"), "rw");
+        // Change the duration of the second session.
+        indexFile.seek(indexFile.length() - SessionIndex.RECORD_SIZE_IN_BYTES + 16);
+        indexFile.writeInt(12345);
+        indexFile.close();
+
+        library = new SessionLibrary(directory);
+        assertEquals(1, library.getSessionsCount());
+        assertEquals(100, library.getSession(0).getDurationMs());
+        assertEquals(SessionIndex.HEADER_SIZE_IN_BYTES + SessionIndex.RECORD_SIZE_IN_BYTES,
+                getIndexFileLength());
+    }
+
+    public void testUnsupportedIndexRejected() throws Exception {
+        library.close();
+        final RandomAccessFile indexFile = new RandomAccessFile(
+                new File(directory, "sessions.idx"), "rw");
+        indexFile.writeInt(0);
+        indexFile.close();
+        try {
+            library = new SessionLibrary(directory);
+            fail("Index with invalid header opened.");
+        } catch (final IOException e) {
+            // Expected.
+        }
+        // A library for tearDown to close.
+        assertTrue(new File(directory, "sessions.idx").delete());
+        library = new SessionLibrary(directory);
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+import mixedbit.speechtrainer.metrics.BufferTrace.Event;
+
+public class BufferTraceTest extends TestCase {
+    private static final int CAPACITY = 8;
+    private BufferTrace bufferTrace;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        bufferTrace = new BufferTrace(CAPACITY);
+    }
+
+    private String[] dumpTextLines() throws Exception {
+        final StringWriter writer = new StringWriter();
+        bufferTrace.dumpText(writer);
+        if (writer.toString().length() == 0) {
+            return new String[0];
+        }
+        return writer.toString().split("\n");
+    }
+
+    public void testCapacityMustBePowerOfTwo() {
+        try {
+            new BufferTrace(12);
+            fail();
+        } catch (final AssertionError e) {
+            // expected;
+        }
+    }
+
+    public void testDisabledTraceRecordsNothing() throws Exception {
+        bufferTrace.record(1, Event.ALLOCATED);
+        assertEquals(0, bufferTrace.getRecordedEventsCount());
+        assertEquals(0, dumpTextLines().length);
+    }
+
+    public void testEventsDumpedInOrder() throws Exception {
+        bufferTrace.setEnabled(true);
+        bufferTrace.record(7, Event.ALLOCATED);
+        bufferTrace.record(7, Event.RECORDED);
+        bufferTrace.record(7, Event.PLAYED);
+
+        final String[] lines = dumpTextLines();
+        assertEquals(3, lines.length);
+        final String threadId = Long.toString(Thread.currentThread().getId());
+        final String[] fields = lines[1].split(" ");
+        assertEquals(5, fields.length);
+        assertEquals("1", fields[0]);
+        assertEquals(threadId, fields[2]);
+        assertEquals("7", fields[3]);
+        assertEquals("RECORDED", fields[4]);
+        // Timestamps do not decrease.
+        assertTrue(Long.parseLong(lines[0].split(" ")[1])
+                <= Long.parseLong(lines[2].split(" ")[1]));
+    }
+
+    public void testOnlyMostRecentEventsKept() throws Exception {
+        bufferTrace.setEnabled(true);
+        for (int i = 0; i < CAPACITY * 3 + 2; ++i) {
+            bufferTrace.record(i, Event.RELEASED);
+        }
+        final String[] lines = dumpTextLines();
+        assertEquals(CAPACITY, lines.length);
+        assertEquals(Integer.toString(CAPACITY * 2 + 2), lines[0].split(" ")[3]);
+        assertEquals(Integer.toString(CAPACITY * 3 + 1), lines[CAPACITY - 1].split(" ")[3]);
+    }
+
+    public void testBinaryDump() throws Exception {
+        bufferTrace.setEnabled(true);
+        bufferTrace.record(3, Event.DROPPED);
+        bufferTrace.record(4, Event.FILTER_DROP_TRAILING_BUFFERS_AND_PLAY);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bufferTrace.dumpBinary(bytes);
+        final DataInputStream input = new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()));
+        input.readInt();
+        assertEquals(1, input.readInt());
+        assertEquals(2, input.readInt());
+        assertEquals(0, input.readLong());
+        input.readLong();
+        assertEquals(Thread.currentThread().getId(), input.readLong());
+        assertEquals(3, input.readInt());
+        assertEquals(Event.DROPPED.ordinal(), input.readByte());
+        assertEquals(1, input.readLong());
+        input.readLong();
+        input.readLong();
+        assertEquals(4, input.readInt());
+        assertEquals(Event.FILTER_DROP_TRAILING_BUFFERS_AND_PLAY.ordinal(), input.readByte());
+        assertEquals(0, input.available());
+    }
+
+    public void testConcurrentWriters() throws Exception {
+        final int eventsPerThread = 10000;
+        final BufferTrace largeTrace = new BufferTrace(1 << 15);
+        largeTrace.setEnabled(true);
+        final CountDownLatch done = new CountDownLatch(2);
+        for (int t = 0; t < 2; ++t) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < eventsPerThread; ++i) {
+                        largeTrace.record(i, Event.ALLOCATED);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+        assertEquals(2 * eventsPerThread, largeTrace.getRecordedEventsCount());
+        final StringWriter writer = new StringWriter();
+        largeTrace.dumpText(writer);
+        assertEquals(2 * eventsPerThread, writer.toString().split("\n").length);
+    }
+
+    public void testDumpDuringWritesEmitsOnlyWholeEvents() throws Exception {
+        // Writers wrap around a small ring while it is dumped. Each writer
+        // records events with its own buffer id and event, so a record mixing
+        // fields of two events would be detected.
+        final BufferTrace smallTrace = new BufferTrace(CAPACITY);
+        smallTrace.setEnabled(true);
+        final Event[] events = { Event.RECORDED, Event.PLAYED };
+        final CountDownLatch done = new CountDownLatch(events.length);
+        for (int t = 0; t < events.length; ++t) {
+            final int writer = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 200000; ++i) {
+                        smallTrace.record(writer, events[writer]);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        while (done.getCount() > 0) {
+            final StringWriter writer = new StringWriter();
+            smallTrace.dumpText(writer);
+            for (final String line : writer.toString().split("\n")) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                final String[] fields = line.split(" ");
+                final int audioBufferId = Integer.parseInt(fields[3]);
+                assertEquals(line, events[audioBufferId].name(), fields[4]);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.metrics;
+
+import junit.framework.TestCase;
+
+public class HistogramTest extends TestCase {
+    private Histogram histogram;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        histogram = new Histogram();
+    }
+
+    public void testEmptyHistogram() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0.0, histogram.getMean());
+        assertEquals(0, histogram.getValueAtPercentile(50.0));
+    }
+
+    public void testSmallValuesAreExact() {
+        for (int i = 0; i < Histogram.SUB_BUCKETS_COUNT; ++i) {
+            histogram.record(i);
+        }
+        assertEquals(Histogram.SUB_BUCKETS_COUNT, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(Histogram.SUB_BUCKETS_COUNT - 1, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(0.0));
+        assertEquals(3, histogram.getValueAtPercentile(50.0));
+        assertEquals(Histogram.SUB_BUCKETS_COUNT - 1, histogram.getValueAtPercentile(100.0));
+    }
+
+    public void testPercentilesWithinRelativeError() {
+        for (long i = 1; i <= 100000; ++i) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(1000, histogram.getMin());
+        assertEquals(100000000, histogram.getMax());
+        assertEquals(50000500.0, histogram.getMean(), 0.001);
+        assertWithinRelativeError(50000000, histogram.getValueAtPercentile(50.0));
+        assertWithinRelativeError(99000000, histogram.getValueAtPercentile(99.0));
+        assertWithinRelativeError(99900000, histogram.getValueAtPercentile(99.9));
+        assertEquals(100000000, histogram.getValueAtPercentile(100.0));
+    }
+
+    public void testPercentileOfSingleValue() {
+        histogram.record(12345);
+        assertEquals(12345, histogram.getValueAtPercentile(0.0));
+        assertEquals(12345, histogram.getValueAtPercentile(50.0));
+        assertEquals(12345, histogram.getValueAtPercentile(100.0));
+    }
+
+    public void testLargeAndNegativeValues() {
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.getMin());
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100.0));
+    }
+
+    public void testAddAndReset() {
+        final Histogram other = new Histogram();
+        histogram.record(10);
+        other.record(1000);
+        other.record(2000);
+        histogram.add(other);
+        assertEquals(3, histogram.getCount());
+        assertEquals(10, histogram.getMin());
+        assertEquals(2000, histogram.getMax());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99.0));
+    }
+
+    public void testInvalidPercentile() {
+        try {
+            histogram.getValueAtPercentile(100.5);
+            fail();
+        } catch (final AssertionError e) {
+            // expected;
+        }
+    }
+
+    private void assertWithinRelativeError(long expected, long actual) {
+        assertTrue("Expected " + expected + " got " + actual,
+                Math.abs(expected - actual) <= expected / Histogram.SUB_BUCKETS_COUNT);
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.metrics;
+
+import junit.framework.TestCase;
+import mixedbit.speechtrainer.metrics.LatencyRecorder.Stage;
+
+public class LatencyRecorderTest extends TestCase {
+    private LatencyRecorder latencyRecorder;
+    private Histogram histogram;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        latencyRecorder = new LatencyRecorder();
+        histogram = new Histogram();
+    }
+
+    private long countOf(Stage stage) {
+        latencyRecorder.copyHistogram(stage, histogram);
+        return histogram.getCount();
+    }
+
+    private void recordPlayback(int firstAudioBufferId, int buffersCount) {
+        for (int i = 0; i < buffersCount; ++i) {
+            latencyRecorder.audioBufferCaptured(firstAudioBufferId + i);
+        }
+        latencyRecorder.playbackDecided(firstAudioBufferId + buffersCount / 2);
+        for (int i = 0; i < buffersCount / 2; ++i) {
+            latencyRecorder.audioBufferWritten(firstAudioBufferId + i);
+        }
+    }
+
+    public void testDisabledByDefault() {
+        assertFalse(latencyRecorder.isEnabled());
+        recordPlayback(0, 10);
+        for (final Stage stage : Stage.values()) {
+            assertEquals(0, countOf(stage));
+        }
+    }
+
+    public void testStagesMeasuredOncePerPlayback() {
+        latencyRecorder.setEnabled(true);
+        recordPlayback(0, 10);
+        recordPlayback(10, 20);
+
+        assertEquals(2, countOf(Stage.UTTERANCE_END_TO_DECISION));
+        assertEquals(2, countOf(Stage.DECISION_TO_FIRST_WRITE));
+        assertEquals(2, countOf(Stage.UTTERANCE_END_TO_AUDIBLE));
+        // Each written buffer is measured.
+        assertEquals(5 + 10, countOf(Stage.CAPTURE_TO_WRITE));
+    }
+
+    public void testBuffersCapturedBeforeEnablingNotMeasured() {
+        latencyRecorder.setEnabled(true);
+        recordPlayback(0, 10);
+        latencyRecorder.setEnabled(false);
+        for (int i = 0; i < 10; ++i) {
+            latencyRecorder.audioBufferCaptured(i);
+        }
+        // Enabled in the middle of a session, buffers captured so far have no
+        // timestamps (or stale ones from the previous measurement).
+        latencyRecorder.setEnabled(true);
+        latencyRecorder.playbackDecided(5);
+        for (int i = 0; i < 5; ++i) {
+            latencyRecorder.audioBufferWritten(i);
+        }
+
+        assertEquals(1, countOf(Stage.UTTERANCE_END_TO_DECISION));
+        assertEquals(2, countOf(Stage.DECISION_TO_FIRST_WRITE));
+        assertEquals(1, countOf(Stage.UTTERANCE_END_TO_AUDIBLE));
+        assertEquals(5, countOf(Stage.CAPTURE_TO_WRITE));
+    }
+
+    public void testOutputLatencyIncludedInAudibleEstimate() {
+        final long outputLatencyNanos = 1000L * 1000 * 1000;
+        latencyRecorder.setEnabled(true);
+        latencyRecorder.setOutputLatencyNanos(outputLatencyNanos);
+        recordPlayback(0, 10);
+
+        latencyRecorder.copyHistogram(Stage.UTTERANCE_END_TO_AUDIBLE, histogram);
+        assertTrue(histogram.getMin() >= outputLatencyNanos);
+    }
+
+    public void testResetAndCsv() {
+        latencyRecorder.setEnabled(true);
+        recordPlayback(0, 10);
+        final String csv = latencyRecorder.toCsv();
+        final String[] lines = csv.split("\n");
+        assertEquals(Stage.values().length + 1, lines.length);
+        assertTrue(lines[0].startsWith("stage,count"));
+        assertTrue(lines[1].startsWith("utterance_end_to_decision,1,"));
+
+        latencyRecorder.reset();
+        assertEquals(0, countOf(Stage.UTTERANCE_END_TO_DECISION));
+        // Reset does not disable the recorder.
+        assertTrue(latencyRecorder.isEnabled());
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.metrics;
+
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+public class MetricsRegistryTest extends TestCase {
+    private MetricsRegistry registry;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        registry = new MetricsRegistry();
+    }
+
+    public void testCounter() {
+        final MetricsRegistry.Counter counter = registry.counter("counter");
+        assertEquals(0, counter.get());
+        counter.increment();
+        counter.add(10);
+        assertEquals(11, counter.get());
+    }
+
+    public void testSameNameReturnsSameMetric() {
+        registry.counter("counter").increment();
+        registry.counter("counter").increment();
+        assertEquals(2, registry.counter("counter").get());
+        assertSame(registry.gauge("gauge"), registry.gauge("gauge"));
+        assertSame(registry.histogram("histogram", 1.0), registry.histogram("histogram", 1.0));
+    }
+
+    public void testNameRegisteredWithDifferentTypeThrows() {
+        registry.counter("metric");
+        try {
+            registry.gauge("metric");
+            fail("Exception not thrown");
+        } catch (final IllegalStateException e) {
+        }
+    }
+
+    public void testGaugeKeepsMaximum() {
+        final MetricsRegistry.Gauge gauge = registry.gauge("gauge");
+        gauge.add(3);
+        gauge.add(-2);
+        assertEquals(1, gauge.get());
+        assertEquals(3, gauge.getMax());
+        gauge.set(2);
+        assertEquals(2, gauge.get());
+        assertEquals(3, gauge.getMax());
+    }
+
+    public void testHistogram() {
+        final MetricsRegistry.HistogramMetric histogramMetric = registry.histogram("histogram",
+                1.0);
+        histogramMetric.record(5);
+        histogramMetric.record(7);
+        final Histogram histogram = new Histogram();
+        histogram.record(100);
+        histogramMetric.copyTo(histogram);
+        assertEquals(2, histogram.getCount());
+        assertEquals(5, histogram.getMin());
+        assertEquals(7, histogram.getMax());
+    }
+
+    public void testReset() {
+        final MetricsRegistry.Counter counter = registry.counter("counter");
+        final MetricsRegistry.Gauge gauge = registry.gauge("gauge");
+        final MetricsRegistry.HistogramMetric histogramMetric = registry.histogram("histogram",
+                1.0);
+        counter.add(5);
+        gauge.add(5);
+        gauge.add(-3);
+        histogramMetric.record(1);
+
+        registry.reset();
+        assertEquals(0, counter.get());
+        // The current value of a gauge is kept.
+        assertEquals(2, gauge.get());
+        assertEquals(2, gauge.getMax());
+        final Histogram histogram = new Histogram();
+        histogramMetric.copyTo(histogram);
+        assertEquals(0, histogram.getCount());
+    }
+
+    public void testDumpInRegistrationOrder() throws Exception {
+        registry.counter("b.counter").add(3);
+        registry.gauge("a.gauge").set(4);
+        registry.histogram("c.histogram", 1.0).record(1);
+
+        final StringWriter dump = new StringWriter();
+        registry.dumpText(dump);
+        final String[] lines = dump.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("b.counter 3", lines[0]);
+        assertEquals("a.gauge 4 max=4", lines[1]);
+        assertTrue(lines[2].startsWith("c.histogram count=1 "));
+    }
+
+    public void testConcurrentIncrements() throws Exception {
+        final int threadsCount = 8;
+        final int incrementsPerThread = 100000;
+        final MetricsRegistry.Counter counter = registry.counter("counter");
+        final Thread[] threads = new Thread[threadsCount];
+        for (int i = 0; i < threadsCount; ++i) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < incrementsPerThread; ++j) {
+                        counter.increment();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threadsCount * incrementsPerThread, counter.get());
+    }
+}
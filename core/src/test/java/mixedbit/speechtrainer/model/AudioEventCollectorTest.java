@@ -222,6 +222,33 @@ public class AudioEventCollectorTest extends TestCase {
         assertFalse(it.hasNext());
     }
 
+    public void testRangeOfPlayedBuffers() {
+        final double soundLevel = 12.0;
+        assertEquals(AudioEventHistory.NO_AUDIO_BUFFER_ID,
+                audioEventCollector.getFirstPlayedAudioBufferId());
+        assertEquals(AudioEventHistory.NO_AUDIO_BUFFER_ID,
+                audioEventCollector.getLastPlayedAudioBufferId());
+
+        audioEventCollector.recordingStarted();
+        audioEventCollector.audioBufferRecorded(0, soundLevel);
+        audioEventCollector.audioBufferRecorded(1, soundLevel);
+        audioEventCollector.audioBufferRecorded(2, soundLevel);
+        audioEventCollector.recordingStopped();
+        audioEventCollector.playingStarted();
+        audioEventCollector.audioBufferPlayed(0, soundLevel);
+        audioEventCollector.audioBufferPlayed(1, soundLevel);
+        assertEquals(0, audioEventCollector.getFirstPlayedAudioBufferId());
+        assertEquals(1, audioEventCollector.getLastPlayedAudioBufferId());
+        audioEventCollector.playingStopped();
+
+        // Played buffers are no longer marked when recording starts.
+        audioEventCollector.recordingStarted();
+        assertEquals(AudioEventHistory.NO_AUDIO_BUFFER_ID,
+                audioEventCollector.getFirstPlayedAudioBufferId());
+        assertEquals(AudioEventHistory.NO_AUDIO_BUFFER_ID,
+                audioEventCollector.getLastPlayedAudioBufferId());
+    }
+
     public void testIteratorCenteredOnLastPlayedBufferWhilePlaying() {
         final double soundLevel = 12.0;
         final int plotWidth = 3;
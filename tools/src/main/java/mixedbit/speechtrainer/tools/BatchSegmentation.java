@@ -0,0 +1,344 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.controller.SilenceDetectionParameters;
+import mixedbit.speechtrainer.controller.Utterance;
+import mixedbit.speechtrainer.controller.UtteranceListener;
+import mixedbit.speechtrainer.controller.UtteranceSegmenter;
+
+/**
+ * Runs the production SilenceFilter and SilenceLevelDetector over a corpus of
+ * WAV files (16 bit mono PCM at the recording sample rate, as saved by the
+ * WavSessionExporter) and writes detected speech segments. Each file is
+ * segmented exactly like a live session, with the UtteranceSegmenter, so
+ * segments are the utterances that the application would play.
+ *
+ * Files are sharded across a ForkJoinPool, one file is segmented by a single
+ * thread from the beginning to the end, because decisions of the filter
+ * depend on all preceding audio. If a file has a label file with reference
+ * speech segments (see SegmentLabels), detected segments are scored against
+ * it, and precision and recall over all labeled files are reported together
+ * with the throughput in hours of audio per second of wall time.
+ *
+ * Usage: java -jar tools.jar [--labels directory] [--threads count]
+ * [--segments output file] [parameter options] wav files or directories
+ *
+ * Parameter options are these of the ParameterGrid, with a single value each,
+ * by default the production parameters are used (see ParameterSweep for
+ * comparing many parameter sets).
+ *
+ * Segments are written as tab separated lines: file, start and end in
+ * seconds. By default labels are looked for next to WAV files, and segments
+ * are written to the standard output. The report is written to the standard
+ * error.
+ */
+public final class BatchSegmentation {
+    private static final String WAV_FILE_EXTENSION = ".wav";
+    private static final double SECONDS_IN_HOUR = 3600.0;
+    private static final double NANOS_IN_SECOND = 1e9;
+
+    /**
+     * Result of segmenting a single file.
+     */
+    static final class FileResult {
+        private final File wavFile;
+        private final List<Segment> segments = new ArrayList<Segment>();
+        private long lengthInShorts;
+        // Null if the file has no labels.
+        private SegmentScore score;
+        // Null if the file was segmented.
+        private String error;
+
+        FileResult(File wavFile) {
+            this.wavFile = wavFile;
+        }
+
+        File getWavFile() {
+            return wavFile;
+        }
+
+        List<Segment> getSegments() {
+            return segments;
+        }
+
+        long getLengthInShorts() {
+            return lengthInShorts;
+        }
+
+        SegmentScore getScore() {
+            return score;
+        }
+
+        String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Segments a range of files, splits the range in halves until a single
+     * file is left, so idle workers can steal the remaining files.
+     */
+    private static final class SegmentationTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final FileResult[] results;
+        private final int from;
+        private final int to;
+        private final File labelsDirectory;
+        private final SilenceDetectionParameters parameters;
+
+        SegmentationTask(FileResult[] results, int from, int to, File labelsDirectory,
+                SilenceDetectionParameters parameters) {
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.labelsDirectory = labelsDirectory;
+            this.parameters = parameters;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                segmentFile(results[from], labelsDirectory, parameters);
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new SegmentationTask(results, from, middle, labelsDirectory, parameters),
+                    new SegmentationTask(results, middle, to, labelsDirectory, parameters));
+        }
+    }
+
+    private BatchSegmentation() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        File labelsDirectory = null;
+        File segmentsFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        final ParameterGrid grid = new ParameterGrid();
+        final List<File> inputs = new ArrayList<File>();
+        final SilenceDetectionParameters parameters;
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                if (!args[i].startsWith("--")) {
+                    inputs.add(new File(args[i]));
+                } else if (i + 1 == args.length) {
+                    throw new IllegalArgumentException(args[i] + ": value expected");
+                } else if ("--labels".equals(args[i])) {
+                    labelsDirectory = new File(args[++i]);
+                } else if ("--threads".equals(args[i])) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if ("--segments".equals(args[i])) {
+                    segmentsFile = new File(args[++i]);
+                } else if (!grid.parseOption(args[i], args[++i])) {
+                    throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+                }
+            }
+            final List<SilenceDetectionParameters> candidates = grid.candidates();
+            if (candidates.size() != 1) {
+                throw new IllegalArgumentException("A single value of each parameter expected");
+            }
+            parameters = candidates.get(0);
+            if (threads < 1) {
+                throw new IllegalArgumentException("--threads must be positive");
+            }
+        } catch (final IllegalArgumentException e) {
+            usage(e.getMessage());
+            return;
+        }
+        final List<File> wavFiles = findWavFiles(inputs);
+        if (wavFiles.isEmpty()) {
+            usage("No WAV files found");
+            return;
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final long startNanos = System.nanoTime();
+        final FileResult[] results = segmentFiles(wavFiles, labelsDirectory, parameters, pool);
+        final double elapsedSeconds = (System.nanoTime() - startNanos) / NANOS_IN_SECOND;
+        pool.shutdown();
+
+        final PrintWriter segmentsOutput = segmentsFile == null ? new PrintWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) : new PrintWriter(
+                        new OutputStreamWriter(new FileOutputStream(segmentsFile),
+                                StandardCharsets.UTF_8));
+        try {
+            writeSegments(results, segmentsOutput);
+        } finally {
+            segmentsOutput.flush();
+            if (segmentsFile != null) {
+                segmentsOutput.close();
+            }
+        }
+        final boolean allSegmented = writeReport(results, parameters, threads, elapsedSeconds,
+                System.err);
+        if (!allSegmented) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Segments given files with a pool, results are in the order of files.
+     * 
+     * @param labelsDirectory
+     *            Directory with label files, null if labels are next to WAV
+     *            files.
+     */
+    static FileResult[] segmentFiles(List<File> wavFiles, File labelsDirectory,
+            SilenceDetectionParameters parameters, ForkJoinPool pool) {
+        final FileResult[] results = new FileResult[wavFiles.size()];
+        for (int i = 0; i < results.length; ++i) {
+            results[i] = new FileResult(wavFiles.get(i));
+        }
+        if (results.length > 0) {
+            pool.invoke(new SegmentationTask(results, 0, results.length, labelsDirectory,
+                    parameters));
+        }
+        return results;
+    }
+
+    private static void segmentFile(final FileResult result, File labelsDirectory,
+            SilenceDetectionParameters parameters) {
+        try {
+            result.lengthInShorts = UtteranceSegmenter.segmentWavFile(result.wavFile,
+                    parameters, new UtteranceListener() {
+                @Override
+                public void utteranceDetected(Utterance utterance) {
+                    result.segments.add(new Segment(utterance.getStartInShorts(), utterance
+                            .getEndInShorts()));
+                }
+            });
+            final File labelsFile = SegmentLabels.labelsFileOf(result.wavFile, labelsDirectory);
+            if (labelsFile != null) {
+                result.score = new SegmentScore();
+                result.score.add(result.segments, SegmentLabels.read(labelsFile));
+            }
+        } catch (final IOException e) {
+            result.segments.clear();
+            result.score = null;
+            result.error = e.getMessage();
+        }
+    }
+
+    /**
+     * @return WAV files given directly and WAV files found in given
+     *         directories and their subdirectories, files of each directory
+     *         are sorted by name.
+     */
+    static List<File> findWavFiles(List<File> inputs) {
+        final List<File> wavFiles = new ArrayList<File>();
+        for (final File input : inputs) {
+            if (input.isDirectory()) {
+                final File[] children = input.listFiles();
+                if (children == null) {
+                    continue;
+                }
+                Arrays.sort(children);
+                final List<File> nested = new ArrayList<File>();
+                for (final File child : children) {
+                    if (child.isDirectory()
+                            || child.getName().toLowerCase(Locale.ROOT).endsWith(
+                                    WAV_FILE_EXTENSION)) {
+                        nested.add(child);
+                    }
+                }
+                wavFiles.addAll(findWavFiles(nested));
+            } else {
+                wavFiles.add(input);
+            }
+        }
+        return wavFiles;
+    }
+
+    private static void writeSegments(FileResult[] results, PrintWriter output) {
+        for (final FileResult result : results) {
+            for (final Segment segment : result.segments) {
+                output.printf(Locale.ROOT, "%s\t%.3f\t%.3f%n", result.wavFile.getPath(),
+                        shortsToSeconds(segment.getStartInShorts()),
+                        shortsToSeconds(segment.getEndInShorts()));
+            }
+        }
+    }
+
+    /**
+     * @return false if some files could not be segmented.
+     */
+    private static boolean writeReport(FileResult[] results,
+            SilenceDetectionParameters parameters, int threads, double elapsedSeconds,
+            PrintStream output) {
+        long lengthInShorts = 0;
+        int segmentsCount = 0;
+        int labeledFilesCount = 0;
+        int failedFilesCount = 0;
+        final SegmentScore score = new SegmentScore();
+        for (final FileResult result : results) {
+            if (result.error != null) {
+                output.println("Failed to segment " + result.wavFile + ": " + result.error);
+                ++failedFilesCount;
+                continue;
+            }
+            lengthInShorts += result.lengthInShorts;
+            segmentsCount += result.segments.size();
+            if (result.score != null) {
+                score.add(result.score);
+                ++labeledFilesCount;
+            }
+        }
+        final double audioHours = shortsToSeconds(lengthInShorts) / SECONDS_IN_HOUR;
+        output.println("Parameters: " + parameters);
+        output.printf(Locale.ROOT, "Segmented %d files (%.3f hours of audio) into %d "
+                + "segments, %d files failed%n", results.length - failedFilesCount,
+                audioHours, segmentsCount, failedFilesCount);
+        if (labeledFilesCount > 0) {
+            output.printf(Locale.ROOT, "Against labels of %d files: precision %.4f, "
+                    + "recall %.4f, F1 %.4f%n", labeledFilesCount, score.precision(),
+                    score.recall(), score.f1());
+        }
+        output.printf(Locale.ROOT, "Throughput: %.2f hours of audio per second "
+                + "(%d threads, %.2f s)%n", audioHours / elapsedSeconds, threads,
+                elapsedSeconds);
+        return failedFilesCount == 0;
+    }
+
+    private static double shortsToSeconds(long shorts) {
+        return (double) shorts / SpeechTrainerConfig.SAMPLE_RATE_HZ;
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: java -jar tools.jar [--labels directory] "
+                + "[--threads count] [--segments output file] " + ParameterGrid.USAGE
+                + " wav files or directories");
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.tools;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import mixedbit.speechtrainer.controller.SilenceDetectionParameters;
+
+/**
+ * Values of SilenceDetectionParameters given on the command line. Each
+ * parameter has a list of values, a parameter that is not given has only its
+ * default value. Candidates are all combinations of the values.
+ *
+ * Values are separated by commas, each value can be a single number or a
+ * range start:end:step (the end included), for example 2:6:0.5,8.
+ */
+final class ParameterGrid {
+    static final String USAGE = "[--leave-margin dB] [--enter-margin dB] [--history-s s] "
+        + "[--long-silence-ms ms] [--min-meaningful-ms ms] [--trailing-drop-ms ms]";
+    private static final SilenceDetectionParameters DEFAULTS = SilenceDetectionParameters.DEFAULTS;
+    private List<BigDecimal> leaveMargins = single(DEFAULTS.getSilenceLeaveMargin());
+    private List<BigDecimal> enterMargins = single(DEFAULTS.getSilenceEnterMargin());
+    private List<BigDecimal> historyLengthsS = single(DEFAULTS.getSilenceHistoryLengthS());
+    private List<BigDecimal> longSilenceIntervalsMs = single(DEFAULTS.getLongSilenceIntervalMs());
+    private List<BigDecimal> minLengthsOfMeaningfulDataMs = single(DEFAULTS
+            .getMinLengthOfMeaningfulDataToPlayMs());
+    private List<BigDecimal> trailingSilencesToDropMs = single(DEFAULTS
+            .getTrailingSilenceToDropMs());
+
+    /**
+     * Sets values of a parameter.
+     * 
+     * @return false if the option is not a parameter of the grid.
+     * @throws IllegalArgumentException
+     *             if the values can not be parsed.
+     */
+    boolean parseOption(String option, String values) {
+        if ("--leave-margin".equals(option)) {
+            leaveMargins = parseValues(option, values);
+        } else if ("--enter-margin".equals(option)) {
+            enterMargins = parseValues(option, values);
+        } else if ("--history-s".equals(option)) {
+            historyLengthsS = parseValues(option, values);
+        } else if ("--long-silence-ms".equals(option)) {
+            longSilenceIntervalsMs = parseValues(option, values);
+        } else if ("--min-meaningful-ms".equals(option)) {
+            minLengthsOfMeaningfulDataMs = parseValues(option, values);
+        } else if ("--trailing-drop-ms".equals(option)) {
+            trailingSilencesToDropMs = parseValues(option, values);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return All combinations of values, the first parameters change the
+     *         slowest.
+     * @throws IllegalArgumentException
+     *             if a combination is not valid.
+     */
+    List<SilenceDetectionParameters> candidates() {
+        final int[] historyLengthsS = intValues("--history-s", this.historyLengthsS);
+        final int[] longSilenceIntervalsMs = intValues("--long-silence-ms",
+                this.longSilenceIntervalsMs);
+        final int[] minLengthsMs = intValues("--min-meaningful-ms",
+                minLengthsOfMeaningfulDataMs);
+        final int[] trailingDropsMs = intValues("--trailing-drop-ms", trailingSilencesToDropMs);
+        final List<SilenceDetectionParameters> candidates =
+            new ArrayList<SilenceDetectionParameters>();
+        for (final BigDecimal leaveMargin : leaveMargins) {
+            for (final BigDecimal enterMargin : enterMargins) {
+                for (final int historyLengthS : historyLengthsS) {
+                    for (final int longSilenceIntervalMs : longSilenceIntervalsMs) {
+                        for (final int minLengthMs : minLengthsMs) {
+                            for (final int trailingDropMs : trailingDropsMs) {
+                                candidates.add(new SilenceDetectionParameters(leaveMargin
+                                        .doubleValue(), enterMargin.doubleValue(),
+                                        historyLengthS, longSilenceIntervalMs, minLengthMs,
+                                        trailingDropMs));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private static List<BigDecimal> single(double value) {
+        return Collections.singletonList(BigDecimal.valueOf(value));
+    }
+
+    /**
+     * Ranges are stepped with BigDecimal, so steps like 0.1 do not
+     * accumulate rounding errors.
+     */
+    private static List<BigDecimal> parseValues(String option, String values) {
+        final List<BigDecimal> result = new ArrayList<BigDecimal>();
+        try {
+            for (final String value : values.split(",")) {
+                final String[] range = value.trim().split(":");
+                if (range.length == 1) {
+                    result.add(new BigDecimal(range[0]));
+                } else if (range.length == 3) {
+                    final BigDecimal end = new BigDecimal(range[1]);
+                    final BigDecimal step = new BigDecimal(range[2]);
+                    if (step.signum() <= 0) {
+                        throw new IllegalArgumentException(option + ": step must be positive");
+                    }
+                    for (BigDecimal v = new BigDecimal(range[0]); v.compareTo(end) <= 0; v = v
+                    .add(step)) {
+                        result.add(v);
+                    }
+                } else {
+                    throw new IllegalArgumentException(option + ": invalid value " + value);
+                }
+            }
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(option + ": invalid values " + values);
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException(option + ": no values in " + values);
+        }
+        return result;
+    }
+
+    private static int[] intValues(String option, List<BigDecimal> values) {
+        final int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; ++i) {
+            try {
+                result[i] = values.get(i).intValueExact();
+            } catch (final ArithmeticException e) {
+                throw new IllegalArgumentException(option + ": integer expected, got "
+                        + values.get(i));
+            }
+        }
+        return result;
+    }
+}
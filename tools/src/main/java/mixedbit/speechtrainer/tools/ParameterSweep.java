@@ -0,0 +1,316 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.controller.SilenceDetectionParameters;
+import mixedbit.speechtrainer.controller.SoundLevelTrace;
+import mixedbit.speechtrainer.controller.Utterance;
+import mixedbit.speechtrainer.controller.UtteranceListener;
+import mixedbit.speechtrainer.controller.UtteranceSegmenter;
+
+/**
+ * Evaluates a grid of SilenceDetectionParameters over a labeled corpus of WAV
+ * files and ranks the parameters by the F1 score of detected speech (see
+ * SegmentScore).
+ *
+ * The silence detection sees only sound levels and lengths of buffers, so
+ * each file is read once, to a SoundLevelTrace, and all candidates segment
+ * the same traces. Reading and segmenting are both spread over a ForkJoinPool:
+ * files are read in parallel, then each candidate is evaluated by a single
+ * task over all traces. Files without labels are skipped.
+ *
+ * Usage: java -cp tools.jar mixedbit.speechtrainer.tools.ParameterSweep
+ * [--labels directory] [--threads count] [--top count] [grid options] wav
+ * files or directories
+ *
+ * See ParameterGrid for the grid options, for example --leave-margin 3:8:1
+ * --long-silence-ms 150,200,300 evaluates 18 candidates.
+ */
+public final class ParameterSweep {
+    private static final int DEFAULT_TOP = 20;
+    private static final double SECONDS_IN_HOUR = 3600.0;
+    private static final double NANOS_IN_SECOND = 1e9;
+
+    /**
+     * Sound levels of a file and its reference speech segments.
+     */
+    static final class LabeledTrace {
+        private final SoundLevelTrace trace;
+        private final List<Segment> labels;
+
+        LabeledTrace(SoundLevelTrace trace, List<Segment> labels) {
+            this.trace = trace;
+            this.labels = labels;
+        }
+    }
+
+    /**
+     * Score of a candidate over all traces.
+     */
+    static final class CandidateResult {
+        private final SilenceDetectionParameters parameters;
+        private final SegmentScore score = new SegmentScore();
+        private int segmentsCount = 0;
+
+        CandidateResult(SilenceDetectionParameters parameters) {
+            this.parameters = parameters;
+        }
+
+        SilenceDetectionParameters getParameters() {
+            return parameters;
+        }
+
+        SegmentScore getScore() {
+            return score;
+        }
+
+        int getSegmentsCount() {
+            return segmentsCount;
+        }
+    }
+
+    private ParameterSweep() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File labelsDirectory = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int top = DEFAULT_TOP;
+        final ParameterGrid grid = new ParameterGrid();
+        final List<File> inputs = new ArrayList<File>();
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                if (!args[i].startsWith("--")) {
+                    inputs.add(new File(args[i]));
+                } else if (i + 1 == args.length) {
+                    throw new IllegalArgumentException(args[i] + ": value expected");
+                } else if ("--labels".equals(args[i])) {
+                    labelsDirectory = new File(args[++i]);
+                } else if ("--threads".equals(args[i])) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if ("--top".equals(args[i])) {
+                    top = Integer.parseInt(args[++i]);
+                } else if (!grid.parseOption(args[i], args[++i])) {
+                    throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+                }
+            }
+            if (threads < 1 || top < 1) {
+                throw new IllegalArgumentException("--threads and --top must be positive");
+            }
+        } catch (final IllegalArgumentException e) {
+            usage(e.getMessage());
+            return;
+        }
+        final List<SilenceDetectionParameters> candidates;
+        try {
+            candidates = grid.candidates();
+        } catch (final IllegalArgumentException e) {
+            usage(e.getMessage());
+            return;
+        }
+
+        final List<File> labeledFiles = new ArrayList<File>();
+        for (final File wavFile : BatchSegmentation.findWavFiles(inputs)) {
+            if (SegmentLabels.labelsFileOf(wavFile, labelsDirectory) != null) {
+                labeledFiles.add(wavFile);
+            }
+        }
+        if (labeledFiles.isEmpty()) {
+            usage("No WAV files with labels found");
+            return;
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            final long readStartNanos = System.nanoTime();
+            final List<LabeledTrace> traces = readTraces(labeledFiles, labelsDirectory, pool);
+            final long sweepStartNanos = System.nanoTime();
+            final List<CandidateResult> results = sweep(traces, candidates, pool);
+            final long sweepEndNanos = System.nanoTime();
+            writeReport(traces, results, top, (sweepStartNanos - readStartNanos)
+                    / NANOS_IN_SECOND, (sweepEndNanos - sweepStartNanos) / NANOS_IN_SECOND,
+                    threads, System.out);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads traces and labels of given files in parallel.
+     * 
+     * @throws IOException
+     *             if a file can not be read.
+     */
+    static List<LabeledTrace> readTraces(List<File> wavFiles, final File labelsDirectory,
+            ForkJoinPool pool) throws IOException, InterruptedException {
+        final List<Callable<LabeledTrace>> tasks = new ArrayList<Callable<LabeledTrace>>();
+        for (final File wavFile : wavFiles) {
+            tasks.add(new Callable<LabeledTrace>() {
+                @Override
+                public LabeledTrace call() throws IOException {
+                    final File labelsFile = SegmentLabels.labelsFileOf(wavFile, labelsDirectory);
+                    if (labelsFile == null) {
+                        throw new IOException("No labels of " + wavFile);
+                    }
+                    try {
+                        return new LabeledTrace(SoundLevelTrace.readWavFile(wavFile),
+                                SegmentLabels.read(labelsFile));
+                    } catch (final IOException e) {
+                        throw new IOException(wavFile + ": " + e.getMessage(), e);
+                    }
+                }
+            });
+        }
+        final List<LabeledTrace> traces = new ArrayList<LabeledTrace>();
+        for (final Future<LabeledTrace> future : pool.invokeAll(tasks)) {
+            try {
+                traces.add(future.get());
+            } catch (final ExecutionException e) {
+                // The pool wraps checked exceptions of callables in runtime
+                // exceptions.
+                for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return traces;
+    }
+
+    /**
+     * Evaluates each candidate over all traces, one task per candidate.
+     * 
+     * @return Results ranked from the best to the worst.
+     */
+    static List<CandidateResult> sweep(final List<LabeledTrace> traces,
+            List<SilenceDetectionParameters> candidates, ForkJoinPool pool)
+    throws InterruptedException {
+        final List<Callable<CandidateResult>> tasks = new ArrayList<Callable<CandidateResult>>();
+        for (final SilenceDetectionParameters candidate : candidates) {
+            tasks.add(new Callable<CandidateResult>() {
+                @Override
+                public CandidateResult call() {
+                    return evaluate(candidate, traces);
+                }
+            });
+        }
+        final List<CandidateResult> results = new ArrayList<CandidateResult>();
+        for (final Future<CandidateResult> future : pool.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (final ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        Collections.sort(results, new Comparator<CandidateResult>() {
+            @Override
+            public int compare(CandidateResult a, CandidateResult b) {
+                final int byF1 = Double.compare(b.score.f1(), a.score.f1());
+                return byF1 != 0 ? byF1 : Double.compare(b.score.precision(), a.score
+                        .precision());
+            }
+        });
+        return results;
+    }
+
+    private static CandidateResult evaluate(SilenceDetectionParameters candidate,
+            List<LabeledTrace> traces) {
+        final CandidateResult result = new CandidateResult(candidate);
+        final List<Segment> segments = new ArrayList<Segment>();
+        final UtteranceListener listener = new UtteranceListener() {
+            @Override
+            public void utteranceDetected(Utterance utterance) {
+                segments.add(new Segment(utterance.getStartInShorts(), utterance
+                        .getEndInShorts()));
+            }
+        };
+        for (final LabeledTrace labeledTrace : traces) {
+            // Each trace is a separate session, the noise floor is learned
+            // from scratch.
+            final UtteranceSegmenter segmenter = new UtteranceSegmenter(candidate);
+            segmenter.setUtteranceListener(listener);
+            segments.clear();
+            labeledTrace.trace.segment(segmenter);
+            result.score.add(segments, labeledTrace.labels);
+            result.segmentsCount += segments.size();
+        }
+        return result;
+    }
+
+    private static void writeReport(List<LabeledTrace> traces, List<CandidateResult> results,
+            int top, double readSeconds, double sweepSeconds, int threads, PrintStream output) {
+        long lengthInShorts = 0;
+        for (final LabeledTrace labeledTrace : traces) {
+            lengthInShorts += labeledTrace.trace.getLengthInShorts();
+        }
+        final double audioHours = (double) lengthInShorts / SpeechTrainerConfig.SAMPLE_RATE_HZ
+        / SECONDS_IN_HOUR;
+        output.printf(Locale.ROOT, "Read %d labeled files (%.3f hours of audio) in %.2f s%n",
+                traces.size(), audioHours, readSeconds);
+        output.printf(Locale.ROOT, "Evaluated %d parameter sets in %.2f s (%d threads, "
+                + "%.2f hours of audio per second)%n", results.size(), sweepSeconds, threads,
+                audioHours * results.size() / sweepSeconds);
+        output.println("rank\tF1\tprecision\trecall\tsegments\tparameters");
+        int defaultsRank = -1;
+        for (int i = 0; i < results.size(); ++i) {
+            final CandidateResult result = results.get(i);
+            final boolean defaults = result.parameters.equals(SilenceDetectionParameters.DEFAULTS);
+            if (defaults) {
+                defaultsRank = i + 1;
+            }
+            if (i < top) {
+                writeResult(i + 1, result, defaults, output);
+            }
+        }
+        if (defaultsRank > top) {
+            output.println("...");
+            writeResult(defaultsRank, results.get(defaultsRank - 1), true, output);
+        }
+    }
+
+    private static void writeResult(int rank, CandidateResult result, boolean defaults,
+            PrintStream output) {
+        output.printf(Locale.ROOT, "%d\t%.4f\t%.4f\t%.4f\t%d\t%s%s%n", rank, result.score.f1(),
+                result.score.precision(), result.score.recall(), result.segmentsCount,
+                result.parameters, defaults ? " (defaults)" : "");
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: java -cp tools.jar mixedbit.speechtrainer.tools.ParameterSweep "
+                + "[--labels directory] [--threads count] [--top count] " + ParameterGrid.USAGE
+                + " wav files or directories");
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+
+/**
+ * Reads reference speech segments of a recording from a label file in the
+ * format exported by Audacity: one segment per line, start and end in seconds
+ * separated by white space, optionally followed by a label text. Empty lines
+ * and lines starting with '#' are skipped. Segments are returned sorted by the
+ * start.
+ */
+final class SegmentLabels {
+    private static final String LABELS_FILE_EXTENSION = ".txt";
+
+    private SegmentLabels() {
+    }
+
+    /**
+     * @return A label file of a given WAV file, the file has the same name
+     *         with the .txt extension, null if there is no such file.
+     */
+    static File labelsFileOf(File wavFile, File labelsDirectory) {
+        final String name = wavFile.getName();
+        final int extensionStart = name.lastIndexOf('.');
+        final String baseName = extensionStart < 0 ? name : name.substring(0, extensionStart);
+        final File directory = labelsDirectory != null ? labelsDirectory : wavFile
+                .getParentFile();
+        final File labelsFile = new File(directory, baseName + LABELS_FILE_EXTENSION);
+        return labelsFile.isFile() ? labelsFile : null;
+    }
+
+    static List<Segment> read(File labelsFile) throws IOException {
+        final Reader reader = new InputStreamReader(new FileInputStream(labelsFile),
+                StandardCharsets.UTF_8);
+        try {
+            return read(reader, labelsFile.getPath());
+        } finally {
+            reader.close();
+        }
+    }
+
+    static List<Segment> read(Reader reader, String sourceName) throws IOException {
+        final BufferedReader lines = new BufferedReader(reader);
+        final List<Segment> segments = new ArrayList<Segment>();
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            ++lineNumber;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] fields = line.split("\\s+", 3);
+            try {
+                if (fields.length < 2) {
+                    throw new NumberFormatException("start and end expected");
+                }
+                final long start = secondsToShorts(Double.parseDouble(fields[0]));
+                final long end = secondsToShorts(Double.parseDouble(fields[1]));
+                if (start < 0 || end < start) {
+                    throw new NumberFormatException("invalid segment");
+                }
+                segments.add(new Segment(start, end));
+            } catch (final NumberFormatException e) {
+                throw new IOException(sourceName + ":" + lineNumber + ": " + e.getMessage());
+            }
+        }
+        Collections.sort(segments, new Comparator<Segment>() {
+            @Override
+            public int compare(Segment a, Segment b) {
+                return Long.compare(a.getStartInShorts(), b.getStartInShorts());
+            }
+        });
+        return segments;
+    }
+
+    private static long secondsToShorts(double seconds) {
+        return Math.round(seconds * SpeechTrainerConfig.SAMPLE_RATE_HZ);
+    }
+}
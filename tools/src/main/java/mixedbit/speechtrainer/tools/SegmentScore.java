@@ -0,0 +1,93 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.tools;
+
+import java.util.List;
+
+/**
+ * Compares detected speech segments with reference segments sample by sample.
+ * Precision is the part of detected samples that are speech according to the
+ * reference, recall is the part of reference speech samples that were
+ * detected. Scores of several recordings are combined by summing the samples,
+ * so long recordings weigh more than short ones.
+ */
+final class SegmentScore {
+    private long detectedShorts = 0;
+    private long referenceShorts = 0;
+    private long matchedShorts = 0;
+
+    /**
+     * Adds a recording to the score. Both lists must be sorted by the start
+     * of segments, and segments in each list must not overlap.
+     */
+    void add(List<Segment> detected, List<Segment> reference) {
+        for (final Segment segment : detected) {
+            detectedShorts += segment.getLengthInShorts();
+        }
+        for (final Segment segment : reference) {
+            referenceShorts += segment.getLengthInShorts();
+        }
+        // Merge of the two sorted lists, the segment that ends first can not
+        // overlap with any further segment of the other list.
+        int d = 0;
+        int r = 0;
+        while (d < detected.size() && r < reference.size()) {
+            final Segment detectedSegment = detected.get(d);
+            final Segment referenceSegment = reference.get(r);
+            final long overlapStart = Math.max(detectedSegment.getStartInShorts(),
+                    referenceSegment.getStartInShorts());
+            final long overlapEnd = Math.min(detectedSegment.getEndInShorts(),
+                    referenceSegment.getEndInShorts());
+            if (overlapEnd > overlapStart) {
+                matchedShorts += overlapEnd - overlapStart;
+            }
+            if (detectedSegment.getEndInShorts() < referenceSegment.getEndInShorts()) {
+                ++d;
+            } else {
+                ++r;
+            }
+        }
+    }
+
+    void add(SegmentScore score) {
+        detectedShorts += score.detectedShorts;
+        referenceShorts += score.referenceShorts;
+        matchedShorts += score.matchedShorts;
+    }
+
+    /**
+     * @return Precision, 1 if nothing was detected.
+     */
+    double precision() {
+        return detectedShorts == 0 ? 1.0 : (double) matchedShorts / detectedShorts;
+    }
+
+    /**
+     * @return Recall, 1 if the reference contains no speech.
+     */
+    double recall() {
+        return referenceShorts == 0 ? 1.0 : (double) matchedShorts / referenceShorts;
+    }
+
+    double f1() {
+        final double precision = precision();
+        final double recall = recall();
+        return precision + recall == 0.0 ? 0.0 : 2 * precision * recall / (precision + recall);
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.controller.SilenceDetectionParameters;
+import mixedbit.speechtrainer.tools.BatchSegmentation.FileResult;
+
+public class BatchSegmentationTest extends TestCase {
+    private static final int SAMPLE_RATE = SpeechTrainerConfig.SAMPLE_RATE_HZ;
+    private File corpus;
+    private ForkJoinPool pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        corpus = TestCorpus.createDirectory();
+        pool = new ForkJoinPool(2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.shutdown();
+        TestCorpus.deleteDirectory(corpus);
+        super.tearDown();
+    }
+
+    public void testFilesSegmentedAndScoredInOrder() throws IOException {
+        // Speech between 1.0 and 1.5 s and between 1.0 and 2.0 s.
+        TestCorpus.writeWavFile(new File(corpus, "a.wav"), 1.0, 1.5);
+        TestCorpus.writeWavFile(new File(corpus, "b.WAV"), 1.0, 2.0);
+        TestCorpus.writeLabels(new File(corpus, "a.txt"), "1.0\t1.5\tword\n");
+        new File(corpus, "notes.md").createNewFile();
+
+        final List<File> wavFiles = BatchSegmentation.findWavFiles(Arrays.asList(corpus));
+        assertEquals(Arrays.asList(new File(corpus, "a.wav"), new File(corpus, "b.WAV")),
+                wavFiles);
+        final FileResult[] results = BatchSegmentation.segmentFiles(wavFiles, null,
+                SilenceDetectionParameters.DEFAULTS, pool);
+
+        assertEquals(2, results.length);
+        for (final FileResult result : results) {
+            assertNull(result.getError());
+            assertEquals(3 * SAMPLE_RATE, result.getLengthInShorts());
+            assertEquals(1, result.getSegments().size());
+            // The segment starts with the buffer in which the speech starts.
+            final Segment segment = result.getSegments().get(0);
+            assertTrue(segment.getStartInShorts() <= SAMPLE_RATE);
+            assertTrue(segment.getStartInShorts() > SAMPLE_RATE
+                    - SpeechTrainerConfig.SINGLE_AUDIO_BUFFER_SIZE_IN_SHORTS);
+        }
+        final SegmentScore score = results[0].getScore();
+        assertNotNull(score);
+        // All speech detected, the kept part of the trailing silence lowers
+        // the precision.
+        assertEquals(1.0, score.recall(), 0.01);
+        assertTrue(score.precision() > 0.6);
+        assertNull(results[1].getScore());
+        assertTrue(results[1].getSegments().get(0).getLengthInShorts() > SAMPLE_RATE);
+    }
+
+    public void testFailedFileDoesNotStopOtherFiles() throws IOException {
+        final File broken = new File(corpus, "broken.wav");
+        TestCorpus.writeLabels(broken, "not a wav file");
+        TestCorpus.writeWavFile(new File(corpus, "ok.wav"), 1.0, 1.5);
+
+        final List<File> wavFiles = new ArrayList<File>();
+        wavFiles.add(broken);
+        wavFiles.add(new File(corpus, "ok.wav"));
+        final FileResult[] results = BatchSegmentation.segmentFiles(wavFiles, null,
+                SilenceDetectionParameters.DEFAULTS, pool);
+
+        assertNotNull(results[0].getError());
+        assertTrue(results[0].getSegments().isEmpty());
+        assertNull(results[1].getError());
+        assertEquals(1, results[1].getSegments().size());
+    }
+}
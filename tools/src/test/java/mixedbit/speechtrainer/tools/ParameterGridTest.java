@@ -0,0 +1,74 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.tools;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import mixedbit.speechtrainer.controller.SilenceDetectionParameters;
+
+public class ParameterGridTest extends TestCase {
+    private static final double DELTA = 0.001;
+    private final ParameterGrid grid = new ParameterGrid();
+
+    public void testDefaultGridHasOnlyDefaultParameters() {
+        final List<SilenceDetectionParameters> candidates = grid.candidates();
+        assertEquals(1, candidates.size());
+        assertEquals(SilenceDetectionParameters.DEFAULTS, candidates.get(0));
+    }
+
+    public void testCandidatesAreAllCombinations() {
+        assertTrue(grid.parseOption("--leave-margin", "3:4:0.5,8"));
+        assertTrue(grid.parseOption("--long-silence-ms", "150,300"));
+        final List<SilenceDetectionParameters> candidates = grid.candidates();
+
+        assertEquals(8, candidates.size());
+        assertEquals(3.0, candidates.get(0).getSilenceLeaveMargin(), DELTA);
+        assertEquals(150, candidates.get(0).getLongSilenceIntervalMs());
+        assertEquals(3.0, candidates.get(1).getSilenceLeaveMargin(), DELTA);
+        assertEquals(300, candidates.get(1).getLongSilenceIntervalMs());
+        assertEquals(3.5, candidates.get(2).getSilenceLeaveMargin(), DELTA);
+        assertEquals(8.0, candidates.get(7).getSilenceLeaveMargin(), DELTA);
+        assertEquals(SilenceDetectionParameters.DEFAULTS.getSilenceEnterMargin(), candidates
+                .get(7).getSilenceEnterMargin(), DELTA);
+    }
+
+    public void testRangeWithFractionalStepIncludesEnd() {
+        grid.parseOption("--enter-margin", "0:1:0.1");
+        assertEquals(11, grid.candidates().size());
+    }
+
+    public void testUnknownOptionNotParsed() {
+        assertFalse(grid.parseOption("--threads", "2"));
+    }
+
+    public void testInvalidValuesRejected() {
+        try {
+            grid.parseOption("--leave-margin", "3:8");
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException e) {
+        }
+        grid.parseOption("--long-silence-ms", "150.5");
+        try {
+            grid.candidates();
+            fail("IllegalArgumentException expected");
+        } catch (final IllegalArgumentException e) {
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import mixedbit.speechtrainer.controller.SilenceDetectionParameters;
+import mixedbit.speechtrainer.tools.ParameterSweep.CandidateResult;
+import mixedbit.speechtrainer.tools.ParameterSweep.LabeledTrace;
+
+public class ParameterSweepTest extends TestCase {
+    private File corpus;
+    private ForkJoinPool pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        corpus = TestCorpus.createDirectory();
+        pool = new ForkJoinPool(2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.shutdown();
+        TestCorpus.deleteDirectory(corpus);
+        super.tearDown();
+    }
+
+    public void testCandidatesRankedByF1() throws IOException, InterruptedException {
+        TestCorpus.writeWavFile(new File(corpus, "a.wav"), 1.0, 1.5);
+        TestCorpus.writeLabels(new File(corpus, "a.txt"), "1.0\t1.5\n");
+        TestCorpus.writeWavFile(new File(corpus, "b.wav"), 0.5, 2.0);
+        TestCorpus.writeLabels(new File(corpus, "b.txt"), "0.5\t2.0\n");
+        final List<LabeledTrace> traces = ParameterSweep.readTraces(Arrays.asList(new File(
+                corpus, "a.wav"), new File(corpus, "b.wav")), null, pool);
+
+        // Speech is about 40 dB above the noise, with the leave margin of
+        // 60 dB nothing is detected.
+        final SilenceDetectionParameters deaf = new SilenceDetectionParameters(60.0, 2.0, 5,
+                200, 150, 20);
+        // A longer interval of silence keeps more trailing silence.
+        final SilenceDetectionParameters patient = new SilenceDetectionParameters(5.0, 2.0, 5,
+                600, 150, 20);
+        final List<CandidateResult> results = ParameterSweep.sweep(traces, Arrays.asList(deaf,
+                patient, SilenceDetectionParameters.DEFAULTS), pool);
+
+        assertEquals(3, results.size());
+        assertEquals(SilenceDetectionParameters.DEFAULTS, results.get(0).getParameters());
+        assertEquals(2, results.get(0).getSegmentsCount());
+        assertEquals(1.0, results.get(0).getScore().recall(), 0.01);
+        assertEquals(patient, results.get(1).getParameters());
+        assertTrue(results.get(1).getScore().precision() < results.get(0).getScore()
+                .precision());
+        assertEquals(deaf, results.get(2).getParameters());
+        assertEquals(0, results.get(2).getSegmentsCount());
+        assertEquals(0.0, results.get(2).getScore().f1(), 0.0001);
+    }
+
+    public void testSweepGivesSameSegmentsAsBatchSegmentation() throws IOException,
+    InterruptedException {
+        TestCorpus.writeWavFile(new File(corpus, "a.wav"), 1.0, 1.5);
+        TestCorpus.writeLabels(new File(corpus, "a.txt"), "1.0\t1.5\n");
+        final List<File> wavFiles = Arrays.asList(new File(corpus, "a.wav"));
+        final SilenceDetectionParameters parameters = new SilenceDetectionParameters(4.0, 1.0,
+                3, 250, 100, 10);
+
+        final List<CandidateResult> results = ParameterSweep.sweep(ParameterSweep.readTraces(
+                wavFiles, null, pool), Arrays.asList(parameters), pool);
+        final BatchSegmentation.FileResult batchResult = BatchSegmentation.segmentFiles(
+                wavFiles, null, parameters, pool)[0];
+
+        assertEquals(batchResult.getSegments().size(), results.get(0).getSegmentsCount());
+        assertEquals(batchResult.getScore().precision(), results.get(0).getScore().precision(),
+                0.0);
+        assertEquals(batchResult.getScore().recall(), results.get(0).getScore().recall(), 0.0);
+    }
+
+    public void testFileWithoutLabelsNotRead() throws InterruptedException {
+        try {
+            ParameterSweep.readTraces(Arrays.asList(new File(corpus, "missing.wav")), null,
+                    pool);
+            fail("IOException expected");
+        } catch (final IOException e) {
+        }
+    }
+}
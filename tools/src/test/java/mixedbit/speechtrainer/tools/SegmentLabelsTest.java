@@ -0,0 +1,47 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.tools;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.TestCase;
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+
+public class SegmentLabelsTest extends TestCase {
+
+    public void testReadSortsSegmentsAndSkipsComments() throws IOException {
+        final List<Segment> segments = SegmentLabels.read(new StringReader(
+                "# speaker A\n2.0\t2.5\tsecond word\n\n0.5 1.0\n"), "labels");
+        assertEquals(2, segments.size());
+        assertEquals(SpeechTrainerConfig.SAMPLE_RATE_HZ / 2, segments.get(0).getStartInShorts());
+        assertEquals(SpeechTrainerConfig.SAMPLE_RATE_HZ, segments.get(0).getEndInShorts());
+        assertEquals(2 * SpeechTrainerConfig.SAMPLE_RATE_HZ, segments.get(1).getStartInShorts());
+    }
+
+    public void testInvalidLineReported() {
+        try {
+            SegmentLabels.read(new StringReader("0.5 1.0\n1.0 0.5\n"), "labels");
+            fail("IOException expected");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("labels:2:"));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.tools;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+public class SegmentScoreTest extends TestCase {
+    private static final double DELTA = 0.0001;
+
+    public void testPartialOverlap() {
+        final SegmentScore score = new SegmentScore();
+        score.add(Arrays.asList(new Segment(100, 300), new Segment(500, 600)), Arrays.asList(
+                new Segment(200, 550)));
+        // 100 samples of the first and 50 of the second segment are speech.
+        assertEquals(150.0 / 300, score.precision(), DELTA);
+        assertEquals(150.0 / 350, score.recall(), DELTA);
+    }
+
+    public void testOneDetectedSegmentOverlapsManyReferenceSegments() {
+        final SegmentScore score = new SegmentScore();
+        score.add(Arrays.asList(new Segment(0, 1000)), Arrays.asList(new Segment(100, 200),
+                new Segment(300, 400), new Segment(900, 1100)));
+        assertEquals(300.0 / 1000, score.precision(), DELTA);
+        assertEquals(300.0 / 400, score.recall(), DELTA);
+    }
+
+    public void testScoresOfRecordingsAreSummed() {
+        final SegmentScore first = new SegmentScore();
+        first.add(Arrays.asList(new Segment(0, 100)), Arrays.asList(new Segment(0, 100)));
+        final SegmentScore second = new SegmentScore();
+        second.add(Arrays.asList(new Segment(0, 300)), Collections.<Segment> emptyList());
+        first.add(second);
+        assertEquals(100.0 / 400, first.precision(), DELTA);
+        assertEquals(1.0, first.recall(), DELTA);
+        assertEquals(2 * 0.25 / 1.25, first.f1(), DELTA);
+    }
+
+    public void testNothingDetected() {
+        final SegmentScore score = new SegmentScore();
+        score.add(Collections.<Segment> emptyList(), Arrays.asList(new Segment(0, 100)));
+        assertEquals(1.0, score.precision(), DELTA);
+        assertEquals(0.0, score.recall(), DELTA);
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * This file is part of Speech Trainer.
+ * Copyright (C) 2011 Jan Wrobel <wrr@mixedbit.org>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mixedbit.speechtrainer.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import mixedbit.speechtrainer.SpeechTrainerConfig;
+import mixedbit.speechtrainer.controller.TestWavFiles;
+
+/**
+ * Writes WAV and label files of test corpora to a temporary directory.
+ */
+class TestCorpus {
+    private static final int SAMPLE_RATE = SpeechTrainerConfig.SAMPLE_RATE_HZ;
+
+    static File createDirectory() throws IOException {
+        final File directory = File.createTempFile("corpus", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Can not create " + directory);
+        }
+        return directory;
+    }
+
+    static void deleteDirectory(File directory) {
+        for (final File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Writes three seconds of noise with speech (loud noise) between given
+     * times.
+     */
+    static void writeWavFile(File wavFile, double speechStartS, double speechEndS)
+    throws IOException {
+        final short[] samples = new short[3 * SAMPLE_RATE];
+        final Random random = new Random(0);
+        for (int i = 0; i < samples.length; ++i) {
+            final boolean speech = i >= speechStartS * SAMPLE_RATE
+            && i < speechEndS * SAMPLE_RATE;
+            samples[i] = (short) (random.nextGaussian() * (speech ? 3000 : 30));
+        }
+        TestWavFiles.writeWavFile(wavFile, samples);
+    }
+
+    static void writeLabels(File file, String labels) throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8);
+        try {
+            writer.write(labels);
+        } finally {
+            writer.close();
+        }
+    }
+}